@@ -0,0 +1,676 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * Reads and writes designs in a compact binary format, an alternative to
+ * XDL for saving and loading designs between the steps of a tool flow.
+ * Every name and attribute string is stored once in a string table and
+ * referenced by its index, tiles are referenced by their unique address,
+ * sites by their index in the tile and PIP wires by their WireEnumerator
+ * value, so nothing needs to be looked up by name when the file is loaded.
+ * 
+ * The layout of the file is:
+ * <pre>
+ * int    magic
+ * int    format version
+ * string count, (length, UTF-8 bytes) for each string
+ * design name, part name, NCD version, hard macro flag
+ * wire count of the WireEnumerator
+ * attributes of the design
+ * module count, (name, anchor, attributes, instances, nets, ports) for each module
+ * instance count, (name, type, flags, site, module instance, attributes) for each instance
+ * net count, (name, type, attributes, pins, PIPs, module instance) for each net
+ * </pre>
+ * The magic and version are big-endian ints, everything after them is an
+ * unsigned variable length int (7 bits per byte, least significant first).
+ * Strings are written as indices into the string table, optional references
+ * as the index plus one (0 for none).  The tiles of the PIPs of a net are
+ * written as the zigzag encoded difference to the tile of the previous PIP.
+ * Instances, nets and attributes are stored in the iteration order of the
+ * design and added back in the same order, so a loaded design saves to the
+ * same XDL file as the original.
+ */
+public class BinaryDesignFile {
+
+	/** Identifies a RapidSmith binary design file ("RSBD") */
+	public static final int MAGIC = 0x52534244;
+	/** The current version of the binary design file layout */
+	public static final int FORMAT_VERSION = 1;
+	/** The usual extension of binary design files */
+	public static final String FILE_EXTENSION = ".rsbd";
+	/** Character set used for the string table */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Instance flag: the instance is placed, its site follows */
+	private static final int PLACED = 1;
+	/** Instance flag: the instance is bonded */
+	private static final int BONDED = 2;
+	/** Instance flag: the instance is unbonded */
+	private static final int UNBONDED = 4;
+	/** Instance flag: the instance is a member of a module instance */
+	private static final int MODULE_INSTANCE = 8;
+
+	private Design design;
+
+	private Device dev;
+
+	private WireEnumerator we;
+
+	/** Index of each string in the string table while saving */
+	private HashMap<String,Integer> stringIndices;
+	/** The string table */
+	private ArrayList<String> strings;
+	/** The primitive type of each string in the table, created when first used */
+	private PrimitiveType[] primitiveTypes;
+
+	private BinaryDesignFile(Design design){
+		this.design = design;
+	}
+
+	/**
+	 * Saves a design to a binary design file.
+	 * @param design The design to save, its part name must be set.
+	 * @param fileName Name of the file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public static void save(Design design, String fileName) throws IOException{
+		BinaryDesignFile file = new BinaryDesignFile(design);
+		file.we = design.getWireEnumerator();
+		file.stringIndices = new HashMap<String, Integer>();
+		file.strings = new ArrayList<String>();
+		// The enum names are used the most, they get the shortest indices
+		for(NetType type : NetType.values()){
+			file.getIndex(type.name());
+		}
+		for(PinType type : PinType.values()){
+			file.getIndex(type.name());
+		}
+		Output body = new Output(1 << 16);
+		file.writeDesign(body);
+		
+		Output header = new Output(1 << 16);
+		header.addInt(MAGIC);
+		header.addInt(FORMAT_VERSION);
+		header.add(file.strings.size());
+		for(String s : file.strings){
+			byte[] bytes = s.getBytes(UTF8);
+			header.add(bytes.length);
+			header.add(bytes);
+		}
+		
+		FileOutputStream fos = new FileOutputStream(fileName);
+		try{
+			FileChannel channel = fos.getChannel();
+			ByteBuffer[] buffers = {ByteBuffer.wrap(header.data, 0, header.size), ByteBuffer.wrap(body.data, 0, body.size)};
+			while(buffers[1].hasRemaining()){
+				channel.write(buffers);
+			}
+		}
+		finally{
+			fos.close();
+		}
+	}
+
+	/**
+	 * Loads a binary design file into a design.
+	 * @param fileName Name of the file to read.
+	 * @param design An empty design to load the file into, it gets the part
+	 * name of the file and loads its device.
+	 * @throws IOException If the file could not be read, is not a binary
+	 * design file or does not match the device of its part.
+	 */
+	public static void load(String fileName, Design design) throws IOException{
+		byte[] data;
+		FileInputStream fis = new FileInputStream(fileName);
+		try{
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE){
+				throw new IOException("Design file is too large: " + fileName);
+			}
+			data = new byte[(int) size];
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) < 0) break;
+			}
+		}
+		finally{
+			fis.close();
+		}
+		
+		Input in = new Input(data, fileName);
+		if(data.length < 8 || in.getInt() != MAGIC){
+			throw new IOException("Not a binary design file: " + fileName);
+		}
+		int version = in.getInt();
+		if(version != FORMAT_VERSION){
+			throw new IOException("Unsupported binary design file version " + version + ": " + fileName);
+		}
+		BinaryDesignFile file = new BinaryDesignFile(design);
+		file.readDesign(in);
+	}
+	
+	private int getIndex(String s){
+		Integer index = stringIndices.get(s);
+		if(index == null){
+			index = strings.size();
+			stringIndices.put(s, index);
+			strings.add(s);
+		}
+		return index;
+	}
+	
+	private void addString(Output out, String s){
+		out.add(getIndex(s));
+	}
+	
+	/**
+	 * Adds a string that may be null as its index plus one (0 for null).
+	 */
+	private void addOptionalString(Output out, String s){
+		out.add(s == null ? 0 : getIndex(s) + 1);
+	}
+	
+	private void writeDesign(Output out){
+		addString(out, design.getName());
+		addString(out, design.getPartName());
+		addOptionalString(out, design.getNCDVersion());
+		out.add(design.isHardMacro() ? 1 : 0);
+		out.add(we.getWires().length);
+		writeAttributes(out, design.getAttributes());
+		
+		out.add(design.getModules().size());
+		for(Module module : design.getModules()){
+			writeModule(out, module);
+		}
+		
+		HashMap<Instance,Integer> instanceIndices = new HashMap<Instance, Integer>();
+		out.add(design.getInstances().size());
+		for(Instance inst : design.getInstances()){
+			instanceIndices.put(inst, instanceIndices.size());
+			writeInstance(out, inst, false);
+		}
+		
+		out.add(design.getNets().size());
+		for(Net net : design.getNets()){
+			writeNet(out, net, instanceIndices);
+			ModuleInstance mi = net.getModuleInstance();
+			if(mi == null){
+				out.add(0);
+			}
+			else{
+				addOptionalString(out, mi.getName());
+				addOptionalString(out, net.getModuleTemplateNet() == null ? null : net.getModuleTemplateNet().getName());
+			}
+		}
+	}
+	
+	private void writeModule(Output out, Module module){
+		addString(out, module.getName());
+		writeAttributes(out, module.getAttributes());
+		
+		HashMap<Instance,Integer> instanceIndices = new HashMap<Instance, Integer>();
+		out.add(module.getInstances().size());
+		for(Instance inst : module.getInstances()){
+			instanceIndices.put(inst, instanceIndices.size());
+			writeInstance(out, inst, true);
+		}
+		Integer anchor = module.getAnchor() == null ? null : instanceIndices.get(module.getAnchor());
+		out.add(anchor == null ? 0 : anchor + 1);
+		
+		out.add(module.getNets().size());
+		for(Net net : module.getNets()){
+			writeNet(out, net, instanceIndices);
+		}
+		
+		out.add(module.getPorts().size());
+		for(Port port : module.getPorts()){
+			addString(out, port.getName());
+			Pin pin = port.getPin();
+			Integer inst = pin == null ? null : instanceIndices.get(pin.getInstance());
+			if(inst == null){
+				out.add(0);
+			}
+			else{
+				out.add(inst + 1);
+				addString(out, pin.getName());
+			}
+		}
+	}
+	
+	private void writeInstance(Output out, Instance inst, boolean inModule){
+		addString(out, inst.getName());
+		addString(out, inst.getType().name());
+		int flags = 0;
+		PrimitiveSite site = inst.getPrimitiveSite();
+		if(site != null) flags |= PLACED;
+		if(inst.getBonded() != null) flags |= inst.getBonded() ? BONDED : UNBONDED;
+		if(!inModule && inst.getModuleInstance() != null) flags |= MODULE_INSTANCE;
+		out.add(flags);
+		if(site != null){
+			Tile tile = site.getTile();
+			out.add(tile.getUniqueAddress());
+			out.add(getSiteIndex(tile, site));
+		}
+		if((flags & MODULE_INSTANCE) != 0){
+			addString(out, inst.getModuleInstanceName());
+			addString(out, inst.getModuleTemplate().getName());
+			addString(out, inst.getModuleTemplateInstance().getName());
+		}
+		writeAttributes(out, inst.getAttributes());
+	}
+	
+	private static int getSiteIndex(Tile tile, PrimitiveSite site){
+		PrimitiveSite[] sites = tile.getPrimitiveSites();
+		for(int i = 0; i < sites.length; i++){
+			if(sites[i] == site) return i;
+		}
+		MessageGenerator.briefErrorAndExit("ERROR: Primitive site " + site.getName() +
+			" is not a site of tile " + tile.getName());
+		return -1;
+	}
+	
+	/**
+	 * Writes the name, type, attributes, pins and PIPs of a net.
+	 * @param instanceIndices The index of each instance the pins may be on.
+	 */
+	private void writeNet(Output out, Net net, HashMap<Instance,Integer> instanceIndices){
+		addString(out, net.getName());
+		addString(out, net.getType().name());
+		if(net.getAttributes() == null){
+			out.add(0);
+		}
+		else{
+			out.add(net.getAttributes().size() + 1);
+			for(Attribute attr : net.getAttributes()){
+				writeAttribute(out, attr);
+			}
+		}
+		
+		out.add(net.getPins().size());
+		for(Pin pin : net.getPins()){
+			Integer inst = instanceIndices.get(pin.getInstance());
+			if(inst == null){
+				MessageGenerator.briefErrorAndExit("ERROR: The instance of pin " + pin.getName() +
+					" on net " + net.getName() + " is not in the design");
+			}
+			out.add(inst);
+			addString(out, pin.getName());
+			addString(out, pin.getPinType().name());
+		}
+		
+		out.add(net.getPIPs().size());
+		int tile = 0;
+		for(PIP pip : net.getPIPs()){
+			int address = pip.getTile().getUniqueAddress();
+			int delta = address - tile;
+			out.add((delta << 1) ^ (delta >> 31));
+			out.add(pip.getStartWire());
+			out.add(pip.getEndWire());
+			tile = address;
+		}
+	}
+	
+	private void writeAttributes(Output out, Collection<Attribute> attributes){
+		out.add(attributes.size());
+		for(Attribute attr : attributes){
+			writeAttribute(out, attr);
+		}
+	}
+	
+	private void writeAttribute(Output out, Attribute attr){
+		addString(out, attr.getPhysicalName());
+		addString(out, attr.getLogicalName());
+		addString(out, attr.getValue());
+	}
+	
+	private void readDesign(Input in) throws IOException{
+		int count = in.get();
+		strings = new ArrayList<String>(count);
+		for(int i = 0; i < count; i++){
+			int length = in.get();
+			strings.add(in.getString(length));
+		}
+		primitiveTypes = new PrimitiveType[strings.size()];
+		
+		design.setName(getString(in));
+		design.setPartName(getString(in));
+		dev = design.getDevice();
+		we = design.getWireEnumerator();
+		design.setNCDVersion(getOptionalString(in));
+		design.setIsHardMacro(in.get() != 0);
+		int wireCount = in.get();
+		if(wireCount != we.getWires().length){
+			throw new IOException("Binary design file " + in.fileName + " was saved with " + wireCount +
+				" wires for " + design.getPartName() + ", the WireEnumerator has " + we.getWires().length);
+		}
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			design.addAttribute(readAttribute(in));
+		}
+		
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			design.addModule(readModule(in));
+		}
+		
+		Instance[] instances = new Instance[in.get()];
+		for(int i = 0; i < instances.length; i++){
+			instances[i] = readInstance(in, null);
+		}
+		
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			Net net = readNet(in, instances);
+			design.addNet(net);
+			String moduleInstanceName = getOptionalString(in);
+			if(moduleInstanceName != null){
+				ModuleInstance mi = design.getModuleInstance(moduleInstanceName);
+				if(mi == null){
+					throw new IOException("Unknown module instance " + moduleInstanceName + " of net " +
+						net.getName() + " in " + in.fileName);
+				}
+				net.setModuleInstance(mi);
+				mi.addNet(net);
+				net.setModuleTemplate(mi.getModule());
+				String templateNetName = getOptionalString(in);
+				if(templateNetName != null){
+					net.setModuleTemplateNet(mi.getModule().getNet(templateNetName));
+				}
+			}
+		}
+	}
+	
+	private Module readModule(Input in) throws IOException{
+		Module module = new Module();
+		module.setName(getString(in));
+		int count = in.get();
+		for(int i = 0; i < count; i++){
+			module.addAttribute(readAttribute(in));
+		}
+		
+		Instance[] instances = new Instance[in.get()];
+		for(int i = 0; i < instances.length; i++){
+			instances[i] = readInstance(in, module);
+		}
+		int anchor = in.get();
+		if(anchor > 0){
+			module.setAnchor(getElement(instances, anchor - 1, in));
+		}
+		
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			module.addNet(readNet(in, instances));
+		}
+		
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			String name = getString(in);
+			int inst = in.get();
+			Pin pin = inst == 0 ? null : getElement(instances, inst - 1, in).getPin(getString(in));
+			module.addPort(new Port(name, pin));
+		}
+		return module;
+	}
+	
+	/**
+	 * Reads an instance and adds it to the design or to its module.
+	 * @param module The module of the instance, null for instances of the design.
+	 */
+	private Instance readInstance(Input in, Module module) throws IOException{
+		Instance inst = new Instance();
+		inst.setName(getString(in));
+		int typeIndex = in.get();
+		PrimitiveType type = getElement(primitiveTypes, typeIndex, in);
+		if(type == null){
+			type = PrimitiveType.valueOf(strings.get(typeIndex));
+			primitiveTypes[typeIndex] = type;
+		}
+		inst.setType(type);
+		inst.setDesign(design);
+		if(module == null){
+			design.addInstance(inst);
+		}
+		else{
+			module.addInstance(inst);
+			inst.setModuleTemplate(module);
+		}
+		
+		int flags = in.get();
+		if((flags & PLACED) != 0){
+			Tile tile = dev.getTile(in.get());
+			if(tile == null){
+				throw new IOException("Invalid tile of instance " + inst.getName() + " in " + in.fileName);
+			}
+			PrimitiveSite site = getElement(tile.getPrimitiveSites(), in.get(), in);
+			if(module == null) inst.place(site);
+			else inst.setSite(site);
+		}
+		if((flags & BONDED) != 0) inst.setBonded(true);
+		if((flags & UNBONDED) != 0) inst.setBonded(false);
+		if((flags & MODULE_INSTANCE) != 0){
+			String moduleInstanceName = getString(in);
+			String moduleName = getString(in);
+			Module template = design.getModule(moduleName);
+			if(template == null){
+				throw new IOException("Unknown module " + moduleName + " of instance " +
+					inst.getName() + " in " + in.fileName);
+			}
+			inst.setModuleTemplate(template);
+			inst.setModuleTemplateInstance(template.getInstance(getString(in)));
+			ModuleInstance mi = design.addInstanceToModuleInstances(inst, moduleInstanceName);
+			if(inst.getModuleTemplateInstance() != null && inst.getModuleTemplateInstance().equals(template.getAnchor())){
+				mi.setAnchor(inst);
+			}
+		}
+		
+		int count = in.get();
+		for(int i = 0; i < count; i++){
+			inst.addAttribute(readAttribute(in));
+		}
+		return inst;
+	}
+	
+	/**
+	 * Reads a net and connects its pins to their instances.
+	 * @param instances The instances the pins may be on.
+	 */
+	private Net readNet(Input in, Instance[] instances) throws IOException{
+		Net net = new Net();
+		net.setName(getString(in));
+		net.setType(NetType.valueOf(getString(in)));
+		int count = in.get();
+		if(count > 0){
+			net.setAttributes(new ArrayList<Attribute>(count - 1));
+			for(int i = 1; i < count; i++){
+				net.addAttribute(readAttribute(in));
+			}
+		}
+		
+		count = in.get();
+		for(int i = 0; i < count; i++){
+			Instance inst = getElement(instances, in.get(), in);
+			String name = getString(in);
+			Pin pin = new Pin(PinType.valueOf(getString(in)), name, inst);
+			if(!net.addPin(pin)){
+				throw new IOException("The net " + net.getName() + " has two or more outpins in " + in.fileName);
+			}
+			inst.addToNetList(net);
+		}
+		
+		count = in.get();
+		int tile = 0;
+		int wireCount = we.getWires().length;
+		for(int i = 0; i < count; i++){
+			int delta = in.get();
+			tile += (delta >>> 1) ^ -(delta & 1);
+			int startWire = in.get();
+			int endWire = in.get();
+			Tile pipTile = dev.getTile(tile);
+			if(pipTile == null || startWire >= wireCount || endWire >= wireCount){
+				throw new IOException("Invalid PIP of net " + net.getName() + " in " + in.fileName);
+			}
+			net.addPIP(new PIP(pipTile, startWire, endWire));
+		}
+		return net;
+	}
+	
+	private Attribute readAttribute(Input in) throws IOException{
+		return new Attribute(getString(in), getString(in), getString(in));
+	}
+	
+	private String getString(Input in) throws IOException{
+		return getElement(strings, in.get(), in);
+	}
+	
+	private String getOptionalString(Input in) throws IOException{
+		int index = in.get();
+		return index == 0 ? null : getElement(strings, index - 1, in);
+	}
+	
+	private static <T> T getElement(T[] array, int index, Input in) throws IOException{
+		if(index < 0 || index >= array.length){
+			throw new IOException("Invalid reference in binary design file " + in.fileName);
+		}
+		return array[index];
+	}
+	
+	private static <T> T getElement(ArrayList<T> list, int index, Input in) throws IOException{
+		if(index < 0 || index >= list.size()){
+			throw new IOException("Invalid reference in binary design file " + in.fileName);
+		}
+		return list.get(index);
+	}
+	
+	/**
+	 * A growable byte array of variable length ints.
+	 */
+	private static class Output{
+		private byte[] data;
+		
+		private int size = 0;
+		
+		private Output(int capacity){
+			data = new byte[capacity];
+		}
+		
+		private void ensureCapacity(int capacity){
+			if(capacity > data.length){
+				byte[] tmp = new byte[Math.max(capacity, data.length * 2)];
+				System.arraycopy(data, 0, tmp, 0, size);
+				data = tmp;
+			}
+		}
+		
+		/**
+		 * Adds a non-negative int in 1 to 5 bytes.
+		 */
+		private void add(int value){
+			ensureCapacity(size + 5);
+			while((value & ~0x7F) != 0){
+				data[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			data[size++] = (byte) value;
+		}
+		
+		private void addInt(int value){
+			ensureCapacity(size + 4);
+			data[size++] = (byte) (value >>> 24);
+			data[size++] = (byte) (value >>> 16);
+			data[size++] = (byte) (value >>> 8);
+			data[size++] = (byte) value;
+		}
+		
+		private void add(byte[] bytes){
+			ensureCapacity(size + bytes.length);
+			System.arraycopy(bytes, 0, data, size, bytes.length);
+			size += bytes.length;
+		}
+	}
+	
+	/**
+	 * Reads variable length ints from the bytes of a file.
+	 */
+	private static class Input{
+		private byte[] data;
+		
+		private int position = 0;
+		
+		private String fileName;
+		
+		private Input(byte[] data, String fileName){
+			this.data = data;
+			this.fileName = fileName;
+		}
+		
+		private int get() throws IOException{
+			int value = 0;
+			int shift = 0;
+			while(true){
+				if(position >= data.length){
+					throw new IOException("Unexpected end of binary design file " + fileName);
+				}
+				byte b = data[position++];
+				value |= (b & 0x7F) << shift;
+				if(b >= 0) return value;
+				shift += 7;
+				if(shift > 28){
+					throw new IOException("Invalid value in binary design file " + fileName);
+				}
+			}
+		}
+		
+		private int getInt(){
+			int value = ((data[position] & 0xFF) << 24) | ((data[position+1] & 0xFF) << 16) |
+				((data[position+2] & 0xFF) << 8) | (data[position+3] & 0xFF);
+			position += 4;
+			return value;
+		}
+		
+		private String getString(int length) throws IOException{
+			if(length > data.length - position){
+				throw new IOException("Unexpected end of binary design file " + fileName);
+			}
+			String s = new String(data, position, length, UTF8);
+			position += length;
+			return s;
+		}
+	}
+}
@@ -0,0 +1,723 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.util.FileTools;
+
+/**
+ * Writes a design to an XDL file.  The instances and nets of the design
+ * are encoded in chunks straight into byte buffers, with more than one
+ * thread the chunks are encoded in parallel.  The buffers are written to
+ * the file in order through a FileChannel, so the file is the same for any
+ * number of threads.  Wire names come from a table of the names of the
+ * WireEnumerator as bytes, other names are copied one character per byte
+ * (XDL files are ASCII).
+ * 
+ * The options cover the different kinds of XDL files saved by Design: with
+ * or without the comments of the Xilinx xdl tool, sorted so that files of
+ * equivalent designs can be compared, and without the PIPs of some nets
+ * (see {@link #includePIPs(Net)}).
+ */
+public class XDLWriter{
+	/** Number of instances or nets encoded together */
+	private static final int CHUNK_SIZE = 1024;
+	/** Size at which a buffer is written to the file */
+	private static final int FLUSH_SIZE = 1 << 20;
+	/** Number of chunks encoded ahead of the one being written, per thread */
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+	
+	private Design design;
+	
+	private WireEnumerator we;
+	/** The names of the wires of the WireEnumerator as bytes */
+	private byte[][] wireNames;
+	/** The lower case names of the pin types as bytes, by ordinal */
+	private byte[][] pinTypeNames;
+	
+	private String nl;
+	
+	private boolean comments = false;
+	
+	private boolean timeStamp = true;
+	
+	private boolean sorted = false;
+	/** Number of threads to encode with */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	private FileChannel channel;
+	
+	/**
+	 * Creates a writer for the design.
+	 * @param design The design to write.
+	 */
+	public XDLWriter(Design design){
+		this.design = design;
+		this.we = design.getWireEnumerator();
+		this.nl = System.getProperty("line.separator");
+		if(we != null){
+			String[] wires = we.getWires();
+			wireNames = new byte[wires.length][];
+			for(int i = 0; i < wires.length; i++){
+				wireNames[i] = getBytes(wires[i]);
+			}
+		}
+		PinType[] pinTypes = PinType.values();
+		pinTypeNames = new byte[pinTypes.length][];
+		for(PinType type : pinTypes){
+			pinTypeNames[type.ordinal()] = getBytes(type.toString().toLowerCase());
+		}
+	}
+	
+	/**
+	 * Sets whether to add the same comments found in XDL designs created by
+	 * the Xilinx xdl tool (default false).
+	 */
+	public void setComments(boolean comments){
+		this.comments = comments;
+	}
+	
+	public boolean isComments(){
+		return comments;
+	}
+	
+	/**
+	 * Sets whether the comments include the time the file was written
+	 * (default true).
+	 */
+	public void setTimeStamp(boolean timeStamp){
+		this.timeStamp = timeStamp;
+	}
+	
+	public boolean isTimeStamp(){
+		return timeStamp;
+	}
+	
+	/**
+	 * Sets whether to sort the modules, instances, nets and their attributes,
+	 * pins and PIPs (default false).  Sorted files of equivalent designs are
+	 * the same.
+	 */
+	public void setSorted(boolean sorted){
+		this.sorted = sorted;
+	}
+	
+	public boolean isSorted(){
+		return sorted;
+	}
+	
+	/**
+	 * Sets the number of threads to encode with (default is the number of
+	 * processors).
+	 * @param threads The number of threads.
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+	
+	public int getThreads(){
+		return threads;
+	}
+	
+	/**
+	 * Decides if the PIPs of a net of the design are written, the PIPs of the
+	 * nets of modules are always written.  May be called from several threads.
+	 * @param net The net.
+	 * @return True to write the PIPs of the net (the default).
+	 */
+	protected boolean includePIPs(Net net){
+		return true;
+	}
+	
+	/**
+	 * Writes the design to an XDL file.
+	 * @param fileName Name of the file to write.
+	 * @throws IOException If writing the file fails.
+	 */
+	public void write(String fileName) throws IOException{
+		FileOutputStream fos = new FileOutputStream(fileName);
+		channel = fos.getChannel();
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try{
+			ByteOutput out = new ByteOutput();
+			writeHeader(out);
+			if(design.getModules().size() > 0){
+				writeModules(out);
+			}
+			if(!design.isHardMacro()){
+				if(comments){
+					writeModuleInstanceComments(out);
+					writeInstanceSyntax(out);
+				}
+				ArrayList<Instance> instances = new ArrayList<Instance>(design.getInstances());
+				if(sorted) Collections.sort(instances, instanceNameComparator);
+				out = writeAll(out, instances, executor);
+				out.add(nl);
+				
+				if(comments){
+					writeNetSyntax(out);
+				}
+				ArrayList<Net> nets = new ArrayList<Net>(design.getNets());
+				if(sorted) Collections.sort(nets, netNameComparator);
+				out = writeAll(out, nets, executor);
+				out.add(nl);
+				
+				if(comments){
+					writeSummary(out);
+				}
+			}
+			else if(comments){
+				writeMacroSummary(out);
+			}
+			flush(out);
+		}
+		finally{
+			if(executor != null) executor.shutdown();
+			fos.close();
+			channel = null;
+		}
+	}
+	
+	/**
+	 * Writes the instances or nets of the design, encoding chunks of them on
+	 * the thread pool if there is one.
+	 * @param out The output so far, it is written to the file first.
+	 * @param items The instances or nets in order.
+	 * @return The output to continue with.
+	 */
+	private ByteOutput writeAll(ByteOutput out, final List<?> items, ExecutorService executor) throws IOException{
+		if(executor == null || items.size() <= CHUNK_SIZE){
+			for(Object item : items){
+				writeItem(out, item);
+				if(out.size >= FLUSH_SIZE) flush(out);
+			}
+			return out;
+		}
+		flush(out);
+		ArrayDeque<Future<ByteOutput>> pending = new ArrayDeque<Future<ByteOutput>>();
+		int next = 0;
+		try{
+			while(next < items.size() || !pending.isEmpty()){
+				while(next < items.size() && pending.size() < threads * CHUNKS_AHEAD_PER_THREAD){
+					final int start = next;
+					final int end = Math.min(items.size(), next + CHUNK_SIZE);
+					pending.add(executor.submit(new Callable<ByteOutput>(){
+						public ByteOutput call(){
+							ByteOutput chunk = new ByteOutput();
+							for(int i = start; i < end; i++){
+								writeItem(chunk, items.get(i));
+							}
+							return chunk;
+						}
+					}));
+					next = end;
+				}
+				flush(pending.poll().get());
+			}
+		}
+		catch(InterruptedException e){
+			throw new InterruptedIOException("Writing the XDL file was interrupted");
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IOException(e.getCause());
+		}
+		finally{
+			for(Future<ByteOutput> f : pending){
+				f.cancel(true);
+			}
+		}
+		return out;
+	}
+	
+	private void writeItem(ByteOutput out, Object item){
+		if(item instanceof Instance) writeInstance(out, (Instance) item, false);
+		else writeNet(out, (Net) item, false);
+	}
+	
+	private void flush(ByteOutput out) throws IOException{
+		ByteBuffer buffer = ByteBuffer.wrap(out.data, 0, out.size);
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		out.size = 0;
+	}
+	
+	private void writeHeader(ByteOutput out){
+		if(comments){
+			out.add(nl).add("# =======================================================").add(nl);
+			out.add("# ").add(design.getClass().getCanonicalName()).add(" XDL Generation $Revision: 1.01$").add(nl);
+			if(timeStamp){
+				out.add("# time: ").add(FileTools.getTimeString()).add(nl).add(nl);
+			}
+			out.add("# =======================================================").add(nl).add(nl).add(nl);
+			
+			out.add("# =======================================================").add(nl);
+			out.add("# The syntax for the design statement is:                ").add(nl);
+			out.add("# design <design_name> <part> <ncd version>;             ").add(nl);
+			out.add("# or                                                     ").add(nl);
+			out.add("# design <design_name> <device> <package> <speed> <ncd_version>").add(nl);
+			out.add("# =======================================================").add(nl);
+		}
+		
+		if(!design.isHardMacro()){
+			out.add("design \"").add(design.getName()).add("\" ").add(design.getPartName()).add(" ");
+			out.add(design.getNCDVersion()).add(" ,").add(nl);
+			out.add("  cfg \"");
+			for(Attribute attr : design.getAttributes()){
+				out.add(nl).add("\t");
+				writeAttribute(out, attr);
+			}
+			out.add("\";").add(nl).add(nl).add(nl);
+		}
+		else{
+			out.add("design \"").add(design.getName()).add("\" ").add(design.getPartName()).add(";").add(nl).add(nl);
+		}
+	}
+	
+	private void writeModules(ByteOutput out) throws IOException{
+		if(comments){
+			out.add("# =======================================================").add(nl);
+			out.add("# The syntax for modules is:").add(nl);
+			out.add("#     module <name> <inst_name> ;").add(nl);
+			out.add("#     port <name> <inst_name> <inst_pin> ;").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     instance ... ;").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     net ... ;").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     .").add(nl);
+			out.add("#     endmodule <name> ;").add(nl);
+			out.add("# =======================================================").add(nl).add(nl);
+		}
+		
+		ArrayList<Module> modules = new ArrayList<Module>(design.getModules());
+		if(sorted){
+			Collections.sort(modules, new Comparator<Module>(){
+				public int compare(Module m1, Module m2){
+					return m1.getName().compareTo(m2.getName());
+				}
+			});
+		}
+		for(Module module : modules){
+			if(comments){
+				out.add("# =======================================================").add(nl);
+				out.add("# MODULE of \"").add(module.getName()).add("\"").add(nl);
+				out.add("# =======================================================").add(nl);
+			}
+			
+			if(module.getAnchor() == null){
+				if(comments){
+					out.add("# This module is a routing only block").add(nl);
+				}
+				continue;
+			}
+			
+			out.add("module \"").add(module.getName()).add("\" \"").add(module.getAnchor().getName()).add("\" , cfg \"");
+			if(sorted){
+				String[] attributes = new String[module.getAttributes().size()];
+				for(int i = 0; i < attributes.length; i++){
+					attributes[i] = module.getAttributes().get(i).toString() + " ";
+				}
+				Arrays.sort(attributes);
+				for(String attr : attributes){
+					out.add(attr);
+				}
+			}
+			else{
+				for(Attribute attr : module.getAttributes()){
+					writeAttribute(out, attr);
+					out.add(" ");
+				}
+			}
+			out.add("\";").add(nl);
+			
+			String[] ports = new String[module.getPorts().size()];
+			int i = 0;
+			for(Port port : module.getPorts()){
+				ports[i++] = "  port \"" + port.getName() + "\" \"" + port.getInstanceName() + "\" \"" + port.getPinName() + "\";" + nl;
+			}
+			if(sorted) Arrays.sort(ports);
+			for(String port : ports){
+				out.add(port);
+			}
+			
+			ArrayList<Instance> instances = new ArrayList<Instance>(module.getInstances());
+			if(sorted) Collections.sort(instances, instanceNameComparator);
+			for(Instance inst : instances){
+				writeInstance(out, inst, true);
+			}
+			ArrayList<Net> nets = new ArrayList<Net>(module.getNets());
+			if(sorted) Collections.sort(nets, netNameComparator);
+			for(Net net : nets){
+				writeNet(out, net, true);
+			}
+			out.add("endmodule \"").add(module.getName()).add("\" ;").add(nl).add(nl);
+			if(out.size >= FLUSH_SIZE) flush(out);
+		}
+	}
+	
+	private void writeModuleInstanceComments(ByteOutput out){
+		if(design.getModuleInstances().size() == 0) return;
+		out.add(nl);
+		out.add("#  =======================================================").add(nl);
+		out.add("#  MODULE INSTANCES").add(nl);
+		out.add("#  =======================================================").add(nl);
+		ArrayList<ModuleInstance> moduleInstances = new ArrayList<ModuleInstance>(design.getModuleInstances());
+		if(sorted){
+			Collections.sort(moduleInstances, new Comparator<ModuleInstance>(){
+				public int compare(ModuleInstance mi1, ModuleInstance mi2){
+					return mi1.getName().compareTo(mi2.getName());
+				}
+			});
+		}
+		for(ModuleInstance mi : moduleInstances){
+			out.add("# instance \"").add(mi.getName()).add("\" \"").add(mi.getModule().getName()).add("\" , ");
+			if(mi.getAnchor() == null){
+				System.out.println("Anchor is null");
+			}
+			if(mi.getAnchor() != null && mi.getAnchor().isPlaced()){
+				out.add("placed ").add(mi.getAnchor().getTile().getName()).add(" ");
+				out.add(mi.getAnchor().getPrimitiveSiteName()).add(" ;").add(nl);
+			}
+			else{
+				out.add("unplaced  ;").add(nl);
+			}
+		}
+		out.add(nl);
+	}
+	
+	/**
+	 * Writes an instance of the design or of a module.
+	 */
+	private void writeInstance(ByteOutput out, Instance inst, boolean inModule){
+		String indent = inModule ? "  " : "";
+		out.add(indent).add("inst \"").add(inst.getName()).add("\" \"").add(inst.getType().toString()).add("\",");
+		if(inst.isPlaced()){
+			out.add("placed ").add(inst.getTile().getName()).add(" ").add(inst.getPrimitiveSiteName());
+		}
+		else{
+			out.add("unplaced");
+		}
+		out.add("  ,");
+		if(!inModule && inst.getModuleInstanceName() != null){
+			out.add("module \"").add(inst.getModuleInstanceName()).add("\" \"").add(inst.getModuleTemplate().getName());
+			out.add("\" \"").add(inst.getModuleTemplateInstance().getName()).add("\" ,");
+		}
+		out.add(nl).add(indent).add("  cfg \"");
+		if(sorted){
+			String[] attributes = new String[inst.getAttributes().size()];
+			int i = 0;
+			for(Attribute attr : inst.getAttributes()){
+				attributes[i++] = " " + attr.toString();
+			}
+			Arrays.sort(attributes);
+			for(String attr : attributes){
+				// Instance attributes starting with '_' go on their own line
+				if(!inModule && attr.charAt(1) == '_'){
+					out.add(nl).add("      ");
+				}
+				out.add(attr);
+			}
+		}
+		else{
+			for(Attribute attr : inst.getAttributes()){
+				if(!inModule && attr.getPhysicalName().charAt(0) == '_'){
+					out.add(nl).add("      ");
+				}
+				out.add(" ");
+				writeAttribute(out, attr);
+			}
+		}
+		out.add(" \"").add(nl).add(indent).add("  ;").add(nl);
+	}
+	
+	/**
+	 * Writes a net of the design or of a module.
+	 */
+	private void writeNet(ByteOutput out, Net net, boolean inModule){
+		out.add("  net \"").add(net.getName()).add("\" ");
+		if(!inModule && !net.getType().equals(NetType.WIRE)){
+			out.add(net.getType().toString().toLowerCase());
+		}
+		out.add(",");
+		if(net.getAttributes() != null){
+			out.add(" cfg \"");
+			if(sorted){
+				String[] attributes = new String[net.getAttributes().size()];
+				for(int i = 0; i < attributes.length; i++){
+					attributes[i] = " " + net.getAttributes().get(i).toString();
+				}
+				Arrays.sort(attributes);
+				for(String attr : attributes){
+					out.add(attr);
+				}
+			}
+			else{
+				for(Attribute attr : net.getAttributes()){
+					out.add(" ");
+					writeAttribute(out, attr);
+				}
+			}
+			out.add("\",");
+		}
+		out.add(nl);
+		
+		if(sorted){
+			String[] pins = new String[net.getPins().size()];
+			for(int i = 0; i < pins.length; i++){
+				Pin pin = net.getPins().get(i);
+				pins[i] = "    " + pin.getPinType().toString().toLowerCase() + " \"" + pin.getInstanceName() + "\" " + pin.getName() + " ," + nl;
+			}
+			Arrays.sort(pins);
+			for(String pin : pins){
+				out.add(pin);
+			}
+		}
+		else{
+			for(Pin pin : net.getPins()){
+				out.add("    ").add(pinTypeNames[pin.getPinType().ordinal()]).add(" \"").add(pin.getInstanceName());
+				out.add("\" ").add(pin.getName()).add(" ,").add(nl);
+			}
+		}
+		
+		if(inModule || includePIPs(net)){
+			if(sorted){
+				String[] pips = new String[net.getPIPs().size()];
+				for(int i = 0; i < pips.length; i++){
+					PIP pip = net.getPIPs().get(i);
+					pips[i] = "    pip " + pip.getTile() + " " + pip.getStartWireName(we) + " -> " + pip.getEndWireName(we) + " ," + nl;
+				}
+				Arrays.sort(pips);
+				for(String pip : pips){
+					out.add(pip);
+				}
+			}
+			else{
+				for(PIP pip : net.getPIPs()){
+					out.add("    pip ").add(pip.getTile().getName()).add(" ").add(wireNames[pip.getStartWire()]);
+					out.add(" -> ").add(wireNames[pip.getEndWire()]).add(" ,").add(nl);
+				}
+			}
+		}
+		out.add("    ;").add(nl);
+	}
+	
+	/**
+	 * Writes an attribute as Attribute.toString() would.
+	 */
+	private void writeAttribute(ByteOutput out, Attribute attr){
+		if(attr.getLogicalName().contains(Attribute.multiValueSeparator)){
+			out.add(attr.toString());
+			return;
+		}
+		out.add(attr.getPhysicalName()).add(":").add(attr.getLogicalName()).add(":").add(attr.getValue());
+	}
+	
+	private void writeInstanceSyntax(ByteOutput out){
+		out.add("#  =======================================================").add(nl);
+		out.add("#  The syntax for instances is:").add(nl);
+		out.add("#      instance <name> <sitedef>, placed <tile> <site>, cfg <string> ;").add(nl);
+		out.add("#  or").add(nl);
+		out.add("#      instance <name> <sitedef>, unplaced, cfg <string> ;").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  For typing convenience you can abbreviate instance to inst.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  For IOs there are two special keywords: bonded and unbonded").add(nl);
+		out.add("#  that can be used to designate whether the PAD of an unplaced IO is").add(nl);
+		out.add("#  bonded out. If neither keyword is specified, bonded is assumed.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  The bonding of placed IOs is determined by the site they are placed in.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  If you specify bonded or unbonded for an instance that is not an").add(nl);
+		out.add("#  IOB it is ignored.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  Shown below are three examples for IOs. ").add(nl);
+		out.add("#     instance IO1 IOB, unplaced ;          # This will be bonded").add(nl);
+		out.add("#     instance IO1 IOB, unplaced bonded ;   # This will be bonded").add(nl);
+		out.add("#     instance IO1 IOB, unplaced unbonded ; # This will be unbonded").add(nl);
+		out.add("#  =======================================================").add(nl);
+	}
+	
+	private void writeNetSyntax(ByteOutput out){
+		out.add("#  ================================================").add(nl);
+		out.add("#  The syntax for nets is:").add(nl);
+		out.add("#     net <name> <type>,").add(nl);
+		out.add("#       outpin <inst_name> <inst_pin>,").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       inpin <inst_name> <inst_pin>,").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       pip <tile> <wire0> <dir> <wire1> , # [<rt>]").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       .").add(nl);
+		out.add("#       ;").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  There are three available wire types: wire, power and ground.").add(nl);
+		out.add("#  If no type is specified, wire is assumed.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  Wire indicates that this a normal wire.").add(nl);
+		out.add("#  Power indicates that this net is tied to a DC power source.").add(nl);
+		out.add("#  You can use \"power\", \"vcc\" or \"vdd\" to specify a power net.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  Ground indicates that this net is tied to ground.").add(nl);
+		out.add("#  You can use \"ground\", or \"gnd\" to specify a ground net.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  The <dir> token will be one of the following:").add(nl);
+		out.add("# ").add(nl);
+		out.add("#     Symbol Description").add(nl);
+		out.add("#     ====== ==========================================").add(nl);
+		out.add("#       ==   Bidirectional, unbuffered.").add(nl);
+		out.add("#       =>   Bidirectional, buffered in one direction.").add(nl);
+		out.add("#       =-   Bidirectional, buffered in both directions.").add(nl);
+		out.add("#       ->   Directional, buffered.").add(nl);
+		out.add("# ").add(nl);
+		out.add("#  No pips exist for unrouted nets.").add(nl);
+		out.add("#  ================================================").add(nl);
+	}
+	
+	private void writeSummary(ByteOutput out){
+		int sliceCount = 0;
+		int bramCount = 0;
+		int dspCount = 0;
+		for(Instance instance : design.getInstances()){
+			PrimitiveType type = instance.getType();
+			if(Design.sliceTypes.contains(type)){
+				sliceCount++;
+			}
+			else if(Design.dspTypes.contains(type)){
+				dspCount++;
+			}
+			else if(Design.bramTypes.contains(type)){
+				bramCount++;
+			}
+		}
+		
+		out.add("# =======================================================").add(nl);
+		out.add("# SUMMARY").add(nl);
+		out.add("# Number of Module Defs: " + design.getModules().size()).add(nl);
+		out.add("# Number of Module Insts: " + design.getModuleInstances().size()).add(nl);
+		out.add("# Number of Primitive Insts: " + design.getInstances().size()).add(nl);
+		out.add("#     Number of SLICES: " + sliceCount).add(nl);
+		out.add("#     Number of DSP48s: " + dspCount).add(nl);
+		out.add("#     Number of BRAMs: " + bramCount).add(nl);
+		out.add("# Number of Nets: " + design.getNets().size()).add(nl);
+		out.add("# =======================================================").add(nl).add(nl).add(nl);
+	}
+	
+	private void writeMacroSummary(ByteOutput out){
+		Module mod = design.getHardMacro();
+		out.add("# =======================================================").add(nl);
+		out.add("# MACRO SUMMARY").add(nl);
+		out.add("# Number of Module Insts: " + mod.getInstances().size()).add(nl);
+		HashMap<PrimitiveType,Integer> instTypeCount = new HashMap<PrimitiveType,Integer>();
+		for(Instance inst : mod.getInstances()){
+			Integer count = instTypeCount.get(inst.getType());
+			if(count == null){
+				instTypeCount.put(inst.getType(), 1);
+			}
+			else{
+				instTypeCount.put(inst.getType(), count + 1);
+			}
+		}
+		for(PrimitiveType type : instTypeCount.keySet()){
+			out.add("#   Number of " + type.toString() + "s: " + instTypeCount.get(type)).add(nl);
+		}
+		out.add("# Number of Module Ports: " + mod.getPorts().size()).add(nl);
+		out.add("# Number of Module Nets: " + mod.getNets().size()).add(nl);
+		out.add("# =======================================================").add(nl).add(nl).add(nl);
+	}
+	
+	private static byte[] getBytes(String s){
+		byte[] bytes = new byte[s.length()];
+		for(int i = 0; i < bytes.length; i++){
+			bytes[i] = (byte) s.charAt(i);
+		}
+		return bytes;
+	}
+	
+	private static final Comparator<Instance> instanceNameComparator = new Comparator<Instance>(){
+		public int compare(Instance i1, Instance i2){
+			return i1.getName().compareTo(i2.getName());
+		}
+	};
+	
+	private static final Comparator<Net> netNameComparator = new Comparator<Net>(){
+		public int compare(Net n1, Net n2){
+			return n1.getName().compareTo(n2.getName());
+		}
+	};
+	
+	/**
+	 * A growable array of bytes the XDL text is encoded into.
+	 */
+	private static class ByteOutput{
+		private byte[] data = new byte[1 << 16];
+		
+		private int size = 0;
+		
+		private void ensureCapacity(int capacity){
+			if(capacity > data.length){
+				data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+			}
+		}
+		
+		ByteOutput add(String s){
+			if(s == null) s = "null";
+			int length = s.length();
+			ensureCapacity(size + length);
+			for(int i = 0; i < length; i++){
+				data[size++] = (byte) s.charAt(i);
+			}
+			return this;
+		}
+		
+		ByteOutput add(byte[] bytes){
+			ensureCapacity(size + bytes.length);
+			System.arraycopy(bytes, 0, data, size, bytes.length);
+			size += bytes.length;
+			return this;
+		}
+	}
+}
@@ -20,12 +20,19 @@
  */
 package edu.byu.ece.rapidSmith.design.parser;
 
-import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.byu.ece.rapidSmith.design.Attribute;
 import edu.byu.ece.rapidSmith.design.Design;
@@ -42,42 +49,62 @@ import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
 import edu.byu.ece.rapidSmith.device.Tile;
-import edu.byu.ece.rapidSmith.device.Utils;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
 import edu.byu.ece.rapidSmith.util.MessageGenerator;
 import edu.byu.ece.rapidSmith.util.StringPool;
 
-public class DesignParser{
-	public static String CFG = "cfg";
-	public static String VCC = "vcc";
-	public static String VDD = "vdd";
-	public static String GND = "gnd";
-	public static String PIP = "pip";
-	public static String NET = "net";
-	public static String LOAD = "load";
-	public static String WIRE = "wire";
-	public static String PORT = "port";
-	public static String INST = "inst";
-	public static String INPIN = "inpin";
-	public static String INOUT = "inout";
-	public static String POWER = "power";
-	public static String PLACED = "placed";
-	public static String BONDED = "bonded";
-	public static String GROUND = "ground";
-	public static String MODULE = "module";
-	public static String ENDMODULE = "endmodule";
-	public static String DESIGN = "design";
-	public static String OUTPIN = "outpin";
-	public static String DRIVER = "driver";
-	public static String UNPLACED = "unplaced";
-	public static String UNBONDED = "unbonded";
-	public static String INSTANCE = "instance";
-	public static String COMMA = ",";
-	public static String SEMICOLON = ";";
-	public static String PIP0 = "->";
-	public static String PIP1 = "=-";
-	public static String PIP2 = "=>";
-	public static String PIP3 = "==";
+/**
+ * Parses XDL files into a Design, as the XDLHandler of an XDLReader.  With
+ * more than one thread, a file is read in memory and split into its
+ * statements first.  The design header and the module definitions are
+ * parsed in order, then the inst statements are parsed in parallel and
+ * after them the net statements.  The workers collect what they parse and
+ * their results are added to the design in the order of the file, so the
+ * design is the same for any number of threads.
+ */
+public class DesignParser implements XDLHandler{
+	/** @deprecated The keywords of the XDL format are in XDLReader, use XDLReader.CFG etc. instead */
+	@Deprecated public static String CFG = XDLReader.CFG;
+	@Deprecated public static String VCC = XDLReader.VCC;
+	@Deprecated public static String VDD = XDLReader.VDD;
+	@Deprecated public static String GND = XDLReader.GND;
+	@Deprecated public static String PIP = XDLReader.PIP;
+	@Deprecated public static String NET = XDLReader.NET;
+	@Deprecated public static String LOAD = XDLReader.LOAD;
+	@Deprecated public static String WIRE = XDLReader.WIRE;
+	@Deprecated public static String PORT = XDLReader.PORT;
+	@Deprecated public static String INST = XDLReader.INST;
+	@Deprecated public static String INPIN = XDLReader.INPIN;
+	@Deprecated public static String INOUT = XDLReader.INOUT;
+	@Deprecated public static String POWER = XDLReader.POWER;
+	@Deprecated public static String PLACED = XDLReader.PLACED;
+	@Deprecated public static String BONDED = XDLReader.BONDED;
+	@Deprecated public static String GROUND = XDLReader.GROUND;
+	@Deprecated public static String MODULE = XDLReader.MODULE;
+	@Deprecated public static String ENDMODULE = XDLReader.ENDMODULE;
+	@Deprecated public static String DESIGN = XDLReader.DESIGN;
+	@Deprecated public static String OUTPIN = XDLReader.OUTPIN;
+	@Deprecated public static String DRIVER = XDLReader.DRIVER;
+	@Deprecated public static String UNPLACED = XDLReader.UNPLACED;
+	@Deprecated public static String UNBONDED = XDLReader.UNBONDED;
+	@Deprecated public static String INSTANCE = XDLReader.INSTANCE;
+	@Deprecated public static String COMMA = XDLReader.COMMA;
+	@Deprecated public static String SEMICOLON = XDLReader.SEMICOLON;
+	@Deprecated public static String PIP0 = XDLReader.PIP0;
+	@Deprecated public static String PIP1 = XDLReader.PIP1;
+	@Deprecated public static String PIP2 = XDLReader.PIP2;
+	@Deprecated public static String PIP3 = XDLReader.PIP3;
+	
+	/** Files smaller than this are always parsed sequentially */
+	public static final long MIN_PARALLEL_FILE_SIZE = 1 << 20;
+	/** Number of chunks of statements per thread, to balance the work */
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	private static final int HEADER_STATEMENT = 0;
+	private static final int INST_STATEMENT = 1;
+	private static final int NET_STATEMENT = 2;
+	private static final int MODULE_STATEMENT = 3;
+	private static final int OTHER_STATEMENT = 4;
 	
 	private Design design;
 	
@@ -95,13 +122,15 @@ public class DesignParser{
 		this.design = design;
 	}
 
-	private BufferedInputStream reader;
+	private FileChannel channel;
 	
-	private String fileName;
+	/** Number of threads to parse with */
+	private int threads = Runtime.getRuntime().availableProcessors();
 	
-	private ParserState state;
+	private String fileName;
 	
-	private int lineNumber;
+	/** Reads the file and calls the handler methods of this parser */
+	private XDLReader reader;
 	
 	/** A unique set of strings used to avoid duplicate strings in memory */
 	private StringPool pool;
@@ -109,8 +138,6 @@ public class DesignParser{
 	Net currNet = null;
 	Instance currInstance = null;
 	Module currModule = null;
-	PIP currPIP = null;
-	Pin currPin = null;
 	String currModuleAnchorName = null;
 	String currModuleInstanceName = null;
 	Device dev = null;
@@ -120,11 +147,20 @@ public class DesignParser{
 	ArrayList<String> portInstanceNames = null;
 	ArrayList<String> portPinNames = null;
 	
+	/** True in the parsers of parallel workers, which collect the instances and nets they parse */
+	private boolean worker = false;
+	private ArrayList<Instance> parsedInstances;
+	private ArrayList<Instance> moduleInstanceMembers;
+	private ArrayList<String> moduleInstanceNames;
+	private ArrayList<Net> parsedNets;
+	private ArrayList<Net> macroNets;
+	private ArrayList<ModuleInstance> macroModuleInstances;
+	
 	public DesignParser(String fileName){
 		this.fileName = fileName;
 
 		try{
-			reader = new BufferedInputStream(new FileInputStream(fileName));
+			channel = new FileInputStream(fileName).getChannel();
 		}
 		catch(FileNotFoundException e){
 			e.printStackTrace();
@@ -132,67 +168,57 @@ public class DesignParser{
 		}
 	}	
 	
-	private void expect(String expectedString, String token, ParserState state){
-		if(!expectedString.equals(token)){
-			new Exception().printStackTrace();
-			MessageGenerator.briefErrorAndExit("Parsing Error: Expected token: " + expectedString +
-					", encountered: " + token + " on line: " + lineNumber + " in parser state: " + state.toString());
-		}
+	/**
+	 * Creates the parser of a parallel worker, which parses statements of
+	 * the file of the parent into its own lists.
+	 */
+	private DesignParser(DesignParser parent){
+		this.fileName = parent.fileName;
+		this.design = parent.design;
+		this.dev = parent.dev;
+		this.we = parent.we;
+		this.pool = new StringPool();
+		this.reader = createReader();
+		this.worker = true;
+		parsedInstances = new ArrayList<Instance>();
+		moduleInstanceMembers = new ArrayList<Instance>();
+		moduleInstanceNames = new ArrayList<String>();
+		parsedNets = new ArrayList<Net>();
+		macroNets = new ArrayList<Net>();
+		macroModuleInstances = new ArrayList<ModuleInstance>();
+	}
+	
+	/**
+	 * Sets the number of threads to parse with (default is the number of
+	 * processors).  With one thread the file is streamed instead of being
+	 * read in memory.
+	 * @param threads The number of threads.
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+	
+	public int getThreads(){
+		return threads;
 	}
 	
 	public Design parseXDL(){
 		pool = new StringPool();
-		lineNumber = 1;
-		state = ParserState.BEGIN_DESIGN;
-		char[] buffer = new char[8192];
+		reader = createReader();
+		reader.setState(ParserState.BEGIN_DESIGN);
 		try{
-			int ch = -1;
-			int prev = -1;
-			int idx = 0;
-			boolean inComment = false;
-			while((ch = reader.read()) != -1){
-				if(ch == '\n') lineNumber++;
-				if(inComment){
-					if((prev == '\r' || prev == '\n') && (ch != '\r' && ch != '\n')){
-						inComment = false;
-						idx = 0;
-					}
-					else{
-						prev = ch;
-						continue;
-					}
-				}
-				//System.out.println("ch["+idx+"]=" + ch + "(" + (char) + ch +")");
-				switch(ch){
-					case ',':
-						if(state.equals(ParserState.ATTRIBUTE)){
-							buffer[idx++] = (char) ch;
-							break;
-						}
-					case ' ':
-					case '"':
-						if(state.equals(ParserState.ATTRIBUTE) && prev == '\\'){
-							buffer[idx++] = (char) ch;
-							break;
-						}
-					case '\n':
-					case '\r':
-					case '\t':
-						if(idx > 0){
-							parseToken(new String(buffer,0, idx));
-							idx = 0;
-						}
-						break;
-					case '#':
-						if(prev == '\r' || prev == '\n' || prev == -1){
-							inComment = true;
-							break;
-						}
-					default:
-						buffer[idx++] = (char) ch;
-				}
-				prev = ch;
+			long size = channel.size();
+			if(threads > 1 && size >= MIN_PARALLEL_FILE_SIZE && size < Integer.MAX_VALUE){
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+				channel.close();
+				parseInParallel(buffer.array());
 			}
+			else{
+				reader.read(XDLReader.createTokenizer(new XDLTokenizer(channel)));
+				channel.close();
+			}
+			endDesign();
 		}
 		catch(IOException e){
 			e.printStackTrace();
@@ -202,430 +228,417 @@ public class DesignParser{
 	}
 	
 	/**
-	 * This is the parser state machine that decides how the token created from
-	 * parseXDL should be applied to the design.  It does some amount of error
-	 * checking but is not full proof.
-	 * @param token The token to parse into the design.
+	 * Creates a reader calling the handler methods of this parser.
 	 */
-	private void parseToken(String token){
-		//System.out.println(lineNumber + "<" + token + ">");
-		switch(state){
-			case BEGIN_DESIGN:
-				expect(DESIGN, token, ParserState.BEGIN_DESIGN);
-				state = ParserState.DESIGN_NAME;
-				break;
-			case DESIGN_NAME:
-				design.setName(pool.getUnique(token));
-				state = ParserState.PART_NAME;
-				break;
-			case PART_NAME:
-				if(design.isHardMacro()){
-					if(token.endsWith(";")){
-						state = ParserState.XDL_STATEMENT;
-						token = token.substring(0, token.length()-1);
-					}
-					else{
-						state = ParserState.CFG_STRING;
-					}
-				}
-				else{
-					state = ParserState.NCD_VERSION;					
-				}
-				design.setPartName(pool.getUnique(token));
-				we = design.getWireEnumerator();
-				dev = design.getDevice();
-				break;
-			case NCD_VERSION:
-				design.setNCDVersion(pool.getUnique(token));
-				state = ParserState.CFG_STRING;
-				break;
-			case CFG_STRING:
-				if(token.equals(CFG)) state = ParserState.ATTRIBUTE;
-				else if(token.equals(SEMICOLON)){
-					if(currModule != null){
-						state = ParserState.MODULE_STATEMENT;
-					}
-					else{
-						state = ParserState.XDL_STATEMENT;										
-					}
-				}
-				else expect("cfg or ;", token, ParserState.CFG_STRING);
-				break;
-			case ATTRIBUTE:
-				if(token.equals(SEMICOLON)){
-					currInstance = null;
-					currNet = null;
+	private XDLReader createReader(){
+		XDLReader r = new XDLReader(this);
+		r.setFileName(fileName);
+		r.setStringPool(pool);
+		return r;
+	}
+	
+	/**
+	 * Parses a file in memory, the inst and net statements in parallel.  Falls
+	 * back to parsing the whole file in order if it has statements other than
+	 * the design header, modules, instances and nets.
+	 * @param data The contents of the file.
+	 */
+	private void parseInParallel(byte[] data) throws IOException{
+		ArrayList<int[]> statements = findStatements(data);
+		XDLTokenizer tokenizer = XDLReader.createTokenizer(new XDLTokenizer(data));
+		boolean canSplit = statements.size() > 0 && statements.get(0)[3] == HEADER_STATEMENT;
+		for(int[] statement : statements){
+			if(statement[3] == OTHER_STATEMENT) canSplit = false;
+		}
+		if(!canSplit){
+			reader.read(tokenizer);
+			return;
+		}
 
-					if(currModule != null){
-						state = ParserState.MODULE_STATEMENT;
-					}
-					else{
-						currInstance = null;
-						currNet = null;
-						state = ParserState.XDL_STATEMENT;										
-					}
-				}
-				else if(token.equals(COMMA) && currNet != null){
-					state = ParserState.NET_STATEMENT;
-				}
-				else{
-					Attribute attribute = createAttribute(token);
-					if(currInstance != null) currInstance.addAttribute(attribute);
-					else if(currNet != null){
-						currNet.addAttribute(attribute);
-						if(attribute.getPhysicalName().equals("_MACRO")){
-					      ModuleInstance mi = design.getModuleInstance(attribute.getValue());
-					      currNet.setModuleInstance(mi);
-					      mi.addNet(currNet);
-					      Module module = mi.getModule();
-					      currNet.setModuleTemplate(module);
-					      currNet.setModuleTemplateNet(module.getNet(currNet.getName().replaceFirst(mi.getName() + "/", "")));
-					    }
+		// The header and modules first, instances may refer to modules
+		ArrayList<int[]> instStatements = new ArrayList<int[]>();
+		ArrayList<int[]> netStatements = new ArrayList<int[]>();
+		for(int[] statement : statements){
+			if(statement[3] == INST_STATEMENT) instStatements.add(statement);
+			else if(statement[3] == NET_STATEMENT) netStatements.add(statement);
+			else{
+				tokenizer.setRegion(statement[0], statement[1], statement[2]);
+				reader.read(tokenizer);
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			// Nets need all instances of the design
+			for(DesignParser w : runWorkers(data, instStatements, executor)){
+				mergeWorker(w);
+			}
+			for(DesignParser w : runWorkers(data, netStatements, executor)){
+				mergeWorker(w);
+			}
+		}
+		finally{
+			executor.shutdown();
+		}
+		reader.setState(ParserState.XDL_STATEMENT);
+	}
+	
+	/**
+	 * Splits the statements into chunks of consecutive statements of about the
+	 * same size and parses each chunk with a worker on the thread pool.
+	 * @return The workers in the order of the chunks.
+	 */
+	private ArrayList<DesignParser> runWorkers(final byte[] data, ArrayList<int[]> statements, ExecutorService executor){
+		ArrayList<Callable<DesignParser>> tasks = new ArrayList<Callable<DesignParser>>();
+		long total = 0;
+		for(int[] statement : statements){
+			total += statement[1] - statement[0];
+		}
+		long chunkSize = total / (threads * CHUNKS_PER_THREAD) + 1;
+		int first = 0;
+		long size = 0;
+		for(int i = 0; i < statements.size(); i++){
+			size += statements.get(i)[1] - statements.get(i)[0];
+			if(size >= chunkSize || i == statements.size()-1){
+				final List<int[]> chunk = statements.subList(first, i+1);
+				tasks.add(new Callable<DesignParser>(){
+					public DesignParser call() throws IOException{
+						DesignParser w = new DesignParser(DesignParser.this);
+						XDLTokenizer tokenizer = XDLReader.createTokenizer(new XDLTokenizer(data));
+						for(int[] statement : chunk){
+							w.reader.setState(ParserState.XDL_STATEMENT);
+							tokenizer.setRegion(statement[0], statement[1], statement[2]);
+							w.reader.read(tokenizer);
+						}
+						return w;
 					}
-					else if(currModule != null) currModule.addAttribute(attribute);
-					else design.addAttribute(attribute);
-				}
-				break;
-			case XDL_STATEMENT:
-				if(token.equals(INST)|| token.equals(INSTANCE)){
-					currInstance = new Instance();
-					state = ParserState.INSTANCE_NAME;
-				}
-				else if(token.equals(NET)){
-					currNet = new Net();
-					state = ParserState.NET_NAME;
-				}
-				else if(token.equals(MODULE)){
-					currModule = new Module();
-					modPinMap = new HashMap<String, Pin>();
-					portNames = new ArrayList<String>();
-					portInstanceNames = new ArrayList<String>();
-					portPinNames = new ArrayList<String>();
-					state = ParserState.MODULE_NAME;
-				}
-				else if(token.equals(ENDMODULE)){
-					state = ParserState.END_MODULE_NAME;
+				});
+				first = i+1;
+				size = 0;
+			}
+		}
+		ArrayList<DesignParser> workers = new ArrayList<DesignParser>();
+		try{
+			for(Future<DesignParser> f : executor.invokeAll(tasks)){
+				workers.add(f.get());
+			}
+		}
+		catch(InterruptedException e){
+			MessageGenerator.briefErrorAndExit("ERROR: Parsing of XDL file: " + fileName + " was interrupted.");
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			MessageGenerator.briefErrorAndExit("ERROR: Error while parsing XDL file: " + fileName + ": " + e.getCause());
+		}
+		return workers;
+	}
+	
+	/**
+	 * Adds what a worker parsed to the design, in the order the sequential
+	 * parser would have.
+	 */
+	private void mergeWorker(DesignParser w){
+		for(Instance inst : w.parsedInstances){
+			design.addInstance(inst);
+		}
+		for(int i = 0; i < w.moduleInstanceMembers.size(); i++){
+			addToModuleInstance(w.moduleInstanceMembers.get(i), w.moduleInstanceNames.get(i));
+		}
+		for(Net net : w.parsedNets){
+			design.addNet(net);
+			for(Pin p : net.getPins()){
+				if(p.getInstance() == null) continue;
+				p.getInstance().addToNetList(net);
+				p.getInstance().addPin(p);
+			}
+		}
+		for(int i = 0; i < w.macroNets.size(); i++){
+			w.macroModuleInstances.get(i).addNet(w.macroNets.get(i));
+		}
+	}
+	
+	/**
+	 * Finds the statements of an XDL file, each ends with a ';' (outside of
+	 * quotes) followed by a separator.  A module statement includes all the
+	 * statements up to the end of the module.
+	 * @param data The contents of the file.
+	 * @return The statements as {start, end, line number, type}.
+	 */
+	private ArrayList<int[]> findStatements(byte[] data){
+		ArrayList<int[]> statements = new ArrayList<int[]>();
+		int line = 1;
+		int prev = -1;
+		boolean inComment = false;
+		boolean inQuote = false;
+		int start = 0;
+		int startLine = 1;
+		int type = -1;
+		boolean inModule = false;
+		boolean moduleEnds = false;
+		for(int i = 0; i < data.length; i++){
+			int ch = data[i] & 0xff;
+			if(ch == '\n') line++;
+			if(inComment){
+				if((prev == '\r' || prev == '\n') && (ch != '\r' && ch != '\n')){
+					inComment = false;
 				}
 				else{
-					expect("inst, net, module or endmodule", token, ParserState.XDL_STATEMENT);
+					prev = ch;
+					continue;
 				}
-				break;
-			case INSTANCE_NAME:
-				currInstance.setName(pool.getUnique(token));
-				currInstance.setDesign(design);
-				if(currModule == null){
-					design.addInstance(currInstance);
-				}
-				else{
-					currModule.addInstance(currInstance);
-					currInstance.setModuleTemplate(currModule);
-					if(currInstance.getName().equals(currModuleAnchorName)){
-						currModule.setAnchor(currInstance);
+			}
+			if(ch == '#' && (prev == '\r' || prev == '\n' || prev == -1)){
+				inComment = true;
+			}
+			else if(ch == '"'){
+				if(!inQuote || prev != '\\') inQuote = !inQuote;
+			}
+			else if(!inQuote){
+				if(ch == ';' && (i+1 == data.length || isSeparator(data[i+1] & 0xff))){
+					if(inModule && moduleEnds){
+						inModule = false;
 					}
-				}
-				state = ParserState.INSTANCE_TYPE;
-				break;
-			case INSTANCE_TYPE:
-				  PrimitiveType t = Utils.createPrimitiveType(token);
-				  if(t == null){
-				    MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Failed parsing Instance type: \"" + token + "\"");
-				  }
-				  currInstance.setType(t);
-				  state = ParserState.INSTANCE_PLACED;
-				break;
-			case INSTANCE_PLACED:
-				if(token.equals(PLACED)) state = ParserState.INSTANCE_TILE;
-				else if(token.equals(UNPLACED)) state = ParserState.INSTANCE_BONDED;
-				else expect("placed or unplaced", token, ParserState.INSTANCE_PLACED);
-				break;
-			case INSTANCE_TILE:
-				Tile tile = dev.getTile(token);
-				if(tile == null){
-					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid tile " +
-							token + " on line " + lineNumber);
-				}
-				state = ParserState.INSTANCE_SITE;
-				break;
-			case INSTANCE_SITE:
-				PrimitiveSite site = dev.getPrimitiveSite(token);
-				if(site == null){
-					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid primitive site " +
-							token + " on line " + lineNumber);
-				}
-				if(currModule != null){
-					currInstance.setSite(dev.getPrimitiveSite(token));
-				}else{
-					currInstance.place(dev.getPrimitiveSite(token));					
-				}
-				state = ParserState.MODULE_INSTANCE_TOKEN;
-				break;
-			case INSTANCE_BONDED:
-				if(token.equals(COMMA)){
-					state = ParserState.MODULE_INSTANCE_TOKEN;
-				}
-				else if(token.equals(CFG)){
-					state = ParserState.ATTRIBUTE;
-				}
-				else if(token.equals(MODULE)){
-					state = ParserState.MODULE_INSTANCE_NAME;
-				}
-				else if(token.equals(BONDED)){
-					currInstance.setBonded(true);
-					state = ParserState.MODULE_INSTANCE_TOKEN;
-				}
-				else if(token.equals(UNBONDED)){
-					currInstance.setBonded(false);
-					state = ParserState.MODULE_INSTANCE_TOKEN;
-				}
-				else{
-					expect("bonded, unbonded or ,", token, ParserState.INSTANCE_BONDED);
-				}
-				break;
-			case MODULE_INSTANCE_TOKEN:
-				if(token.equals(CFG)) state = ParserState.ATTRIBUTE;
-				else if(token.equals(MODULE)) state = ParserState.MODULE_INSTANCE_NAME;
-				else expect("cfg or module", token, ParserState.MODULE_INSTANCE_TOKEN);
-				break;
-			case MODULE_INSTANCE_NAME:
-				currModuleInstanceName = pool.getUnique(token);
-				state = ParserState.MODULE_TEMPLATE_NAME;
-				break;
-			case MODULE_TEMPLATE_NAME:
-				currInstance.setModuleTemplate(design.getModule(token));
-				state = ParserState.MODULE_TEMPLATE_INSTANCE_NAME;
-				break;
-			case MODULE_TEMPLATE_INSTANCE_NAME:
-				currInstance.setModuleTemplateInstance(currInstance.getModuleTemplate().getInstance(token));
-				ModuleInstance moduleInstance = design.addInstanceToModuleInstances(currInstance, currModuleInstanceName);
-				if(currInstance.getModuleTemplateInstance().equals(currInstance.getModuleTemplate().getAnchor())){
-					moduleInstance.setAnchor(currInstance);
-				}
-				state = ParserState.CFG_STRING;
-				break;
-			case NET_NAME:
-				currNet.setName(pool.getUnique(token));
-				if(currModule == null) design.addNet(currNet);
-				else currModule.addNet(currNet);
-				state = ParserState.NET_TYPE;
-				break;
-			case NET_TYPE:
-				if(token.equals(COMMA) || token.equals(WIRE)){
-					currNet.setType(NetType.WIRE);
-				}
-				else if(token.equals(CFG)){
-					state = ParserState.ATTRIBUTE;
-					break;
-				}
-				else if(token.equals(GND) || token.equals(GROUND)){
-					currNet.setType(NetType.GND);
-				}
-				else if(token.equals(VCC) || token.equals(POWER)){
-					currNet.setType(NetType.VCC);
-				}
-				else if(token.equals(INPIN)){
-					currPin = new Pin();
-					currPin.setIsOutputPin(false);
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-					break;
-				}
-				else if(token.equals(OUTPIN)){
-					currPin = new Pin();
-					currPin.setIsOutputPin(true);
-					if(currNet.getSource() != null){
-						MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", The net " +
-							currNet.getName() + " has two or more outpins (line " +
-							lineNumber + ")");
+					if(!inModule){
+						if(type == -1) type = OTHER_STATEMENT;
+						statements.add(new int[]{start, i+1, startLine, type});
+						start = i+1;
+						startLine = line;
+						type = -1;
 					}
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-					break;
 				}
-				else if(token.equals(INOUT)){
-					currPin = new Pin();
-					currPin.setPinType(PinType.INOUT);
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-					break;
+				else if(inModule){
+					// Only looks for the first token of the statements in the module
+					if(isSeparator(prev) && !isSeparator(ch) && startsWith(data, i, XDLReader.ENDMODULE)) moduleEnds = true;
 				}
-				else{
-					expect("wire, vcc or power, gnd or ground or ,",token, ParserState.NET_TYPE);
-				}
-				state = ParserState.NET_STATEMENT; 
-				break;
-			case NET_STATEMENT:
-				if(token.equals(PIP)){
-					currPIP = new PIP();
-					currNet.addPIP(currPIP);
-					state = ParserState.PIP_TILE; 
-				}
-				else if(token.equals(INPIN)){
-					currPin = new Pin();
-					currPin.setIsOutputPin(false);
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-				}
-				else if(token.equals(OUTPIN)){
-					currPin = new Pin();
-					currPin.setIsOutputPin(true);
-					if(currNet.getSource() != null){
-						MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", The net " +
-							currNet.getName() + " has two or more outpins (line " +
-							lineNumber + ")");
+				else if(type == -1 && !isSeparator(ch)){
+					type = getStatementType(data, i, statements.isEmpty());
+					if(type == MODULE_STATEMENT){
+						inModule = true;
+						moduleEnds = false;
 					}
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-				}
-				else if(token.equals(INOUT)){
-					currPin = new Pin();
-					currPin.setPinType(PinType.INOUT);
-					currNet.addPin(currPin);
-					state = ParserState.PIN_INSTANCE_NAME;
-					break;
-				}
-				else if(token.equals(SEMICOLON)){
-					state = ParserState.XDL_STATEMENT;
-				}
-				else if(token.equals(CFG)){
-					state = ParserState.ATTRIBUTE;
-				}
-				break;
-			case PIN_INSTANCE_NAME:
-				Instance inst;
-				if(currModule == null) inst = design.getInstance(token);
-				else inst = currModule.getInstance(token);
-				if(inst == null){
-					MessageGenerator.briefErrorAndExit("ERROR: Could not find instance " +
-						token + " on line " + lineNumber);
-				}
-				currPin.setInstance(inst);
-				inst.addToNetList(currNet);
-				state = ParserState.PIN_NAME;
-				break;
-			case PIN_NAME:
-				currPin.setPinName(pool.getUnique(token));
-				currPin.getInstance().addPin(currPin);
-				if(currModule != null){
-				    modPinMap.put(currPin.getInstanceName() + currPin.getName(), currPin);
-				}
-				state = ParserState.NET_STATEMENT;
-				break;
-			case PIP_TILE:
-				Tile pipTile = dev.getTile(token);
-				if(pipTile == null){
-					MessageGenerator.briefErrorAndExit("Invalid tile " +
-							token + " on line " + lineNumber);
-				}
-				currPIP.setTile(pipTile);
-				state = ParserState.PIP_WIRE0;
-				break;
-			case PIP_WIRE0:
-				int wire0 = we.getWireEnum(token);
-				if(wire0 == -1) {
-					MessageGenerator.briefErrorAndExit("ERROR: Invalid wire: " +
-							token + " found on line " + lineNumber);
-				}
-				currPIP.setStartWire(wire0);
-				state = ParserState.PIP_CONN_TYPE;
-				break;
-			case PIP_CONN_TYPE:
-				if(token.equals(PIP0) || token.equals(PIP1) || token.equals(PIP2) || token.equals(PIP3)){
-					state = ParserState.PIP_WIRE1;
 				}
-				else{
-					expect("->, =-, ==, or =>", token, ParserState.PIP_CONN_TYPE);
-				}
-				break;
-			case PIP_WIRE1:
-				int wire1 = we.getWireEnum(token);
-				if(wire1 == -1) {
-					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid wire: " +
-							token + " found on line " + lineNumber);
-				}
-				currPIP.setEndWire(wire1);
-				state = ParserState.NET_STATEMENT; 
-				break;
-			case MODULE_NAME:
-				currModule.setName(pool.getUnique(token));
-				state = ParserState.MODULE_ANCHOR_NAME;
-				break;
-			case MODULE_ANCHOR_NAME:
-				currModuleAnchorName = pool.getUnique(token);
-				state = ParserState.CFG_STRING;
-				break;
-			case MODULE_STATEMENT:
-				if(token.equals(PORT)){
-					state = ParserState.PORT_NAME;
-				}
-				if(token.equals(INST)|| token.equals(INSTANCE)){
-					currInstance = new Instance();
-					state = ParserState.INSTANCE_NAME;
-				}
-				else if(token.equals(NET)){
-					currNet = new Net();
-					state = ParserState.NET_NAME;
-				}
-				else if(token.equals(ENDMODULE)){
-					state = ParserState.END_MODULE_NAME;
-				}
-				break;
-			case PORT_NAME:
-				portNames.add(pool.getUnique(token));
-				state = ParserState.PORT_INSTANCE_NAME;
-				break;
-			case PORT_INSTANCE_NAME:
-				portInstanceNames.add(pool.getUnique(token));
-				state = ParserState.PORT_PIN_NAME;
-				break;
-			case PORT_PIN_NAME:
-				portPinNames.add(pool.getUnique(token));
-				state = ParserState.END_PORT;
-				break;
-			case END_PORT:
-				expect(SEMICOLON, token, ParserState.END_PORT);
-				state = ParserState.MODULE_STATEMENT;
-				break;
-			case END_MODULE_NAME:
-				if(!currModule.getName().equals(token)){
-					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Mismatched module names: " +
-						currModule.getName() + " and " + token + " at line: " + lineNumber);
-				}
-				state = ParserState.END_MODULE;
-				break;
-			case END_MODULE:
-				expect(SEMICOLON, token, ParserState.END_MODULE);
-				design.addModule(currModule);
-				for(int i = 0; i <portNames.size(); i++){
-					String key = portInstanceNames.get(i) + portPinNames.get(i);
-					currModule.addPort(new Port(portNames.get(i), modPinMap.get(key)));
-				}
-				portNames = null;
-				portInstanceNames = null;
-				portPinNames = null;
-				modPinMap = null;
-				currModuleAnchorName = null;
-				currModule = null;
-				state = ParserState.XDL_STATEMENT;
-				break;
+			}
+			prev = ch;
+		}
+		if(type != -1){
+			// Incomplete statement at the end of the file
+			statements.add(new int[]{start, data.length, startLine, OTHER_STATEMENT});
 		}
+		return statements;
+	}
+	
+	private int getStatementType(byte[] data, int i, boolean first){
+		if(first) return startsWith(data, i, XDLReader.DESIGN) ? HEADER_STATEMENT : OTHER_STATEMENT;
+		if(startsWith(data, i, XDLReader.INST) || startsWith(data, i, XDLReader.INSTANCE)) return INST_STATEMENT;
+		if(startsWith(data, i, XDLReader.NET)) return NET_STATEMENT;
+		if(startsWith(data, i, XDLReader.MODULE)) return MODULE_STATEMENT;
+		return OTHER_STATEMENT;
 	}
 	
 	/**
-	 * This method will take a string and parse it into the 3-part attribute.  It 
-	 * detects escaped colons ('\:') and includes them as part of the logicalName if
-	 * present.
-	 * @param attribute The original token string found from parsing the XDL file.
-	 * @return A new attribute object populated from the string attribute.
+	 * Checks if the token at index i of data is the given keyword.
 	 */
-	private Attribute createAttribute(String attribute){
-	    int break1 = attribute.indexOf(':');
-	    int break2 = attribute.indexOf(':', break1 + 1);
-	    while(attribute.charAt(break2-1) == '\\'){
-	    	break2 = attribute.indexOf(':', break2 + 1);
-	    }
-	    String physicalName = pool.getUnique(attribute.substring(0, break1));
-	    String logicalName = pool.getUnique(attribute.substring(break1 + 1, break2));
-	    String value = pool.getUnique(attribute.substring(break2 + 1, attribute.length()));
-		return new Attribute(physicalName, logicalName, value);
+	private static boolean startsWith(byte[] data, int i, String keyword){
+		int end = i + keyword.length();
+		if(end > data.length) return false;
+		for(int j = 0; j < keyword.length(); j++){
+			if(data[i+j] != keyword.charAt(j)) return false;
+		}
+		return end == data.length || isSeparator(data[end] & 0xff);
+	}
+	
+	private static boolean isSeparator(int ch){
+		return ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t' || ch == '"' || ch == ',';
+	}
+	
+	public void startDesign(String name, String partName, String ncdVersion){
+		design.setName(pool.getUnique(name));
+		design.setPartName(pool.getUnique(partName));
+		we = design.getWireEnumerator();
+		dev = design.getDevice();
+		if(ncdVersion != null) design.setNCDVersion(pool.getUnique(ncdVersion));
+	}
+	
+	public void endDesign(){
+	}
+	
+	public void attribute(Attribute attribute){
+		if(currInstance != null) currInstance.addAttribute(attribute);
+		else if(currNet != null){
+			currNet.addAttribute(attribute);
+			if(attribute.getPhysicalName().equals("_MACRO")){
+				ModuleInstance mi = design.getModuleInstance(attribute.getValue());
+				currNet.setModuleInstance(mi);
+				if(worker){
+					macroNets.add(currNet);
+					macroModuleInstances.add(mi);
+				}
+				else mi.addNet(currNet);
+				Module module = mi.getModule();
+				currNet.setModuleTemplate(module);
+				currNet.setModuleTemplateNet(module.getNet(currNet.getName().replaceFirst(mi.getName() + "/", "")));
+			}
+		}
+		else if(currModule != null) currModule.addAttribute(attribute);
+		else design.addAttribute(attribute);
+	}
+	
+	public void startModule(String name, String anchorName){
+		currModule = new Module();
+		currModule.setName(pool.getUnique(name));
+		currModuleAnchorName = pool.getUnique(anchorName);
+		modPinMap = new HashMap<String, Pin>();
+		portNames = new ArrayList<String>();
+		portInstanceNames = new ArrayList<String>();
+		portPinNames = new ArrayList<String>();
+	}
+	
+	public void port(String name, String instanceName, String pinName){
+		portNames.add(pool.getUnique(name));
+		portInstanceNames.add(pool.getUnique(instanceName));
+		portPinNames.add(pool.getUnique(pinName));
+	}
+	
+	public void endModule(){
+		design.addModule(currModule);
+		for(int i = 0; i <portNames.size(); i++){
+			String key = portInstanceNames.get(i) + portPinNames.get(i);
+			currModule.addPort(new Port(portNames.get(i), modPinMap.get(key)));
+		}
+		portNames = null;
+		portInstanceNames = null;
+		portPinNames = null;
+		modPinMap = null;
+		currModuleAnchorName = null;
+		currModule = null;
+	}
+	
+	public void startInstance(String name, PrimitiveType type){
+		currInstance = new Instance();
+		currInstance.setName(pool.getUnique(name));
+		if(worker){
+			// Placed and added to the design when the worker is merged
+			parsedInstances.add(currInstance);
+		}
+		else if(currModule == null){
+			currInstance.setDesign(design);
+			design.addInstance(currInstance);
+		}
+		else{
+			currInstance.setDesign(design);
+			currModule.addInstance(currInstance);
+			currInstance.setModuleTemplate(currModule);
+			if(currInstance.getName().equals(currModuleAnchorName)){
+				currModule.setAnchor(currInstance);
+			}
+		}
+		currInstance.setType(type);
+	}
+	
+	public void placement(String tileName, String siteName){
+		Tile tile = dev.getTile(tileName);
+		if(tile == null){
+			MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid tile " +
+					tileName + " on line " + reader.getLineNumber());
+		}
+		PrimitiveSite site = dev.getPrimitiveSite(siteName);
+		if(site == null){
+			MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid primitive site " +
+					siteName + " on line " + reader.getLineNumber());
+		}
+		if(currModule != null){
+			currInstance.setSite(site);
+		}else{
+			currInstance.place(site);
+		}
+	}
+	
+	public void bonding(boolean bonded){
+		currInstance.setBonded(bonded);
+	}
+	
+	public void moduleInstance(String moduleInstanceName, String moduleName, String moduleTemplateInstanceName){
+		currModuleInstanceName = pool.getUnique(moduleInstanceName);
+		currInstance.setModuleTemplate(design.getModule(moduleName));
+		currInstance.setModuleTemplateInstance(currInstance.getModuleTemplate().getInstance(moduleTemplateInstanceName));
+		if(worker){
+			moduleInstanceMembers.add(currInstance);
+			moduleInstanceNames.add(currModuleInstanceName);
+		}
+		else addToModuleInstance(currInstance, currModuleInstanceName);
+	}
+	
+	public void endInstance(){
+		currInstance = null;
+	}
+	
+	public void startNet(String name, NetType type){
+		currNet = new Net();
+		currNet.setName(pool.getUnique(name));
+		if(worker) parsedNets.add(currNet);
+		else if(currModule == null) design.addNet(currNet);
+		else currModule.addNet(currNet);
+		currNet.setType(type);
+	}
+	
+	public void pin(PinType type, String instanceName, String pinName){
+		Pin pin = new Pin();
+		pin.setPinType(type);
+		if(type == PinType.OUTPIN && currNet.getSource() != null){
+			MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", The net " +
+				currNet.getName() + " has two or more outpins (line " +
+				reader.getLineNumber() + ")");
+		}
+		currNet.addPin(pin);
+		Instance inst;
+		if(currModule == null) inst = design.getInstance(instanceName);
+		else inst = currModule.getInstance(instanceName);
+		if(inst == null){
+			MessageGenerator.briefErrorAndExit("ERROR: Could not find instance " +
+				instanceName + " on line " + reader.getLineNumber());
+		}
+		pin.setInstance(inst);
+		if(!worker) inst.addToNetList(currNet);
+		pin.setPinName(pool.getUnique(pinName));
+		if(!worker) inst.addPin(pin);
+		if(currModule != null){
+		    modPinMap.put(pin.getInstanceName() + pin.getName(), pin);
+		}
+	}
+	
+	public void pip(String tileName, String startWireName, String endWireName){
+		Tile pipTile = dev.getTile(tileName);
+		if(pipTile == null){
+			MessageGenerator.briefErrorAndExit("Invalid tile " +
+					tileName + " on line " + reader.getLineNumber());
+		}
+		int wire0 = we.getWireEnum(startWireName);
+		if(wire0 == -1) {
+			MessageGenerator.briefErrorAndExit("ERROR: Invalid wire: " +
+					startWireName + " found on line " + reader.getLineNumber());
+		}
+		int wire1 = we.getWireEnum(endWireName);
+		if(wire1 == -1) {
+			MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Invalid wire: " +
+					endWireName + " found on line " + reader.getLineNumber());
+		}
+		currNet.addPIP(new PIP(pipTile, wire0, wire1));
+	}
+	
+	public void endNet(){
+		currNet = null;
+	}
+	
+	/**
+	 * Adds an instance of a hard macro to its module instance in the design.
+	 * @param inst The instance, its module template instance must be set.
+	 * @param moduleInstanceName Name of the module instance.
+	 */
+	private void addToModuleInstance(Instance inst, String moduleInstanceName){
+		ModuleInstance moduleInstance = design.addInstanceToModuleInstances(inst, moduleInstanceName);
+		if(inst.getModuleTemplateInstance().equals(inst.getModuleTemplate().getAnchor())){
+			moduleInstance.setAnchor(inst);
+		}
 	}
 }
\ No newline at end of file
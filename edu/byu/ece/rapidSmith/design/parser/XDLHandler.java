@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design.parser;
+
+import edu.byu.ece.rapidSmith.design.Attribute;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.PinType;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+
+/**
+ * Receives the contents of an XDL file from an XDLReader as the file is
+ * read, statement by statement, without a Design being built.  The methods
+ * are called in the order of the file.  Names are passed as they appear in
+ * the file, nothing is looked up in the device, so a handler only keeps
+ * what it needs.  DesignParser is the handler that builds a Design.
+ * 
+ * The elements of a file are nested as:
+ * <pre>
+ * startDesign, attribute*
+ *   (startModule, attribute*, port*, (instance | net)*, endModule)*
+ *   (instance | net)*
+ * endDesign
+ * 
+ * instance = startInstance, [placement | bonding], [moduleInstance], attribute*, endInstance
+ * net = startNet, (attribute | pin | pip)*, endNet
+ * </pre>
+ */
+public interface XDLHandler {
+
+	/**
+	 * Called for the design statement at the start of the file.
+	 * @param name Name of the design.
+	 * @param partName The part name, including package and speed grade.
+	 * @param ncdVersion The NCD version, null for hard macros (which do not
+	 * have one).
+	 */
+	public void startDesign(String name, String partName, String ncdVersion);
+
+	/**
+	 * Called at the end of the file.
+	 */
+	public void endDesign();
+
+	/**
+	 * Called for each attribute of a cfg string.  The attribute belongs to the
+	 * instance or net that has been started but not ended, otherwise to the
+	 * module that has been started but not ended, otherwise to the design.
+	 * @param attribute The attribute.
+	 */
+	public void attribute(Attribute attribute);
+
+	/**
+	 * Called at the start of the definition of a module (hard macro).
+	 * @param name Name of the module.
+	 * @param anchorName Name of the anchor instance of the module.
+	 */
+	public void startModule(String name, String anchorName);
+
+	/**
+	 * Called for each port of the module being defined.
+	 * @param name Name of the port.
+	 * @param instanceName Name of the instance of the module the port is on.
+	 * @param pinName Name of the pin of the instance.
+	 */
+	public void port(String name, String instanceName, String pinName);
+
+	/**
+	 * Called at the end of the definition of a module.
+	 */
+	public void endModule();
+
+	/**
+	 * Called at the start of an inst statement, of the design or of the
+	 * module being defined.
+	 * @param name Name of the instance.
+	 * @param type Primitive type of the instance.
+	 */
+	public void startInstance(String name, PrimitiveType type);
+
+	/**
+	 * Called if the instance being read is placed.
+	 * @param tileName Name of the tile of the instance.
+	 * @param siteName Name of the primitive site of the instance.
+	 */
+	public void placement(String tileName, String siteName);
+
+	/**
+	 * Called if the instance being read is unplaced and bonded or unbonded.
+	 * @param bonded True if bonded, false if unbonded.
+	 */
+	public void bonding(boolean bonded);
+
+	/**
+	 * Called if the instance being read is a member of a module instance.
+	 * @param moduleInstanceName Name of the module instance.
+	 * @param moduleName Name of the module of the module instance.
+	 * @param moduleTemplateInstanceName Name of the instance of the module
+	 * this instance corresponds to.
+	 */
+	public void moduleInstance(String moduleInstanceName, String moduleName, String moduleTemplateInstanceName);
+
+	/**
+	 * Called at the end of an inst statement.
+	 */
+	public void endInstance();
+
+	/**
+	 * Called at the start of a net statement, of the design or of the module
+	 * being defined.
+	 * @param name Name of the net.
+	 * @param type Type of the net.
+	 */
+	public void startNet(String name, NetType type);
+
+	/**
+	 * Called for each pin of the net being read.
+	 * @param type Direction of the pin.
+	 * @param instanceName Name of the instance of the pin.
+	 * @param pinName Name of the pin on the instance.
+	 */
+	public void pin(PinType type, String instanceName, String pinName);
+
+	/**
+	 * Called for each PIP of the net being read.  The connection type
+	 * (->, =-, == or =>) is checked but not passed on.
+	 * @param tileName Name of the tile of the PIP.
+	 * @param startWireName Name of the start wire.
+	 * @param endWireName Name of the end wire.
+	 */
+	public void pip(String tileName, String startWireName, String endWireName);
+
+	/**
+	 * Called at the end of a net statement.
+	 */
+	public void endNet();
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design.parser;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import edu.byu.ece.rapidSmith.design.Attribute;
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.PinType;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Utils;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+import edu.byu.ece.rapidSmith.util.StringPool;
+
+/**
+ * Reads XDL files and passes their contents to an XDLHandler as events, in
+ * the manner of a SAX parser.  Nothing is kept from one statement to the
+ * next, so with {@link #read(String)} a file of any size is read in
+ * constant memory.  This suits tools that only scan designs, for example to
+ * count or summarize them; DesignParser builds a Design from the events.
+ * 
+ * Syntax errors are reported with MessageGenerator.briefErrorAndExit() as
+ * DesignParser always has.
+ */
+public class XDLReader{
+	public static String CFG = "cfg";
+	public static String VCC = "vcc";
+	public static String VDD = "vdd";
+	public static String GND = "gnd";
+	public static String PIP = "pip";
+	public static String NET = "net";
+	public static String LOAD = "load";
+	public static String WIRE = "wire";
+	public static String PORT = "port";
+	public static String INST = "inst";
+	public static String INPIN = "inpin";
+	public static String INOUT = "inout";
+	public static String POWER = "power";
+	public static String PLACED = "placed";
+	public static String BONDED = "bonded";
+	public static String GROUND = "ground";
+	public static String MODULE = "module";
+	public static String ENDMODULE = "endmodule";
+	public static String DESIGN = "design";
+	public static String OUTPIN = "outpin";
+	public static String DRIVER = "driver";
+	public static String UNPLACED = "unplaced";
+	public static String UNBONDED = "unbonded";
+	public static String INSTANCE = "instance";
+	public static String COMMA = ",";
+	public static String SEMICOLON = ";";
+	public static String PIP0 = "->";
+	public static String PIP1 = "=-";
+	public static String PIP2 = "=>";
+	public static String PIP3 = "==";
+	
+	/** Number of distinct tokens the tokenizer of read(String) keeps at most */
+	public static final int MAX_TOKENS = 1 << 16;
+	
+	private static final int NO_ELEMENT = 0;
+	private static final int INSTANCE_ELEMENT = 1;
+	private static final int NET_ELEMENT = 2;
+	
+	private XDLHandler handler;
+	
+	private String fileName;
+	
+	/** Makes the parts of attributes unique, null to keep them as they are */
+	private StringPool pool;
+	
+	private ParserState state;
+	
+	private int lineNumber;
+	/** The instance or net statement being read, if any */
+	private int element;
+	/** True while reading the definition of a module */
+	private boolean inModule;
+	
+	private boolean hardMacro;
+	
+	private String designName;
+	private String partName;
+	private String moduleName;
+	private String name;
+	private String moduleInstanceName;
+	private String moduleTemplateName;
+	private String tileName;
+	private String wireName;
+	private String portName;
+	private String portInstanceName;
+	private String portPinName;
+	private PinType pinType;
+	
+	/**
+	 * Creates a reader passing the contents of files to a handler.
+	 * @param handler The handler to receive the events.
+	 */
+	public XDLReader(XDLHandler handler){
+		this.handler = handler;
+	}
+	
+	/**
+	 * Sets a pool to make the physical names, logical names and values of
+	 * attributes unique (by default they are not, which keeps the memory
+	 * used by the reader constant).
+	 * @param pool The pool or null.
+	 */
+	public void setStringPool(StringPool pool){
+		this.pool = pool;
+	}
+	
+	/**
+	 * @return The line of the file being read, starting at 1.
+	 */
+	public int getLineNumber(){
+		return lineNumber;
+	}
+	
+	/**
+	 * @return The name of the file being read.
+	 */
+	public String getFileName(){
+		return fileName;
+	}
+	
+	void setFileName(String fileName){
+		this.fileName = fileName;
+	}
+	
+	/**
+	 * Reads an XDL file and passes its contents to the handler, ending with
+	 * endDesign().  The file is streamed and the tokenizer keeps a bounded
+	 * number of tokens (see {@link #MAX_TOKENS}).
+	 * @param fileName Name of the XDL file.
+	 * @throws IOException If the file could not be read.
+	 */
+	public void read(String fileName) throws IOException{
+		this.fileName = fileName;
+		FileChannel channel = new FileInputStream(fileName).getChannel();
+		try{
+			XDLTokenizer tokenizer = createTokenizer(new XDLTokenizer(channel));
+			tokenizer.setMaxTokens(MAX_TOKENS);
+			setState(ParserState.BEGIN_DESIGN);
+			read(tokenizer);
+		}
+		finally{
+			channel.close();
+		}
+		handler.endDesign();
+	}
+	
+	/**
+	 * Adds the keywords of XDL to a tokenizer.
+	 * @return The tokenizer.
+	 */
+	static XDLTokenizer createTokenizer(XDLTokenizer tokenizer){
+		tokenizer.addTokens(CFG, VCC, VDD, GND, PIP, NET, LOAD, WIRE, PORT, INST, INPIN, INOUT, POWER,
+				PLACED, BONDED, GROUND, MODULE, ENDMODULE, DESIGN, OUTPIN, DRIVER, UNPLACED, UNBONDED,
+				INSTANCE, COMMA, SEMICOLON, PIP0, PIP1, PIP2, PIP3);
+		return tokenizer;
+	}
+	
+	/**
+	 * Sets the state of the reader, used to read the statements of a file
+	 * out of order (XDL_STATEMENT before each inst or net statement) or to
+	 * start a file (BEGIN_DESIGN).
+	 * @param state The state to read the next token in.
+	 */
+	void setState(ParserState state){
+		this.state = state;
+		element = NO_ELEMENT;
+		if(state == ParserState.BEGIN_DESIGN || state == ParserState.XDL_STATEMENT){
+			inModule = false;
+			moduleName = null;
+		}
+	}
+	
+	/**
+	 * Reads the tokens of the tokenizer (from its current region), starting
+	 * in the current state of the reader.
+	 */
+	void read(XDLTokenizer tokenizer) throws IOException{
+		while(tokenizer.next()){
+			lineNumber = tokenizer.getLineNumber();
+			// Attributes are mostly unique, only the other tokens are worth sharing
+			if(state == ParserState.ATTRIBUTE){
+				parseToken(tokenizer.getTokenString());
+			}
+			else{
+				parseToken(tokenizer.getToken());
+			}
+			tokenizer.setAttributeMode(state == ParserState.ATTRIBUTE);
+		}
+	}
+	
+	private void expect(String expectedString, String token, ParserState state){
+		if(!expectedString.equals(token)){
+			new Exception().printStackTrace();
+			MessageGenerator.briefErrorAndExit("Parsing Error: Expected token: " + expectedString +
+					", encountered: " + token + " on line: " + lineNumber + " in parser state: " + state.toString());
+		}
+	}
+	
+	/**
+	 * Ends the instance or net being read at the ';' of its statement.
+	 */
+	private void endStatement(){
+		if(element == INSTANCE_ELEMENT) handler.endInstance();
+		else if(element == NET_ELEMENT) handler.endNet();
+		element = NO_ELEMENT;
+		state = inModule ? ParserState.MODULE_STATEMENT : ParserState.XDL_STATEMENT;
+	}
+	
+	private void startNet(NetType type){
+		element = NET_ELEMENT;
+		handler.startNet(name, type);
+	}
+	
+	/**
+	 * This is the parser state machine that decides which event a token
+	 * creates.  It does some amount of error checking but is not full proof.
+	 * @param token The token to parse.
+	 */
+	private void parseToken(String token){
+		switch(state){
+			case BEGIN_DESIGN:
+				expect(DESIGN, token, ParserState.BEGIN_DESIGN);
+				state = ParserState.DESIGN_NAME;
+				break;
+			case DESIGN_NAME:
+				designName = token;
+				hardMacro = token.equals(Design.hardMacroDesignName);
+				state = ParserState.PART_NAME;
+				break;
+			case PART_NAME:
+				if(hardMacro){
+					if(token.endsWith(";")){
+						state = ParserState.XDL_STATEMENT;
+						token = token.substring(0, token.length()-1);
+					}
+					else{
+						state = ParserState.CFG_STRING;
+					}
+					handler.startDesign(designName, token, null);
+				}
+				else{
+					partName = token;
+					state = ParserState.NCD_VERSION;					
+				}
+				break;
+			case NCD_VERSION:
+				handler.startDesign(designName, partName, token);
+				state = ParserState.CFG_STRING;
+				break;
+			case CFG_STRING:
+				if(token.equals(CFG)) state = ParserState.ATTRIBUTE;
+				else if(token.equals(SEMICOLON)) endStatement();
+				else expect("cfg or ;", token, ParserState.CFG_STRING);
+				break;
+			case ATTRIBUTE:
+				if(token.equals(SEMICOLON)){
+					endStatement();
+				}
+				else if(token.equals(COMMA) && element == NET_ELEMENT){
+					state = ParserState.NET_STATEMENT;
+				}
+				else{
+					handler.attribute(createAttribute(token));
+				}
+				break;
+			case XDL_STATEMENT:
+				if(token.equals(INST)|| token.equals(INSTANCE)){
+					state = ParserState.INSTANCE_NAME;
+				}
+				else if(token.equals(NET)){
+					state = ParserState.NET_NAME;
+				}
+				else if(token.equals(MODULE)){
+					state = ParserState.MODULE_NAME;
+				}
+				else if(token.equals(ENDMODULE)){
+					state = ParserState.END_MODULE_NAME;
+				}
+				else{
+					expect("inst, net, module or endmodule", token, ParserState.XDL_STATEMENT);
+				}
+				break;
+			case INSTANCE_NAME:
+				name = token;
+				state = ParserState.INSTANCE_TYPE;
+				break;
+			case INSTANCE_TYPE:
+				PrimitiveType t = Utils.createPrimitiveType(token);
+				if(t == null){
+					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Failed parsing Instance type: \"" + token + "\"");
+				}
+				element = INSTANCE_ELEMENT;
+				handler.startInstance(name, t);
+				state = ParserState.INSTANCE_PLACED;
+				break;
+			case INSTANCE_PLACED:
+				if(token.equals(PLACED)) state = ParserState.INSTANCE_TILE;
+				else if(token.equals(UNPLACED)) state = ParserState.INSTANCE_BONDED;
+				else expect("placed or unplaced", token, ParserState.INSTANCE_PLACED);
+				break;
+			case INSTANCE_TILE:
+				tileName = token;
+				state = ParserState.INSTANCE_SITE;
+				break;
+			case INSTANCE_SITE:
+				handler.placement(tileName, token);
+				state = ParserState.MODULE_INSTANCE_TOKEN;
+				break;
+			case INSTANCE_BONDED:
+				if(token.equals(COMMA)){
+					state = ParserState.MODULE_INSTANCE_TOKEN;
+				}
+				else if(token.equals(CFG)){
+					state = ParserState.ATTRIBUTE;
+				}
+				else if(token.equals(MODULE)){
+					state = ParserState.MODULE_INSTANCE_NAME;
+				}
+				else if(token.equals(BONDED)){
+					handler.bonding(true);
+					state = ParserState.MODULE_INSTANCE_TOKEN;
+				}
+				else if(token.equals(UNBONDED)){
+					handler.bonding(false);
+					state = ParserState.MODULE_INSTANCE_TOKEN;
+				}
+				else{
+					expect("bonded, unbonded or ,", token, ParserState.INSTANCE_BONDED);
+				}
+				break;
+			case MODULE_INSTANCE_TOKEN:
+				if(token.equals(CFG)) state = ParserState.ATTRIBUTE;
+				else if(token.equals(MODULE)) state = ParserState.MODULE_INSTANCE_NAME;
+				else expect("cfg or module", token, ParserState.MODULE_INSTANCE_TOKEN);
+				break;
+			case MODULE_INSTANCE_NAME:
+				moduleInstanceName = token;
+				state = ParserState.MODULE_TEMPLATE_NAME;
+				break;
+			case MODULE_TEMPLATE_NAME:
+				moduleTemplateName = token;
+				state = ParserState.MODULE_TEMPLATE_INSTANCE_NAME;
+				break;
+			case MODULE_TEMPLATE_INSTANCE_NAME:
+				handler.moduleInstance(moduleInstanceName, moduleTemplateName, token);
+				state = ParserState.CFG_STRING;
+				break;
+			case NET_NAME:
+				name = token;
+				state = ParserState.NET_TYPE;
+				break;
+			case NET_TYPE:
+				if(token.equals(COMMA) || token.equals(WIRE)){
+					startNet(NetType.WIRE);
+				}
+				else if(token.equals(CFG)){
+					startNet(NetType.WIRE);
+					state = ParserState.ATTRIBUTE;
+					break;
+				}
+				else if(token.equals(GND) || token.equals(GROUND)){
+					startNet(NetType.GND);
+				}
+				else if(token.equals(VCC) || token.equals(POWER)){
+					startNet(NetType.VCC);
+				}
+				else if(token.equals(INPIN) || token.equals(OUTPIN) || token.equals(INOUT)){
+					startNet(NetType.WIRE);
+					state = ParserState.NET_STATEMENT;
+					parseToken(token);
+					break;
+				}
+				else{
+					expect("wire, vcc or power, gnd or ground or ,",token, ParserState.NET_TYPE);
+				}
+				state = ParserState.NET_STATEMENT; 
+				break;
+			case NET_STATEMENT:
+				if(token.equals(PIP)){
+					state = ParserState.PIP_TILE; 
+				}
+				else if(token.equals(INPIN)){
+					pinType = PinType.INPIN;
+					state = ParserState.PIN_INSTANCE_NAME;
+				}
+				else if(token.equals(OUTPIN)){
+					pinType = PinType.OUTPIN;
+					state = ParserState.PIN_INSTANCE_NAME;
+				}
+				else if(token.equals(INOUT)){
+					pinType = PinType.INOUT;
+					state = ParserState.PIN_INSTANCE_NAME;
+				}
+				else if(token.equals(SEMICOLON)){
+					endStatement();
+				}
+				else if(token.equals(CFG)){
+					state = ParserState.ATTRIBUTE;
+				}
+				break;
+			case PIN_INSTANCE_NAME:
+				name = token;
+				state = ParserState.PIN_NAME;
+				break;
+			case PIN_NAME:
+				handler.pin(pinType, name, token);
+				state = ParserState.NET_STATEMENT;
+				break;
+			case PIP_TILE:
+				tileName = token;
+				state = ParserState.PIP_WIRE0;
+				break;
+			case PIP_WIRE0:
+				wireName = token;
+				state = ParserState.PIP_CONN_TYPE;
+				break;
+			case PIP_CONN_TYPE:
+				if(token.equals(PIP0) || token.equals(PIP1) || token.equals(PIP2) || token.equals(PIP3)){
+					state = ParserState.PIP_WIRE1;
+				}
+				else{
+					expect("->, =-, ==, or =>", token, ParserState.PIP_CONN_TYPE);
+				}
+				break;
+			case PIP_WIRE1:
+				handler.pip(tileName, wireName, token);
+				state = ParserState.NET_STATEMENT; 
+				break;
+			case MODULE_NAME:
+				moduleName = token;
+				state = ParserState.MODULE_ANCHOR_NAME;
+				break;
+			case MODULE_ANCHOR_NAME:
+				inModule = true;
+				handler.startModule(moduleName, token);
+				state = ParserState.CFG_STRING;
+				break;
+			case MODULE_STATEMENT:
+				if(token.equals(PORT)){
+					state = ParserState.PORT_NAME;
+				}
+				else if(token.equals(INST)|| token.equals(INSTANCE)){
+					state = ParserState.INSTANCE_NAME;
+				}
+				else if(token.equals(NET)){
+					state = ParserState.NET_NAME;
+				}
+				else if(token.equals(ENDMODULE)){
+					state = ParserState.END_MODULE_NAME;
+				}
+				break;
+			case PORT_NAME:
+				portName = token;
+				state = ParserState.PORT_INSTANCE_NAME;
+				break;
+			case PORT_INSTANCE_NAME:
+				portInstanceName = token;
+				state = ParserState.PORT_PIN_NAME;
+				break;
+			case PORT_PIN_NAME:
+				portPinName = token;
+				state = ParserState.END_PORT;
+				break;
+			case END_PORT:
+				expect(SEMICOLON, token, ParserState.END_PORT);
+				handler.port(portName, portInstanceName, portPinName);
+				state = ParserState.MODULE_STATEMENT;
+				break;
+			case END_MODULE_NAME:
+				if(!token.equals(moduleName)){
+					MessageGenerator.briefErrorAndExit("XDL Design Parser Error in file: "+ fileName +", Mismatched module names: " +
+						moduleName + " and " + token + " at line: " + lineNumber);
+				}
+				state = ParserState.END_MODULE;
+				break;
+			case END_MODULE:
+				expect(SEMICOLON, token, ParserState.END_MODULE);
+				handler.endModule();
+				inModule = false;
+				moduleName = null;
+				state = ParserState.XDL_STATEMENT;
+				break;
+		}
+	}
+	
+	/**
+	 * This method will take a string and parse it into the 3-part attribute.  It 
+	 * detects escaped colons ('\:') and includes them as part of the logicalName if
+	 * present.
+	 * @param attribute The original token string found from parsing the XDL file.
+	 * @return A new attribute object populated from the string attribute.
+	 */
+	private Attribute createAttribute(String attribute){
+		int break1 = attribute.indexOf(':');
+		int break2 = attribute.indexOf(':', break1 + 1);
+		while(attribute.charAt(break2-1) == '\\'){
+			break2 = attribute.indexOf(':', break2 + 1);
+		}
+		String physicalName = attribute.substring(0, break1);
+		String logicalName = attribute.substring(break1 + 1, break2);
+		String value = attribute.substring(break2 + 1, attribute.length());
+		if(pool != null){
+			physicalName = pool.getUnique(physicalName);
+			logicalName = pool.getUnique(logicalName);
+			value = pool.getUnique(value);
+		}
+		return new Attribute(physicalName, logicalName, value);
+	}
+}
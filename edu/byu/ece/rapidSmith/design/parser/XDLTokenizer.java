@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Splits an XDL file into tokens.  The file is read in large blocks from a
+ * channel and scanned byte by byte without creating any objects, tokens are
+ * only turned into Strings when the parser asks for them.  Tokens that are
+ * not attributes (keywords, tile, wire, pin and instance names) repeat many
+ * times in a design, {@link #getToken()} returns the same String object for
+ * each occurrence of such a token by looking its bytes up in a hash table
+ * rather than building a new String and interning it.
+ * 
+ * Tokens are separated by spaces, tabs, new lines, quotes and commas.  In
+ * attribute mode (the cfg strings), commas and escaped spaces and quotes
+ * are part of the token.  A '#' at the start of a line begins a comment
+ * which lasts until the next line that does not start with a new line.
+ * The file is assumed to be ASCII (each byte is one character).
+ * 
+ * A tokenizer can also scan regions of a file already in memory, see
+ * {@link #setRegion(int, int, int)}.
+ */
+public class XDLTokenizer{
+	/** Size of the blocks read from the channel */
+	public static final int BLOCK_SIZE = 1 << 20;
+	/** Initial number of slots of the token table */
+	private static final int INITIAL_TABLE_SIZE = 1 << 14;
+	
+	private ReadableByteChannel channel;
+	
+	private ByteBuffer block;
+	
+	private byte[] data;
+	/** Index of the next byte to scan in data */
+	private int pos;
+	/** Number of valid bytes in data, or the end of the region */
+	private int limit;
+	
+	/** Bytes of the current token */
+	private byte[] token;
+	
+	private int tokenLength;
+	/** Scratch space used to build Strings from the token */
+	private char[] chars;
+	
+	private int prev;
+	
+	private boolean inComment;
+	
+	private boolean attributeMode;
+	
+	private int lineNumber;
+	
+	/** Open addressing hash table of the Strings returned by getToken() */
+	private String[] table;
+	
+	private int[] hashes;
+	
+	private int tableSize;
+	/** The tokens added with addTokens(), they stay when the table is cleared */
+	private ArrayList<String> keywords = new ArrayList<String>();
+	/** The table is cleared when it holds more tokens than this, 0 for no limit */
+	private int maxTokens = 0;
+	
+	/** Hash of the current token, computed while scanning it */
+	private int tokenHash;
+	
+	/**
+	 * Creates a tokenizer reading from the given channel.
+	 * @param channel The channel to read the XDL file from.
+	 */
+	public XDLTokenizer(ReadableByteChannel channel){
+		this.channel = channel;
+		block = ByteBuffer.allocate(BLOCK_SIZE);
+		data = block.array();
+		pos = 0;
+		limit = 0;
+		token = new byte[8192];
+		chars = new char[8192];
+		prev = -1;
+		lineNumber = 1;
+		table = new String[INITIAL_TABLE_SIZE];
+		hashes = new int[table.length];
+		tableSize = 0;
+	}
+	
+	/**
+	 * Creates a tokenizer for a file already read in memory.  The regions
+	 * to scan are set with {@link #setRegion(int, int, int)}, initially the
+	 * whole file.
+	 * @param data The contents of the XDL file.
+	 */
+	public XDLTokenizer(byte[] data){
+		this.data = data;
+		pos = 0;
+		limit = data.length;
+		token = new byte[8192];
+		chars = new char[8192];
+		prev = -1;
+		lineNumber = 1;
+		table = new String[INITIAL_TABLE_SIZE];
+		hashes = new int[table.length];
+		tableSize = 0;
+	}
+	
+	/**
+	 * Sets the region of the data to scan next (only for tokenizers created
+	 * from data in memory).  The region must not start inside a comment and
+	 * the tokens are scanned as they are outside of attributes.  A token
+	 * ending at the end of the region is returned unless the region ends at
+	 * the end of the data.
+	 * @param start Index of the first byte of the region.
+	 * @param end Index after the last byte of the region.
+	 * @param lineNumber The line number at the start of the region.
+	 */
+	public void setRegion(int start, int end, int lineNumber){
+		pos = start;
+		limit = end;
+		this.lineNumber = lineNumber;
+		prev = start > 0 ? data[start-1] & 0xff : -1;
+		inComment = false;
+		attributeMode = false;
+	}
+	
+	/**
+	 * Adds strings to the token table so that getToken() returns these
+	 * objects when it encounters them (typically the keywords of the language).
+	 * @param strings The strings to add.
+	 */
+	public void addTokens(String... strings){
+		for(String s : strings){
+			int h = 0;
+			for(int i = 0; i < s.length(); i++){
+				h = 31 * h + (s.charAt(i) & 0xff);
+			}
+			tokenLength = s.length();
+			growToken(tokenLength);
+			for(int i = 0; i < tokenLength; i++){
+				token[i] = (byte) s.charAt(i);
+			}
+			tokenHash = h;
+			int slot = findSlot();
+			if(table[slot] == null){
+				keywords.add(s);
+				insert(s, slot);
+			}
+		}
+		tokenLength = 0;
+	}
+	
+	/**
+	 * Limits the number of tokens kept in the table of getToken().  When the
+	 * table holds more tokens, it is cleared except for the tokens added
+	 * with addTokens(), so the memory used by a tokenizer scanning a large
+	 * file stays bounded.  getToken() then returns equal but different
+	 * String objects for tokens seen before the table was cleared.
+	 * @param maxTokens The maximum number of tokens, 0 for no limit (the
+	 * default).
+	 */
+	public void setMaxTokens(int maxTokens){
+		this.maxTokens = Math.max(0, maxTokens);
+	}
+	
+	/**
+	 * Sets whether the next tokens are part of a cfg string, where commas
+	 * and escaped spaces or quotes do not end a token.
+	 * @param attributeMode True to scan the next tokens as attributes.
+	 */
+	public void setAttributeMode(boolean attributeMode){
+		this.attributeMode = attributeMode;
+	}
+	
+	/**
+	 * @return The current line number of the file, starting at 1.
+	 */
+	public int getLineNumber(){
+		return lineNumber;
+	}
+	
+	/**
+	 * Scans the next token.  A token that ends at the end of the file without
+	 * a separator is not returned.
+	 * @return True if a token was found, false at the end of the file.
+	 * @throws IOException If reading the channel fails.
+	 */
+	public boolean next() throws IOException{
+		int idx = 0;
+		int h = 0;
+		while(true){
+			if(pos == limit){
+				if(channel == null){
+					if(idx > 0 && !inComment && limit < data.length){
+						// The end of a region separates tokens
+						pos = limit;
+						tokenLength = idx;
+						tokenHash = h;
+						return true;
+					}
+					tokenLength = 0;
+					return false;
+				}
+				if(!fill()){
+					tokenLength = 0;
+					return false;
+				}
+			}
+			int ch = data[pos++] & 0xff;
+			if(ch == '\n') lineNumber++;
+			if(inComment){
+				if((prev == '\r' || prev == '\n') && (ch != '\r' && ch != '\n')){
+					inComment = false;
+					idx = 0;
+					h = 0;
+				}
+				else{
+					prev = ch;
+					continue;
+				}
+			}
+			boolean separator = false;
+			switch(ch){
+				case ',':
+					separator = !attributeMode;
+					break;
+				case ' ':
+				case '"':
+					separator = !attributeMode || prev != '\\';
+					break;
+				case '\n':
+				case '\r':
+				case '\t':
+					separator = true;
+					break;
+				case '#':
+					if(prev == '\r' || prev == '\n' || prev == -1){
+						inComment = true;
+						separator = true;
+					}
+			}
+			prev = ch;
+			if(!separator){
+				if(idx == token.length) growToken(idx + 1);
+				token[idx++] = (byte) ch;
+				h = 31 * h + ch;
+			}
+			else if(idx > 0 && !inComment){
+				tokenLength = idx;
+				tokenHash = h;
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the current token as a String, the same String object is returned
+	 * for every occurrence of the same token in the file.  This should not be
+	 * used for tokens that are unique, such as attributes, as the table keeps
+	 * all of them.
+	 * @return The current token.
+	 */
+	public String getToken(){
+		int slot = findSlot();
+		String s = table[slot];
+		if(s == null){
+			s = getTokenString();
+			insert(s, slot);
+		}
+		return s;
+	}
+	
+	/**
+	 * Creates a new String of the current token without storing it.
+	 * @return The current token.
+	 */
+	public String getTokenString(){
+		if(chars.length < tokenLength) chars = new char[Math.max(tokenLength, chars.length * 2)];
+		for(int i = 0; i < tokenLength; i++){
+			chars[i] = (char) (token[i] & 0xff);
+		}
+		return new String(chars, 0, tokenLength);
+	}
+	
+	/**
+	 * Checks if the current token is the given string without creating a
+	 * String of the token.
+	 * @param s The string to compare to.
+	 * @return True if the current token is s.
+	 */
+	public boolean tokenEquals(String s){
+		if(s.length() != tokenLength) return false;
+		for(int i = 0; i < tokenLength; i++){
+			if(s.charAt(i) != (char) (token[i] & 0xff)) return false;
+		}
+		return true;
+	}
+	
+	private boolean fill() throws IOException{
+		block.clear();
+		int n;
+		do{
+			n = channel.read(block);
+		} while(n == 0);
+		if(n < 0) return false;
+		pos = 0;
+		limit = block.position();
+		return true;
+	}
+	
+	private void growToken(int size){
+		if(size > token.length) token = Arrays.copyOf(token, Math.max(size, token.length * 2));
+	}
+	
+	/**
+	 * Finds the slot of the current token in the table, or the empty slot
+	 * where it would be inserted.
+	 */
+	private int findSlot(){
+		int mask = table.length - 1;
+		int slot = (tokenHash ^ (tokenHash >>> 16)) & mask;
+		while(table[slot] != null){
+			if(hashes[slot] == tokenHash && tokenEquals(table[slot])) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void insert(String s, int slot){
+		table[slot] = s;
+		hashes[slot] = tokenHash;
+		tableSize++;
+		if(maxTokens > 0 && tableSize > maxTokens + keywords.size()){
+			clearTable();
+		}
+		else if(tableSize * 2 > table.length){
+			String[] oldTable = table;
+			int[] oldHashes = hashes;
+			table = new String[oldTable.length * 2];
+			hashes = new int[table.length];
+			int mask = table.length - 1;
+			for(int i = 0; i < oldTable.length; i++){
+				if(oldTable[i] == null) continue;
+				int j = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+				while(table[j] != null) j = (j + 1) & mask;
+				table[j] = oldTable[i];
+				hashes[j] = oldHashes[i];
+			}
+		}
+	}
+	
+	/**
+	 * Removes all tokens from the table except the keywords.
+	 */
+	private void clearTable(){
+		table = new String[INITIAL_TABLE_SIZE];
+		hashes = new int[table.length];
+		tableSize = 0;
+		int mask = table.length - 1;
+		for(String s : keywords){
+			int h = 0;
+			for(int i = 0; i < s.length(); i++){
+				h = 31 * h + (s.charAt(i) & 0xff);
+			}
+			int j = (h ^ (h >>> 16)) & mask;
+			while(table[j] != null) j = (j + 1) & mask;
+			table[j] = s;
+			hashes[j] = h;
+			tableSize++;
+		}
+	}
+}
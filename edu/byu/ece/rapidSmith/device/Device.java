@@ -27,10 +27,12 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Stack;
 
 import com.caucho.hessian.io.Deflation;
@@ -39,6 +41,10 @@ import com.caucho.hessian.io.Hessian2Output;
 
 import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.device.helper.HashPool;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.device.helper.LazyTilePools;
+import edu.byu.ece.rapidSmith.device.helper.MappedDeviceFile;
+import edu.byu.ece.rapidSmith.device.helper.SinkHashMap;
 import edu.byu.ece.rapidSmith.device.helper.TileSinks;
 import edu.byu.ece.rapidSmith.device.helper.TileSources;
 import edu.byu.ece.rapidSmith.device.helper.TileWires;
@@ -99,6 +105,12 @@ public class Device implements Serializable{
 	private ArrayList<PrimitiveSite[]> compatibleSiteIndex;
 	/** A set of all TileTypes that have switch matrices in them */
 	private HashSet<TileType> switchMatrixTypes;
+	/** True once packWireConnections() has been called */
+	private boolean wireConnectionsPacked;
+	/** The wire enumerator of the device's family, resolved on first use */
+	private transient volatile WireEnumerator we;
+	/** The device file this device was read from, null if it was not read from a file */
+	private transient String sourceFileName;
 	
 	//========================================================================//
 	// Object Pools - To remove duplicate objects, null afterwards
@@ -132,6 +144,15 @@ public class Device implements Serializable{
 		primitiveSiteIndex = null;
 		
 		// Object Pools
+		resetObjectPools();
+	}
+	
+	/**
+	 * Replaces all of the object pools with new empty pools.  This is used 
+	 * during device file creation when the tile resources have been modified
+	 * and the pools must be rebuilt from scratch.
+	 */
+	protected void resetObjectPools(){
 		wirePool = new HashPool<WireConnection>();
 		wireArrayPool = new HashPool<WireArray>();
 		wireConnectionPool = new HashPool<WireArrayConnection>();
@@ -143,13 +164,15 @@ public class Device implements Serializable{
 	}
 	
 	/**
-	 * This method is intended to only be called by a special method, util.FileTools.loadDevice(). 
 	 * This will either return a populated device of the same part if it already exists in memory
 	 * as the singleton instance or a new device ready to be populated from a file.
 	 * @param partName The part name of the device to get.
 	 * @return If no device has been loaded or the part names do not match the singleton instance, it
 	 * returns a new Device, otherwise it will return an existing copy of the device in memory.
+	 * @deprecated Loaded devices are kept by DeviceCache, use util.FileTools.loadDevice() or
+	 * DeviceCache.getInstance().getDevice() instead.
 	 */
+	@Deprecated
 	public static Device getInstance(String partName){
 		if(singleton == null || !partName.equals(singleton.getPartName())){
 			singleton = new Device();
@@ -158,11 +181,26 @@ public class Device implements Serializable{
 	}
 	
 	/**
-	 * Gets the corresponding wire enumerator object for this device.
+	 * Gets the corresponding wire enumerator object for this device.  The 
+	 * enumerator is looked up once and kept by the device.
 	 * @return The wire enumerator for this device.
 	 */
 	public WireEnumerator getWireEnumerator(){
-		return WireEnumerator.getInstance(getFamilyType());
+		WireEnumerator tmp = we;
+		if(tmp == null){
+			tmp = FileTools.loadWireEnumerator(getFamilyType());
+			we = tmp;
+		}
+		return tmp;
+	}
+
+	/**
+	 * Sets the wire enumerator returned by getWireEnumerator(), should only
+	 * be called when loading the device.
+	 * @param we The wire enumerator of the device's family.
+	 */
+	void setWireEnumerator(WireEnumerator we){
+		this.we = we;
 	}
 	
 	/**
@@ -201,7 +239,7 @@ public class Device implements Serializable{
 		// Check the Pin Mapping patch for proper external pin name mapping
 		String extName = PinMappingPatch.getPinMapping(pin.getInstance().getType(), pin.getName());
 		if(extName != null){
-			return WireEnumerator.getInstance(getFamilyType()).getWireEnum(extName);
+			return getWireEnumerator().getWireEnum(extName);
 		}
 		
 		Integer extPin = pin.getInstance().getPrimitiveSite().getExternalPinWireEnum(pin.getName());
@@ -412,6 +450,15 @@ public class Device implements Serializable{
 		return PartNameTools.removeSpeedGrade(partName);
 	}
 
+	/**
+	 * Gets the name of the compact or memory mapped device file this device 
+	 * was read from.
+	 * @return The file name or null if the device was not read from a file.
+	 */
+	public String getSourceFileName(){
+		return sourceFileName;
+	}
+
 	/**
 	 * Gets and returns the all lower case exact Xilinx family type for this  
 	 * device (ex: qvirtex4 instead of virtex4). DO NOT use exact family 
@@ -441,6 +488,7 @@ public class Device implements Serializable{
 	 */
 	protected void setPartName(String partName){
 		this.partName = partName;
+		this.we = null;
 	}
 
 	/**
@@ -570,6 +618,38 @@ public class Device implements Serializable{
 		return getPrimitiveSiteIndex().get(type.ordinal());
 	}
 	
+	/**
+	 * Stores the wire connections of all tiles as packed long values (see 
+	 * WireConnection.pack()) so they can be iterated with a 
+	 * WireConnectionCursor without dereferencing a WireConnection object 
+	 * per connection.  Tiles sharing connection arrays share the packed 
+	 * arrays as well.  Any lazily loaded tile wires are decoded first.
+	 * @param releaseObjects If true, the WireConnection arrays of the tiles are
+	 * dropped to reduce the memory footprint of the device.  
+	 * Tile.getWireConnections() then creates new objects on every call, so 
+	 * this should only be used when the connections are read with cursors.
+	 */
+	public void packWireConnections(boolean releaseObjects){
+		IdentityHashMap<WireConnection[], long[]> shared = new IdentityHashMap<WireConnection[], long[]>();
+		IdentityHashMap<WireHashMap, Boolean> packedMaps = new IdentityHashMap<WireHashMap, Boolean>();
+		for(Tile[] tileArray : tiles){
+			for(Tile t : tileArray){
+				WireHashMap map = t.getWireHashMap();
+				if(map == null || packedMaps.put(map, Boolean.TRUE) != null) continue;
+				map.pack(shared, releaseObjects);
+			}
+		}
+		wireConnectionsPacked = true;
+	}
+	
+	/**
+	 * @return True if the wire connections of this device have been packed
+	 * with packWireConnections().
+	 */
+	public boolean isWireConnectionsPacked(){
+		return wireConnectionsPacked;
+	}
+	
 	
 	//========================================================================//
 	// Object Population Methods
@@ -961,7 +1041,8 @@ public class Device implements Serializable{
 			hos.writeInt(tileSinksPool.getEnumerations().size());
 			for(TileSinks s : tileSinksPool.getEnumerations()){
 				hos.writeInt(s.sinks.size());
-				for(Integer key: s.sinks.keySet()) {
+				for(IntIterator it = s.sinks.keyIterator(); it.hasNext();) {
+					int key = it.next();
 					SinkPin sp = s.sinks.get(key);
 					hos.writeInt(key);
 					hos.writeInt(sp.switchMatrixSinkWire);
@@ -1120,7 +1201,7 @@ public class Device implements Serializable{
 			for(int i=0; i < wires.length; i++){
 				int part1 = his.readInt();
 				int part2 = his.readInt();
-				wires[i] = new WireConnection(0x7FFFFFFF&part1,part2 >> 16,(part2 << 16) >> 16,(part1 & 0x80000000) == 0x80000000);
+				wires[i] = WireConnection.unpack(((long) part1 << 32) | (part2 & 0xFFFFFFFFL));
 			}
 
 			//=======================================================//
@@ -1137,12 +1218,6 @@ public class Device implements Serializable{
 				wireArrays.add(tmp);
 			}
 			
-			//Create a set of Integer objects to avoid duplication
-			Integer[] allInts = new Integer[getFamilyWireCount(fileName)];
-			for (int i = 0; i < allInts.length; i++) {
-				allInts[i] = new Integer(i);
-			}
-			
 			//=======================================================//
 			/* - wireConnectionPool -                                */
 			//=======================================================//
@@ -1156,12 +1231,12 @@ public class Device implements Serializable{
 			/* - tileSinksPool -                                     */
 			//=======================================================//
 			size = his.readInt();
-			ArrayList<HashMap<Integer,SinkPin>> sinks = new ArrayList<HashMap<Integer,SinkPin>>();
+			ArrayList<SinkHashMap> sinks = new ArrayList<SinkHashMap>();
 			for(int i=0; i < size; i++){
 				int length = his.readInt();
-				HashMap<Integer,SinkPin> tmp = new HashMap<Integer,SinkPin>();
+				SinkHashMap tmp = new SinkHashMap(length);
 				for(int j = 0; j < length; j++){
-					tmp.put(allInts[his.readInt()], new SinkPin(his.readInt(),his.readInt()));
+					tmp.put(his.readInt(), new SinkPin(his.readInt(),his.readInt()));
 				}
 				sinks.add(tmp);
 			}
@@ -1231,7 +1306,7 @@ public class Device implements Serializable{
 			size = his.readInt();
 			ArrayList<HashMap<String,Integer>> primitivePinMaps = new ArrayList<HashMap<String,Integer>>(); 
 			for(int i=0; i < size; i++){
-				primitivePinMaps.add(FileTools.readHashMap(his, allInts));
+				primitivePinMaps.add(FileTools.readHashMap(his));
 			}
 			
 			//=======================================================//
@@ -1274,6 +1349,7 @@ public class Device implements Serializable{
 			reconstructTileMap();
 			
 			his.close();
+			sourceFileName = fileName;
 		} 
 		catch (FileNotFoundException e){
 			return false;
@@ -1284,7 +1360,378 @@ public class Device implements Serializable{
 		
 		return true;
 	}
-	
+
+	//========================================================================//
+	// Reading Writing Methods from/to Memory Mapped File
+	//========================================================================//
+	/**
+	 * This function writes the device to the memory mapped device file format
+	 * (see MappedDeviceFile).  The pools are recomputed from the tiles so this
+	 * works on a device loaded with readDeviceFromCompactFile() as well as one
+	 * freshly created from an XDLRC file.  The file can only be read by using
+	 * the corresponding function readDeviceFromMappedFile().
+	 * @param fileName Name of the file to create.
+	 * @param sourceFileName Name of the compact device file this device was
+	 * read from, used to detect when the mapped file is out of date.
+	 * @return True if operation is successful, false otherwise.
+	 */
+	public boolean writeDeviceToMappedFile(String fileName, String sourceFileName){
+		Object[] sections = new Object[MappedDeviceFile.Section.values().length];
+		MappedDeviceFile.StringTable strings = new MappedDeviceFile.StringTable();
+		HashPool<WireConnection> wires = new HashPool<WireConnection>();
+		HashPool<WireArray> wireArrays = new HashPool<WireArray>();
+		HashPool<TileSinks> sinks = new HashPool<TileSinks>();
+		HashPool<TileSources> sources = new HashPool<TileSources>();
+		HashPool<PrimitivePinMap> pinMaps = new HashPool<PrimitivePinMap>();
+		// Loaded devices share the wire maps between tiles, check identity first
+		IdentityHashMap<WireHashMap,Integer> tileWireIds = new IdentityHashMap<WireHashMap,Integer>();
+		HashPool<TileWires> tileWires = new HashPool<TileWires>();
+		ArrayList<int[]> tileWireEntries = new ArrayList<int[]>();
+
+		//=======================================================//
+		/* public Tile[][] tiles;                                */
+		//=======================================================//
+		int[] tileRecords = new int[rows*columns*MappedDeviceFile.TILE_RECORD_SIZE];
+		int index = 0;
+		for(Tile[] tileArray : tiles){
+			for(Tile t : tileArray){
+				tileRecords[index++] = strings.add(t.getName());
+				tileRecords[index++] = t.getType().ordinal();
+
+				TileSinks ts = sinks.add(new TileSinks(t.getSinks() == null ? new SinkHashMap() : t.getSinks()));
+				tileRecords[index++] = sinks.getEnumerationValue(ts);
+
+				TileSources src = sources.add(new TileSources(t.getSources()));
+				tileRecords[index++] = sources.getEnumerationValue(src);
+
+				WireHashMap map = t.getWireHashMap();
+				Integer wiresId = map == null ? null : tileWireIds.get(map);
+				if(wiresId == null){
+					TileWires tw = new TileWires(map);
+					if(!tileWires.contains(tw)){
+						tileWires.add(tw);
+						int[] entry = new int[map == null ? 0 : map.size()*2];
+						if(map != null){
+							int i = 0;
+							for(int key : map.keys){
+								if(key == -1) continue;
+								WireConnection[] conns = map.get(key);
+								for(WireConnection w : conns){
+									wires.add(w);
+								}
+								entry[i++] = key;
+								entry[i++] = wireArrays.getEnumerationValue(wireArrays.add(new WireArray(conns)));
+							}
+						}
+						tileWireEntries.add(entry);
+					}
+					wiresId = tileWires.getEnumerationValue(tw);
+					if(map != null) tileWireIds.put(map, wiresId);
+				}
+				tileRecords[index++] = wiresId;
+				tileRecords[index++] = t.getPrimitiveSites() == null ? 0 : t.getPrimitiveSites().length;
+			}
+		}
+		sections[MappedDeviceFile.Section.TILES.ordinal()] = tileRecords;
+
+		//=======================================================//
+		/* - wirePool -                                          */
+		//=======================================================//
+		for(WireConnection w : routeThroughMap.keySet()){
+			wires.add(w);
+		}
+		int[] wireSection = new int[1 + wires.getEnumerations().size()*2];
+		wireSection[0] = wires.getEnumerations().size();
+		index = 1;
+		for(WireConnection w : wires.getEnumerations()){
+			int mask = w.isPIP() ? 0x80000000 : 0x0;
+			wireSection[index++] = mask | w.getWire();
+			wireSection[index++] = (w.getRowOffset() << 16) | (w.getColumnOffset() & 0xFFFF);
+		}
+		sections[MappedDeviceFile.Section.WIRES.ordinal()] = wireSection;
+
+		//=======================================================//
+		/* - wireArrayPool -                                     */
+		//=======================================================//
+		ArrayList<int[]> entries = new ArrayList<int[]>(wireArrays.getEnumerations().size());
+		for(WireArray wireArray : wireArrays.getEnumerations()){
+			int[] entry = new int[wireArray.array.length];
+			for(int i=0; i < entry.length; i++){
+				entry[i] = wires.getEnumerationValue(wireArray.array[i]);
+			}
+			entries.add(entry);
+		}
+		sections[MappedDeviceFile.Section.WIRE_ARRAYS.ordinal()] = MappedDeviceFile.createPoolSection(entries);
+
+		//=======================================================//
+		/* - tileSinksPool -                                     */
+		//=======================================================//
+		entries = new ArrayList<int[]>(sinks.getEnumerations().size());
+		for(TileSinks s : sinks.getEnumerations()){
+			int[] entry = new int[s.sinks.size()*3];
+			int i = 0;
+			for(IntIterator it = s.sinks.keyIterator(); it.hasNext();){
+				int key = it.next();
+				SinkPin sp = s.sinks.get(key);
+				entry[i++] = key;
+				entry[i++] = sp.switchMatrixSinkWire;
+				entry[i++] = sp.switchMatrixTileOffset;
+			}
+			entries.add(entry);
+		}
+		sections[MappedDeviceFile.Section.TILE_SINKS.ordinal()] = MappedDeviceFile.createPoolSection(entries);
+
+		//=======================================================//
+		/* - tileSourcesPool -                                   */
+		//=======================================================//
+		entries = new ArrayList<int[]>(sources.getEnumerations().size());
+		for(TileSources s : sources.getEnumerations()){
+			entries.add(s.sources == null ? new int[0] : s.sources);
+		}
+		sections[MappedDeviceFile.Section.TILE_SOURCES.ordinal()] = MappedDeviceFile.createPoolSection(entries);
+
+		//=======================================================//
+		/* - tileWiresPool -                                     */
+		//=======================================================//
+		sections[MappedDeviceFile.Section.TILE_WIRES.ordinal()] = MappedDeviceFile.createPoolSection(tileWireEntries);
+
+		//=======================================================//
+		/* public HashMap<String,Primitive> primitives;          */
+		//=======================================================//
+		int[] siteSection = new int[1 + primitiveSites.size()*4];
+		siteSection[0] = primitiveSites.size();
+		index = 1;
+		for(Tile[] tileArray : tiles){
+			for(Tile t : tileArray){
+				if(t.getPrimitiveSites() == null) continue;
+				for(PrimitiveSite p : t.getPrimitiveSites()){
+					PrimitivePinMap map = pinMaps.add(new PrimitivePinMap(p.getPins()));
+					siteSection[index++] = strings.add(p.getName());
+					siteSection[index++] = p.getType().ordinal();
+					siteSection[index++] = t.getUniqueAddress();
+					siteSection[index++] = pinMaps.getEnumerationValue(map);
+				}
+			}
+		}
+		sections[MappedDeviceFile.Section.PRIMITIVE_SITES.ordinal()] = siteSection;
+
+		//=======================================================//
+		/* - primitivePinPool -                                  */
+		//=======================================================//
+		entries = new ArrayList<int[]>(pinMaps.getEnumerations().size());
+		for(PrimitivePinMap map : pinMaps.getEnumerations()){
+			int[] entry = new int[map.pins.size()*2];
+			int i = 0;
+			for(String pin : map.pins.keySet()){
+				entry[i++] = strings.add(pin);
+				entry[i++] = map.pins.get(pin);
+			}
+			entries.add(entry);
+		}
+		sections[MappedDeviceFile.Section.PRIMITIVE_PIN_MAPS.ordinal()] = MappedDeviceFile.createPoolSection(entries);
+
+		//=======================================================//
+		/* public HashMap<Wire,PIPRouteThrough> routeThroughMap; */
+		//=======================================================//
+		int[] routeThroughSection = new int[1 + routeThroughMap.size()*4];
+		routeThroughSection[0] = routeThroughMap.size();
+		index = 1;
+		for(WireConnection w : routeThroughMap.keySet()){
+			PIPRouteThrough p = routeThroughMap.get(w);
+			routeThroughSection[index++] = p.getType().ordinal();
+			routeThroughSection[index++] = p.getInWire();
+			routeThroughSection[index++] = p.getOutWire();
+			routeThroughSection[index++] = wires.getEnumerationValue(w);
+		}
+		sections[MappedDeviceFile.Section.ROUTE_THROUGHS.ordinal()] = routeThroughSection;
+
+		//=======================================================//
+		/* public int tileRows, tileColumns; String partName;    */
+		//=======================================================//
+		sections[MappedDeviceFile.Section.INFO.ordinal()] = new int[]{rows, columns, strings.add(partName)};
+		sections[MappedDeviceFile.Section.STRINGS.ordinal()] = MappedDeviceFile.createStringSection(strings.getStrings());
+
+		try{
+			MappedDeviceFile.write(fileName, sections, sourceFileName);
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("Error, could not write the mapped device file " + 
+				fileName + ": " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This reads from a memory mapped device file to populate all of the
+	 * essential variables of this device.  All sections are read directly
+	 * from the mapping with bulk int reads and each unique tile wire table
+	 * is only built once.  The tile sinks and wires pools are independent
+	 * sections of the file and are decoded in parallel when more than one
+	 * processor is available.  It can only be used to read files generated
+	 * with the writeDeviceToMappedFile() method.
+	 * @param fileName The name of the mapped device file.
+	 * @return True if operation was successful, false otherwise.
+	 */
+	public boolean readDeviceFromMappedFile(String fileName){
+		return readDeviceFromMappedFile(fileName, false);
+	}
+
+	/**
+	 * This reads from a memory mapped device file to populate all of the
+	 * essential variables of this device.  When lazy is true, the sinks and
+	 * wires of each tile are left in their compact form in the mapped file
+	 * and only decoded the first time the tile's getSinks(), 
+	 * getWireHashMap() or getWireConnections() are called.  This greatly 
+	 * reduces load time and heap usage when only a small region of the 
+	 * device is used.  Everything else is loaded immediately.
+	 * @param fileName The name of the mapped device file.
+	 * @param lazy True to decode tile sinks and wires on first access.
+	 * @return True if operation was successful, false otherwise.
+	 */
+	public boolean readDeviceFromMappedFile(String fileName, boolean lazy){
+		MappedDeviceFile file;
+		try{
+			file = MappedDeviceFile.open(fileName);
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("Error, could not read the mapped device file " + 
+				fileName + ": " + e.getMessage());
+			return false;
+		}
+		if(!file.isCompatible()){
+			MappedDeviceFile.printIncompatibleMessage(fileName);
+			return false;
+		}
+
+		String[] strings = file.readStrings();
+
+		//=======================================================//
+		/* public int tileRows, tileColumns; String partName;    */
+		//=======================================================//
+		IntBuffer buf = file.getIntSection(MappedDeviceFile.Section.INFO);
+		rows = buf.get();
+		columns = buf.get();
+		partName = strings[buf.get()];
+
+		//=======================================================//
+		/* - wirePool -                                          */
+		//=======================================================//
+		buf = file.getIntSection(MappedDeviceFile.Section.WIRES);
+		WireConnection[] wires = new WireConnection[buf.get()];
+		int[] packed = new int[wires.length*2];
+		buf.get(packed);
+		for(int i=0; i < wires.length; i++){
+			int part1 = packed[2*i];
+			int part2 = packed[2*i+1];
+			wires[i] = WireConnection.unpack(((long) part1 << 32) | (part2 & 0xFFFFFFFFL));
+		}
+
+		LazyTilePools pools = new LazyTilePools(file, wires);
+		if(!lazy){
+			pools.decodeAll();
+		}
+
+		//=======================================================//
+		/* - tileSourcesPool -                                   */
+		//=======================================================//
+		MappedDeviceFile.IntPool pool = file.getPool(MappedDeviceFile.Section.TILE_SOURCES);
+		int[][] sources = new int[pool.size()][];
+		for(int i=0; i < sources.length; i++){
+			sources[i] = pool.length(i) == 0 ? null : pool.getEntry(i);
+		}
+
+		//=======================================================//
+		/* public Tile[][] tiles;                                */
+		//=======================================================//
+		createTileArray();
+		buf = file.getIntSection(MappedDeviceFile.Section.TILES);
+		int[] tileRecords = new int[rows*columns*MappedDeviceFile.TILE_RECORD_SIZE];
+		buf.get(tileRecords);
+		TileType[] typeValues = TileType.values();
+		int index = 0;
+		for(Tile[] tileArray : tiles){
+			for(Tile t : tileArray){
+				t.setName(strings[tileRecords[index]]);
+				t.setType(typeValues[tileRecords[index+1]]);
+				if(lazy){
+					t.setLazyPools(pools, tileRecords[index+2], tileRecords[index+4]);
+				}
+				else{
+					t.setSinks(pools.getSinks(tileRecords[index+2]));
+					t.setWireHashMap(pools.getWireHashMap(tileRecords[index+4]));
+				}
+				t.setSources(sources[tileRecords[index+3]]);
+				t.setDevice(this);
+				index += MappedDeviceFile.TILE_RECORD_SIZE;
+			}
+		}
+
+		//=======================================================//
+		/* - primitivePinPool -                                  */
+		//=======================================================//
+		pool = file.getPool(MappedDeviceFile.Section.PRIMITIVE_PIN_MAPS);
+		ArrayList<HashMap<String,Integer>> primitivePinMaps = new ArrayList<HashMap<String,Integer>>(pool.size());
+		for(int i=0; i < pool.size(); i++){
+			int[] entry = pool.getEntry(i);
+			HashMap<String,Integer> tmp = new HashMap<String,Integer>(entry.length);
+			for(int j=0; j < entry.length; j+=2){
+				tmp.put(strings[entry[j]], entry[j+1]);
+			}
+			primitivePinMaps.add(tmp);
+		}
+
+		//=======================================================//
+		/* public HashMap<String,Primitive> primitives;          */
+		//=======================================================//
+		buf = file.getIntSection(MappedDeviceFile.Section.PRIMITIVE_SITES);
+		int[] siteRecords = new int[buf.get()*4];
+		buf.get(siteRecords);
+		PrimitiveType[] typeValues2 = PrimitiveType.values();
+		index = 0;
+		int siteIndex = 0;
+		for(Tile[] tileArray : tiles){
+			for(Tile t : tileArray){
+				int count = tileRecords[index+5];
+				index += MappedDeviceFile.TILE_RECORD_SIZE;
+				if(count == 0){
+					t.setPrimitiveSites(null);
+					continue;
+				}
+				PrimitiveSite[] p = new PrimitiveSite[count];
+				for(int i = 0; i < count; i++){
+					p[i] = new PrimitiveSite();
+					p[i].setName(strings[siteRecords[siteIndex]]);
+					p[i].setType(typeValues2[siteRecords[siteIndex+1]]);
+					p[i].setTile(getTile(siteRecords[siteIndex+2]));
+					p[i].setPins(primitivePinMaps.get(siteRecords[siteIndex+3]));
+					primitiveSites.put(p[i].getName(), p[i]);
+					siteIndex += 4;
+				}
+				t.setPrimitiveSites(p);
+			}
+		}
+
+		//=======================================================//
+		/* public HashMap<Wire,PIPRouteThrough> routeThroughMap; */
+		//=======================================================//
+		buf = file.getIntSection(MappedDeviceFile.Section.ROUTE_THROUGHS);
+		int[] routeThroughs = new int[buf.get()*4];
+		buf.get(routeThroughs);
+		for(int i=0; i < routeThroughs.length; i+=4){
+			PIPRouteThrough prt = new PIPRouteThrough(typeValues2[routeThroughs[i]],routeThroughs[i+1],routeThroughs[i+2]);
+			routeThroughMap.put(wires[routeThroughs[i+3]], prt);
+		}
+
+		//=======================================================//
+		/* - populateDeviceTileMap -                             */
+		//=======================================================//
+		reconstructTileMap();
+
+		sourceFileName = fileName;
+		return true;
+	}
+
 	/**
 	 * This method is used only for debugging purposes.
 	 * @param fileName Name of the debugging file.
@@ -1321,11 +1768,8 @@ public class Device implements Serializable{
 					}
 					
 					// Sinks
-					HashMap<Integer, SinkPin> tmp = t.getSinks();
-					Integer[] keys = new Integer[tmp.size()];
-					keys = tmp.keySet().toArray(keys);
-					Arrays.sort(keys);
-					for(Integer key : keys){
+					SinkHashMap tmp = t.getSinks();
+					for(int key : tmp.getSortedKeys()){
 						if(key == -1){
 							bw.write("  Sink: -1" + nl);
 						}
@@ -1372,12 +1816,4 @@ public class Device implements Serializable{
 			MessageGenerator.briefErrorAndExit("Error writing device debug file");
 		}
 	}
-	
-	private int getFamilyWireCount(String fileName){
-		// Return a large number.  We don't actually need the right number, just
-		// a sufficiently large number.  Largest devices tap out at under 70k wires
-		// so 100k should be plenty big without being onerous.  The alternative
-		// is to load the WireEnumerator and query it.
-		return 200000;
-	}
 }
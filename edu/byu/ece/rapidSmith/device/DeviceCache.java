@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import edu.byu.ece.rapidSmith.device.helper.LazyTilePools;
+import edu.byu.ece.rapidSmith.device.helper.MappedDeviceFile;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import edu.byu.ece.rapidSmith.util.FamilyType;
+import edu.byu.ece.rapidSmith.util.FileTools;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+import edu.byu.ece.rapidSmith.util.PartNameTools;
+
+/**
+ * Keeps several loaded devices (and the wire enumerators of their families)
+ * in memory so that designs for different parts can be processed in the same
+ * JVM without reloading the device files each time.
+ * <p>
+ * Devices are kept in least recently used order.  Whenever the estimated heap
+ * footprint of the cached devices exceeds the capacity, the least recently
+ * used devices are demoted to soft references: they can still be returned if 
+ * the garbage collector has not reclaimed them, but no longer count against 
+ * the capacity.  Loading is safe from multiple threads; only one thread loads 
+ * a given part while the others asking for it wait for the same result.
+ * <p>
+ * FileTools.loadDevice() and FileTools.loadWireEnumerator() go through the 
+ * shared instance returned by getInstance().
+ * @author Chris Lavin
+ */
+public class DeviceCache {
+	/** The shared cache used by FileTools */
+	private static DeviceCache instance = null;
+	/** Cached devices keyed by part name (without speed grade), in LRU order */
+	private LinkedHashMap<String,Entry> devices;
+	/** Cached (or loading) wire enumerators keyed by base family type */
+	private HashMap<FamilyType,FutureTask<WireEnumerator>> wireEnumerators;
+	/** Maximum estimated heap footprint (in bytes) of strongly held devices */
+	private long capacity;
+	/** Current estimated heap footprint (in bytes) of strongly held devices */
+	private long footprint;
+
+	/**
+	 * Creates a new cache.
+	 * @param capacity Maximum estimated heap footprint in bytes of the devices 
+	 * held strongly by the cache. The most recently used device is always held.
+	 */
+	public DeviceCache(long capacity){
+		this.capacity = capacity;
+		this.footprint = 0;
+		this.devices = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+		this.wireEnumerators = new HashMap<FamilyType,FutureTask<WireEnumerator>>();
+	}
+
+	/**
+	 * Gets the shared device cache.  Its capacity defaults to half of the 
+	 * maximum heap size.
+	 * @return The shared device cache.
+	 */
+	public static synchronized DeviceCache getInstance(){
+		if(instance == null){
+			instance = new DeviceCache(Runtime.getRuntime().maxMemory() / 2);
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the device for the given part, loading it if it is not in the cache.
+	 * @param partName Name of the part (speed grade is ignored).
+	 * @return The device or null if it could not be loaded.
+	 */
+	public Device getDevice(String partName){
+		return getDevice(partName, false);
+	}
+
+	/**
+	 * Gets the device for the given part, loading it if it is not in the cache.
+	 * If the part is already being loaded by another thread, this waits for 
+	 * that load to finish.
+	 * @param partName Name of the part (speed grade is ignored).
+	 * @param lazy If the device must be loaded, whether to decode tile sinks 
+	 * and wires on first access (see FileTools.loadDevice(String, boolean)).
+	 * @return The device or null if it could not be loaded.
+	 */
+	public Device getDevice(String partName, boolean lazy){
+		String name = PartNameTools.removeSpeedGrade(partName);
+		Entry entry;
+		FutureTask<Device> task;
+		boolean loader = false;
+		synchronized(this){
+			entry = devices.get(name);
+			if(entry != null && entry.loading == null){
+				Device device = entry.get();
+				if(device != null){
+					promote(entry, device);
+					return device;
+				}
+				// Collected by the garbage collector, load it again
+				devices.remove(name);
+				entry = null;
+			}
+			if(entry == null){
+				entry = new Entry(new FutureTask<Device>(new Loader(name, lazy)));
+				devices.put(name, entry);
+				loader = true;
+			}
+			// The loader clears the field when it is done, keep the task
+			task = entry.loading;
+		}
+		
+		if(loader){
+			task.run();
+		}
+		Device device = null;
+		try{
+			device = task.get();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e){
+			MessageGenerator.briefError("ERROR: Failed to load device " + name + ": " + e.getCause());
+		}
+		
+		if(loader){
+			synchronized(this){
+				entry.loading = null;
+				if(device == null){
+					devices.remove(name);
+				}
+				else{
+					entry.footprint = estimateFootprint(device);
+					promote(entry, device);
+				}
+			}
+		}
+		return device;
+	}
+
+	/**
+	 * Gets the wire enumerator for the given family, loading it if it is not
+	 * in the cache.  Wire enumerators are small and are never evicted.  As
+	 * with devices, the file is read outside of the lock of the cache and 
+	 * other threads asking for the same family wait for that read.
+	 * @param familyType The family type (the base family type is used).
+	 * @return The wire enumerator or null if it could not be loaded.
+	 */
+	public WireEnumerator getWireEnumerator(FamilyType familyType){
+		final FamilyType baseType = PartNameTools.getBaseTypeFromFamilyType(familyType);
+		FutureTask<WireEnumerator> task;
+		boolean loader = false;
+		synchronized(this){
+			task = wireEnumerators.get(baseType);
+			if(task == null){
+				task = new FutureTask<WireEnumerator>(new Callable<WireEnumerator>(){
+					public WireEnumerator call(){
+						WireEnumerator we = new WireEnumerator();
+						if(!we.readCompactEnumFile(FileTools.getWireEnumeratorFileName(baseType), baseType)){
+							return null;
+						}
+						return we;
+					}
+				});
+				wireEnumerators.put(baseType, task);
+				loader = true;
+			}
+		}
+		
+		if(loader){
+			task.run();
+		}
+		WireEnumerator we = null;
+		try{
+			we = task.get();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e){
+			MessageGenerator.briefError("ERROR: Failed to load the wire enumerator of " + baseType + ": " + e.getCause());
+		}
+		
+		if(loader && we == null){
+			// Let the next call try again
+			synchronized(this){
+				if(wireEnumerators.get(baseType) == task){
+					wireEnumerators.remove(baseType);
+				}
+			}
+		}
+		return we;
+	}
+
+	/**
+	 * Checks if a device for the part is currently held by the cache (strongly
+	 * or softly).
+	 * @param partName Name of the part (speed grade is ignored).
+	 * @return True if the device can be returned without loading it.
+	 */
+	public synchronized boolean contains(String partName){
+		Entry entry = devices.get(PartNameTools.removeSpeedGrade(partName));
+		return entry != null && entry.loading == null && entry.get() != null;
+	}
+
+	/**
+	 * Gets the part names of the devices currently held by the cache, from 
+	 * least to most recently used.
+	 * @return A list of part names.
+	 */
+	public synchronized ArrayList<String> getCachedPartNames(){
+		ArrayList<String> names = new ArrayList<String>();
+		for(Map.Entry<String,Entry> e : devices.entrySet()){
+			if(e.getValue().loading == null && e.getValue().get() != null){
+				names.add(e.getKey());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Removes a device from the cache.
+	 * @param partName Name of the part (speed grade is ignored).
+	 */
+	public synchronized void remove(String partName){
+		Entry entry = devices.get(PartNameTools.removeSpeedGrade(partName));
+		if(entry != null && entry.loading == null){
+			if(entry.device != null){
+				footprint -= entry.footprint;
+			}
+			devices.remove(PartNameTools.removeSpeedGrade(partName));
+		}
+	}
+
+	/**
+	 * Removes all devices and wire enumerators from the cache.  Devices 
+	 * currently being loaded are left alone.
+	 */
+	public synchronized void clear(){
+		Iterator<Entry> it = devices.values().iterator();
+		while(it.hasNext()){
+			if(it.next().loading == null){
+				it.remove();
+			}
+		}
+		footprint = 0;
+		wireEnumerators.clear();
+	}
+
+	/**
+	 * @return The maximum estimated heap footprint in bytes of strongly held devices.
+	 */
+	public synchronized long getCapacity(){
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum estimated heap footprint of strongly held devices, 
+	 * demoting least recently used devices if necessary.
+	 * @param capacity The new capacity in bytes.
+	 */
+	public synchronized void setCapacity(long capacity){
+		this.capacity = capacity;
+		enforceCapacity(null);
+	}
+
+	/**
+	 * @return The current estimated heap footprint in bytes of strongly held devices.
+	 */
+	public synchronized long getFootprint(){
+		return footprint;
+	}
+
+	/**
+	 * Makes the entry strongly held and the most recently used, then demotes
+	 * others if the capacity is exceeded.
+	 */
+	private void promote(Entry entry, Device device){
+		if(entry.device == null){
+			entry.device = device;
+			entry.soft = null;
+			footprint += entry.footprint;
+		}
+		enforceCapacity(entry);
+	}
+
+	/**
+	 * Demotes least recently used devices to soft references until the 
+	 * footprint fits in the capacity.
+	 * @param keep An entry which should not be demoted (may be null).
+	 */
+	private void enforceCapacity(Entry keep){
+		Iterator<Entry> it = devices.values().iterator();
+		while(footprint > capacity && it.hasNext()){
+			Entry e = it.next();
+			if(e == keep || e.device == null) continue;
+			e.soft = new SoftReference<Device>(e.device);
+			e.device = null;
+			footprint -= e.footprint;
+		}
+	}
+
+	/**
+	 * Estimates the heap used by a device by walking its shared structures.
+	 * The wires of a lazily loaded device are counted as if every tile had
+	 * been decoded, since the device grows to that size as it is used.  Wire
+	 * maps which have been packed are counted by their packed arrays, and by
+	 * their connection arrays only if those were kept.
+	 * @param device The device to estimate.
+	 * @return An estimate of the number of bytes used by the device.
+	 */
+	public static long estimateFootprint(Device device){
+		long bytes = 0;
+		IdentityHashMap<Object,Object> seen = new IdentityHashMap<Object,Object>();
+		for(Tile[] tiles : device.getTiles()){
+			bytes += 16 + 4 * tiles.length;
+			for(Tile t : tiles){
+				bytes += 80 + 40 + 2 * t.getName().length();
+				if(t.getSources() != null && seen.put(t.getSources(), t) == null){
+					bytes += 16 + 4 * t.getSources().length;
+				}
+				if(t.getPrimitiveSites() != null){
+					bytes += 16 + 4 * t.getPrimitiveSites().length;
+					bytes += t.getPrimitiveSites().length * (40 + 40 + 32);
+				}
+				LazyTilePools pools = t.getLazyPools();
+				if(pools != null){
+					if(seen.put(pools, t) == null){
+						bytes += pools.estimateDecodedSize();
+					}
+					continue;
+				}
+				WireHashMap wires = t.getWireHashMap();
+				if(wires == null || seen.put(wires, t) != null) continue;
+				bytes += 64 + 4 * wires.keys.length;
+				if(wires.values != null){
+					bytes += 4 * wires.values.length;
+					for(WireConnection[] conns : wires.values){
+						if(conns != null && seen.put(conns, t) == null){
+							bytes += 16 + 4 * conns.length;
+						}
+					}
+				}
+				if(wires.isPacked()){
+					bytes += 4 * wires.keys.length;
+					for(int key : wires.keys){
+						if(key == -1) continue;
+						long[] packed = wires.getPacked(key);
+						if(packed != null && seen.put(packed, t) == null){
+							bytes += 16 + 8 * packed.length;
+						}
+					}
+				}
+			}
+		}
+		// Tile and site name lookups
+		bytes += 2 * 48L * device.getPrimitiveSites().size();
+		return bytes;
+	}
+
+	/**
+	 * A cached device, either strongly held, softly held or being loaded.
+	 */
+	private static class Entry {
+		/** Set while the device is being loaded */
+		FutureTask<Device> loading;
+		/** The device if strongly held */
+		Device device;
+		/** The device if demoted */
+		SoftReference<Device> soft;
+		/** Estimated heap usage of the device in bytes */
+		long footprint;
+
+		Entry(FutureTask<Device> loading){
+			this.loading = loading;
+		}
+
+		Device get(){
+			if(device != null) return device;
+			return soft == null ? null : soft.get();
+		}
+	}
+
+	/**
+	 * Reads a device from disk, preferring the memory mapped device file.
+	 */
+	private static class Loader implements Callable<Device> {
+		private String partName;
+		private boolean lazy;
+
+		Loader(String partName, boolean lazy){
+			this.partName = partName;
+			this.lazy = lazy;
+		}
+
+		@Override
+		public Device call(){
+			String mappedPath = FileTools.getMappedDeviceFileName(partName);
+			String compactPath = FileTools.getDeviceFileName(partName);
+			if(new File(mappedPath).exists() && isCurrent(mappedPath, compactPath)){
+				Device device = new Device();
+				if(device.readDeviceFromMappedFile(mappedPath, lazy)){
+					device.setWireEnumerator(getInstance().getWireEnumerator(device.getFamilyType()));
+					return device;
+				}
+			}
+			Device device = new Device();
+			if(!device.readDeviceFromCompactFile(compactPath)){
+				return null;
+			}
+			device.setWireEnumerator(getInstance().getWireEnumerator(device.getFamilyType()));
+			return device;
+		}
+
+		private static boolean isCurrent(String mappedPath, String compactPath){
+			try{
+				if(MappedDeviceFile.matchesSource(mappedPath, compactPath)){
+					return true;
+				}
+				MappedDeviceFile.printOutOfDateMessage(mappedPath);
+			}
+			catch(IOException e){
+				MessageGenerator.briefError("Error, could not read the mapped device file " + 
+					mappedPath + ": " + e.getMessage());
+			}
+			return false;
+		}
+	}
+}
@@ -230,58 +230,26 @@ public class DeviceFilesCreator{
 		// Create XDLRC File if it already hasn't been created
 		String xdlrcFileName = createXDLRC(partName);
 		try{
-			// Initialize Parser
+			// Parse XDLRC File, the parser pools tile resources as each tile
+			// is completed so the whole device is never held in expanded form
 			XDLRCParser parser = new XDLRCParser();
+			Device dev = parser.parseXDLRC(xdlrcFileName, createPrimitiveDefs);
 			
-			// Parse XDLRC File
-			parser.parseXDLRC(xdlrcFileName, createPrimitiveDefs);
-			
-			// Write out primitiveDefs
+			// Write out primitiveDefs and release them with the parser
 			if(createPrimitiveDefs){
 				FileTools.saveToCompressedFile(parser.getPrimitiveDefs(), primitiveDefsFileName);
 			}
-			
-			// Write the Device to File
-			parser.getDevice().writeDeviceToCompactFile(deviceFileName);
-
-			// reload the device
-			Device dev = FileTools.loadDevice(partName);
+			parser = null;
 
 			// Remove backwards edges
 			addMissingWireConnections(dev, we);
 			removeBackwardsEdgesFromDevice(dev, we);
 
-			// Add all wires to wirePool for file creation
-			for(Tile[] tileArray : dev.tiles){
-				for(Tile t : tileArray){
-					if(t.getWireHashMap() == null) continue;
-					for(WireConnection[] wires : t.getWireHashMap().values()){
-						if(wires == null) continue;
-						for(int i = 0; i < wires.length; i++){
-							wires[i] = dev.wirePool.add(wires[i]);
-						}
-					}
-				}
-			}
-
 			// Rebuild pools for file creation
-			for(Tile[] tileArray : dev.tiles){
-				for(Tile t : tileArray){
-					dev.incrementalRemoveDuplicateTileResources(t, we);
-				}
-			}
-			for(WireConnection w : dev.routeThroughMap.keySet()){
-				PIPRouteThrough p = dev.routeThroughPool.add(dev.getRouteThrough(w));
-				dev.routeThroughMap.put(w, p);
-			}
-			dev.createWireConnectionEnumeration();
-			dev.removeDuplicatePrimitivePinMaps();
-			dev.populateSinkPins(we);
-			dev.removeDuplicateTileSinks(we);
-			dev.debugPoolCounts();
+			rebuildObjectPools(dev, we);
 
-			// Overwrite old file
-			dev.writeDeviceToCompactFile(FileTools.getDeviceFileName(partName));
+			// Write the Device to File
+			dev.writeDeviceToCompactFile(deviceFileName);
 
 			// Delete XDLRC file
 			FileTools.deleteFile(xdlrcFileName);
@@ -295,6 +263,47 @@ public class DeviceFilesCreator{
 		}
 	}
 	
+	/**
+	 * Rebuilds the object pools of a device after its tile resources have been 
+	 * modified (such as by removeBackwardsEdgesFromDevice()).  The old pools 
+	 * still hold the resources from parsing and are discarded so that only
+	 * resources used by the device are written to the device file.
+	 * @param dev The device to rebuild the pools of.
+	 * @param we Wire Enumerator corresponding to the device's family.
+	 */
+	private static void rebuildObjectPools(Device dev, WireEnumerator we){
+		dev.resetObjectPools();
+
+		// Add all wires to wirePool for file creation
+		for(Tile[] tileArray : dev.tiles){
+			for(Tile t : tileArray){
+				if(t.getWireHashMap() == null) continue;
+				for(WireConnection[] wires : t.getWireHashMap().values()){
+					if(wires == null) continue;
+					for(int i = 0; i < wires.length; i++){
+						wires[i] = dev.wirePool.add(wires[i]);
+					}
+				}
+			}
+		}
+
+		// Rebuild pools for file creation
+		for(Tile[] tileArray : dev.tiles){
+			for(Tile t : tileArray){
+				dev.incrementalRemoveDuplicateTileResources(t, we);
+			}
+		}
+		for(WireConnection w : dev.routeThroughMap.keySet()){
+			PIPRouteThrough p = dev.routeThroughPool.add(dev.getRouteThrough(w));
+			dev.routeThroughMap.put(w, p);
+		}
+		dev.createWireConnectionEnumeration();
+		dev.removeDuplicatePrimitivePinMaps();
+		dev.populateSinkPins(we);
+		dev.removeDuplicateTileSinks(we);
+		dev.debugPoolCounts();
+	}
+	
 	/**
 	 * Helper method to remove wires from an array and return a new array without the wire.
 	 * @param currentArray The current array.
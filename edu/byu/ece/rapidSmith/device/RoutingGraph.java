@@ -0,0 +1,622 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+
+/**
+ * The routing resources of a device as a flat graph in compressed sparse
+ * row (CSR) form.  Each node is a wire in a tile and has an int id, each
+ * edge is a wire connection and has an int id.  Nodes are numbered by tile
+ * (in the order of Tile.getUniqueAddress()) and by wire within each tile,
+ * so the nodes of a tile have consecutive ids.  The edges leaving a node
+ * have the ids getFirstEdge(node) up to (not including) getLastEdge(node)
+ * and are in the same order as the connections of the wire in its tile,
+ * except that connections leading outside of the device are left out.
+ *
+ * The graph has a node for every wire of a tile that has connections, is a
+ * source of the tile or is reached by a connection.  Each edge has flags
+ * telling if it is a PIP and if it is a route through, and the type and
+ * direction of the wire of each node are available without the wire
+ * enumerator.
+ *
+ * Building the graph walks every connection of the device once, so it is
+ * usually saved to a file next to the device file and loaded from there
+ * (see FileTools.loadRoutingGraph()).  The file stores the length and
+ * modification time of the device file it was built from so stale files
+ * can be detected.  The graph is read only once built and can be shared
+ * between threads.
+ *
+ * None of the routers use the graph yet, they still search with
+ * RouteSearch over Tile.getWireConnections().
+ */
+public class RoutingGraph {
+	/** Identifies a RapidSmith routing graph file ("RSRG") */
+	public static final int MAGIC = 0x52535247;
+	/** The current version of the routing graph file layout */
+	public static final int FORMAT_VERSION = 1;
+
+	/** Edge flag set when the connection is a PIP */
+	public static final byte EDGE_PIP = 0x1;
+	/** Edge flag set when the connection is a route through a primitive site */
+	public static final byte EDGE_ROUTE_THROUGH = 0x2;
+
+	/** Size of the buffer used to read and write the arrays of a graph file */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The device of the graph */
+	private Device dev;
+	/** Number of columns of the device, used to compute tile addresses */
+	private int columns;
+	/** Id of the first node of each tile by tile address, the last entry is the node count */
+	private int[] tileNodes;
+	/** The tile address of each node */
+	private int[] nodeTiles;
+	/** The wire of each node, sorted within the nodes of a tile */
+	private int[] nodeWires;
+	/** Id of the first edge of each node, the last entry is the edge count */
+	private int[] edgeOffsets;
+	/** The node each edge leads to */
+	private int[] edgeTargets;
+	/** The EDGE_* flags of each edge */
+	private byte[] edgeFlags;
+	/** The WireType ordinal of each wire enumeration, by wire */
+	private byte[] wireTypes;
+	/** The WireDirection ordinal of each wire enumeration, by wire */
+	private byte[] wireDirections;
+	/** Length of the device file the graph was built from, 0 if unknown */
+	private long sourceLength;
+	/** Modification time of the device file the graph was built from, 0 if unknown */
+	private long sourceModified;
+
+	private RoutingGraph(Device dev){
+		this.dev = dev;
+		this.columns = dev.getColumns();
+	}
+
+	/**
+	 * Builds the routing graph of a device by visiting every wire
+	 * connection of every tile.
+	 * @param dev The device to build the graph of.
+	 * @return The new routing graph.
+	 */
+	public static RoutingGraph build(Device dev){
+		RoutingGraph g = new RoutingGraph(dev);
+		int tileCount = dev.getRows() * dev.getColumns();
+		WireConnectionCursor cursor = new WireConnectionCursor();
+
+		// Wires with connections and sources of each tile
+		int[][] tileWires = new int[tileCount][];
+		for(int t = 0; t < tileCount; t++){
+			Tile tile = dev.getTile(t);
+			int[] sources = tile.getSources();
+			int[] wires = new int[sources == null ? 8 : sources.length + 8];
+			int size = 0;
+			for(IntIterator it = tile.getWireIterator(); it.hasNext();){
+				if(size == wires.length) wires = Arrays.copyOf(wires, size * 2);
+				wires[size++] = it.next();
+			}
+			if(sources != null){
+				for(int s : sources){
+					if(size == wires.length) wires = Arrays.copyOf(wires, size * 2);
+					wires[size++] = s;
+				}
+			}
+			tileWires[t] = sortUnique(wires, size);
+		}
+
+		// Wires only reached by connections of other wires
+		int[][] extraWires = new int[tileCount][];
+		int[] extraCounts = new int[tileCount];
+		for(int t = 0; t < tileCount; t++){
+			Tile tile = dev.getTile(t);
+			for(IntIterator it = tile.getWireIterator(); it.hasNext();){
+				for(tile.getWireConnections(it.next(), cursor); cursor.next();){
+					int target = g.getTileAddress(cursor.getTileRow(), cursor.getTileColumn());
+					if(target == -1) continue;
+					int wire = cursor.getWire();
+					if(Arrays.binarySearch(tileWires[target], wire) >= 0) continue;
+					int[] extra = extraWires[target];
+					if(extra == null){
+						extra = extraWires[target] = new int[4];
+					}
+					else if(extraCounts[target] == extra.length){
+						extra = extraWires[target] = Arrays.copyOf(extra, extra.length * 2);
+					}
+					extra[extraCounts[target]++] = wire;
+				}
+			}
+		}
+
+		// Number the nodes
+		g.tileNodes = new int[tileCount + 1];
+		int nodeCount = 0;
+		for(int t = 0; t < tileCount; t++){
+			if(extraWires[t] != null){
+				int[] wires = Arrays.copyOf(tileWires[t], tileWires[t].length + extraCounts[t]);
+				System.arraycopy(extraWires[t], 0, wires, tileWires[t].length, extraCounts[t]);
+				tileWires[t] = sortUnique(wires, wires.length);
+				extraWires[t] = null;
+			}
+			g.tileNodes[t] = nodeCount;
+			nodeCount += tileWires[t].length;
+		}
+		g.tileNodes[tileCount] = nodeCount;
+		g.nodeTiles = new int[nodeCount];
+		g.nodeWires = new int[nodeCount];
+		int maxWire = -1;
+		for(int t = 0; t < tileCount; t++){
+			int base = g.tileNodes[t];
+			int[] wires = tileWires[t];
+			for(int i = 0; i < wires.length; i++){
+				g.nodeTiles[base + i] = t;
+				g.nodeWires[base + i] = wires[i];
+				if(wires[i] > maxWire) maxWire = wires[i];
+			}
+			tileWires[t] = null;
+		}
+
+		// Count and then fill in the edges
+		g.edgeOffsets = new int[nodeCount + 1];
+		long edgeCount = 0;
+		for(int n = 0; n < nodeCount; n++){
+			g.edgeOffsets[n] = (int) edgeCount;
+			Tile tile = dev.getTile(g.nodeTiles[n]);
+			for(tile.getWireConnections(g.nodeWires[n], cursor); cursor.next();){
+				if(g.getTileAddress(cursor.getTileRow(), cursor.getTileColumn()) != -1) edgeCount++;
+			}
+			if(edgeCount > Integer.MAX_VALUE){
+				throw new IllegalStateException("Too many wire connections for a routing graph: " + dev.getPartName());
+			}
+		}
+		g.edgeOffsets[nodeCount] = (int) edgeCount;
+		g.edgeTargets = new int[(int) edgeCount];
+		g.edgeFlags = new byte[(int) edgeCount];
+		boolean hasRouteThroughs = !dev.getRouteThroughMap().isEmpty();
+		int e = 0;
+		for(int n = 0; n < nodeCount; n++){
+			Tile tile = dev.getTile(g.nodeTiles[n]);
+			for(tile.getWireConnections(g.nodeWires[n], cursor); cursor.next();){
+				int target = g.getTileAddress(cursor.getTileRow(), cursor.getTileColumn());
+				if(target == -1) continue;
+				g.edgeTargets[e] = g.findNode(target, cursor.getWire());
+				byte flags = 0;
+				if(cursor.isPIP()){
+					flags |= EDGE_PIP;
+					if(hasRouteThroughs && dev.isRouteThrough(cursor.getWireConnection())){
+						flags |= EDGE_ROUTE_THROUGH;
+					}
+				}
+				g.edgeFlags[e] = flags;
+				e++;
+			}
+		}
+
+		// Wire types and directions
+		WireEnumerator we = dev.getWireEnumerator();
+		g.wireTypes = new byte[maxWire + 1];
+		g.wireDirections = new byte[maxWire + 1];
+		for(int w = 0; w <= maxWire; w++){
+			g.wireTypes[w] = (byte) we.getWireType(w).ordinal();
+			g.wireDirections[w] = (byte) we.getWireDirection(w).ordinal();
+		}
+		return g;
+	}
+
+	/**
+	 * Sorts the first size values of an array and removes duplicates.
+	 * @return A new array of the distinct values in ascending order.
+	 */
+	private static int[] sortUnique(int[] values, int size){
+		Arrays.sort(values, 0, size);
+		int unique = 0;
+		for(int i = 0; i < size; i++){
+			if(unique == 0 || values[i] != values[unique - 1]){
+				values[unique++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, unique);
+	}
+
+	private int getTileAddress(int row, int column){
+		if(row < 0 || column < 0 || row >= dev.getRows() || column >= columns) return -1;
+		return row * columns + column;
+	}
+
+	private int findNode(int tileAddress, int wire){
+		int first = tileNodes[tileAddress];
+		int i = Arrays.binarySearch(nodeWires, first, tileNodes[tileAddress + 1], wire);
+		return i < 0 ? -1 : i;
+	}
+
+	/*
+	 * Nodes
+	 */
+
+	/**
+	 * @return The device of this graph.
+	 */
+	public Device getDevice(){
+		return dev;
+	}
+
+	/**
+	 * @return The number of nodes of the graph.
+	 */
+	public int getNodeCount(){
+		return nodeWires.length;
+	}
+
+	/**
+	 * Gets the id of the node of a wire in a tile.
+	 * @param tile The tile of the wire.
+	 * @param wire The wire.
+	 * @return The id of the node or -1 if the wire is not part of the graph.
+	 */
+	public int getNodeId(Tile tile, int wire){
+		return findNode(tile.getUniqueAddress(), wire);
+	}
+
+	/**
+	 * Gets the id of the node of a wire in a tile.
+	 * @param row The row of the tile.
+	 * @param column The column of the tile.
+	 * @param wire The wire.
+	 * @return The id of the node or -1 if the tile is outside of the device
+	 * or the wire is not part of the graph.
+	 */
+	public int getNodeId(int row, int column, int wire){
+		int address = getTileAddress(row, column);
+		return address == -1 ? -1 : findNode(address, wire);
+	}
+
+	/**
+	 * Gets the ids of the nodes of a tile, they are consecutive and ordered
+	 * by wire.
+	 * @param tile The tile.
+	 * @return The id of the first node of the tile.
+	 */
+	public int getFirstNode(Tile tile){
+		return tileNodes[tile.getUniqueAddress()];
+	}
+
+	/**
+	 * @return The id after the last node of the tile.
+	 */
+	public int getLastNode(Tile tile){
+		return tileNodes[tile.getUniqueAddress() + 1];
+	}
+
+	/**
+	 * @return The unique address (see Tile.getUniqueAddress()) of the tile
+	 * of a node.
+	 */
+	public int getNodeTileAddress(int node){
+		return nodeTiles[node];
+	}
+
+	public int getNodeRow(int node){
+		return nodeTiles[node] / columns;
+	}
+
+	public int getNodeColumn(int node){
+		return nodeTiles[node] % columns;
+	}
+
+	public Tile getNodeTile(int node){
+		return dev.getTile(nodeTiles[node]);
+	}
+
+	public int getNodeWire(int node){
+		return nodeWires[node];
+	}
+
+	public WireType getNodeWireType(int node){
+		return WireType.values()[wireTypes[nodeWires[node]]];
+	}
+
+	public WireDirection getNodeWireDirection(int node){
+		return WireDirection.values()[wireDirections[nodeWires[node]]];
+	}
+
+	/*
+	 * Edges
+	 */
+
+	/**
+	 * @return The number of edges of the graph.
+	 */
+	public int getEdgeCount(){
+		return edgeTargets.length;
+	}
+
+	/**
+	 * @return The id of the first edge leaving a node.
+	 */
+	public int getFirstEdge(int node){
+		return edgeOffsets[node];
+	}
+
+	/**
+	 * @return The id after the last edge leaving a node.
+	 */
+	public int getLastEdge(int node){
+		return edgeOffsets[node + 1];
+	}
+
+	/**
+	 * @return The number of edges leaving a node.
+	 */
+	public int getFanout(int node){
+		return edgeOffsets[node + 1] - edgeOffsets[node];
+	}
+
+	/**
+	 * Gets the node an edge leaves from.  This is a binary search over the
+	 * nodes, loops over the edges of a node should keep track of the node
+	 * instead.
+	 * @param edge The edge.
+	 * @return The node the edge leaves from.
+	 */
+	public int getEdgeSource(int edge){
+		int low = 0;
+		int high = nodeWires.length - 1;
+		while(low < high){
+			int mid = (low + high + 1) >>> 1;
+			if(edgeOffsets[mid] <= edge) low = mid;
+			else high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * @return The node an edge leads to.
+	 */
+	public int getEdgeTarget(int edge){
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * @return The EDGE_* flags of an edge.
+	 */
+	public byte getEdgeFlags(int edge){
+		return edgeFlags[edge];
+	}
+
+	public boolean isEdgePIP(int edge){
+		return (edgeFlags[edge] & EDGE_PIP) != 0;
+	}
+
+	public boolean isEdgeRouteThrough(int edge){
+		return (edgeFlags[edge] & EDGE_ROUTE_THROUGH) != 0;
+	}
+
+	/*
+	 * Files
+	 */
+
+	/**
+	 * @return The length of the device file the graph was built from, 0 if
+	 * unknown.
+	 */
+	public long getSourceLength(){
+		return sourceLength;
+	}
+
+	/**
+	 * @return The modification time of the device file the graph was built
+	 * from, 0 if unknown.
+	 */
+	public long getSourceModified(){
+		return sourceModified;
+	}
+
+	/**
+	 * Sets the length and modification time of the device file the graph
+	 * was built from, they are saved with the graph.
+	 */
+	public void setSource(long length, long modified){
+		this.sourceLength = length;
+		this.sourceModified = modified;
+	}
+
+	/**
+	 * Saves the graph to a file.  The file layout is:
+	 * <pre>
+	 * int    magic
+	 * int    format version
+	 * UTF    part name
+	 * long   device file length, long device file modification time
+	 * int    rows, int columns, int node count, int edge count, int wire count
+	 * int[]  first node of each tile (rows*columns+1)
+	 * int[]  wire of each node
+	 * int[]  first edge of each node (node count+1)
+	 * int[]  target node of each edge
+	 * byte[] flags of each edge
+	 * byte[] wire type and byte[] wire direction of each wire
+	 * </pre>
+	 * All values are big-endian.
+	 * @param fileName Name of the file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void save(String fileName) throws IOException{
+		FileOutputStream fos = new FileOutputStream(fileName);
+		try{
+			DataOutputStream dos = new DataOutputStream(fos);
+			dos.writeInt(MAGIC);
+			dos.writeInt(FORMAT_VERSION);
+			dos.writeUTF(dev.getPartName());
+			dos.writeLong(sourceLength);
+			dos.writeLong(sourceModified);
+			dos.writeInt(dev.getRows());
+			dos.writeInt(columns);
+			dos.writeInt(nodeWires.length);
+			dos.writeInt(edgeTargets.length);
+			dos.writeInt(wireTypes.length);
+			dos.flush();
+
+			FileChannel channel = fos.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			writeInts(channel, buffer, tileNodes);
+			writeInts(channel, buffer, nodeWires);
+			writeInts(channel, buffer, edgeOffsets);
+			writeInts(channel, buffer, edgeTargets);
+			writeBytes(channel, buffer, edgeFlags);
+			writeBytes(channel, buffer, wireTypes);
+			writeBytes(channel, buffer, wireDirections);
+		}
+		finally{
+			fos.close();
+		}
+	}
+
+	/**
+	 * Loads a graph saved with save().
+	 * @param fileName Name of the file to read.
+	 * @param dev The device the graph was built from.
+	 * @return The loaded graph.
+	 * @throws IOException If the file could not be read, is not a routing
+	 * graph file or does not match the device.
+	 */
+	public static RoutingGraph load(String fileName, Device dev) throws IOException{
+		RoutingGraph g = new RoutingGraph(dev);
+		FileInputStream fis = new FileInputStream(fileName);
+		try{
+			DataInputStream dis = new DataInputStream(fis);
+			if(dis.readInt() != MAGIC){
+				throw new IOException("Not a routing graph file: " + fileName);
+			}
+			int version = dis.readInt();
+			if(version != FORMAT_VERSION){
+				throw new IOException("Unsupported routing graph file version " + version + ": " + fileName);
+			}
+			String partName = dis.readUTF();
+			g.sourceLength = dis.readLong();
+			g.sourceModified = dis.readLong();
+			int rows = dis.readInt();
+			int columns = dis.readInt();
+			if(!partName.equals(dev.getPartName()) || rows != dev.getRows() || columns != dev.getColumns()){
+				throw new IOException("Routing graph file " + fileName + " is for " + partName + ", not " + dev.getPartName());
+			}
+			int nodeCount = dis.readInt();
+			int edgeCount = dis.readInt();
+			int wireCount = dis.readInt();
+
+			// The data streams above do not buffer, so the channel is at the arrays
+			FileChannel channel = fis.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.limit(0);
+			g.tileNodes = readInts(channel, buffer, rows * columns + 1);
+			g.nodeWires = readInts(channel, buffer, nodeCount);
+			g.edgeOffsets = readInts(channel, buffer, nodeCount + 1);
+			g.edgeTargets = readInts(channel, buffer, edgeCount);
+			g.edgeFlags = readBytes(channel, buffer, edgeCount);
+			g.wireTypes = readBytes(channel, buffer, wireCount);
+			g.wireDirections = readBytes(channel, buffer, wireCount);
+		}
+		finally{
+			fis.close();
+		}
+
+		g.nodeTiles = new int[g.nodeWires.length];
+		for(int t = 0; t < g.tileNodes.length - 1; t++){
+			Arrays.fill(g.nodeTiles, g.tileNodes[t], g.tileNodes[t + 1], t);
+		}
+		return g;
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException{
+		int i = 0;
+		while(i < values.length){
+			buffer.clear();
+			int count = Math.min(values.length - i, buffer.capacity() / 4);
+			buffer.asIntBuffer().put(values, i, count);
+			buffer.limit(count * 4);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			i += count;
+		}
+	}
+
+	private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException{
+		int i = 0;
+		while(i < values.length){
+			buffer.clear();
+			int count = Math.min(values.length - i, buffer.capacity());
+			buffer.put(values, i, count);
+			buffer.flip();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			i += count;
+		}
+	}
+
+	/**
+	 * Makes sure the buffer holds at least the given number of bytes,
+	 * reading more from the channel if needed.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException{
+		if(buffer.remaining() >= bytes) return;
+		buffer.compact();
+		while(buffer.position() < bytes){
+			if(channel.read(buffer) < 0){
+				throw new IOException("Unexpected end of routing graph file");
+			}
+		}
+		buffer.flip();
+	}
+
+	private static int[] readInts(FileChannel channel, ByteBuffer buffer, int length) throws IOException{
+		int[] values = new int[length];
+		int i = 0;
+		while(i < length){
+			fill(channel, buffer, 4);
+			int count = Math.min(length - i, buffer.remaining() / 4);
+			buffer.asIntBuffer().get(values, i, count);
+			buffer.position(buffer.position() + count * 4);
+			i += count;
+		}
+		return values;
+	}
+
+	private static byte[] readBytes(FileChannel channel, ByteBuffer buffer, int length) throws IOException{
+		byte[] values = new byte[length];
+		int i = 0;
+		while(i < length){
+			fill(channel, buffer, 1);
+			int count = Math.min(length - i, buffer.remaining());
+			buffer.get(values, i, count);
+			i += count;
+		}
+		return values;
+	}
+}
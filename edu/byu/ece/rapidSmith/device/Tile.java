@@ -21,13 +21,18 @@
 package edu.byu.ece.rapidSmith.device;
 
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Set;
 
 import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.device.helper.IntKeyIterator;
+import edu.byu.ece.rapidSmith.device.helper.LazyTilePools;
+import edu.byu.ece.rapidSmith.device.helper.SinkHashMap;
 import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
 
 
@@ -47,7 +52,7 @@ public class Tile implements Serializable{
 	/** XDL Tile Type (INT,CLB,...)*/
 	private TileType type;
 	/** This is a list of the sinks within the tile (generally in the primitives) */
-	private HashMap<Integer,SinkPin> sinks;
+	private SinkHashMap sinks;
 	/** This is a list of the sources within the tile (generally in the primitives) */
 	private int[] sources;
 	/** This variable holds all the wires and their connections within the tile */
@@ -64,6 +69,12 @@ public class Tile implements Serializable{
 	private int tileXCoordinate;
 	/** Reference to this tile's device object */
 	private Device dev;
+	/** Pools to decode the sinks and wires from when loaded lazily (null otherwise) */
+	private transient LazyTilePools lazyPools;
+	/** Index into the lazy tile sinks pool, -1 once the sinks are available */
+	private volatile int lazySinks = -1;
+	/** Index into the lazy tile wires pool, -1 once the wires are available */
+	private volatile int lazyWires = -1;
 
 	/**
 	 * Constructor for the tile class, initializes all the private variables to empty 
@@ -94,11 +105,14 @@ public class Tile implements Serializable{
 	}
 
 	/**
-	 * Gets and returns the HashMap containing the sinks for this tile.  The keys are
+	 * Gets and returns the map containing the sinks for this tile.  The keys are
 	 * the actual sink wires and the values are the SinkPin objects.
-	 * @return The HashMap of sink wire mappings in this tile.
+	 * @return The map of sink wire mappings in this tile.
 	 */
-	public HashMap<Integer,SinkPin> getSinks(){
+	public SinkHashMap getSinks(){
+		if(lazySinks != -1){
+			return loadSinks();
+		}
 		return sinks;
 	}
 
@@ -107,7 +121,8 @@ public class Tile implements Serializable{
 	 * @param sink The sink wire.
 	 * @return The sink pin object based on the given sink wire.
 	 */
-	public SinkPin getSinkPin(Integer sink){
+	public SinkPin getSinkPin(int sink){
+		SinkHashMap sinks = getSinks();
 		return sinks==null? null : sinks.get(sink);
 	}
 	
@@ -116,8 +131,9 @@ public class Tile implements Serializable{
 	 * during normal usage.
 	 * @param sinks The new sinks to set for this tile.
 	 */
-	public void setSinks(HashMap<Integer,SinkPin> sinks){
+	public void setSinks(SinkHashMap sinks){
 		this.sinks = sinks;
+		lazySinks = -1;
 	}
 	
 	/**
@@ -142,11 +158,25 @@ public class Tile implements Serializable{
 	 * @return The wires HashMap for this tile.
 	 */
 	public WireHashMap getWireHashMap(){
+		if(lazyWires != -1){
+			return loadWires();
+		}
 		return wireConnections;
 	}
 
 	public Set<Integer> getWires(){
-		return wireConnections.keySet();
+		return getWireHashMap().keySet();
+	}
+
+	/**
+	 * Gets an iterator over the wires of this tile that have connections.
+	 * Unlike getWires(), the wires are not boxed.
+	 * @return An iterator over the wires of this tile (empty if the tile
+	 * has no wires).
+	 */
+	public IntIterator getWireIterator(){
+		WireHashMap map = getWireHashMap();
+		return map == null ? new IntKeyIterator() : map.keyIterator();
 	}
 	
 	/**
@@ -156,7 +186,19 @@ public class Tile implements Serializable{
 	 * @return An array of wires which connect to the given wire.
 	 */
 	public WireConnection[] getWireConnections(int wire){
-		return wireConnections.get(wire);
+		return getWireHashMap().get(wire);
+	}
+
+	/**
+	 * Points a cursor at the connections of the given wire in this tile.
+	 * This avoids creating or dereferencing WireConnection objects when the
+	 * device connections are packed (see Device.packWireConnections()).
+	 * @param wire A wire in this tile to query its potential connections.
+	 * @param cursor The cursor to reuse.
+	 * @return The cursor, positioned before the first connection.
+	 */
+	public WireConnectionCursor getWireConnections(int wire, WireConnectionCursor cursor){
+		return cursor.reset(this, wire);
 	}
 	
 	/**
@@ -166,6 +208,69 @@ public class Tile implements Serializable{
 	 */
 	public void setWireHashMap(WireHashMap wires){
 		this.wireConnections = wires;
+		lazyWires = -1;
+	}
+
+	/**
+	 * Defers the sinks and wires of this tile to entries of the lazily decoded 
+	 * device pools.  They are decoded on the first call to getSinks() or 
+	 * getWireHashMap() (or any method using them).  This should only be 
+	 * called when loading a device.
+	 * @param pools The pools to decode the sinks and wires from.
+	 * @param sinksEntry The index of this tile's entry in the tile sinks pool.
+	 * @param wiresEntry The index of this tile's entry in the tile wires pool.
+	 */
+	public void setLazyPools(LazyTilePools pools, int sinksEntry, int wiresEntry){
+		this.lazyPools = pools;
+		this.lazySinks = sinksEntry;
+		this.lazyWires = wiresEntry;
+	}
+
+	/**
+	 * @return The pools this tile is lazily decoded from or null if the tile
+	 * was loaded completely.
+	 */
+	LazyTilePools getLazyPools(){
+		return lazyPools;
+	}
+
+	/**
+	 * Checks if the wires of this tile are still waiting to be decoded.
+	 * @return True if the wires of this tile have not been decoded yet.
+	 */
+	public boolean isLazyWiresPending(){
+		return lazyWires != -1;
+	}
+
+	private SinkHashMap loadSinks(){
+		int entry = lazySinks;
+		if(entry == -1){
+			return sinks;
+		}
+		SinkHashMap tmp = lazyPools.getSinks(entry);
+		sinks = tmp;
+		lazySinks = -1;
+		return tmp;
+	}
+
+	/**
+	 * Decodes any lazily loaded data before the tile is serialized.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		getSinks();
+		getWireHashMap();
+		out.defaultWriteObject();
+	}
+
+	private WireHashMap loadWires(){
+		int entry = lazyWires;
+		if(entry == -1){
+			return wireConnections;
+		}
+		WireHashMap tmp = lazyPools.getWireHashMap(entry);
+		wireConnections = tmp;
+		lazyWires = -1;
+		return tmp;
 	}
 
 	/**
@@ -188,10 +293,11 @@ public class Tile implements Serializable{
 	/**
 	 * Used to compile the sinks for this tile during parsing, should not be called
 	 * during normal usage.
-	 * @param sink The new sink to add. The SinkPin created is initialized to -1,0.
+	 * @param sink The new sink to add, must be a valid wire enumeration. The SinkPin 
+	 * created is initialized to -1,0.
 	 */
 	public void addSink(int sink){
-		sinks.put(sink, new SinkPin(-1,0));
+		getSinks().put(sink, new SinkPin(-1,0));
 	}
 
 	/**
@@ -222,13 +328,14 @@ public class Tile implements Serializable{
 	 * @param dest The actual wire to add to the value or Wire[] in the HashMap.
 	 */
 	public void addConnection(int src, WireConnection dest){
+		WireHashMap wireConnections = getWireHashMap();
 		// Add the wire if it doesn't already exist
-		if(this.wireConnections.get(src) == null){
+		if(wireConnections.get(src) == null){
 			WireConnection[] tmp = {dest};
-			this.wireConnections.put(src, tmp);
+			wireConnections.put(src, tmp);
 		}
 		else{
-			WireConnection[] currentConnections = this.wireConnections.get(src);
+			WireConnection[] currentConnections = wireConnections.get(src);
 			WireConnection[] tmp = new WireConnection[currentConnections.length+1];
 			int i;
 			for(i=0; i < currentConnections.length; i++){
@@ -236,7 +343,7 @@ public class Tile implements Serializable{
 			}
 			tmp[i] = dest;
 			Arrays.sort(tmp);
-			this.wireConnections.put(src, tmp);
+			wireConnections.put(src, tmp);
 		}
 	}
 	
@@ -251,7 +358,7 @@ public class Tile implements Serializable{
 	}
 	
 	private boolean hasConnection(int startWire, int endWire){
-		WireConnection[] wireConns = wireConnections.get(startWire);
+		WireConnection[] wireConns = getWireConnections(startWire);
 		if(wireConns == null || wireConns.length == 0){
 			return false;
 		}
@@ -385,6 +492,7 @@ public class Tile implements Serializable{
 	 */
 	public ArrayList<PIP> getPIPs(){
 		ArrayList<PIP> pips = new ArrayList<PIP>();
+		WireHashMap wireConnections = getWireHashMap();
 		for(Integer startWire : wireConnections.keySet()){
 			for(WireConnection endWire : wireConnections.get(startWire)){
 				if(endWire.isPIP()){
@@ -169,4 +169,73 @@ public class WireConnection implements Serializable, Comparable<WireConnection>{
 	public String toString(WireEnumerator we){
 		return we.getWireName(this.wire) +"("+ this.rowOffset +","+ this.columnOffset +","+ this.isPIP + ")";
 	}
+
+	//========================================================================//
+	// Packed Representation
+	//========================================================================//
+	/**
+	 * Packs this connection into a single long value, using the same layout
+	 * as the device file (the upper int holds the wire with the PIP flag in
+	 * its sign bit, the lower int holds the row offset in its upper 16 bits 
+	 * and the column offset in its lower 16 bits).
+	 * @return The packed connection.
+	 */
+	public long pack(){
+		return pack(wire, rowOffset, columnOffset, isPIP);
+	}
+
+	/**
+	 * Packs a connection into a single long value (see pack()).
+	 * @param wire The wire enumeration value of the wire connected to.
+	 * @param rowOffset The tile row offset from the source wire's tile.
+	 * @param columnOffset The tile column offset from the source wire's tile.
+	 * @param pip True if the connection is a PIP.
+	 * @return The packed connection.
+	 */
+	public static long pack(int wire, int rowOffset, int columnOffset, boolean pip){
+		int part1 = pip ? (wire | 0x80000000) : (wire & 0x7FFFFFFF);
+		int part2 = (rowOffset << 16) | (columnOffset & 0xFFFF);
+		return ((long) part1 << 32) | (part2 & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Creates a connection object from a packed connection.
+	 * @param packed The packed connection (see pack()).
+	 * @return A new connection equal to the one that was packed.
+	 */
+	public static WireConnection unpack(long packed){
+		return new WireConnection(getWire(packed), getRowOffset(packed), getColumnOffset(packed), isPIP(packed));
+	}
+
+	/**
+	 * @param packed A packed connection (see pack()).
+	 * @return The wire of the packed connection.
+	 */
+	public static int getWire(long packed){
+		return (int)(packed >>> 32) & 0x7FFFFFFF;
+	}
+
+	/**
+	 * @param packed A packed connection (see pack()).
+	 * @return The tile row offset of the packed connection.
+	 */
+	public static int getRowOffset(long packed){
+		return (int) packed >> 16;
+	}
+
+	/**
+	 * @param packed A packed connection (see pack()).
+	 * @return The tile column offset of the packed connection.
+	 */
+	public static int getColumnOffset(long packed){
+		return (short) packed;
+	}
+
+	/**
+	 * @param packed A packed connection (see pack()).
+	 * @return True if the packed connection is a PIP.
+	 */
+	public static boolean isPIP(long packed){
+		return packed < 0;
+	}
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+
+/**
+ * Iterates over the connections of a wire in a tile without creating or
+ * dereferencing WireConnection objects.  When the wire connections of the
+ * device have been packed (see Device.packWireConnections()) the cursor
+ * reads the packed long values directly, otherwise it falls back to the
+ * connection objects of the tile.  A single cursor can be reset to other
+ * wires and tiles so fan-out loops do not allocate.
+ *
+ * Typical usage:
+ * <pre>
+ * WireConnectionCursor c = new WireConnectionCursor();
+ * for(c.reset(tile, wire); c.next();){
+ *     Tile t = c.getTile();
+ *     int w = c.getWire();
+ *     ...
+ * }
+ * </pre>
+ */
+public class WireConnectionCursor {
+	/** The tile of the wire being iterated over */
+	private Tile tile;
+	/** The packed connections of the wire (null if not packed) */
+	private long[] packed;
+	/** The connection objects of the wire (null if packed) */
+	private WireConnection[] wires;
+	/** Number of connections of the wire */
+	private int size;
+	/** Index of the current connection, -1 before the first call to next() */
+	private int index;
+	/** The current connection in packed form */
+	private long current;
+
+	/**
+	 * Creates a cursor with no connections, use reset() to point it at the
+	 * connections of a wire.
+	 */
+	public WireConnectionCursor(){
+		size = 0;
+		index = -1;
+	}
+
+	/**
+	 * Creates a cursor over the connections of a wire.
+	 * @param tile The tile of the wire.
+	 * @param wire The wire to iterate over the connections of.
+	 */
+	public WireConnectionCursor(Tile tile, int wire){
+		reset(tile, wire);
+	}
+
+	/**
+	 * Points this cursor before the first connection of a wire.
+	 * @param tile The tile of the wire.
+	 * @param wire The wire to iterate over the connections of.
+	 * @return This cursor.
+	 */
+	public WireConnectionCursor reset(Tile tile, int wire){
+		this.tile = tile;
+		this.index = -1;
+		WireHashMap map = tile.getWireHashMap();
+		packed = map == null ? null : map.getPacked(wire);
+		if(packed != null){
+			wires = null;
+			size = packed.length;
+		}
+		else{
+			wires = map == null ? null : map.get(wire);
+			size = wires == null ? 0 : wires.length;
+		}
+		return this;
+	}
+
+	/**
+	 * Moves to the next connection.
+	 * @return True if there is a next connection, false if the end has been
+	 * reached.
+	 */
+	public boolean next(){
+		if(index + 1 >= size){
+			index = size;
+			return false;
+		}
+		index++;
+		current = packed != null ? packed[index] : wires[index].pack();
+		return true;
+	}
+
+	/**
+	 * @return The number of connections of the wire.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return The wire enumeration of the current connection.
+	 */
+	public int getWire(){
+		return WireConnection.getWire(current);
+	}
+
+	/**
+	 * @return The tile row offset of the current connection.
+	 */
+	public int getRowOffset(){
+		return WireConnection.getRowOffset(current);
+	}
+
+	/**
+	 * @return The tile column offset of the current connection.
+	 */
+	public int getColumnOffset(){
+		return WireConnection.getColumnOffset(current);
+	}
+
+	/**
+	 * @return True if the current connection is a PIP.
+	 */
+	public boolean isPIP(){
+		return WireConnection.isPIP(current);
+	}
+
+	/**
+	 * @return The current connection in packed form (see WireConnection.pack()).
+	 */
+	public long getPacked(){
+		return current;
+	}
+
+	/**
+	 * @return The row of the tile the current connection leads to.
+	 */
+	public int getTileRow(){
+		return tile.getRow() - getRowOffset();
+	}
+
+	/**
+	 * @return The column of the tile the current connection leads to.
+	 */
+	public int getTileColumn(){
+		return tile.getColumn() - getColumnOffset();
+	}
+
+	/**
+	 * @return The tile the current connection leads to.
+	 */
+	public Tile getTile(){
+		return tile.getDevice().getTile(getTileRow(), getTileColumn());
+	}
+
+	/**
+	 * Gets the current connection as an object.  This returns the
+	 * connection object of the tile if one exists, otherwise a new one is
+	 * created.
+	 * @return The current connection.
+	 */
+	public WireConnection getWireConnection(){
+		return wires != null ? wires[index] : WireConnection.unpack(current);
+	}
+}
@@ -1,33 +1,47 @@
 /*
  * Copyright (c) 2010 Brigham Young University
- * 
+ *
  * This file is part of the BYU RapidSmith Tools.
- * 
- * BYU RapidSmith Tools is free software: you may redistribute it 
- * and/or modify it under the terms of the GNU General Public License 
- * as published by the Free Software Foundation, either version 2 of 
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
  * the License, or (at your option) any later version.
- * 
- * BYU RapidSmith Tools is distributed in the hope that it will be 
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
  * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
- * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
  * General Public License for more details.
- * 
- * A copy of the GNU General Public License is included with the BYU 
- * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
  * get a copy of the license at <http://www.gnu.org/licenses/>.
- * 
+ *
  */
 package edu.byu.ece.rapidSmith.device;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import edu.byu.ece.rapidSmith.device.helper.ByteNameMap;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.device.helper.SinkHashMap;
 import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
 import edu.byu.ece.rapidSmith.primitiveDefs.Connection;
 import edu.byu.ece.rapidSmith.primitiveDefs.Element;
@@ -41,13 +55,29 @@ import edu.byu.ece.rapidSmith.util.StringPool;
 
 /**
  * This class is designed to parse the XDLRC files to create the compact device
- * files used by XDL Tools.  It also extracts the primitive definitions from the 
+ * files used by XDL Tools.  It also extracts the primitive definitions from the
  * XDLRC.  This parser is an improved version of the JavaCC parser which is no
  * longer in use.
+ *
+ * The file is first scanned for the tile headers, which gives the tile names
+ * and the byte offset of each tile.  The tiles are then split into chunks of
+ * about CHUNK_SIZE bytes which are tokenized directly from the bytes of the
+ * file and parsed on a pool of worker threads.  Each chunk only fills in its
+ * own tiles, the results are merged into the device (primitive sites, route
+ * throughs and the object pools) by the calling thread in file order, so the
+ * device is the same no matter how many threads are used.  Duplicate tile
+ * resources are replaced by pooled copies as each chunk is merged so only
+ * the unique resources of the device stay in memory.
  * @author Chris Lavin
  * Created on: Jul 7, 2010
  */
 public class XDLRCParser{
+	/** Approximate number of bytes of tiles parsed by a worker at a time */
+	private static final int CHUNK_SIZE = 4*1024*1024;
+	/** Size of the buffer used when scanning for tile headers */
+	private static final int SCAN_BUFFER_SIZE = 8*1024*1024;
+	/** XDLRC files only use single byte characters */
+	private static final Charset charset = Charset.forName("ISO-8859-1");
 	/** This counts the number of tiles that have been processed */
 	private int processedTiles = 0;
 	/** This is the device object to be populated */
@@ -56,11 +86,7 @@ public class XDLRCParser{
 	private WireEnumerator we;
 	/** The list of extracted primitive definitions */
 	private PrimitiveDefList defs;
-	/** The current tile that is being parsed */
-	private Tile currTile;
-	/** A list to keep track of primitive sites in the current tile */
-	private ArrayList<PrimitiveSite> tilePrimitiveSites = new ArrayList<PrimitiveSite>(4);
-	/** This is the file input stream for reading the XDLRC */
+	/** This is the file input stream for reading the primitive defs of the XDLRC */
 	private BufferedReader br;
 	/** The current line buffer */
 	private String line;
@@ -68,16 +94,45 @@ public class XDLRCParser{
 	private List<String> parts;
 	/** A collection of all unique Strings (to help save memory) */
 	private StringPool pool;
-	
-	/** 
-	 * General Constructor
+	/** Number of threads used to parse tiles */
+	private int threads;
+	/** Wire names to wire enumerations */
+	private ByteNameMap wireNames;
+	/** Tile names to tile locations (row << 16 | column) */
+	private ByteNameMap tileNames;
+	/** Wires that keep all of their connections (site sources and PIP sinks) */
+	private boolean[] sourceWires;
+	/** Wires that are kept as connections of other wires (site sinks and PIP sources) */
+	private boolean[] sinkWires;
+	/** File offset of each tile header line, in file order */
+	private long[] tileOffsets;
+	/** Number of tiles found in the file */
+	private int tileCount;
+	/** File offset of the end of the tiles section */
+	private long tilesEnd;
+	/** File offset of the primitive_defs section, -1 if there is none */
+	private long primitiveDefsOffset;
+
+	/**
+	 * General Constructor, tiles are parsed with one thread per available
+	 * processor.
 	 */
 	public XDLRCParser(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a parser that parses tiles with the given number of threads.
+	 * @param threads Number of threads to parse tiles with, 1 parses
+	 * everything in the calling thread.
+	 */
+	public XDLRCParser(int threads){
 		dev = new Device();
 		pool = new StringPool();
+		this.threads = Math.max(1, threads);
 	}
-	
-	/** 
+
+	/**
 	 * Reads a line and splits it into parts.
 	 * @return The next line from the file, null if EOF.
 	 */
@@ -120,57 +175,260 @@ public class XDLRCParser{
 	}
 
 	/**
-	 * Parses the XDLRC Wire construct and populates connections and
-	 * wires accordingly.
+	 * Scans the XDLRC file for the header, the tile headers and the start of
+	 * the primitive defs.  This creates the tile array and the tile map of the
+	 * device (wire connections refer to tiles by name before those tiles are
+	 * parsed) and records where each tile starts in the file.
+	 * @param channel The XDLRC file.
 	 */
-	private void parseWire(){
-		int currTileWire = we.getWireEnum(parts.get(2));
-		boolean tileWireIsSource =
-				we.getWireType(currTileWire) == WireType.SITE_SOURCE ||
-				we.isPIPSinkWire(currTileWire);
-		int wireConnCount = Integer.parseInt(parts.get(3).replace(")", ""));
-		for(int i = 0; i < wireConnCount; i++){
-			readLine();
-			int currWire = we.getWireEnum(parts.get(3).substring(0, parts.get(3).length() - 1));
-			boolean currWireIsSiteSink = we.getWireType(currWire) == WireType.SITE_SINK;
-			boolean currWireIsPIPSource = we.isPIPSourceWire(currWire);
-			boolean currWireIsSink = currWireIsSiteSink || currWireIsPIPSource;
-			if(tileWireIsSource || currWireIsSink) {
-				Tile t = dev.getTile(parts.get(2));
-				WireConnection wire = dev.wirePool.add(new WireConnection(currWire,
-									currTile.getRow() - t.getRow(),
-									currTile.getColumn() - t.getColumn(),
-									false));
-				currTile.addConnection(currTileWire,wire);
+	private void scanFile(FileChannel channel) throws IOException{
+		HashMap<String,Integer> tileMap = new HashMap<String,Integer>();
+		LineTokens tokens = new LineTokens();
+		byte[] buf = new byte[SCAN_BUFFER_SIZE];
+		long bufOffset = 0;
+		int len = 0;
+		boolean eof = false;
+		tileOffsets = new long[1024];
+		tileCount = 0;
+		primitiveDefsOffset = -1;
+		tilesEnd = channel.size();
+		channel.position(0);
+		while(!eof){
+			int n = channel.read(ByteBuffer.wrap(buf, len, buf.length - len));
+			if(n < 0) eof = true;
+			else len += n;
+
+			int pos = 0;
+			while(pos < len){
+				int nl = pos;
+				while(nl < len && buf[nl] != '\n') nl++;
+				if(nl == len && !eof) break;
+
+				// Only lines with no or one leading tab are of interest here
+				if(buf[pos] == '(' || (buf[pos] == '\t' && pos+1 < nl && buf[pos+1] == '(')){
+					tokens.read(buf, pos, nl);
+					if(tokens.tabs == 1 && tokens.is(0, "(tile")){
+						int row = tokens.parseInt(1);
+						int col = tokens.parseInt(2);
+						String name = tokens.string(3, 0);
+						dev.getTile(row, col).setName(name);
+						tileMap.put(name, row << 16 | col);
+						tileNames.put(name, row << 16 | col);
+						if(tileCount == tileOffsets.length){
+							tileOffsets = Arrays.copyOf(tileOffsets, tileCount*2);
+						}
+						tileOffsets[tileCount++] = bufOffset + pos;
+					}
+					else if(tokens.tabs == 0 && tokens.is(0, "(tiles")){
+						dev.setRows(tokens.parseInt(1));
+						dev.setColumns(tokens.parseInt(2));
+						dev.createTileArray();
+						tileNames = new ByteNameMap(dev.getRows()*dev.getColumns());
+					}
+					else if(tokens.tabs == 0 && tokens.is(0, "(xdl_resource_report")){
+						String partName = tokens.string(2, 0);
+						dev.setPartName(PartNameTools.removeSpeedGrade(partName));
+						we = FileTools.loadWireEnumerator(partName);
+						createWireTables();
+					}
+					else if(tokens.tabs == 0 && tokens.is(0, "(primitive_defs")){
+						primitiveDefsOffset = bufOffset + pos;
+						tilesEnd = primitiveDefsOffset;
+						dev.populateTileMap(tileMap);
+						return;
+					}
+				}
+				pos = nl + 1;
+			}
+
+			// Keep the partial line at the end of the buffer for the next read
+			if(pos > len) pos = len;
+			System.arraycopy(buf, pos, buf, 0, len - pos);
+			bufOffset += pos;
+			len -= pos;
+			if(len == buf.length){
+				buf = Arrays.copyOf(buf, buf.length*2);
 			}
 		}
+		dev.populateTileMap(tileMap);
 	}
-	
+
 	/**
-	 * Parses the primitive_site construct in XDLRC and creates 
-	 * the appropriate objects. 
+	 * Creates the wire name lookup table and the wire classification tables
+	 * used to decide which wire connections to keep.
 	 */
-	private void parsePrimitiveSite(){
-		PrimitiveSite currPrimitiveSite = new PrimitiveSite();
-		currPrimitiveSite.setTile(currTile);
-		currPrimitiveSite.setName(parts.get(2));
-		currPrimitiveSite.setType(Utils.createPrimitiveType(parts.get(3)));
-		dev.primitiveSites.put(parts.get(2), currPrimitiveSite);
-		int pinWireCount = Integer.parseInt(parts.get(5));
-		for(int i = 0; i < pinWireCount; i++){
-			readLine();
-			String extPin = parts.get(4).substring(0, parts.get(4).length() - 1);
-			currPrimitiveSite.addPin(pool.getUnique(parts.get(2)), we.getWireEnum(extPin));
-			if(parts.get(3).equals("input")){
-				currTile.addSink(we.getWireEnum(extPin));
+	private void createWireTables(){
+		String[] wires = we.getWires();
+		wireNames = new ByteNameMap(wires.length);
+		sourceWires = new boolean[wires.length];
+		sinkWires = new boolean[wires.length];
+		for(int i = 0; i < wires.length; i++){
+			wireNames.put(wires[i], i);
+			sourceWires[i] = we.getWireType(i) == WireType.SITE_SOURCE || we.isPIPSinkWire(i);
+			sinkWires[i] = we.getWireType(i) == WireType.SITE_SINK || we.isPIPSourceWire(i);
+		}
+	}
+
+	/**
+	 * Parses all of the tiles in the file.  Chunks of tiles are parsed in
+	 * parallel and merged into the device in file order.
+	 * @param channel The XDLRC file.
+	 */
+	private void parseTiles(FileChannel channel){
+		MessageGenerator.printHeader("Parsing XDLRC Tiles");
+		System.out.println("    Part Name: " + dev.getPartName());
+		System.out.println("    Tile Rows: " + dev.getRows());
+		System.out.println("    Tile Cols: " + dev.getColumns());
+		System.out.println("  Total Tiles: " + (dev.getColumns()*dev.getRows()));
+		System.out.println("      Threads: " + threads);
+		System.out.println();
+
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		ArrayDeque<Future<TileChunk>> pending = new ArrayDeque<Future<TileChunk>>();
+		try{
+			int first = 0;
+			while(first < tileCount){
+				int last = first + 1;
+				while(last < tileCount && tileOffsets[last] - tileOffsets[first] < CHUNK_SIZE){
+					last++;
+				}
+				long end = last < tileCount ? tileOffsets[last] : tilesEnd;
+				TileChunk chunk = new TileChunk(channel, tileOffsets[first], end);
+				if(executor == null){
+					mergeChunk(chunk.call());
+				}
+				else{
+					// Limit the number of chunks in memory at once
+					pending.add(executor.submit(chunk));
+					if(pending.size() >= threads*2){
+						mergeChunk(pending.remove().get());
+					}
+				}
+				first = last;
+			}
+			while(!pending.isEmpty()){
+				mergeChunk(pending.remove().get());
 			}
-			else{
-				currTile.addSource(we.getWireEnum(extPin));
+		}
+		catch(InterruptedException e){
+			MessageGenerator.briefErrorAndExit("XDLRC parsing was interrupted.");
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			MessageGenerator.briefErrorAndExit("Error parsing XDLRC file: " + e.getCause());
+		}
+		finally{
+			if(executor != null) executor.shutdownNow();
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Adds the results of a parsed chunk to the device and removes duplicate
+	 * resources from its tiles.  This must be called in file order.
+	 * @param chunk The parsed chunk.
+	 */
+	private void mergeChunk(TileChunk chunk){
+		for(PrimitiveSite site : chunk.sites){
+			dev.primitiveSites.put(site.getName(), site);
+		}
+		for(int i = 0; i < chunk.routeThroughWires.size(); i++){
+			WireConnection w = dev.wirePool.add(chunk.routeThroughWires.get(i));
+			dev.routeThroughMap.put(w, dev.routeThroughPool.add(chunk.routeThroughs.get(i)));
+		}
+		int percent = processedTiles * 100 / tileCount;
+		for(Tile t : chunk.tiles){
+			WireHashMap wires = t.getWireHashMap();
+			for(IntIterator it = wires.keyIterator(); it.hasNext();){
+				WireConnection[] conns = wires.get(it.next());
+				for(int i = 0; i < conns.length; i++){
+					conns[i] = dev.wirePool.add(conns[i]);
+				}
 			}
+			dev.incrementalRemoveDuplicateTileResources(t, we);
+			processedTiles++;
+		}
+		if(processedTiles * 100 / tileCount != percent){
+			System.out.printf("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
+			System.out.printf("  %02d%% done parsing tiles...", processedTiles * 100 / tileCount);
 		}
-		tilePrimitiveSites.add(currPrimitiveSite);
 	}
-	
+
+	/**
+	 * Parses the XDLRC file specified by fileName and populates the Device
+	 * and optionally the PrimitiveDefList based on extractPrimitiveDefs.
+	 * @param fileName Name of the XDLRC file to parse.
+	 * @param extractPrimitiveDefs A flag to indicate if the parser should extract
+	 * and create the primitiveDefsList.  This can be obtained through a getPrimitiveDefs()
+	 * method after this method returns.
+	 * @return The populated device.
+	 */
+	public Device parseXDLRC(String fileName, boolean extractPrimitiveDefs){
+		RandomAccessFile file = null;
+		try{
+			file = new RandomAccessFile(fileName, "r");
+			scanFile(file.getChannel());
+			if(we == null || tileNames == null){
+				MessageGenerator.briefErrorAndExit("ERROR: " + fileName + " is missing the XDLRC header.");
+			}
+			parseTiles(file.getChannel());
+		}
+		catch(IOException e){
+			MessageGenerator.briefErrorAndExit("ERROR: Could not read file: " + fileName);
+		}
+		finally{
+			try{
+				if(file != null) file.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+
+		if(extractPrimitiveDefs && primitiveDefsOffset != -1){
+			try{
+				FileInputStream fis = new FileInputStream(fileName);
+				fis.getChannel().position(primitiveDefsOffset);
+				br = new BufferedReader(new InputStreamReader(fis, charset));
+			}
+			catch(IOException e){
+				MessageGenerator.briefErrorAndExit("ERROR: Could not read file: " + fileName);
+			}
+			defs = new PrimitiveDefList();
+			while((line = readLine()) != null){
+				/////////////////////////////////////////////////////////////////////
+				//	(primitive_def BSCAN 8 10
+				/////////////////////////////////////////////////////////////////////
+				if(line.startsWith("\t(primitive_def ")){
+					parsePrimitiveDef();
+				}
+				else if(line.startsWith("(summary ")){
+					break;
+				}
+			}
+			try{
+				br.close();
+			}
+			catch(IOException e){
+				e.printStackTrace();
+			}
+		}
+		else if(extractPrimitiveDefs){
+			defs = new PrimitiveDefList();
+		}
+
+		dev.createWireConnectionEnumeration();
+		dev.removeDuplicatePrimitivePinMaps();
+		for(Tile t : dev.getTileMap().values()){
+			t.setDevice(dev);
+		}
+		dev.populateSinkPins(we);
+		dev.removeDuplicateTileSinks(we);
+		dev.debugPoolCounts();
+		return dev;
+	}
+
 	/**
 	 * Parses the primitive_def construct in XDLRC and creates
 	 * the appropriate objects.
@@ -196,7 +454,7 @@ public class XDLRCParser{
 			e.setName(parts.get(2));
 			int elementPinCount = Integer.parseInt(parts.get(3).replace(")", ""));
 			e.setBel(parts.size() > 5 && parts.get(4).equals("#") && parts.get(5).equals("BEL"));
-			
+
 			for(int j = 0; j < elementPinCount; j++){
 				readLine();
 				PrimitiveDefPin elementPin = new PrimitiveDefPin();
@@ -226,174 +484,353 @@ public class XDLRCParser{
 		def.setElements(elements);
 		defs.add(def);
 	}
-	
+
 	/**
-	 * Parses the XDLRC file specified by fileName and populates the Device 
-	 * and optionally the PrimitiveDefList based on extractPrimitiveDefs.
-	 * @param fileName Name of the XDLRC file to parse.
-	 * @param extractPrimitiveDefs A flag to indicate if the parser should extract
-	 * and create the primitiveDefsList.  This can be obtained through a getPrimitiveDefs()
-	 * method after this method returns.
-	 * @return The populated device.
+	 * Gets and returns the device.  This should only be called after parseXDLRC()
+	 * is first called.
+	 * @return The device corresponding to this parser.
 	 */
-	public Device parseXDLRC(String fileName, boolean extractPrimitiveDefs){
-		try{
-			br = new BufferedReader(new FileReader(fileName));
-		}
-		catch(FileNotFoundException e){
-			MessageGenerator.briefErrorAndExit("ERROR: Could not find file: " + fileName);
-		}
-		
-		while((line = readLine()) != null){
-			/////////////////////////////////////////////////////////////////////
-			//		(pip CLB_X1Y63 CIN0 -> XMUX_PINWIRE0 (_ROUTETHROUGH-CIN-XMUX SLICEM))
-			/////////////////////////////////////////////////////////////////////
-			if(line.startsWith("\t\t(pip ")){
-				String endWire = null; 
-				WireConnection currWire = null;
-				if(parts.get(5).endsWith(")")){
-					endWire = parts.get(5).substring(0, parts.get(5).length() - 1);
-					currWire = dev.wirePool.add(new WireConnection(we.getWireEnum(endWire), 0, 0, true));
-				}
-				else{ // This is a route-through PIP
-					endWire = parts.get(5);
-					currWire = dev.wirePool.add(new WireConnection(we.getWireEnum(endWire), 0, 0, true));
-					PrimitiveType type = Utils.createPrimitiveType(parts.get(7).substring(0, parts.get(7).length() - 2));
-					
-					String[] tokens = parts.get(6).split("-");
-					int wire0 = we.getWireEnum(tokens[1]);
-					int wire1 = we.getWireEnum(tokens[2]);
-
-					PIPRouteThrough currRouteThrough = new PIPRouteThrough(type, wire0, wire1);
-					currRouteThrough = dev.routeThroughPool.add(currRouteThrough);
-				    dev.routeThroughMap.put(currWire, currRouteThrough);
+	public Device getDevice(){
+		return dev;
+	}
+
+	/**
+	 * Gets and returns the PrimitiveDefList.  This should only be called after parseXDLRC()
+	 * is first called.
+	 * @return The Primitive definition list corresponding to this parser.
+	 */
+	public PrimitiveDefList getPrimitiveDefs(){
+		return defs;
+	}
+
+	/**
+	 * Gets the number of threads used to parse tiles.
+	 * @return The number of threads.
+	 */
+	public int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * A range of tiles of the XDLRC file.  Parsing a chunk only fills in the
+	 * tiles of the chunk, everything shared by the device (primitive site
+	 * map, route through map and object pools) is collected in the chunk
+	 * and added to the device by mergeChunk().
+	 */
+	private class TileChunk implements Callable<TileChunk>{
+		private FileChannel channel;
+		private long start;
+		private long end;
+		/** The tiles of this chunk in file order */
+		private ArrayList<Tile> tiles = new ArrayList<Tile>();
+		/** The primitive sites of this chunk in file order */
+		private ArrayList<PrimitiveSite> sites = new ArrayList<PrimitiveSite>();
+		/** The PIP connections of route throughs and their route throughs */
+		private ArrayList<WireConnection> routeThroughWires = new ArrayList<WireConnection>();
+		private ArrayList<PIPRouteThrough> routeThroughs = new ArrayList<PIPRouteThrough>();
+		/** Connections of the current wire being parsed */
+		private WireConnection[] wireConns = new WireConnection[16];
+
+		public TileChunk(FileChannel channel, long start, long end){
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public TileChunk call(){
+			byte[] buf = new byte[(int)(end - start)];
+			ByteBuffer bb = ByteBuffer.wrap(buf);
+			try{
+				while(bb.hasRemaining()){
+					if(channel.read(bb, start + bb.position()) < 0) break;
 				}
-				currTile.addConnection(we.getWireEnum(parts.get(3)), currWire);
 			}
-			/////////////////////////////////////////////////////////////////////
-			// 		(wire SECONDARY_LOGIC_OUTS7_INT 1
-			/////////////////////////////////////////////////////////////////////
-			else if(line.startsWith("\t\t(wire ")){
-				parseWire();
+			catch(IOException e){
+				MessageGenerator.briefErrorAndExit("Error reading XDLRC file.");
 			}
-			/////////////////////////////////////////////////////////////////////
-			//	(tile 1 48 CLB_X22Y63 CLB 4
-			/////////////////////////////////////////////////////////////////////
-			else if(line.startsWith("\t(tile ")){
-				int row = Integer.parseInt(parts.get(2));
-				int col = Integer.parseInt(parts.get(3));
-				currTile = dev.getTile(row, col);
-				currTile.setName(parts.get(4));
-				currTile.setType(Utils.createTileType(parts.get(5)));
-				
-			  	int total = (dev.getRows()*dev.getColumns())/100;
-			  	if(!(currTile.getRow() == 0 && currTile.getColumn() == 0)){
-			  		System.out.printf("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
-			  		System.out.printf("  %02d%% done parsing tiles...",processedTiles/total);
-			  	}
-			  	else{
-			  		MessageGenerator.printHeader("Parsing XDLRC Tiles");
-			  		System.out.println("    Part Name: " + dev.getPartName());
-			  		System.out.println("    Tile Rows: " + dev.getRows());
-			  		System.out.println("    Tile Cols: " + dev.getColumns());
-			  		System.out.println("  Total Tiles: " + (dev.getColumns()*dev.getRows()));
-			  		System.out.println();
-			  	}
-			}
-			/////////////////////////////////////////////////////////////////////
-			//		(primitive_site SLICE_X34Y126 SLICEM internal 34
-			/////////////////////////////////////////////////////////////////////
-			else if(line.startsWith("\t\t(primitive_site ")){
-				parsePrimitiveSite();
-			}
-			/////////////////////////////////////////////////////////////////////
-			//		(tile_summary INT_X22Y63 INT 3 598 3312)
-			/////////////////////////////////////////////////////////////////////
-			else if(line.startsWith("\t\t(tile_summary ")){
-				// Create an array of primitive sites (more compact than ArrayList)
-				if(tilePrimitiveSites.size() > 0){
-					PrimitiveSite[] ps = new PrimitiveSite[tilePrimitiveSites.size()];
-					for(int i=0; i < tilePrimitiveSites.size(); i++){
-						ps[i] = tilePrimitiveSites.get(i);
+
+			LineTokens t = new LineTokens();
+			ArrayList<PrimitiveSite> tileSites = new ArrayList<PrimitiveSite>(4);
+			Tile tile = null;
+			int len = bb.position();
+			int pos = 0;
+			while(pos < len){
+				pos = t.read(buf, pos, len);
+				if(t.count == 0) continue;
+				if(t.tabs == 2){
+					/////////////////////////////////////////////////////////////////////
+					// 		(wire SECONDARY_LOGIC_OUTS7_INT 1
+					/////////////////////////////////////////////////////////////////////
+					if(t.is(0, "(wire")){
+						pos = parseWire(t, buf, pos, len, tile);
+					}
+					/////////////////////////////////////////////////////////////////////
+					//		(pip CLB_X1Y63 CIN0 -> XMUX_PINWIRE0 (_ROUTETHROUGH-CIN-XMUX SLICEM))
+					/////////////////////////////////////////////////////////////////////
+					else if(t.is(0, "(pip")){
+						parsePIP(t, tile);
+					}
+					/////////////////////////////////////////////////////////////////////
+					//		(primitive_site SLICE_X34Y126 SLICEM internal 34
+					/////////////////////////////////////////////////////////////////////
+					else if(t.is(0, "(primitive_site")){
+						pos = parsePrimitiveSite(t, buf, pos, len, tile, tileSites);
+					}
+					/////////////////////////////////////////////////////////////////////
+					//		(tile_summary INT_X22Y63 INT 3 598 3312)
+					/////////////////////////////////////////////////////////////////////
+					else if(t.is(0, "(tile_summary")){
+						// Create an array of primitive sites (more compact than ArrayList)
+						if(tileSites.size() > 0){
+							tile.setPrimitiveSites(tileSites.toArray(new PrimitiveSite[tileSites.size()]));
+						}
+						else{
+							tile.setPrimitiveSites(null);
+						}
+						tileSites.clear();
 					}
-					currTile.setPrimitiveSites(ps);
 				}
-				else{
-					currTile.setPrimitiveSites(null);
+				/////////////////////////////////////////////////////////////////////
+				//	(tile 1 48 CLB_X22Y63 CLB 4
+				/////////////////////////////////////////////////////////////////////
+				else if(t.tabs == 1 && t.is(0, "(tile")){
+					tile = dev.getTile(t.parseInt(1), t.parseInt(2));
+					tile.setType(Utils.createTileType(t.string(4, 0)));
+					tile.setWireHashMap(new WireHashMap());
+					tile.setSinks(new SinkHashMap());
+					tiles.add(tile);
 				}
-				tilePrimitiveSites.clear();
-				dev.incrementalRemoveDuplicateTileResources(currTile, we);
-			  	processedTiles++;
 			}
-			else if(line.startsWith("(tiles ")){
-				dev.setRows(Integer.parseInt(parts.get(1)));
-				dev.setColumns(Integer.parseInt(parts.get(2)));
-				dev.createTileArray();
-				for(Tile[] tiles : dev.tiles){
-					for(Tile tile : tiles){
-						tile.setWireHashMap(new WireHashMap());
-						tile.setSinks(new HashMap<Integer, SinkPin>());
+			return this;
+		}
+
+		/**
+		 * Parses the XDLRC Wire construct and populates connections and
+		 * wires accordingly.
+		 * @return The position after the last connection of the wire.
+		 */
+		private int parseWire(LineTokens t, byte[] buf, int pos, int len, Tile tile){
+			int currTileWire = getWire(t, 1, 0);
+			boolean tileWireIsSource = sourceWires[currTileWire];
+			int wireConnCount = t.parseInt(2);
+			int count = 0;
+			for(int i = 0; i < wireConnCount; i++){
+				pos = t.read(buf, pos, len);
+				int currWire = getWire(t, 2, 1);
+				if(tileWireIsSource || sinkWires[currWire]){
+					int loc = tileNames.get(buf, t.start[1], t.end[1]);
+					if(loc == -1){
+						MessageGenerator.briefErrorAndExit("ERROR: Unknown tile in XDLRC: " + t.string(1, 0));
+					}
+					if(count == wireConns.length){
+						wireConns = Arrays.copyOf(wireConns, count*2);
 					}
+					wireConns[count++] = new WireConnection(currWire,
+							tile.getRow() - (loc >>> 16),
+							tile.getColumn() - (loc & 0xFFFF),
+							false);
 				}
-				dev.populateTileMap(DeviceFilesCreator.createDeviceTileMap(dev.getPartName()));
 			}
-			else if(line.startsWith("(xdl_resource_report ")){
-				dev.setPartName(PartNameTools.removeSpeedGrade(parts.get(2)));
-				we = FileTools.loadWireEnumerator(parts.get(2));
+			if(count > 0){
+				// Same as adding each connection with Tile.addConnection(), but
+				// only sorted once
+				WireConnection[] existing = tile.getWireConnections(currTileWire);
+				int offset = existing == null ? 0 : existing.length;
+				WireConnection[] conns = new WireConnection[offset + count];
+				if(existing != null) System.arraycopy(existing, 0, conns, 0, offset);
+				System.arraycopy(wireConns, 0, conns, offset, count);
+				if(conns.length > 1) Arrays.sort(conns);
+				tile.getWireHashMap().put(currTileWire, conns);
+				Arrays.fill(wireConns, 0, count, null);
 			}
-			else if(line.startsWith("(primitive_defs ")){
-				// Switch to primitive_defs parsing while loop
-				break;
+			return pos;
+		}
+
+		/**
+		 * Parses a PIP, route through PIPs are recorded for the route
+		 * through map.
+		 */
+		private void parsePIP(LineTokens t, Tile tile){
+			WireConnection currWire;
+			if(t.endsWith(4, ')')){
+				currWire = new WireConnection(getWire(t, 4, 1), 0, 0, true);
+			}
+			else{ // This is a route-through PIP
+				currWire = new WireConnection(getWire(t, 4, 0), 0, 0, true);
+				PrimitiveType type = Utils.createPrimitiveType(t.string(6, 2));
+
+				// (_ROUTETHROUGH-<wire0>-<wire1>
+				int dash0 = t.indexOf(5, '-', t.start[5]);
+				int dash1 = t.indexOf(5, '-', dash0 + 1);
+				int dash2 = t.indexOf(5, '-', dash1 + 1);
+				int wire0 = wireNames.get(t.buf, dash0 + 1, dash1);
+				int wire1 = wireNames.get(t.buf, dash1 + 1, dash2);
+				routeThroughWires.add(currWire);
+				routeThroughs.add(new PIPRouteThrough(type, wire0, wire1));
 			}
+			tile.addConnection(getWire(t, 2, 0), currWire);
 		}
-		
-		if(extractPrimitiveDefs){
-			defs = new PrimitiveDefList();
-			while((line = readLine()) != null){
-				/////////////////////////////////////////////////////////////////////
-				//	(primitive_def BSCAN 8 10
-				/////////////////////////////////////////////////////////////////////
-				if(line.startsWith("\t(primitive_def ")){
-					parsePrimitiveDef();
+
+		/**
+		 * Parses the primitive_site construct in XDLRC and creates
+		 * the appropriate objects.
+		 * @return The position after the last pin wire of the site.
+		 */
+		private int parsePrimitiveSite(LineTokens t, byte[] buf, int pos, int len, Tile tile,
+				ArrayList<PrimitiveSite> tileSites){
+			PrimitiveSite currPrimitiveSite = new PrimitiveSite();
+			currPrimitiveSite.setTile(tile);
+			currPrimitiveSite.setName(t.string(1, 0));
+			currPrimitiveSite.setType(Utils.createPrimitiveType(t.string(2, 0)));
+			int pinWireCount = t.parseInt(4);
+			for(int i = 0; i < pinWireCount; i++){
+				pos = t.read(buf, pos, len);
+				int extPin = getWire(t, 3, 1);
+				String pinName = t.string(1, 0);
+				synchronized(pool){
+					pinName = pool.getUnique(pinName);
 				}
-				else if(line.startsWith("(summary ")){
-					break;
+				currPrimitiveSite.addPin(pinName, extPin);
+				if(t.is(2, "input")){
+					if(extPin == -1){
+						// Sink maps only hold valid wire enumerations
+						MessageGenerator.briefError("WARNING: Unknown wire " + t.string(3, 1) + " of input pin " + 
+							pinName + " on site " + currPrimitiveSite.getName() + ", it is not added to the sinks of " + 
+							tile.getName() + ".");
+					}
+					else{
+						tile.addSink(extPin);
+					}
 				}
-			}			
+				else{
+					tile.addSource(extPin);
+				}
+			}
+			tileSites.add(currPrimitiveSite);
+			sites.add(currPrimitiveSite);
+			return pos;
 		}
 
-		dev.createWireConnectionEnumeration();
-		dev.removeDuplicatePrimitivePinMaps();
-		for(Tile t : dev.getTileMap().values()){
-			t.setDevice(dev);
-		}
-		dev.populateSinkPins(we);
-		dev.removeDuplicateTileSinks(we);
-		dev.debugPoolCounts();
-		try{
-			br.close();
-		}
-		catch(IOException e){
-			e.printStackTrace();
+		/**
+		 * Gets the wire enumeration of a token.
+		 * @param t The tokens of the line.
+		 * @param i Index of the token.
+		 * @param trim Number of characters to ignore at the end of the token.
+		 * @return The wire enumeration, -1 if the wire is unknown.
+		 */
+		private int getWire(LineTokens t, int i, int trim){
+			return wireNames.get(t.buf, t.start[i], t.end[i] - trim);
 		}
-		return dev;
-	}
-	
-	/**
-	 * Gets and returns the device.  This should only be called after parseXDLRC()
-	 * is first called.
-	 * @return The device corresponding to this parser.
-	 */
-	public Device getDevice(){
-		return dev;
 	}
-	
+
 	/**
-	 * Gets and returns the PrimitiveDefList.  This should only be called after parseXDLRC()
-	 * is first called.
-	 * @return The Primitive definition list corresponding to this parser.
+	 * The whitespace separated tokens of a line, stored as offsets into the
+	 * buffer holding the line so that no Strings are created unless needed.
 	 */
-	public PrimitiveDefList getPrimitiveDefs(){
-		return defs;
+	private static class LineTokens{
+		/** The buffer holding the line */
+		private byte[] buf;
+		/** Number of leading tabs of the line */
+		private int tabs;
+		/** Number of tokens in the line */
+		private int count;
+		/** Start of each token */
+		private int[] start = new int[16];
+		/** End (exclusive) of each token */
+		private int[] end = new int[16];
+
+		/**
+		 * Tokenizes the line starting at pos.
+		 * @param buf The buffer holding the line.
+		 * @param pos Start of the line.
+		 * @param limit End of the valid data in buf.
+		 * @return The start of the next line.
+		 */
+		public int read(byte[] buf, int pos, int limit){
+			this.buf = buf;
+			count = 0;
+			tabs = 0;
+			while(pos < limit && buf[pos] == '\t'){
+				tabs++;
+				pos++;
+			}
+			while(pos < limit){
+				byte b = buf[pos];
+				if(b == '\n') return pos + 1;
+				if(b == ' ' || b == '\t' || b == '\r'){
+					pos++;
+					continue;
+				}
+				int s = pos;
+				while(pos < limit && (b = buf[pos]) != ' ' && b != '\t' && b != '\r' && b != '\n'){
+					pos++;
+				}
+				if(count == start.length){
+					start = Arrays.copyOf(start, count*2);
+					end = Arrays.copyOf(end, count*2);
+				}
+				start[count] = s;
+				end[count] = pos;
+				count++;
+			}
+			return pos;
+		}
+
+		/**
+		 * Checks if token i is equal to s.
+		 */
+		public boolean is(int i, String s){
+			if(i >= count || end[i] - start[i] != s.length()) return false;
+			for(int j = 0; j < s.length(); j++){
+				if(buf[start[i] + j] != s.charAt(j)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Checks if token i ends with the character c.
+		 */
+		public boolean endsWith(int i, char c){
+			return end[i] > start[i] && buf[end[i] - 1] == c;
+		}
+
+		/**
+		 * Finds the first occurrence of c in token i at or after from.
+		 * @return The index of c in the buffer or the end of the token if not found.
+		 */
+		public int indexOf(int i, char c, int from){
+			int j = Math.max(from, start[i]);
+			while(j < end[i] && buf[j] != c) j++;
+			return j;
+		}
+
+		/**
+		 * Parses the leading digits of token i as an integer (trailing
+		 * parentheses are ignored).
+		 */
+		public int parseInt(int i){
+			int value = 0;
+			int j = start[i];
+			boolean negative = j < end[i] && buf[j] == '-';
+			if(negative) j++;
+			if(j == end[i] || buf[j] < '0' || buf[j] > '9'){
+				throw new NumberFormatException("Expected a number, found: " + string(i, 0));
+			}
+			while(j < end[i] && buf[j] >= '0' && buf[j] <= '9'){
+				value = value * 10 + (buf[j] - '0');
+				j++;
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Creates a String of token i.
+		 * @param i Index of the token.
+		 * @param trim Number of characters to leave off the end of the token.
+		 */
+		public String string(int i, int trim){
+			return new String(buf, start[i], end[i] - start[i] - trim, charset);
+		}
 	}
 }
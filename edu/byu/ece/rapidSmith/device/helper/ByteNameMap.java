@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.nio.charset.Charset;
+
+/**
+ * A map from names to int values where a name can be looked up directly
+ * from a range of bytes (single byte characters) without creating a String.
+ * The XDLRC parser uses it to resolve wire and tile names while scanning
+ * the raw file contents.  Once all names have been added, lookups can be
+ * done from several threads at the same time.
+ */
+public class ByteNameMap {
+	/** Names are stored as single byte characters */
+	private static final Charset charset = Charset.forName("ISO-8859-1");
+	/** The names of the table, null for empty slots */
+	private byte[][] names;
+	/** The value of each name */
+	private int[] values;
+	/** Number of names in the map */
+	private int size;
+
+	/**
+	 * Creates a new map with room for the given number of names before it
+	 * needs to grow.
+	 * @param expectedSize The expected number of names.
+	 */
+	public ByteNameMap(int expectedSize){
+		int capacity = 16;
+		while(capacity < expectedSize * 2){
+			capacity <<= 1;
+		}
+		names = new byte[capacity][];
+		values = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Adds a name to the map, replacing the value of the name if it already
+	 * exists.
+	 * @param name The name to add.
+	 * @param value The value of the name, should not be negative.
+	 */
+	public void put(String name, int value){
+		if((size + 1) * 2 > names.length){
+			resize(names.length << 1);
+		}
+		byte[] bytes = name.getBytes(charset);
+		int i = slot(bytes, 0, bytes.length);
+		if(names[i] == null){
+			names[i] = bytes;
+			size++;
+		}
+		values[i] = value;
+	}
+
+	/**
+	 * Gets the value of the name held in buf between start and end.
+	 * @param buf The buffer holding the name.
+	 * @param start Index of the first character of the name.
+	 * @param end Index one past the last character of the name.
+	 * @return The value of the name or -1 if it is not in the map.
+	 */
+	public int get(byte[] buf, int start, int end){
+		int i = slot(buf, start, end);
+		return names[i] == null ? -1 : values[i];
+	}
+
+	/**
+	 * Gets the value of the name.
+	 * @param name The name to look up.
+	 * @return The value of the name or -1 if it is not in the map.
+	 */
+	public int get(String name){
+		byte[] bytes = name.getBytes(charset);
+		return get(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @return The number of names in the map.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Finds the slot holding the name or the empty slot where it would go.
+	 */
+	private int slot(byte[] buf, int start, int end){
+		int mask = names.length - 1;
+		int i = hash(buf, start, end) & mask;
+		while(names[i] != null && !matches(names[i], buf, start, end)){
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private static boolean matches(byte[] name, byte[] buf, int start, int end){
+		if(name.length != end - start) return false;
+		for(int i = 0; i < name.length; i++){
+			if(name[i] != buf[start + i]) return false;
+		}
+		return true;
+	}
+
+	private static int hash(byte[] buf, int start, int end){
+		int h = 0;
+		for(int i = start; i < end; i++){
+			h = 31 * h + buf[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private void resize(int capacity){
+		byte[][] oldNames = names;
+		int[] oldValues = values;
+		names = new byte[capacity][];
+		values = new int[capacity];
+		for(int j = 0; j < oldNames.length; j++){
+			if(oldNames[j] == null) continue;
+			int i = slot(oldNames[j], 0, oldNames[j].length);
+			names[i] = oldNames[j];
+			values[i] = oldValues[j];
+		}
+	}
+}
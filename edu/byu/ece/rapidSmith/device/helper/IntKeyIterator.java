@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+/**
+ * Iterates over the occupied keys of an open addressing key table such as
+ * those found in WireHashMap and SinkHashMap (empty slots hold -1).  An 
+ * instance can be reset to a new key table so that a single iterator can 
+ * be reused for many tiles without allocating.
+ * @author Chris Lavin
+ */
+public class IntKeyIterator implements IntIterator {
+	/** The key table being iterated over */
+	private int[] keys;
+	/** The slot of the next key, keys.length when done */
+	private int next;
+	
+	/**
+	 * Creates an iterator with nothing to iterate over.  Use reset() to 
+	 * assign it a key table.
+	 */
+	public IntKeyIterator(){
+		keys = new int[0];
+		next = 0;
+	}
+	
+	/**
+	 * Creates an iterator over the given key table.
+	 * @param keys The key table, empty slots should be -1.
+	 */
+	public IntKeyIterator(int[] keys){
+		reset(keys);
+	}
+	
+	/**
+	 * Restarts this iterator at the beginning of the given key table.
+	 * @param keys The key table, empty slots should be -1.
+	 * @return This iterator.
+	 */
+	public IntKeyIterator reset(int[] keys){
+		this.keys = keys;
+		this.next = advance(0);
+		return this;
+	}
+	
+	@Override
+	public boolean hasNext(){
+		return next < keys.length;
+	}
+	
+	@Override
+	public int next(){
+		int key = keys[next];
+		next = advance(next+1);
+		return key;
+	}
+	
+	private int advance(int i){
+		while(i < keys.length && keys[i] == -1){
+			i++;
+		}
+		return i;
+	}
+}
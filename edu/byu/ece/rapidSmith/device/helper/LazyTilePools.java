@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.byu.ece.rapidSmith.device.SinkPin;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+
+/**
+ * A helper class which keeps the tile sinks and tile wires pools of a 
+ * memory mapped device file in their compact int form and decodes each
+ * pool entry the first time a tile asks for it.  Decoded entries are 
+ * cached and shared among all tiles that reference them, just as they 
+ * are when the device is loaded eagerly.  All methods are safe to call 
+ * from multiple threads; if two threads decode the same entry at once 
+ * only the first result is published and returned to both.  The same
+ * pools are used to load a device completely, in which case decodeAll()
+ * decodes every entry up front (in parallel if more than one processor is
+ * available).
+ * @author Chris Lavin
+ */
+public class LazyTilePools {
+	/** Marker for a decoded entry that is null (empty) */
+	private static final Object EMPTY = new Object();
+	/** Number of pool entries below which a decoding task is not split further */
+	private static final int SPLIT_THRESHOLD = 256;
+	/** The shared wire connections of the device (wirePool) */
+	private WireConnection[] wires;
+	/** The encoded wire arrays (indices into wires) */
+	private MappedDeviceFile.IntPool wireArrayPool;
+	/** The encoded tile sinks (key, switch matrix wire, switch matrix offset) */
+	private MappedDeviceFile.IntPool tileSinksPool;
+	/** The encoded tile wires (wire, wire array index) */
+	private MappedDeviceFile.IntPool tileWiresPool;
+	/** Decoded wire arrays */
+	private AtomicReferenceArray<WireConnection[]> wireArrays;
+	/** Decoded tile sinks */
+	private AtomicReferenceArray<SinkHashMap> tileSinks;
+	/** Decoded tile wires, EMPTY for entries with no wires */
+	private AtomicReferenceArray<Object> tileWires;
+	
+	/**
+	 * Constructor
+	 * @param file The mapped device file the pools are read from.
+	 * @param wires The already decoded wire pool of the device.
+	 */
+	public LazyTilePools(MappedDeviceFile file, WireConnection[] wires){
+		this.wires = wires;
+		wireArrayPool = file.getPool(MappedDeviceFile.Section.WIRE_ARRAYS);
+		tileSinksPool = file.getPool(MappedDeviceFile.Section.TILE_SINKS);
+		tileWiresPool = file.getPool(MappedDeviceFile.Section.TILE_WIRES);
+		wireArrays = new AtomicReferenceArray<WireConnection[]>(wireArrayPool.size());
+		tileSinks = new AtomicReferenceArray<SinkHashMap>(tileSinksPool.size());
+		tileWires = new AtomicReferenceArray<Object>(tileWiresPool.size());
+	}
+	
+	/**
+	 * Gets the decoded sinks of a tile sinks pool entry, decoding it if 
+	 * necessary.
+	 * @param entry The index into the tile sinks pool.
+	 * @return The sinks map of the entry (never null).
+	 */
+	public SinkHashMap getSinks(int entry){
+		SinkHashMap sinks = tileSinks.get(entry);
+		if(sinks != null){
+			return sinks;
+		}
+		int[] data = tileSinksPool.getEntry(entry);
+		sinks = new SinkHashMap(data.length/3);
+		for(int j=0; j < data.length; j+=3){
+			sinks.put(data[j], new SinkPin(data[j+1], data[j+2]));
+		}
+		if(!tileSinks.compareAndSet(entry, null, sinks)){
+			return tileSinks.get(entry);
+		}
+		return sinks;
+	}
+	
+	/**
+	 * Gets the decoded wires of a tile wires pool entry, decoding it if 
+	 * necessary.
+	 * @param entry The index into the tile wires pool.
+	 * @return The wires of the entry or null if the entry has no wires.
+	 */
+	public WireHashMap getWireHashMap(int entry){
+		Object map = tileWires.get(entry);
+		if(map == null){
+			map = decodeWireHashMap(entry);
+			if(!tileWires.compareAndSet(entry, null, map)){
+				map = tileWires.get(entry);
+			}
+		}
+		return map == EMPTY ? null : (WireHashMap) map;
+	}
+	
+	/**
+	 * @return The number of tile wires entries which have been decoded so far.
+	 */
+	public int getDecodedWireHashMapCount(){
+		int count = 0;
+		for(int i=0; i < tileWires.length(); i++){
+			if(tileWires.get(i) != null) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return The total number of entries in the tile wires pool.
+	 */
+	public int getWireHashMapCount(){
+		return tileWires.length();
+	}
+	
+	/**
+	 * Estimates the heap used by the tile wires and wire arrays once every
+	 * entry has been decoded, whether or not they have been decoded yet.
+	 * @return An estimate of the number of bytes used by the decoded wires.
+	 */
+	public long estimateDecodedSize(){
+		long bytes = 0;
+		for(int i=0; i < wireArrayPool.size(); i++){
+			bytes += 16 + 4 * wireArrayPool.length(i);
+		}
+		for(int i=0; i < tileWiresPool.size(); i++){
+			int size = tileWiresPool.length(i)/2;
+			if(size == 0) continue;
+			int capacity = 4;
+			while(capacity < (int)(size*1.3f)) capacity <<= 1;
+			bytes += 64 + 8 * capacity;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Decodes every entry of the tile sinks and tile wires pools.  If more
+	 * than one processor is available, the wire arrays are decoded first on
+	 * a ForkJoinPool followed by the sinks and wires entries, otherwise all
+	 * entries are decoded in the calling thread.  Each entry is decoded
+	 * independently of the others so the result is the same either way.
+	 */
+	public void decodeAll(){
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		if(parallelism < 2){
+			new DecodeTask(DecodeTask.WIRE_ARRAYS, 0, wireArrays.length()).compute();
+			new DecodeTask(DecodeTask.TILE_SINKS, 0, tileSinks.length()).compute();
+			new DecodeTask(DecodeTask.TILE_WIRES, 0, tileWires.length()).compute();
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try{
+			pool.invoke(new DecodeTask(DecodeTask.WIRE_ARRAYS, 0, wireArrays.length()));
+			DecodeTask sinks = new DecodeTask(DecodeTask.TILE_SINKS, 0, tileSinks.length());
+			pool.execute(sinks);
+			pool.invoke(new DecodeTask(DecodeTask.TILE_WIRES, 0, tileWires.length()));
+			sinks.join();
+		}
+		finally{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Decodes a range of entries of one of the pools, splitting the range
+	 * in half until it is small enough.
+	 */
+	private class DecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = -2718496720356411537L;
+		static final int WIRE_ARRAYS = 0;
+		static final int TILE_SINKS = 1;
+		static final int TILE_WIRES = 2;
+		/** Which pool to decode */
+		private int section;
+		/** First entry to decode */
+		private int start;
+		/** One past the last entry to decode */
+		private int end;
+		
+		DecodeTask(int section, int start, int end){
+			this.section = section;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute(){
+			if(end - start > SPLIT_THRESHOLD && getPool() != null){
+				int middle = (start + end) >>> 1;
+				invokeAll(new DecodeTask(section, start, middle), new DecodeTask(section, middle, end));
+				return;
+			}
+			for(int i=start; i < end; i++){
+				switch(section){
+					case WIRE_ARRAYS: getWireArray(i); break;
+					case TILE_SINKS: getSinks(i); break;
+					default: getWireHashMap(i); break;
+				}
+			}
+		}
+	}
+	
+	private Object decodeWireHashMap(int entry){
+		int[] data = tileWiresPool.getEntry(entry);
+		if(data.length == 0){
+			return EMPTY;
+		}
+		WireHashMap newMap = new WireHashMap((int)((data.length/2)*1.3f));
+		for(int j=0; j < data.length; j+=2){
+			newMap.put(data[j], getWireArray(data[j+1]));
+		}
+		newMap.freeze();
+		return newMap;
+	}
+	
+	private WireConnection[] getWireArray(int entry){
+		WireConnection[] array = wireArrays.get(entry);
+		if(array != null){
+			return array;
+		}
+		int length = wireArrayPool.length(entry);
+		array = new WireConnection[length];
+		for(int j=0; j < length; j++){
+			array[j] = wires[wireArrayPool.get(entry, j)];
+		}
+		if(!wireArrays.compareAndSet(entry, null, array)){
+			return wireArrays.get(entry);
+		}
+		return array;
+	}
+}
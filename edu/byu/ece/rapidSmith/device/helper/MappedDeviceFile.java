@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * This class reads and writes the memory mapped device file format.  Unlike
+ * the compressed Hessian device files, every section of this format is a flat
+ * array of big-endian ints (or UTF-8 bytes for the string table) located by a
+ * section directory at the beginning of the file.  This allows the file to be
+ * opened with FileChannel.map() and each section to be read with bulk reads
+ * straight from the mapping, without parsing the whole file first.  The
+ * Device objects are still built on the heap, but when the device is loaded
+ * lazily the sinks and wires of a tile are only decoded the first time they
+ * are used.  The OS page cache holding the mapped file is shared by all JVMs
+ * on the same host.
+ *
+ * The length and modification time of the compact device file the mapped file
+ * was converted from are kept in the header so a mapped file that is older
+ * than its compact device file can be detected (see matchesSource()).
+ *
+ * The layout of the file is:
+ * <pre>
+ * int  magic
+ * int  format version
+ * int  section count
+ * long length of the source compact device file
+ * long modification time of the source compact device file
+ * long offset, long length (for each section, in Section.ordinal() order)
+ * ...  section data, each section aligned to 8 bytes
+ * </pre>
+ * Pooled sections (those with a variable number of ints per entry) are stored
+ * as: count, count+1 entry offsets into the data, followed by the data.
+ */
+public class MappedDeviceFile {
+
+	/** Identifies a RapidSmith memory mapped device file ("RSMD") */
+	public static final int MAGIC = 0x52534D44;
+	/** The current version of the mapped device file layout */
+	public static final int FORMAT_VERSION = 2;
+	/** Size of the fixed portion of the header in bytes */
+	private static final int HEADER_SIZE = 28;
+	/** Size of each entry in the section directory in bytes */
+	private static final int DIRECTORY_ENTRY_SIZE = 16;
+	/** Character set used for the string table */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The sections of a mapped device file, the ordinal is the index
+	 * into the section directory.
+	 */
+	public enum Section {
+		/** rows, columns, part name string */
+		INFO,
+		/** count, offsets, UTF-8 bytes of every string in the device */
+		STRINGS,
+		/** count, (wire|isPIP, rowOffset|columnOffset) for each unique WireConnection */
+		WIRES,
+		/** pooled arrays of WIRES indices */
+		WIRE_ARRAYS,
+		/** pooled (sink wire, switch matrix sink wire, switch matrix tile offset) triples */
+		TILE_SINKS,
+		/** pooled arrays of source wires */
+		TILE_SOURCES,
+		/** pooled (wire, WIRE_ARRAYS index) pairs */
+		TILE_WIRES,
+		/** (name string, type, sinks, sources, wires, primitive site count) for every tile */
+		TILES,
+		/** pooled (pin name string, wire) pairs */
+		PRIMITIVE_PIN_MAPS,
+		/** count, (name string, type, tile address, pin map) for every site in tile order */
+		PRIMITIVE_SITES,
+		/** count, (type, in wire, out wire, WIRES index) for every route through */
+		ROUTE_THROUGHS
+	}
+
+	/** The number of ints used by each tile in the TILES section */
+	public static final int TILE_RECORD_SIZE = 6;
+
+	/** The mapped file */
+	private MappedByteBuffer buffer;
+	/** Format version found in the file */
+	private int formatVersion;
+	/** Length of the compact device file this file was converted from */
+	private long sourceLength;
+	/** Modification time of the compact device file this file was converted from */
+	private long sourceModified;
+	/** Byte offset of each section */
+	private long[] offsets;
+	/** Byte length of each section */
+	private long[] lengths;
+
+	private MappedDeviceFile(){
+
+	}
+
+	/**
+	 * Maps the file into memory and reads the section directory.  No section
+	 * data is read until it is requested.
+	 * @param fileName Name of the mapped device file.
+	 * @return The opened mapped device file.
+	 * @throws IOException If the file could not be mapped or is not a mapped device file.
+	 */
+	public static MappedDeviceFile open(String fileName) throws IOException{
+		MappedDeviceFile file = new MappedDeviceFile();
+		FileInputStream fis = new FileInputStream(fileName);
+		try{
+			FileChannel channel = fis.getChannel();
+			if(channel.size() > Integer.MAX_VALUE){
+				throw new IOException("Mapped device file is too large: " + fileName);
+			}
+			file.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally{
+			// The mapping remains valid after the channel is closed
+			fis.close();
+		}
+
+		if(file.buffer.getInt(0) != MAGIC){
+			throw new IOException("Not a mapped device file: " + fileName);
+		}
+		file.formatVersion = file.buffer.getInt(4);
+		if(file.formatVersion != FORMAT_VERSION){
+			// The rest of the header may have a different layout
+			file.offsets = new long[0];
+			file.lengths = new long[0];
+			return file;
+		}
+		int sectionCount = file.buffer.getInt(8);
+		file.sourceLength = file.buffer.getLong(12);
+		file.sourceModified = file.buffer.getLong(20);
+		file.offsets = new long[sectionCount];
+		file.lengths = new long[sectionCount];
+		for(int i=0; i < sectionCount; i++){
+			file.offsets[i] = file.buffer.getLong(HEADER_SIZE + i*DIRECTORY_ENTRY_SIZE);
+			file.lengths[i] = file.buffer.getLong(HEADER_SIZE + i*DIRECTORY_ENTRY_SIZE + 8);
+		}
+		return file;
+	}
+
+	/**
+	 * Gets the format version stored in the header of the file.
+	 * @return The format version of the file.
+	 */
+	public int getFormatVersion(){
+		return formatVersion;
+	}
+
+	/**
+	 * @return The length of the compact device file this file was converted from.
+	 */
+	public long getSourceLength(){
+		return sourceLength;
+	}
+
+	/**
+	 * @return The modification time of the compact device file this file was converted from.
+	 */
+	public long getSourceModified(){
+		return sourceModified;
+	}
+
+	/**
+	 * Checks if a mapped device file was converted from the current version of
+	 * a compact device file.  Only the header of the mapped file is read.  When
+	 * the compact device file does not exist, the mapped file is considered
+	 * current.  Files of another format version are reported by open() and
+	 * isCompatible() instead.
+	 * @param fileName Name of the mapped device file.
+	 * @param sourceFileName Name of the compact device file it was converted from.
+	 * @return False if the compact device file has changed since the mapped
+	 * file was written, true otherwise.
+	 * @throws IOException If the header of the mapped file could not be read.
+	 */
+	public static boolean matchesSource(String fileName, String sourceFileName) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		try{
+			if(raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != FORMAT_VERSION){
+				return true;
+			}
+			raf.readInt();
+			long length = raf.readLong();
+			long modified = raf.readLong();
+			File source = new File(sourceFileName);
+			return !source.exists() || (source.length() == length && source.lastModified() == modified);
+		}
+		finally{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks if the file was written with the same layout this class reads.
+	 * @return True if the file is compatible with this version of RapidSmith.
+	 */
+	public boolean isCompatible(){
+		return formatVersion == FORMAT_VERSION && offsets.length == Section.values().length;
+	}
+
+	/**
+	 * Gets the byte length of a section.
+	 * @param section The section of interest.
+	 * @return The length of the section in bytes.
+	 */
+	public long getSectionLength(Section section){
+		return lengths[section.ordinal()];
+	}
+
+	/**
+	 * Gets a read-only view of the bytes of a section.  The view shares the
+	 * underlying mapping and has its own position and limit.
+	 * @param section The section to get.
+	 * @return A buffer positioned at the beginning of the section.
+	 */
+	public ByteBuffer getByteSection(Section section){
+		ByteBuffer b = buffer.duplicate();
+		b.position((int) offsets[section.ordinal()]);
+		b.limit((int) (offsets[section.ordinal()] + lengths[section.ordinal()]));
+		return b.slice();
+	}
+
+	/**
+	 * Gets an int view of a section.  The view shares the underlying mapping
+	 * and has its own position and limit.
+	 * @param section The section to get.
+	 * @return An int buffer positioned at the beginning of the section.
+	 */
+	public IntBuffer getIntSection(Section section){
+		return getByteSection(section).asIntBuffer();
+	}
+
+	/**
+	 * Gets a pooled section that can be queried in place.
+	 * @param section The pooled section to get.
+	 * @return The pool backed by the mapped file.
+	 */
+	public IntPool getPool(Section section){
+		return new IntPool(getIntSection(section));
+	}
+
+	/**
+	 * Decodes the string table of the file.
+	 * @return All strings of the file indexed by their string number.
+	 */
+	public String[] readStrings(){
+		ByteBuffer b = getByteSection(Section.STRINGS);
+		int count = b.getInt();
+		int[] stringOffsets = new int[count+1];
+		for(int i=0; i < stringOffsets.length; i++){
+			stringOffsets[i] = b.getInt();
+		}
+		byte[] bytes = new byte[b.remaining()];
+		b.get(bytes);
+		String[] strings = new String[count];
+		for(int i=0; i < count; i++){
+			strings[i] = new String(bytes, stringOffsets[i], stringOffsets[i+1]-stringOffsets[i], UTF8);
+		}
+		return strings;
+	}
+
+	/**
+	 * A pool of variable length int entries stored in a section.  The entry
+	 * offsets are read once, the entry data is read in place from the section.
+	 */
+	public static class IntPool {
+		/** Offset of each entry into data, with one extra for the end of the last entry */
+		private int[] entryOffsets;
+		/** The entry data */
+		private IntBuffer data;
+
+		public IntPool(IntBuffer section){
+			int count = section.get();
+			entryOffsets = new int[count+1];
+			section.get(entryOffsets);
+			data = section.slice();
+		}
+
+		/**
+		 * @return The number of entries in the pool.
+		 */
+		public int size(){
+			return entryOffsets.length-1;
+		}
+
+		/**
+		 * Gets the number of ints stored in an entry.
+		 * @param entry The index of the entry.
+		 * @return The number of ints in the entry.
+		 */
+		public int length(int entry){
+			return entryOffsets[entry+1] - entryOffsets[entry];
+		}
+
+		/**
+		 * Gets one int of an entry.
+		 * @param entry The index of the entry.
+		 * @param i The index of the int within the entry.
+		 * @return The int value.
+		 */
+		public int get(int entry, int i){
+			return data.get(entryOffsets[entry] + i);
+		}
+
+		/**
+		 * Copies an entry out of the pool.
+		 * @param entry The index of the entry to copy.
+		 * @return A new array with the contents of the entry.
+		 */
+		public int[] getEntry(int entry){
+			int[] tmp = new int[length(entry)];
+			IntBuffer b = data.duplicate();
+			b.position(entryOffsets[entry]);
+			b.get(tmp);
+			return tmp;
+		}
+	}
+
+	//========================================================================//
+	// Writing Methods
+	//========================================================================//
+	/**
+	 * Builds the int array of a pooled section.
+	 * @param entries The entries of the pool in enumeration order.
+	 * @return The section contents.
+	 */
+	public static int[] createPoolSection(ArrayList<int[]> entries){
+		int total = 0;
+		for(int[] entry : entries){
+			total += entry.length;
+		}
+		int[] section = new int[1 + entries.size() + 1 + total];
+		section[0] = entries.size();
+		int offset = 0;
+		int idx = 1;
+		for(int[] entry : entries){
+			section[idx++] = offset;
+			offset += entry.length;
+		}
+		section[idx++] = offset;
+		for(int[] entry : entries){
+			System.arraycopy(entry, 0, section, idx, entry.length);
+			idx += entry.length;
+		}
+		return section;
+	}
+
+	/**
+	 * Builds the string table section.
+	 * @param strings All strings in string number order.
+	 * @return The section contents.
+	 */
+	public static byte[] createStringSection(ArrayList<String> strings){
+		byte[][] encoded = new byte[strings.size()][];
+		int total = 0;
+		for(int i=0; i < encoded.length; i++){
+			encoded[i] = strings.get(i).getBytes(UTF8);
+			total += encoded[i].length;
+		}
+		ByteBuffer b = ByteBuffer.allocate(4 + 4*(encoded.length+1) + total);
+		b.putInt(encoded.length);
+		int offset = 0;
+		for(byte[] s : encoded){
+			b.putInt(offset);
+			offset += s.length;
+		}
+		b.putInt(offset);
+		for(byte[] s : encoded){
+			b.put(s);
+		}
+		return b.array();
+	}
+
+	/**
+	 * Writes a mapped device file.
+	 * @param fileName Name of the file to create.
+	 * @param sections The contents of each section in Section.ordinal() order,
+	 * each is either an int[] or a byte[].
+	 * @param sourceFileName Name of the compact device file the sections were
+	 * converted from, its length and modification time are stored in the header.
+	 * @throws IOException If there was a problem writing the file.
+	 */
+	public static void write(String fileName, Object[] sections, String sourceFileName) throws IOException{
+		Section[] values = Section.values();
+		ByteBuffer[] contents = new ByteBuffer[values.length];
+		for(int i=0; i < values.length; i++){
+			if(sections[i] instanceof int[]){
+				int[] ints = (int[]) sections[i];
+				contents[i] = ByteBuffer.allocate(ints.length*4);
+				contents[i].asIntBuffer().put(ints);
+			}
+			else{
+				contents[i] = ByteBuffer.wrap((byte[]) sections[i]);
+			}
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(align(HEADER_SIZE + values.length*DIRECTORY_ENTRY_SIZE));
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putInt(values.length);
+		File source = new File(sourceFileName);
+		header.putLong(source.length());
+		header.putLong(source.lastModified());
+		long offset = header.capacity();
+		for(ByteBuffer section : contents){
+			header.putLong(offset);
+			header.putLong(section.capacity());
+			offset += align(section.capacity());
+		}
+		header.rewind();
+
+		RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+		try{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			writeFully(channel, header);
+			ByteBuffer padding = ByteBuffer.allocate(8);
+			for(int i=0; i < contents.length; i++){
+				writeFully(channel, contents[i]);
+				padding.clear();
+				padding.limit(align(contents[i].capacity()) - contents[i].capacity());
+				writeFully(channel, padding);
+			}
+		}
+		finally{
+			raf.close();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer b) throws IOException{
+		while(b.hasRemaining()){
+			channel.write(b);
+		}
+	}
+
+	private static int align(int size){
+		return (size + 7) & ~7;
+	}
+
+	/**
+	 * A helper class used while writing to give each unique string
+	 * a string number.
+	 */
+	public static class StringTable {
+		private HashMap<String,Integer> ids = new HashMap<String,Integer>();
+		private ArrayList<String> strings = new ArrayList<String>();
+
+		/**
+		 * Gets the string number of a string, adding it to the table if necessary.
+		 * @param s The string to add.
+		 * @return The string number of s.
+		 */
+		public int add(String s){
+			Integer id = ids.get(s);
+			if(id == null){
+				id = strings.size();
+				ids.put(s, id);
+				strings.add(s);
+			}
+			return id;
+		}
+
+		/**
+		 * @return All strings in string number order.
+		 */
+		public ArrayList<String> getStrings(){
+			return strings;
+		}
+	}
+
+	/**
+	 * Prints an error explaining that a mapped device file must be regenerated.
+	 * @param fileName The mapped device file which is out of date.
+	 */
+	public static void printIncompatibleMessage(String fileName){
+		MessageGenerator.briefError("Warning, the mapped device file " + fileName +
+			" was created by a different version of RapidSmith and will be ignored. " +
+			"Regenerate it with edu.byu.ece.rapidSmith.util.DeviceFileConverter.");
+	}
+
+	/**
+	 * Prints an error explaining that a mapped device file is older than its
+	 * compact device file and must be regenerated.
+	 * @param fileName The mapped device file which is out of date.
+	 */
+	public static void printOutOfDateMessage(String fileName){
+		MessageGenerator.briefError("Warning, the mapped device file " + fileName +
+			" does not match its compact device file and will be ignored. " +
+			"Regenerate it with edu.byu.ece.rapidSmith.util.DeviceFileConverter.");
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.byu.ece.rapidSmith.device.SinkPin;
+
+/**
+ * An int keyed open addressing map from sink wires to SinkPins, built in 
+ * the same way as WireHashMap.  It replaces HashMap<Integer,SinkPin> for 
+ * tile sinks to avoid an Integer and an entry object for every sink.  
+ * Empty slots in the keys table are -1, so negative sink wires are not 
+ * supported.
+ * @author Chris Lavin
+ */
+public class SinkHashMap implements Serializable {
+
+	private static final long serialVersionUID = -3305447651858283722L;
+
+	/** The default initial capacity - MUST be a power of two. */
+	static final int DEFAULT_INITIAL_CAPACITY = 4;
+
+	/** The load factor used when none specified in constructor. */
+	static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+	/** The keys table. Length MUST Always be a power of two. */
+	public int[] keys;
+
+	/** The corresponding values table. */
+	public SinkPin[] values;
+
+	/** The number of key-value mappings contained in this map. */
+	private int size;
+
+	/** The next size value at which to resize (capacity * load factor). */
+	private int threshold;
+
+	public SinkHashMap(int capacity){
+		if (capacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + capacity);
+		
+		// Find a power of 2 >= capacity/load factor
+		int finalCapacity = DEFAULT_INITIAL_CAPACITY;
+		while (finalCapacity * DEFAULT_LOAD_FACTOR < capacity)
+			finalCapacity <<= 1;
+		
+		threshold = (int)(finalCapacity * DEFAULT_LOAD_FACTOR);
+		keys = new int[finalCapacity];
+		Arrays.fill(keys, -1);
+		values = new SinkPin[finalCapacity];
+		size = 0;
+	}
+
+	public SinkHashMap(){
+		this(0);
+	}
+
+	/**
+	 * Returns the number of key-value mappings in this map.
+	 * @return the number of key-value mappings in this map
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	private int indexFor(int key) {
+		int i = key & (keys.length-1);
+		while(keys[i] != key && keys[i] != -1){
+			i = (i+1) & (keys.length-1);
+		}
+		return i;
+	}
+
+	public SinkPin get(int key){
+		int i = indexFor(key);
+		if (keys[i] == -1)
+			return null;
+		return values[i];
+	}
+
+	public boolean containsKey(int key){
+		return keys[indexFor(key)] != -1;
+	}
+
+	/**
+	 * Adds or replaces the sink pin of a sink wire.
+	 * @param key The sink wire, must not be negative.
+	 * @param value The sink pin of the wire.
+	 * @throws IllegalArgumentException If key is negative (-1 marks empty slots).
+	 */
+	public void put(int key, SinkPin value){
+		if (key < 0)
+			throw new IllegalArgumentException("Illegal sink wire: " + key);
+		int i = indexFor(key);
+		if(keys[i] == -1)
+			size++;
+		keys[i] = key;
+		values[i] = value;
+
+		if(size > threshold){
+			grow();
+		}
+	}
+
+	private void grow(){
+		int newCapacity = keys.length*2;
+		threshold = (int)(newCapacity * DEFAULT_LOAD_FACTOR);
+		int[] oldKeys = keys;
+		SinkPin[] oldValues = values;
+		keys = new int[newCapacity];
+		Arrays.fill(keys, -1);
+		values = new SinkPin[newCapacity];
+		size = 0;
+		for(int i=0; i < oldKeys.length; i++){
+			if(oldKeys[i] != -1){
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Gets an iterator over the sink wires in this map which does not box
+	 * the keys.
+	 * @return A new iterator over the keys of this map.
+	 */
+	public IntIterator keyIterator(){
+		return new IntKeyIterator(keys);
+	}
+
+	/**
+	 * Restarts the given iterator over the sink wires in this map so it can
+	 * be reused without allocating.
+	 * @param iterator The iterator to reuse.
+	 * @return The iterator reset to the keys of this map.
+	 */
+	public IntIterator keyIterator(IntKeyIterator iterator){
+		return iterator.reset(keys);
+	}
+
+	/**
+	 * Gets the sink wires in this map in ascending order.
+	 * @return A new sorted array of the keys of this map.
+	 */
+	public int[] getSortedKeys(){
+		int[] sorted = new int[size];
+		int j = 0;
+		for(int key : keys){
+			if(key != -1)
+				sorted[j++] = key;
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Creates a set of the keys of this map.  Prefer keyIterator() which 
+	 * does not box the keys.
+	 * @return A new set containing the keys of this map.
+	 */
+	public Set<Integer> keySet(){
+		Set<Integer> keySet = new HashSet<>(size*2);
+		for (int key : keys) {
+			if (key != -1)
+				keySet.add(key);
+		}
+		return keySet;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != -1) {
+				hash += keys[i] * 7;
+				if (values[i] != null)
+					hash += values[i].hashCode() * 13;
+			}
+		}
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if ((obj == null) || (getClass() != obj.getClass()))
+			return false;
+
+		SinkHashMap other = (SinkHashMap) obj;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == -1)
+				continue;
+			int j = other.indexFor(keys[i]);
+			if (other.keys[j] == -1)
+				return false;
+			if (values[i] == null ? other.values[j] != null : !values[i].equals(other.values[j]))
+				return false;
+		}
+		return true;
+	}
+}
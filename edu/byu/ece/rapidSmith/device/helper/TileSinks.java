@@ -21,10 +21,6 @@
 package edu.byu.ece.rapidSmith.device.helper;
 
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.HashMap;
-
-import edu.byu.ece.rapidSmith.device.SinkPin;
 
 /**
  * A helper class to help reduce the memory usage and file size of
@@ -35,13 +31,13 @@ public class TileSinks implements Serializable{
 
 	private static final long serialVersionUID = -4542976263775993364L;
 	/** Sinks and mappings for the tile */
-	public HashMap<Integer,SinkPin> sinks;
+	public SinkHashMap sinks;
 
 	/**
 	 * Constructor
 	 * @param sinks Mappings for this tileSink.
 	 */
-	public TileSinks(HashMap<Integer,SinkPin> sinks){
+	public TileSinks(SinkHashMap sinks){
 		this.sinks = sinks;
 	}
 
@@ -56,18 +52,7 @@ public class TileSinks implements Serializable{
 			return hash;
 		}
 		else{
-			Integer[] keys = new Integer[sinks.keySet().size()];
-			keys = sinks.keySet().toArray(keys);
-			Arrays.sort(keys);
-			hash += Arrays.deepHashCode(keys);
-			for(Integer key : keys) {
-				hash += sinks.get(key).hashCode() * 7;
-			}
-			/*Arrays.sort(sinks);
-			for(Integer i : sinks){
-				hash += i * 7;
-			}*/
-			return hash;
+			return sinks.hashCode();
 		}
 	}
 
@@ -89,24 +74,6 @@ public class TileSinks implements Serializable{
 		if(other.sinks == null || sinks == null){
 			return false;
 		}
-		if(other.sinks.size() != sinks.size()){
-			return false;
-		}
-		Integer[] keys = new Integer[sinks.keySet().size()];
-		Integer[] otherKeys = new Integer[sinks.keySet().size()];
-		keys = sinks.keySet().toArray(keys);
-		otherKeys = other.sinks.keySet().toArray(otherKeys);
-		Arrays.sort(keys);
-		Arrays.sort(otherKeys);
-		if(!Arrays.deepEquals(keys, otherKeys)){
-			return false;
-		}
-		for(int i = 0; i < otherKeys.length; i++){
-			if(!sinks.get(keys[i]).equals(other.sinks.get(otherKeys[i]))){
-				return false;
-			}
-		}
-
-		return true;
+		return sinks.equals(other.sinks);
 	}
 }
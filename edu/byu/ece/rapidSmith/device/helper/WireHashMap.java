@@ -27,6 +27,7 @@ import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -67,11 +68,29 @@ public class WireHashMap implements Serializable {
      */
     public transient WireConnection[][] values;
     
+    /**
+     * The corresponding values table in packed form (see WireConnection.pack()),
+     * null unless the map has been packed with pack().
+     */
+    private transient long[][] packedValues;
+
     /**
      * The number of key-value mappings contained in this map.
      */
     transient int size;
 
+	/**
+	 * Displacement of each bucket when the map is frozen into a perfect hash
+	 * layout (see freeze()), null otherwise.
+	 */
+	private transient char[] displacements;
+
+	/** Number of displacements to try per bucket before giving up on freezing */
+	private static final int MAX_DISPLACEMENT = 1 << 16;
+
+	/** Average number of keys per displacement bucket */
+	private static final int KEYS_PER_BUCKET = 4;
+
 	// These variables are used to track the whether the caches are up to date.
 	// A cache is up to date if it is equivalent to the wireHashMapModification
 	// value.  Any put operation updates the wireHashMapModification value
@@ -166,19 +185,62 @@ public class WireHashMap implements Serializable {
 		return i;
 	}
     
+	/**
+	 * Gets the slot of a key in the perfect hash layout.
+	 */
+	private static int perfectIndexFor(int key, int displacement, int tableMask) {
+		int h = ((key * 0x9E3779B9) ^ displacement) * 0x85EBCA6B;
+		return (h ^ (h >>> 16)) & tableMask;
+	}
+
+	/**
+	 * Gets the slot holding the key.
+	 * @return The slot of the key or -1 if the key is not in this map.
+	 */
+	private int slotOf(int key){
+		char[] d = displacements;
+		if (d != null) {
+			int i = perfectIndexFor(key, d[key & (d.length-1)], keys.length-1);
+			return keys[i] == key ? i : -1;
+		}
+		int i = indexFor(key);
+		return keys[i] == -1 ? -1 : i;
+	}
+
     public WireConnection[] get(int key){
-	    int i = indexFor(key);
-	    if (keys[i] == -1)
+	    int i = slotOf(key);
+	    if (i == -1)
 		    return null;
+	    if (values == null)
+		    return unpack(packedValues[i]);
         return values[i];
     } 
 
+	/**
+	 * Gets the connections of a wire in packed form (see WireConnection.pack()).
+	 * The returned array is shared and should not be modified.
+	 * @param key The wire to get the connections of.
+	 * @return The packed connections of the wire or null if the wire is not in
+	 * this map or the map has not been packed.
+	 */
+	public long[] getPacked(int key){
+		if (packedValues == null)
+			return null;
+		int i = slotOf(key);
+		return i == -1 ? null : packedValues[i];
+	}
+
     public void put(int key, WireConnection[] value){
+		if (displacements != null)
+			thaw();
 		int i = indexFor(key);
         if(keys[i] == -1)
 	        size++;
         keys[i] = key;
-        values[i] = value;
+        if (values != null)
+	        values[i] = value;
+        if (packedValues != null)
+	        packedValues[i] = pack(value);
 	    wireHashMapModification++;
 
         if(size > threshold){
@@ -189,19 +251,229 @@ public class WireHashMap implements Serializable {
     private void grow(){
     	int newCapacity = keys.length*2;
         threshold = (int)(newCapacity * loadFactor);
-    	int[] oldKeys = keys;
-    	WireConnection[][] oldValues = values;
-        keys = new int[newCapacity];
-	    Arrays.fill(keys, -1);
-        values = new WireConnection[newCapacity][];
-        size = 0;
-        for(int i=0; i < oldKeys.length; i++){
-			if(oldKeys[i] != -1){
-				put(oldKeys[i], oldValues[i]);
+        rehash(newCapacity);
+    }
+
+	/**
+	 * Moves all entries into new tables of the given capacity using the
+	 * regular open addressing layout.
+	 */
+	private void rehash(int capacity){
+		int[] oldKeys = keys;
+		WireConnection[][] oldValues = values;
+		long[][] oldPackedValues = packedValues;
+		keys = new int[capacity];
+		Arrays.fill(keys, -1);
+		values = oldValues == null ? null : new WireConnection[capacity][];
+		packedValues = oldPackedValues == null ? null : new long[capacity][];
+		size = 0;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] == -1)
+				continue;
+			int i = indexFor(oldKeys[j]);
+			keys[i] = oldKeys[j];
+			if (values != null)
+				values[i] = oldValues[j];
+			if (packedValues != null)
+				packedValues[i] = oldPackedValues[j];
+			size++;
+		}
+	}
+
+	/**
+	 * Stores the connections of this map in packed form (see 
+	 * WireConnection.pack()) so they can be read with getPacked() or a 
+	 * WireConnectionCursor without dereferencing connection objects.  
+	 * Identical connection arrays are packed into the same long array.
+	 * @param shared Packed arrays of the connection arrays already packed 
+	 * (by identity), new ones are added to it.  This allows maps of a device
+	 * to share packed arrays the same way they share connection arrays.
+	 * @param releaseObjects If true, the connection arrays are dropped to 
+	 * save memory and get() creates new connection objects on each call.
+	 */
+	public void pack(Map<WireConnection[], long[]> shared, boolean releaseObjects){
+		if (values == null)
+			return;
+		if (packedValues == null) {
+			packedValues = new long[keys.length][];
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == -1 || values[i] == null)
+					continue;
+				long[] packed = shared.get(values[i]);
+				if (packed == null) {
+					packed = pack(values[i]);
+					shared.put(values[i], packed);
+				}
+				packedValues[i] = packed;
 			}
 		}
-    }
+		if (releaseObjects) {
+			values = null;
+			valuesCache = null;
+		}
+		wireHashMapModification++;
+	}
+
+	/**
+	 * @return True if the connections of this map are available in packed form.
+	 */
+	public boolean isPacked(){
+		return packedValues != null;
+	}
+
+	private static long[] pack(WireConnection[] wires){
+		if (wires == null)
+			return null;
+		long[] packed = new long[wires.length];
+		for (int i = 0; i < wires.length; i++)
+			packed[i] = wires[i].pack();
+		return packed;
+	}
+
+	private static WireConnection[] unpack(long[] packed){
+		if (packed == null)
+			return null;
+		WireConnection[] wires = new WireConnection[packed.length];
+		for (int i = 0; i < packed.length; i++)
+			wires[i] = WireConnection.unpack(packed[i]);
+		return wires;
+	}
     
+	/**
+	 * Gets an iterator over the wires in this map which does not box the
+	 * keys.
+	 * @return A new iterator over the keys of this map.
+	 */
+	public IntIterator keyIterator(){
+		return new IntKeyIterator(keys);
+	}
+
+	/**
+	 * Restarts the given iterator over the wires in this map so it can be
+	 * reused without allocating.
+	 * @param iterator The iterator to reuse.
+	 * @return The iterator reset to the keys of this map.
+	 */
+	public IntIterator keyIterator(IntKeyIterator iterator){
+		return iterator.reset(keys);
+	}
+
+	/**
+	 * Rearranges the keys of this map into a perfect hash layout in which
+	 * every key is found with a single probe.  The keys are split into small
+	 * buckets (by their low bits) and each bucket is assigned a displacement
+	 * that places all of its keys into free slots of the table.  The table
+	 * keeps its current capacity so no extra memory is needed apart from one
+	 * char per bucket.  The map remains usable as before; a later put() 
+	 * returns it to the regular layout.  This should be called on maps that 
+	 * are no longer modified, such as those of a loaded device.
+	 * @return True if the map was frozen, false if no perfect layout was
+	 * found and the map was left unchanged.
+	 */
+	public boolean freeze(){
+		if (displacements != null)
+			return true;
+		int bucketCount = 1;
+		while (bucketCount * KEYS_PER_BUCKET < size)
+			bucketCount <<= 1;
+		int bucketMask = bucketCount - 1;
+		int tableMask = keys.length - 1;
+
+		// Group the occupied slots by bucket
+		int[] bucketSizes = new int[bucketCount];
+		for (int key : keys) {
+			if (key != -1)
+				bucketSizes[key & bucketMask]++;
+		}
+		int[] bucketStarts = new int[bucketCount+1];
+		for (int b = 0; b < bucketCount; b++)
+			bucketStarts[b+1] = bucketStarts[b] + bucketSizes[b];
+		int[] slots = new int[size];
+		int[] fill = Arrays.copyOf(bucketStarts, bucketCount);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != -1)
+				slots[fill[keys[i] & bucketMask]++] = i;
+		}
+
+		// Place the largest buckets first
+		int maxBucketSize = 0;
+		for (int b = 0; b < bucketCount; b++)
+			maxBucketSize = Math.max(maxBucketSize, bucketSizes[b]);
+		char[] d = new char[bucketCount];
+		boolean[] taken = new boolean[keys.length];
+		int[] placed = new int[maxBucketSize];
+		for (int count = maxBucketSize; count > 0; count--) {
+			for (int b = 0; b < bucketCount; b++) {
+				if (bucketSizes[b] == count && !placeBucket(b, slots, bucketStarts[b], count, taken, placed, d))
+					return false;
+			}
+		}
+
+		// Move the entries to their new slots
+		int[] newKeys = new int[keys.length];
+		Arrays.fill(newKeys, -1);
+		WireConnection[][] newValues = values == null ? null : new WireConnection[keys.length][];
+		long[][] newPackedValues = packedValues == null ? null : new long[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			int key = keys[i];
+			if (key == -1)
+				continue;
+			int slot = perfectIndexFor(key, d[key & bucketMask], tableMask);
+			newKeys[slot] = key;
+			if (newValues != null)
+				newValues[slot] = values[i];
+			if (newPackedValues != null)
+				newPackedValues[slot] = packedValues[i];
+		}
+		keys = newKeys;
+		values = newValues;
+		packedValues = newPackedValues;
+		displacements = d;
+		wireHashMapModification++;
+		return true;
+	}
+
+	/**
+	 * Finds a displacement which places every key of a bucket into a free
+	 * slot and marks those slots as taken.
+	 * @return True if a displacement was found, false otherwise.
+	 */
+	private boolean placeBucket(int bucket, int[] slots, int start, int count, boolean[] taken, int[] placed, char[] d){
+		int tableMask = keys.length - 1;
+		for (int displacement = 0; displacement < MAX_DISPLACEMENT; displacement++) {
+			int j = 0;
+			for (; j < count; j++) {
+				int slot = perfectIndexFor(keys[slots[start+j]], displacement, tableMask);
+				if (taken[slot])
+					break;
+				taken[slot] = true;
+				placed[j] = slot;
+			}
+			if (j == count) {
+				d[bucket] = (char) displacement;
+				return true;
+			}
+			for (int k = 0; k < j; k++)
+				taken[placed[k]] = false;
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if this map is currently in the perfect hash layout.
+	 */
+	public boolean isFrozen(){
+		return displacements != null;
+	}
+
+	/**
+	 * Returns a frozen map to the regular open addressing layout.
+	 */
+	private void thaw(){
+		displacements = null;
+		rehash(keys.length);
+	}
+
     public Set<Integer> keySet(){
 	    // check if the cached keySets are current
 	    Set<Integer> keySet = keySetCache == null ? null : keySetCache.get();
@@ -230,7 +502,7 @@ public class WireHashMap implements Serializable {
 	    valuesList = new ArrayList<>(size);
     	for (int i = 0; i < keys.length; i++) {
 			if(keys[i] != -1)
-				valuesList.add(values[i]);
+				valuesList.add(values == null ? unpack(packedValues[i]) : values[i]);
 		}
 	    valuesCache = new SoftReference<>(valuesList);
     	return valuesList;
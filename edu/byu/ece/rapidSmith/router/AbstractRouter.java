@@ -90,6 +90,12 @@ public abstract class AbstractRouter{
 	/** Counts the number of times the router failed to route a connection */
 	protected int failedConnections;
 	NodeFactory<? extends Node> factory;
+	/** The cost function used to guide the search, created when first needed if not set */
+	protected CostFunction costFunction;
+	/** Receive the measurements of the router */
+	protected ArrayList<RouterListener> listeners;
+	/** Number of times each net has been routed by this router */
+	protected HashMap<Net,Integer> netRouteCounts;
 	
 	public AbstractRouter() {
 		this(new DefaultNodeFactory());
@@ -102,6 +108,8 @@ public abstract class AbstractRouter{
 		usedNodes = new HashSet<Node>();
 		usedNodesMap = new HashMap<Node, LinkedList<Net>>();
 		reservedNodes = new HashMap<Net, ArrayList<Node>>();
+		listeners = new ArrayList<RouterListener>();
+		netRouteCounts = new HashMap<Net, Integer>();
 		// Create a compare function based on node's cost
 		queue = new PriorityQueue<Node>(16, new Comparator<Node>() {
 			public int compare(Node i, Node j) {return i.cost - j.cost;}});
@@ -117,6 +125,81 @@ public abstract class AbstractRouter{
 		return design;
 	}
 	
+	/**
+	 * Gets the cost function of this router.  If none was set, a
+	 * DistanceCostFunction is created.
+	 * @return The cost function of this router.
+	 */
+	public CostFunction getCostFunction(){
+		if(costFunction == null){
+			costFunction = new DistanceCostFunction(we);
+		}
+		return costFunction;
+	}
+	
+	/**
+	 * Sets the cost function used to guide the search of this router (for
+	 * example a TimingCostFunction).  PathFinderRouter has its own
+	 * congestion based cost and does not use it.
+	 * @param costFunction The new cost function.
+	 */
+	public void setCostFunction(CostFunction costFunction){
+		this.costFunction = costFunction;
+	}
+	
+	/**
+	 * Adds a listener that receives the measurements of each net routed and
+	 * each phase of the router (see RoutingStatistics).
+	 * @param listener The listener to add.
+	 */
+	public void addRouterListener(RouterListener listener){
+		listeners.add(listener);
+	}
+	
+	public void removeRouterListener(RouterListener listener){
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * @return True if any listener wants the measurements of this router.
+	 */
+	protected boolean hasRouterListeners(){
+		return !listeners.isEmpty();
+	}
+	
+	/**
+	 * Counts one more routing of a net.
+	 * @param net The net being routed.
+	 * @return The number of times the net has been routed, including this one.
+	 */
+	protected int countNetRouting(Net net){
+		Integer count = netRouteCounts.get(net);
+		count = count == null ? 1 : count + 1;
+		netRouteCounts.put(net, count);
+		return count;
+	}
+	
+	/**
+	 * Passes the measurements of a net routed to all listeners.
+	 */
+	protected void fireNetRouted(NetRoutingStats stats){
+		for(RouterListener listener : listeners){
+			listener.netRouted(stats);
+		}
+	}
+	
+	/**
+	 * Tells all listeners that a phase of the router has finished.
+	 * @param phase The name of the phase.
+	 * @param start The value of System.nanoTime() when the phase started.
+	 */
+	protected void firePhaseFinished(String phase, long start){
+		long time = System.nanoTime() - start;
+		for(RouterListener listener : listeners){
+			listener.phaseFinished(phase, time);
+		}
+	}
+	
 	/**
 	 * Sets a node (combined tile and wire) as used and maps 
 	 * the usage to the given net.
@@ -244,35 +327,33 @@ public abstract class AbstractRouter{
 	 * the usedNodesMap should not be updated
 	 */
 	protected void markIntermediateNodesAsUsed(PIP pip, Net currentNet){
-		WireConnection[] wires = pip.getTile().getWireConnections(pip.getEndWire());
-		if(wires != null && wires.length > 1){
-			for(WireConnection w : wires){
-				if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-					Node tmp = setWireAsUsed(w.getTile(pip.getTile()), w.getWire(), currentNet);
-					if(currentNet != null) addUsedWireMapping(currentNet, tmp);
-				}
-			}
-		}
-		if(we.getWireType(pip.getStartWire()).equals(WireType.LONG) && we.getWireType(pip.getEndWire()).equals(WireType.LONG)){
-			wires = pip.getTile().getWireConnections(pip.getStartWire());
-			if(wires != null && wires.length > 1){
-				for(WireConnection w : wires){
-					if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-						Node tmp = setWireAsUsed(w.getTile(pip.getTile()), w.getWire(), currentNet);
-						if(currentNet != null) addUsedWireMapping(currentNet, tmp);
-					}
-				}
-			}
+		for(Node n : getIntermediateNodes(pip)){
+			Node tmp = setWireAsUsed(n.getTile(), n.getWire(), currentNet);
+			if(currentNet != null) addUsedWireMapping(currentNet, tmp);
 		}
 	}
 	
 	protected void markIntermediateNodesAsUnused(PIP pip, Net currentNet){
+		for(Node n : getIntermediateNodes(pip)){
+			Node tmp = setWireAsUnused(n.getTile(), n.getWire(), currentNet);
+			if(currentNet != null) removeUsedWireMapping(currentNet, tmp);
+		}
+	}
+	
+	/**
+	 * Gets the nodes external to the tile of a PIP that are used when the
+	 * PIP is used (the other tiles of doubles/pents/hexes/longlines driven
+	 * by the PIP).
+	 * @param pip The pip to get the intermediate nodes of.
+	 * @return The intermediate nodes of the PIP (empty if none).
+	 */
+	protected ArrayList<Node> getIntermediateNodes(PIP pip){
+		ArrayList<Node> nodes = new ArrayList<Node>();
 		WireConnection[] wires = pip.getTile().getWireConnections(pip.getEndWire());
 		if(wires != null && wires.length > 1){
 			for(WireConnection w : wires){
 				if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-					Node tmp = setWireAsUnused(w.getTile(pip.getTile()), w.getWire(), currentNet);
-					if(currentNet != null) removeUsedWireMapping(currentNet, tmp);
+					nodes.add(factory.newNode(w.getTile(pip.getTile()), w.getWire(), null, 0));
 				}
 			}
 		}
@@ -281,13 +362,13 @@ public abstract class AbstractRouter{
 			if(wires != null && wires.length > 1){
 				for(WireConnection w : wires){
 					if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-						Node tmp = setWireAsUnused(w.getTile(pip.getTile()), w.getWire(), currentNet);
-						if(currentNet != null) removeUsedWireMapping(currentNet, tmp);
+						nodes.add(factory.newNode(w.getTile(pip.getTile()), w.getWire(), null, 0));
 					}
 				}
 			}
 		}
-	}	
+		return nodes;
+	}
 }
 
 class DefaultNodeFactory implements NodeFactory<Node> {
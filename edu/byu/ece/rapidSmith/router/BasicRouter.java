@@ -21,14 +21,20 @@
 package edu.byu.ece.rapidSmith.router;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map.Entry;
 
 import edu.byu.ece.rapidSmith.design.Design;
 import edu.byu.ece.rapidSmith.design.Net;
 import edu.byu.ece.rapidSmith.design.PIP;
 import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.timing.TraceReportParser;
+import edu.byu.ece.rapidSmith.timing.WireDelayModel;
 import edu.byu.ece.rapidSmith.util.MessageGenerator;
 
 /**
@@ -40,144 +46,479 @@ import edu.byu.ece.rapidSmith.util.MessageGenerator;
  */
 public class BasicRouter extends AbstractRouter{
 
+	/** Default number of tiles the bounding box of a net is grown by for its first search */
+	public static final int DEFAULT_BOUNDING_BOX_MARGIN = 8;
+	/** The margin of the bounding box is multiplied by this after each failed search */
+	public static final int BOUNDING_BOX_GROWTH = 4;
+	/** Default number of nodes a single search may expand before it gives up */
+	public static final int DEFAULT_MAX_NODES_PER_CONNECTION = 1000000;
+
+	/** Node ids, visited flags, search paths and the queue of the search */
+	private RouteSearch search;
+	/** The id of the current sink node in the search */
+	private int currSinkId;
+	/** Reused to look up nodes in usedNodes */
+	private Node usedNodeProbe;
+	/** The path delay of the nodes routed for the current net, by id in the search */
+	private HashMap<Integer,Integer> netNodeDelays;
+	/** Margin of the first bounding box of each connection, -1 to search the whole device */
+	private int boundingBoxMargin;
+	/** A search gives up after expanding this many nodes */
+	private int maxNodesPerConnection;
+	/** The bounding box of the current net without margin: minRow, maxRow, minCol, maxCol */
+	private int[] netBox;
+	/** The bounds of the current search */
+	private int boxMinRow, boxMaxRow, boxMinCol, boxMaxCol;
+	/** Number of connections not searched because their sink can not be reached */
+	protected int unreachableConnections;
+	/** Number of times a search was repeated with a larger bounding box */
+	protected int boundingBoxExpansions;
+	/** Number of nets routed again without bounding boxes after a connection failed */
+	protected int unboundedNetRetries;
+	/** The ids of the nodes of the routing tree of the current net, in the order they were added */
+	private int[] netTree;
+	/** Number of nodes in netTree */
+	private int netTreeSize;
+	/** Route the sinks of a net nearest to the routing tree first */
+	private boolean orderSinks;
+	/** Routes clock nets over the clock resources, null to route them like other nets */
+	private ClockRouter clockRouter;
+	/** Number of clock nets routed by clockRouter */
+	protected int clockNetsRouted;
+	/** Why the last connection failed, null if it was routed */
+	private String connectionFailure;
+	/** Why the first failed connection of the current net failed, null if none failed */
+	private String netFailure;
+	/** The messages of the failed connections of the current net */
+	private ArrayList<String> netFailureMessages = new ArrayList<String>();
+	/** Number of connections of the current net that failed because their sink can not be reached */
+	private int netUnreachableConnections;
+	/** Nodes expanded so far for each sink of the current net, shared by the first routing and the retry */
+	private HashMap<Pin,Integer> connectionNodes = new HashMap<Pin,Integer>();
+
 	/**
 	 * Constructor to initialize router
 	 */
 	public BasicRouter(){
 		super();
 		MessageGenerator.printHeader(this.getClass().getCanonicalName());
+		search = new RouteSearch();
+		netNodeDelays = new HashMap<Integer, Integer>();
+		boundingBoxMargin = DEFAULT_BOUNDING_BOX_MARGIN;
+		maxNodesPerConnection = DEFAULT_MAX_NODES_PER_CONNECTION;
+		netTree = new int[64];
+		orderSinks = true;
+		clockRouter = new ClockRouter(this);
+		// Lookups in a HashSet of nodes with equal hash codes can fall back
+		// to Node.compareTo(), so the probe has the same cost as new nodes
+		usedNodeProbe = factory.newNode();
+		usedNodeProbe.cost = 0;
+	}
+	
+	/**
+	 * Constructor to initialize router for the given design, the device and
+	 * wire enumerator are taken from the design.
+	 * @param design The design to route.
+	 */
+	public BasicRouter(Design design){
+		this();
+		this.design = design;
+		this.dev = design.getDevice();
+		this.we = design.getWireEnumerator();
 	}
 	
 	/**
 	 * Cost function, used to set each node's cost to be prioritized by the queue 
+	 * (see getCostFunction()).
 	 * @param node The node to calculate and set its cost based on currSink.
 	 */
 	public void setCost(Node node, boolean isRouteThrough){
-		// Calculate Manhattan distance between node and sink
-		int x = currSink.getTile().getTileXCoordinate() - node.tile.getTileXCoordinate();
-		int y = currSink.getTile().getTileYCoordinate() - node.tile.getTileYCoordinate();
-		
-		// ABS
-		if(x < 0) x = -x;
-		if(y < 0) y = -y;
-
-		// Favor clock wires when routing the clock tree
-		if(isCurrSinkAClkWire && we.getWireDirection(node.wire).equals(WireDirection.CLK) && !isRouteThrough){
-			node.cost = ((x + y + node.level) * 2) - 1000 + node.history;
-		}
-		else{
-			node.cost = (x + y + node.level) * 2 + node.history;
+		CostFunction cf = getCostFunction();
+		node.cost = cf.getCost(node.tile, node.wire, node.level, cf.getDelay(node.tile, node.wire), node.history, isRouteThrough);
+	}
+	
+	public int getBoundingBoxMargin(){
+		return boundingBoxMargin;
+	}
+	
+	/**
+	 * Sets the number of tiles the bounding box of the pins of a net is
+	 * grown by for the first search of each of its connections.  When a
+	 * search fails, the margin is multiplied by BOUNDING_BOX_GROWTH and the
+	 * search is repeated until the box covers the whole device.  A net with
+	 * connections that still failed, for other reasons than an unreachable
+	 * sink, is routed once more as if the margin were -1 and the routing
+	 * with fewer failed connections is kept.
+	 * @param boundingBoxMargin The margin, -1 to always search the whole
+	 * device.
+	 */
+	public void setBoundingBoxMargin(int boundingBoxMargin){
+		this.boundingBoxMargin = boundingBoxMargin;
+	}
+	
+	public int getMaxNodesPerConnection(){
+		return maxNodesPerConnection;
+	}
+	
+	/**
+	 * Sets the number of nodes the searches for a connection may expand 
+	 * before they give up on it.  The budget is shared by all bounding boxes
+	 * of the connection and by the retry of its net.
+	 */
+	public void setMaxNodesPerConnection(int maxNodesPerConnection){
+		this.maxNodesPerConnection = maxNodesPerConnection;
+	}
+	
+	public boolean isOrderSinks(){
+		return orderSinks;
+	}
+	
+	/**
+	 * Sets the order the sinks of a net are routed in.
+	 * @param orderSinks True to route the sink nearest to the pins already
+	 * connected first (see getSinksInRoutingOrder()), false to route the sinks
+	 * in the order of Net.getPins().
+	 */
+	public void setOrderSinks(boolean orderSinks){
+		this.orderSinks = orderSinks;
+	}
+	
+	public boolean isRouteClockNets(){
+		return clockRouter != null;
+	}
+	
+	/**
+	 * Sets how clock nets (see ClockRouter.isClockNet()) are routed.
+	 * @param routeClockNets True to route clock nets over the clock
+	 * resources with a ClockRouter before the other nets, false to route
+	 * them like the other nets.
+	 */
+	public void setRouteClockNets(boolean routeClockNets){
+		clockRouter = routeClockNets ? new ClockRouter(this) : null;
+	}
+	
+	/**
+	 * Checks if the current sink can still be reached.  Sink pins are
+	 * reached through a single switch matrix wire (see
+	 * Device.getSwitchMatrixSink()), if another net uses that wire the
+	 * search can not succeed.
+	 * @return False if the sink can not be reached.
+	 */
+	private boolean isCurrSinkReachable(){
+		if(currSinkPin == null || currSinkPin.getInstance() == null) return true;
+		Node sm = dev.getSwitchMatrixSink(currSinkPin);
+		if(sm == null || sm.tile == null || sm.wire == -1) return true;
+		int id = search.getNodeId(sm.tile, sm.wire);
+		return search.isSource(id) || !isNodeUsed(id);
+	}
+	
+	/**
+	 * Limits the current search to the bounding box of the current net
+	 * grown by a margin.
+	 * @return True if the box covers the whole device.
+	 */
+	private boolean setSearchBox(int margin){
+		if(margin < 0 || netBox == null){
+			margin = Math.max(dev.getRows(), dev.getColumns());
 		}
+		boxMinRow = Math.max(0, netBox == null ? 0 : netBox[0] - margin);
+		boxMaxRow = Math.min(dev.getRows()-1, netBox == null ? dev.getRows()-1 : netBox[1] + margin);
+		boxMinCol = Math.max(0, netBox == null ? 0 : netBox[2] - margin);
+		boxMaxCol = Math.min(dev.getColumns()-1, netBox == null ? dev.getColumns()-1 : netBox[3] + margin);
+		return boxMinRow == 0 && boxMinCol == 0 && boxMaxRow == dev.getRows()-1 && boxMaxCol == dev.getColumns()-1;
 	}
 	
 	/**
 	 * Prepares the class variables for the route() method. Sets everything up
 	 * for each connection to be made. This method is called for each connection
 	 * in a net by routeNet(). It calls route() once the variables are ready
-	 * for routing.
-	 * 
-	 * @param sources The candidate sources to attempt to route from.
+	 * for routing.  The search is first limited to the bounding box of the
+	 * net and repeated with larger boxes if it fails.  Connections whose sink
+	 * can not be reached are not searched.  Every node of the routing tree
+	 * of the net so far is a source of the search.  All searches for the 
+	 * connection share one budget of maxNodesPerConnection nodes.
 	 */
-	protected void routeConnection(ArrayList<Node> sources){
+	protected void routeConnection(){
 		// Reset Variable for a new route
 		pipList = new ArrayList<PIP>();
-		visitedNodes = new HashSet<Node>();
-		queue.clear();
-		nodesProcessed = 0;
+		Integer spent = connectionNodes.get(currSinkPin);
+		nodesProcessed = spent == null ? 0 : spent;
+		int startNodes = nodesProcessed;
 		successfulRoute = false;
-		// Setup the source nodes for starting the routing process
-		for(Node src : sources){
-			// Add the source nodes to the queue
-			if(src.getConnections() != null){
-				// Set the cost of the source
-				setCost(src, false);
-				this.queue.add(src);
+		connectionFailure = null;
+		currSinkId = search.getNodeId(currSink.tile, currSink.wire);
+		int margin = boundingBoxMargin;
+		boolean wholeDevice = setSearchBox(margin);
+		startSearch();
+		if(!isCurrSinkReachable()){
+			unreachableConnections++;
+			netUnreachableConnections++;
+			connectionFailure = "switch matrix sink used by another net";
+			return;
+		}
+		while(true){
+			// Do the actual routing
+			route();
+			if(successfulRoute) break;
+			if(wholeDevice || nodesProcessed > maxNodesPerConnection){
+				connectionFailure = search.isEmpty() ? "no path found" : "node limit reached";
+				break;
 			}
+			margin = Math.max(1, margin) * BOUNDING_BOX_GROWTH;
+			wholeDevice = setSearchBox(margin);
+			boundingBoxExpansions++;
+			startSearch();
+		}
+		connectionNodes.put(currSinkPin, nodesProcessed);
+		totalNodesProcessed += nodesProcessed - startNodes;
+	}
+	
+	/**
+	 * Starts a new search from the nodes of the routing tree of the current
+	 * net.  The nodes start without any cost of their own, so the search
+	 * branches off the tree where it is closest to the sink.
+	 */
+	private void startSearch(){
+		search.newSearch();
+		for(int i = 0; i < netTreeSize; i++){
+			search.setSource(netTree[i]);
+		}
+		// Setup the source nodes for starting the routing process
+		CostFunction cf = getCostFunction();
+		for(int i = 0; i < netTreeSize; i++){
+			int id = netTree[i];
+			if(search.getConnections(id) == null) continue;
+			// Sources routed earlier in the net start with the delay they were reached with
+			Tile tile = search.getTile(id);
+			int wire = search.getWire(id);
+			Integer netDelay = netNodeDelays.get(id);
+			int delay = netDelay != null ? netDelay : cf.getDelay(tile, wire);
+			int record = search.addRecord(id, -1, 0, delay);
+			search.push(record, cf.getCost(tile, wire, 0, delay, 0, false));
 		}
-		// Do the actual routing
-		route();
-		totalNodesProcessed += nodesProcessed;
+	}
+	
+	/**
+	 * Adds a node to the routing tree of the current net.
+	 */
+	private void addToNetTree(int node){
+		if(netTreeSize == netTree.length){
+			netTree = Arrays.copyOf(netTree, netTree.length * 2);
+		}
+		netTree[netTreeSize++] = node;
 	}
 	
 	/**
 	 * The heart of the router, it does the actual routing by consuming nodes on
 	 * the priority queue and determining how to proceed to the sink. It is
-	 * called by routeConnection().
+	 * called by routeConnection() and stops once nodesProcessed exceeds the
+	 * node budget of the connection.
 	 */
 	protected void route(){	
+		CostFunction cf = getCostFunction();
 		// Iterate through all of the nodes in the queue, adding potential candidate nodes 
 		// as we go along. We are finished when we find the sink node.
-		while(!queue.isEmpty()){
-			if(nodesProcessed > 1000000){
+		while(!search.isEmpty()){
+			if(nodesProcessed > maxNodesPerConnection){
 				// If we haven't found a route by now, we probably never will
 				return;
 			}
-			Node currNode = queue.remove();
+			int currRecord = search.poll();
+			int currNode = search.getRecordNode(currRecord);
+			int level = search.getRecordLevel(currRecord) + 1;
+			int currDelay = search.getRecordDelay(currRecord);
 			nodesProcessed++;
 			
-			for(WireConnection w : currNode.getConnections()){
-				if(w.getWire() == this.currSink.wire && w.getTile(currNode.tile).equals(currSink.tile)){
+			int[] fanout = search.getFanout(currNode);
+			for(int k = 0; k < fanout.length; k++){
+				int next = fanout[k];
+				if(next == currSinkId){
+					// We've found the sink, lets retrace our steps and add 
+					// each connection that is a PIP
+					retracePath(currRecord);
 					
-					// We've found the sink, lets retrace our steps
-					Node currPathNode = new Node(w.getTile(currNode.tile), w.getWire(), currNode, currNode.level+1);
-
-					// Add this connection as a PIP, and follow it back to the source
-					while(currPathNode.parent != null){
-						
-						for(WireConnection w1 : currPathNode.parent.tile.getWireConnections(currPathNode.parent.wire)){
-							if(w1.getWire() == currPathNode.wire){
-								if(w1.isPIP() && currPathNode.parent.tile.equals(currPathNode.tile)){
-									pipList.add(new PIP(currPathNode.tile, currPathNode.parent.wire, currPathNode.wire));
-									break;
-								}
-							}
-						}
-						// Update the current node to the parent
-						// this way we can traverse backwards to the source
-						currPathNode = currPathNode.parent;
-					}
 					// We are now done with the routing of this connection
 					successfulRoute = true;
 					return;
 				} 
-				else{						
-					// This is not the sink, but is this wire one we should look at in the future?
-					Node tmp = new Node(w.getTile(currNode.tile), w.getWire(), currNode, currNode.level+1);
-					
-					// Check if this node has already been visited, if so don't add it
-					if(!(visitedNodes.contains(tmp))){
-						if(tmp.getConnections() != null && !usedNodes.contains(tmp)){
-							// Make sure we haven't used this node already
-							if(tmp.getConnections() != null){
-								// This looks like a possible candidate for our next node, we'll add it
-								setCost(tmp, dev.isRouteThrough(w));
-								visitedNodes.add(tmp);
-								queue.add(tmp);
-								if(currSources.contains(tmp)){
-									tmp.parent = null;
-								}
-							}
-						}
-					} 
+				// This is not the sink, but is this wire one we should look at in the future?
+				// Check if this node has already been visited, if so don't add it
+				if(next == -1 || search.isVisited(next) || search.getConnections(next) == null) continue;
+				
+				// Stay within the bounding box of the search
+				Tile tile = search.getTile(next);
+				if(tile.getRow() < boxMinRow || tile.getRow() > boxMaxRow ||
+				   tile.getColumn() < boxMinCol || tile.getColumn() > boxMaxCol) continue;
+				
+				// Make sure we haven't used this node already
+				if(isNodeUsed(next)) continue;
+				
+				// This looks like a possible candidate for our next node, we'll add it
+				boolean isRouteThrough = isCurrSinkAClkWire && dev.isRouteThrough(search.getConnections(currNode)[k]);
+				int wire = search.getWire(next);
+				int delay = currDelay + cf.getDelay(tile, wire);
+				int cost = cf.getCost(tile, wire, level, delay, 0, isRouteThrough);
+				search.setVisited(next);
+				search.push(search.addRecord(next, search.isSource(next) ? -1 : currRecord, level, delay), cost);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if a node of the search is in usedNodes.  The result is kept
+	 * in the search, setWireAsUsed() and setWireAsUnused() keep it up to
+	 * date.
+	 * @param node The id of the node in the search.
+	 * @return True if the node is used.
+	 */
+	private boolean isNodeUsed(int node){
+		if(!search.isUsageKnown(node)){
+			usedNodeProbe.tile = search.getTile(node);
+			usedNodeProbe.wire = search.getWire(node);
+			search.setUsed(node, usedNodes.contains(usedNodeProbe));
+		}
+		return search.isUsed(node);
+	}
+	
+	/**
+	 * Updates the usage of a node in the search if it has an id.
+	 */
+	private void updateNodeUsage(Tile t, int wire, boolean used){
+		int node = search.findNodeId(t, wire);
+		if(node != -1){
+			search.setUsed(node, used);
+		}
+	}
+	
+	@Override
+	protected Node setWireAsUsed(Tile t, int wire, Net net){
+		updateNodeUsage(t, wire, true);
+		return super.setWireAsUsed(t, wire, net);
+	}
+	
+	@Override
+	protected Node setWireAsUnused(Tile t, int wire, Net net){
+		updateNodeUsage(t, wire, false);
+		return super.setWireAsUnused(t, wire, net);
+	}
+	
+	/**
+	 * Follows the path of the search back from the node before the current
+	 * sink to a source and adds the PIPs along the way to pipList.  The
+	 * nodes of the path join the routing tree of the net with their path
+	 * delay, so later connections of the net can branch off them.
+	 * @param record The record of the node the sink was reached from.
+	 */
+	private void retracePath(int record){
+		Tile tile = currSink.tile;
+		int wire = currSink.wire;
+		while(record != -1){
+			int parent = search.getRecordNode(record);
+			Tile parentTile = search.getTile(parent);
+			if(!netNodeDelays.containsKey(parent)){
+				netNodeDelays.put(parent, search.getRecordDelay(record));
+				addToNetTree(parent);
+			}
+			if(parentTile.equals(tile)){
+				for(WireConnection w : search.getConnections(parent)){
+					if(w.getWire() == wire && w.isPIP()){
+						pipList.add(new PIP(tile, search.getWire(parent), wire));
+						break;
+					}
 				}
 			}
+			// Update the current node to the parent
+			// this way we can traverse backwards to the source
+			tile = parentTile;
+			wire = search.getWire(parent);
+			record = search.getRecordParent(record);
+		}
+	}
+	
+	/**
+	 * Gets the sinks of the current net in the order they are routed.  When
+	 * sinks are ordered, the sink closest to the pins connected so far (the
+	 * source and the sinks before it) comes next, which orders the sinks
+	 * along a minimum spanning tree of the pins as an estimate of the
+	 * Steiner tree of the net.  Distances are in tile coordinates.
+	 * @return The sink pins of the current net.
+	 */
+	protected ArrayList<Pin> getSinksInRoutingOrder(){
+		ArrayList<Pin> sinks = new ArrayList<Pin>(currNet.getPins().size());
+		for(Pin p : currNet.getPins()){
+			if(!p.isOutPin()) sinks.add(p);
+		}
+		Tile sourceTile = currNet.getSource().getInstance().getTile();
+		if(!orderSinks || sinks.size() < 2 || sourceTile == null) return sinks;
+		
+		int n = sinks.size();
+		int[] x = new int[n];
+		int[] y = new int[n];
+		int[] dist = new int[n];
+		for(int i = 0; i < n; i++){
+			Tile t = sinks.get(i).getInstance().getTile();
+			x[i] = t.getTileXCoordinate();
+			y[i] = t.getTileYCoordinate();
+			dist[i] = Math.abs(x[i] - sourceTile.getTileXCoordinate()) + Math.abs(y[i] - sourceTile.getTileYCoordinate());
+		}
+		ArrayList<Pin> ordered = new ArrayList<Pin>(n);
+		for(int remaining = n; remaining > 0; remaining--){
+			// Move the nearest sink to the end of the unordered part
+			int best = 0;
+			for(int i = 1; i < remaining; i++){
+				if(dist[i] < dist[best]) best = i;
+			}
+			int last = remaining - 1;
+			int bx = x[best];
+			int by = y[best];
+			ordered.add(sinks.get(best));
+			sinks.set(best, sinks.get(last));
+			x[best] = x[last];
+			y[best] = y[last];
+			dist[best] = dist[last];
+			// The remaining sinks can now also connect to the new one
+			for(int i = 0; i < last; i++){
+				int d = Math.abs(x[i] - bx) + Math.abs(y[i] - by);
+				if(d < dist[i]) dist[i] = d;
+			}
 		}
+		return ordered;
 	}
 	
 	/**
-	 * This method routes all the connections within a net.  
+	 * This method routes all the connections within a net.  The whole
+	 * routing tree of the net so far is used as the source of each
+	 * connection (see routeConnection()).
 	 * @param i The number of the net (in sequence from the beginning)
 	 */
 	public void routeNet(int i){
 		Pin currSource = currNet.getSource();
-		ArrayList<Node> sources = new ArrayList<Node>();
 		currSources = new HashSet<Node>();
-		boolean firstConnection = true;
+		netNodeDelays.clear();
+		netTreeSize = 0;
+		netFailureMessages.clear();
+		netUnreachableConnections = 0;
+		netBox = boundingBoxMargin == -1 ? null : RegionPartition.getBoundingBox(dev, currNet, 0);
+		
+		// Error checking
+		if(dev.getPrimitiveExternalPin(currSource) == null){
+			MessageGenerator.briefErrorAndExit("ERROR: Could not find valid external source pin name: " +
+					currSource + " " + currSource.getInstance().getType());
+		}
+		// The routing tree starts with the original source
+		Node n = new Node(currSource.getInstance().getTile(), 
+				dev.getPrimitiveExternalPin(currSource), null, 0);
+		currSources.add(n);
+		int sourceId = search.getNodeId(n.tile, n.wire);
+		netNodeDelays.put(sourceId, getCostFunction().getDelay(n.tile, n.wire));
+		addToNetTree(sourceId);
+
+		// Is this source from a buffer (likely a clock net)?
+		boolean currNetOutputFromBUF = currSource.getInstance().getType().toString().contains("BUF");
 		
 		// Route each pin by itself
-		for(Pin currSinkPin : currNet.getPins()){
-			// Ignore the source pin
-			if (currSinkPin.isOutPin()) continue; 
+		for(Pin sinkPin : getSinksInRoutingOrder()){
+			currSinkPin = sinkPin;
 
 			// This will print out until the Virtex 5 patch is complete
 			if(dev.getPrimitiveExternalPin(currSinkPin) == null){
@@ -190,38 +531,17 @@ public class BasicRouter extends AbstractRouter{
 			currSink.tile = currSinkPin.getInstance().getTile();
 			currSink.wire = dev.getPrimitiveExternalPin(currSinkPin);
 
-			// Is this source from a buffer (likely a clock net)?
-			boolean currNetOutputFromBUF = currSource.getInstance().getType().toString().contains("BUF");
-			
 			isCurrSinkAClkWire = (we.getWireDirection(currSink.wire).equals(WireDirection.CLK) || 
 								  currSinkPin.getName().contains("CLK") ||
 								  currSinkPin.getName().equals("C")) &&
 								 (currNetOutputFromBUF || 
 								  currSinkPin.getInstance().getType().toString().contains("BUF")
 								 );
-
-			// Add additional sources if this is not the first sink of the net being routed
-			if(firstConnection){
-				// Error checking
-				if(dev.getPrimitiveExternalPin(currSource) == null){
-					MessageGenerator.briefErrorAndExit("ERROR: Could not find valid external source pin name: " +
-							currSource + " " + currSource.getInstance().getType());
-				}
-				
-				// just add the original source
-				Node n = new Node(currSource.getInstance().getTile(), 
-						dev.getPrimitiveExternalPin(currSource), null, 0);
-				sources.add(n);
-				currSources.add(n);
-			}
-			else{
-				// Add starting point sources taken from previous routings to begin the route 
-				sources = getSourcesFromPIPs(pipList);
-			}
+			getCostFunction().setConnection(currNet, currSinkPin, currSink, isCurrSinkAClkWire);
 
 			// Route the current sink node
 			totalConnections++;
-			routeConnection(sources);
+			routeConnection();
 
 			// Check if it was a successful routing
 			if(successfulRoute){
@@ -230,11 +550,14 @@ public class BasicRouter extends AbstractRouter{
 			} 
 			else{
 				failedConnections++;
-				MessageGenerator.briefError("\tFAILED TO ROUTE: net: " + currNet.getName() + " inpin: " + currSinkPin.getName() +
+				if(netFailure == null){
+					netFailure = connectionFailure + " for " + currSinkPin.getInstanceName() + " " + currSinkPin.getName();
+				}
+				netFailureMessages.add("\tFAILED TO ROUTE: net: " + currNet.getName() + " inpin: " + currSinkPin.getName() +
                    " (" + we.getWireName(currSink.wire) + ") on instance: " + currSinkPin.getInstanceName());				
 			}
-			firstConnection = false;
 		}
+		currSinkPin = null;
 	}
 	
 	/**
@@ -247,46 +570,178 @@ public class BasicRouter extends AbstractRouter{
 		netList.addAll(design.getNets());
 		
 		// Deal with static nets (vcc/gnd)
+		long staticStart = System.nanoTime();
 		StaticSourceHandler ssHandler = new StaticSourceHandler(this);
 		ssHandler.separateStaticSourceNets();
+		firePhaseFinished("static sources", staticStart);
+		
+		// usedNodes may have changed since the last search
+		resetNodeUsage();
 		
-		// Start Routing
+		// Clock nets get the clock resources before the other nets can take them
+		if(clockRouter != null){
+			long start = System.nanoTime();
+			routeNets(true);
+			firePhaseFinished("clock nets", start);
+		}
+		long start = System.nanoTime();
+		routeNets(false);
+		firePhaseFinished("nets", start);
+		design.setNets(netList);
+		return design;
+	}	
+	
+	/**
+	 * Routes the unrouted nets of netList.
+	 * @param clockNets True to only route the clock nets, false to route all nets.
+	 */
+	private void routeNets(boolean clockNets){
 		for (int i = 0; i < netList.size(); i++){
 			currNet = netList.get(i);
 			
 			// We need to ignore some empty/informational nets
 			if ((currNet.hasAttributes() && currNet.getModuleTemplateNet() == null) || currNet.getPIPs().size() > 0) continue;
+			
+			if(clockNets && !ClockRouter.isClockNet(currNet)) continue;
 		
 			if(currNet.getSource() == null){
 				MessageGenerator.briefError("ERROR: " + currNet.getName() + " does not have a source pins associated with it.");
 				continue;
 			}
 			
-			// release some reservedNodes
-			ArrayList<Node> rNodes = reservedNodes.get(currNet);
-			
-			if(rNodes != null){
-				usedNodes.removeAll(rNodes);
+			routeCurrNet(i);
+		}
+	}
+	
+	/**
+	 * Routes currNet, marks the resources of its new PIPs as used and sets
+	 * them as the PIPs of the net.  Nodes reserved for the net are released
+	 * first.  Clock nets are routed with the ClockRouter if it can reach all
+	 * of their sinks.  The measurements of the net are passed to the
+	 * router listeners.
+	 * @param i The number of the net (in sequence from the beginning)
+	 */
+	protected void routeCurrNet(int i){
+		long start = System.nanoTime();
+		int startNodes = totalNodesProcessed;
+		int startConnections = totalConnections;
+		int startFailed = failedConnections;
+		search.resetPeakSize();
+		int peakQueueSize = 0;
+		netFailure = null;
+		connectionNodes.clear();
+		
+		// release some reservedNodes
+		ArrayList<Node> rNodes = reservedNodes.get(currNet);
+		
+		if(rNodes != null){
+			usedNodes.removeAll(rNodes);
+			for(Node n : rNodes){
+				updateNodeUsage(n.tile, n.wire, false);
 			}
-			
-			// netPIPs are the pips that belong to a particular net, however, 
-			// because GND/VCC nets can use pips of other nets, we need a usedPIPs
-			// variable to keep everything straight.
+		}
+		
+		// netPIPs are the pips that belong to a particular net, however, 
+		// because GND/VCC nets can use pips of other nets, we need a usedPIPs
+		// variable to keep everything straight.
+		netPIPs = null;
+		if(clockRouter != null && ClockRouter.isClockNet(currNet)){
+			int nodes = clockRouter.getNodesProcessed();
+			netPIPs = clockRouter.routeNet(currNet);
+			totalNodesProcessed += clockRouter.getNodesProcessed() - nodes;
+			peakQueueSize = clockRouter.getPeakQueueSize();
+			if(netPIPs != null){
+				clockNetsRouted++;
+				totalConnections += currNet.getPins().size() - 1;
+			}
+		}
+		if(netPIPs == null){
 			netPIPs = new ArrayList<PIP>();
 			routeNet(i);
-			
-			// Mark these used PIPs as used in the data structures
-			for (PIP pip : netPIPs){
-				setWireAsUsed(pip.getTile(), pip.getStartWire(), currNet);
-				setWireAsUsed(pip.getTile(), pip.getEndWire(), currNet);
-				markIntermediateNodesAsUsed(pip, currNet);
+			// Unreachable sinks fail the same way without a bounding box
+			if(failedConnections - startFailed > netUnreachableConnections && boundingBoxMargin != -1){
+				retryNetWithoutBoundingBox(i, startConnections, startFailed);
+			}
+			for(String message : netFailureMessages){
+				MessageGenerator.briefError(message);
 			}
-			// Let's add these PIPs to the actual net, to be included in the design
-			currNet.setPIPs(netPIPs);
 		}
-		design.setNets(netList);
-		return design;
-	}	
+		
+		// Mark these used PIPs as used in the data structures
+		for (PIP pip : netPIPs){
+			setWireAsUsed(pip.getTile(), pip.getStartWire(), currNet);
+			setWireAsUsed(pip.getTile(), pip.getEndWire(), currNet);
+			markIntermediateNodesAsUsed(pip, currNet);
+		}
+		// Let's add these PIPs to the actual net, to be included in the design
+		currNet.setPIPs(netPIPs);
+		
+		int routeCount = countNetRouting(currNet);
+		if(hasRouterListeners()){
+			NetRoutingStats stats = new NetRoutingStats(currNet);
+			stats.setConnections(totalConnections - startConnections);
+			stats.setFailedConnections(failedConnections - startFailed);
+			stats.setNodesProcessed(totalNodesProcessed - startNodes);
+			stats.setPeakQueueSize(Math.max(peakQueueSize, search.getPeakSize()));
+			stats.setTime(System.nanoTime() - start);
+			stats.setRouteCount(routeCount);
+			stats.setPIPCount(netPIPs.size());
+			stats.setFailureReason(netFailure);
+			fireNetRouted(stats);
+		}
+	}
+	
+	/**
+	 * Routes currNet again with searches that are not limited to a bounding
+	 * box (as if the margin were -1).  The bounding boxes can lead the
+	 * earlier connections of a net to paths from which its later connections
+	 * can not be completed.  Each connection continues with the node budget 
+	 * left from the first routing.  The routing of the two attempts with the
+	 * fewer failed connections is kept, along with its failures and counts.
+	 * @param i The number of the net (in sequence from the beginning)
+	 * @param startConnections totalConnections before the net was routed.
+	 * @param startFailed failedConnections before the net was routed.
+	 */
+	private void retryNetWithoutBoundingBox(int i, int startConnections, int startFailed){
+		ArrayList<PIP> boxedPIPs = netPIPs;
+		String boxedFailure = netFailure;
+		ArrayList<String> boxedMessages = new ArrayList<String>(netFailureMessages);
+		int boxedFailed = failedConnections;
+		int boxedUnreachable = netUnreachableConnections;
+		
+		int margin = boundingBoxMargin;
+		boundingBoxMargin = -1;
+		netPIPs = new ArrayList<PIP>();
+		netFailure = null;
+		totalConnections = startConnections;
+		failedConnections = startFailed;
+		unreachableConnections -= boxedUnreachable;
+		unboundedNetRetries++;
+		try{
+			routeNet(i);
+		}
+		finally{
+			boundingBoxMargin = margin;
+		}
+		
+		if(failedConnections >= boxedFailed){
+			netPIPs = boxedPIPs;
+			netFailure = boxedFailure;
+			netFailureMessages = boxedMessages;
+			failedConnections = boxedFailed;
+			unreachableConnections += boxedUnreachable - netUnreachableConnections;
+			netUnreachableConnections = boxedUnreachable;
+		}
+	}
+	
+	/**
+	 * Forgets the usage of nodes kept by the search.  This must be called
+	 * after usedNodes is changed without setWireAsUsed() or
+	 * setWireAsUnused().
+	 */
+	protected void resetNodeUsage(){
+		search.clearUsage();
+	}
 	
 	protected static void printTimeHelper(String timedOperation, long start) {
 		System.out.printf("%s %8.3fs\n", timedOperation,
@@ -297,17 +752,26 @@ public class BasicRouter extends AbstractRouter{
 		long[] runtimes = new long[4];
 		String nl = System.getProperty("line.separator");
 		runtimes[0] = runtimes[1] = System.nanoTime();
-		if (args.length != 2){
-			System.out.println("USAGE: Router <input.xdl> <output.xdl>");
+		if (args.length != 2 && args.length != 3){
+			System.out.println("USAGE: Router <input.xdl> <output.xdl> [timing_report.twr]");
 			System.exit(0);
 		}
 		
 		// Initialize router and load design and device
-		BasicRouter router = new BasicRouter();
-		router.design = new Design();
-		router.design.loadXDLFile(args[0]);
-		router.dev = router.design.getDevice();
-		router.we = router.design.getWireEnumerator();
+		BasicRouter router = new BasicRouter(new Design(args[0]));
+		
+		// Route the connections of the paths in the timing report for delay
+		if(args.length == 3){
+			TraceReportParser parser = new TraceReportParser();
+			parser.parseTWR(args[2], router.design);
+			TimingCostFunction cf = new TimingCostFunction(router.we, new WireDelayModel());
+			int connections = cf.addCriticalities(parser);
+			System.out.println("Timing driven routing of " + connections + " connections");
+			router.setCostFunction(cf);
+		}
+		
+		RoutingStatistics stats = new RoutingStatistics();
+		router.addRouterListener(stats);
 		
 		runtimes[1] = System.nanoTime() - runtimes[1];
 		runtimes[2] = System.nanoTime();
@@ -330,6 +794,19 @@ public class BasicRouter extends AbstractRouter{
 		System.out.println("         Total Nodes Processed : " + router.totalNodesProcessed);
 		System.out.println("             Total Connections : " + router.totalConnections);
 		System.out.println("      Total Failed Connections : " + router.failedConnections);
+		System.out.println("  Unreachable Sink Connections : " + router.unreachableConnections);
+		System.out.println("       Bounding Box Expansions : " + router.boundingBoxExpansions);
+		System.out.println("         Unbounded Net Retries : " + router.unboundedNetRetries);
+		System.out.println("             Clock Nets Routed : " + router.clockNetsRouted);
+		System.out.println("----------------------------------------------");
+		for(Entry<String,Long> e : stats.getPhaseTimes().entrySet()){
+			System.out.printf("%30s : %8.3fs %s", e.getKey(), e.getValue()/1000000000.0, nl);
+		}
+		System.out.println("----------------------------------------------");
+		System.out.println("Most expensive nets:");
+		for(NetRoutingStats s : stats.getMostExpensiveNets(5)){
+			System.out.println("  " + s);
+		}
 		System.out.println("----------------------------------------------");
 		System.out.printf("    Loading Design/Device Time : %8.3fs %s", runtimes[1]/1000000000.0, nl);
 		System.out.printf("                  Routing Time : %8.3fs %s", runtimes[2]/1000000000.0, nl);
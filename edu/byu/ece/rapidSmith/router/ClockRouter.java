@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+
+/**
+ * Routes clock nets over the dedicated clock resources of a device (the
+ * global clock spines, HROW and HCLK rows and the GCLK wires of the
+ * switch boxes).  Instead of one search per sink, a single breadth first
+ * search from the source only follows wires with the CLK direction (see
+ * WireEnumerator.getWireDirection()) until every sink pin is reached.  The
+ * search tree is the clock tree of the net, the path of each sink is taken
+ * from it up to where it meets the paths of the sinks before it, so all
+ * sinks are routed in time linear in the size of the clock network.
+ *
+ * Wires already used by other nets (for example an HCLK row taken by
+ * another clock) are avoided, so each clock net ends up on its own
+ * global lines.
+ */
+public class ClockRouter {
+	/** The router whose device is routed and whose used nodes are avoided */
+	private AbstractRouter router;
+	/** Number of nodes expanded by the searches of this router */
+	private int nodesProcessed;
+	/** The largest size of the search queue in the last call to routeNet() */
+	private int peakQueueSize;
+
+	/**
+	 * Creates a clock router that avoids the nodes used in the given router.
+	 * @param router The router of the design.
+	 */
+	public ClockRouter(AbstractRouter router){
+		this.router = router;
+	}
+
+	/**
+	 * Checks if a net should be routed on the clock resources, nets
+	 * with a source where most sinks are clock pins (see Net.isClkNet()).
+	 * @param net The net to check.
+	 * @return True if the net is a clock net.
+	 */
+	public static boolean isClockNet(Net net){
+		return net.getSource() != null && net.getPins().size() > 1 && net.isClkNet();
+	}
+
+	/**
+	 * Routes all sinks of a clock net.  The net is not changed and no
+	 * nodes are marked as used.
+	 * @param net The clock net to route.
+	 * @return The PIPs of the net, or null if some sink can not be reached
+	 * from the source over the clock resources.
+	 */
+	public ArrayList<PIP> routeNet(Net net){
+		Device dev = router.dev;
+		WireEnumerator we = router.we;
+		Pin source = net.getSource();
+		Integer sourceWire = dev.getPrimitiveExternalPin(source);
+		if(sourceWire == null) return null;
+
+		// The sink pins end the search
+		HashSet<Node> sinks = new HashSet<Node>();
+		for(Pin p : net.getPins()){
+			if(p.isOutPin()) continue;
+			Integer wire = dev.getPrimitiveExternalPin(p);
+			if(wire == null) return null;
+			sinks.add(new Node(p.getInstance().getTile(), wire, null, 0));
+		}
+
+		// Breadth first search over the clock wires until all sinks are found
+		Node root = new Node(source.getInstance().getTile(), sourceWire, null, 0);
+		HashSet<Node> visited = new HashSet<Node>();
+		ArrayDeque<Node> queue = new ArrayDeque<Node>();
+		ArrayList<Node> reached = new ArrayList<Node>(sinks.size());
+		visited.add(root);
+		queue.add(root);
+		peakQueueSize = 1;
+		while(!queue.isEmpty() && reached.size() < sinks.size()){
+			Node curr = queue.poll();
+			nodesProcessed++;
+			WireConnection[] wires = curr.tile.getWireConnections(curr.wire);
+			if(wires == null) continue;
+			for(WireConnection w : wires){
+				if(dev.isRouteThrough(w)) continue;
+				// Connections can lead off the edge of the device
+				Tile t = w.getTile(curr.tile);
+				if(t == null) continue;
+				Node next = new Node(t, w.getWire(), curr, curr.level + 1, w.isPIP());
+				if(visited.contains(next)) continue;
+				if(sinks.contains(next)){
+					visited.add(next);
+					reached.add(next);
+					continue;
+				}
+				if(!we.getWireDirection(next.wire).equals(WireDirection.CLK) || router.isNodeUsed(next)) continue;
+				visited.add(next);
+				queue.add(next);
+			}
+			if(queue.size() > peakQueueSize) peakQueueSize = queue.size();
+		}
+		if(reached.size() < sinks.size()) return null;
+
+		// Fan out to the sinks along the search tree
+		ArrayList<PIP> pips = new ArrayList<PIP>();
+		HashSet<Node> tree = new HashSet<Node>();
+		for(Node sink : reached){
+			Node curr = sink;
+			while(curr.parent != null && tree.add(curr)){
+				if(curr.isPIP && curr.parent.tile.equals(curr.tile)){
+					pips.add(new PIP(curr.tile, curr.parent.wire, curr.wire));
+				}
+				curr = curr.parent;
+			}
+		}
+		return pips;
+	}
+
+	/**
+	 * @return The number of nodes expanded by the searches of this router.
+	 */
+	public int getNodesProcessed(){
+		return nodesProcessed;
+	}
+
+	/**
+	 * @return The largest number of nodes waiting in the search queue at
+	 * once during the last call to routeNet().
+	 */
+	public int getPeakQueueSize(){
+		return peakQueueSize;
+	}
+}
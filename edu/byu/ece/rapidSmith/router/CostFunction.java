@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
+
+/**
+ * The cost function of a router (see AbstractRouter.setCostFunction()).
+ * The router calls setConnection() before each connection it routes and
+ * then asks for the cost of the nodes it reaches, routing through the
+ * nodes with the lowest cost first.  The delay of each node is added up
+ * along the paths of the search so the cost can depend on the delay of
+ * the path so far.
+ *
+ * A cost function is used by one router at a time.
+ */
+public interface CostFunction {
+
+	/**
+	 * Prepares the cost function for routing a connection.
+	 * @param net The net being routed.
+	 * @param sinkPin The sink pin of the connection.
+	 * @param sink The sink node (tile and wire) of the connection.
+	 * @param isClockSink True if the sink is a clock input of a net
+	 * driven by a buffer, in which case clock wires should be favored.
+	 */
+	public void setConnection(Net net, Pin sinkPin, Node sink, boolean isClockSink);
+
+	/**
+	 * Gets the delay of a node, which is added to the delay of the path
+	 * reaching it.
+	 * @param tile The tile of the node.
+	 * @param wire The wire of the node.
+	 * @return The delay in picoseconds, 0 if the cost does not depend on
+	 * delay.
+	 */
+	public int getDelay(Tile tile, int wire);
+
+	/**
+	 * Gets the cost of reaching a node in the current connection, lower
+	 * costs are routed through first.
+	 * @param tile The tile of the node.
+	 * @param wire The wire of the node.
+	 * @param level The number of nodes between the source and the node.
+	 * @param pathDelay The delay of the path to the node including the
+	 * node itself (see getDelay()).
+	 * @param history Cost added for the node by the router.
+	 * @param isRouteThrough True if the node is reached through a route
+	 * through.  Routers may only check this when the sink is a clock sink.
+	 * @return The cost of the node.
+	 */
+	public int getCost(Tile tile, int wire, int level, int pathDelay, int history, boolean isRouteThrough);
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+
+/**
+ * The default cost function of the routers.  The cost of a node is twice
+ * the Manhattan distance to the sink plus its level, plus the history
+ * cost.  When routing to a clock sink, clock wires (that are not reached
+ * through a route through) get a large bonus so the clock tree is used.
+ * Delay is not taken into account.
+ */
+public class DistanceCostFunction implements CostFunction {
+	/** Cost bonus of clock wires when routing to a clock sink */
+	public static final int CLOCK_WIRE_BONUS = 1000;
+
+	/** Used to get the direction of wires */
+	protected WireEnumerator we;
+	/** The tile of the current sink */
+	protected Tile sinkTile;
+	/** True if the current sink is a clock sink */
+	protected boolean isClockSink;
+
+	/**
+	 * Creates the cost function.
+	 * @param we The wire enumerator of the device being routed.
+	 */
+	public DistanceCostFunction(WireEnumerator we){
+		this.we = we;
+	}
+
+	public void setConnection(Net net, Pin sinkPin, Node sink, boolean isClockSink){
+		this.sinkTile = sink.getTile();
+		this.isClockSink = isClockSink;
+	}
+
+	public int getDelay(Tile tile, int wire){
+		return 0;
+	}
+
+	/**
+	 * @return The Manhattan distance in tile coordinates between a tile and
+	 * the tile of the current sink.
+	 */
+	protected int getDistance(Tile tile){
+		int x = sinkTile.getTileXCoordinate() - tile.getTileXCoordinate();
+		int y = sinkTile.getTileYCoordinate() - tile.getTileYCoordinate();
+		if(x < 0) x = -x;
+		if(y < 0) y = -y;
+		return x + y;
+	}
+
+	public int getCost(Tile tile, int wire, int level, int pathDelay, int history, boolean isRouteThrough){
+		int cost = (getDistance(tile) + level) * 2 + history;
+		// Favor clock wires when routing the clock tree
+		if(isClockSink && !isRouteThrough && we.getWireDirection(wire).equals(WireDirection.CLK)){
+			cost -= CLOCK_WIRE_BONUS;
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.ModuleInstance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * A routing session for small changes to a routed design.  The PIPs of all
+ * routed nets are marked as used once, when the first changes are routed
+ * (or by calling loadRouting()).  After that, nets affected by a change
+ * (for example nets of instances that were moved) are marked as dirty and
+ * routeDirtyNets() rips up and reroutes only those nets, the routing of all
+ * other nets is kept.  Nets are routed with the search and cost function of
+ * BasicRouter.
+ *
+ * The session remembers the PIPs it marked as used for each net.  When a
+ * dirty net has different PIPs than were marked (such as the nets of a
+ * module instance moved by ModuleInstance.place()), its new PIPs are kept
+ * and marked as used instead of rerouting the net.  Dirty nets with the
+ * same PIPs are unrouted and routed again.
+ *
+ * The session assumes that the design is only changed through dirty nets,
+ * routeDesign() should not be used on the same router.
+ */
+public class IncrementalRouter extends BasicRouter{
+
+	/** The PIPs of each net as they were marked as used */
+	private HashMap<Net,ArrayList<PIP>> netRouting;
+	/** Nets to rip up and reroute, in the order they were marked */
+	private LinkedHashSet<Net> dirtyNets;
+	/** True once the PIPs of the design have been marked as used */
+	private boolean loaded;
+
+	/**
+	 * Creates a routing session for a design.  The routing of the design is
+	 * loaded when first needed.
+	 * @param design The (routed) design to change.
+	 */
+	public IncrementalRouter(Design design){
+		super(design);
+		netRouting = new HashMap<Net, ArrayList<PIP>>();
+		dirtyNets = new LinkedHashSet<Net>();
+		loaded = false;
+	}
+
+	/**
+	 * Marks the PIPs of all routed nets of the design as used.  This is
+	 * done once per session, later calls do nothing.  The loaded routing
+	 * counts as the first routing of each net in the router measurements.
+	 */
+	public void loadRouting(){
+		if(loaded) return;
+		long start = System.nanoTime();
+		for(Net net : design.getNets()){
+			if(net.getPIPs().size() > 0){
+				addNetRouting(net);
+				countNetRouting(net);
+			}
+		}
+		resetNodeUsage();
+		loaded = true;
+		firePhaseFinished("load routing", start);
+	}
+
+	/**
+	 * Marks the current PIPs of a net as used and remembers them.
+	 */
+	private void addNetRouting(Net net){
+		for(PIP pip : net.getPIPs()){
+			setWireAsUsed(pip.getTile(), pip.getStartWire(), net);
+			setWireAsUsed(pip.getTile(), pip.getEndWire(), net);
+			markIntermediateNodesAsUsed(pip, net);
+		}
+		netRouting.put(net, new ArrayList<PIP>(net.getPIPs()));
+	}
+
+	/**
+	 * Releases the resources of the PIPs a net was marked as using.  Nodes
+	 * that are also used by other nets stay used.
+	 */
+	private void removeNetRouting(Net net){
+		ArrayList<PIP> pips = netRouting.remove(net);
+		if(pips == null) return;
+		for(PIP pip : pips){
+			releaseNode(pip.getTile(), pip.getStartWire(), net);
+			releaseNode(pip.getTile(), pip.getEndWire(), net);
+			for(Node n : getIntermediateNodes(pip)){
+				releaseNode(n.getTile(), n.getWire(), net);
+			}
+		}
+	}
+
+	private void releaseNode(Tile tile, int wire, Net net){
+		// Lookups can fall back to Node.compareTo(), so the key needs the
+		// same cost as the nodes in the map
+		Node n = factory.newNode(tile, wire, null, 0);
+		LinkedList<Net> nets = usedNodesMap.get(n);
+		if(nets == null || (nets.size() == 1 && nets.contains(net))){
+			setWireAsUnused(tile, wire, net);
+		}
+		else{
+			removeUsedWireMapping(net, n);
+		}
+	}
+
+	/**
+	 * Marks a net to be ripped up and rerouted by the next call to
+	 * routeDirtyNets().
+	 * @param net The net that changed.
+	 */
+	public void markDirty(Net net){
+		if(net != null) dirtyNets.add(net);
+	}
+
+	/**
+	 * Marks the net of a pin as dirty (see markDirty(Net)).
+	 * @param pin The pin that changed.
+	 */
+	public void markDirty(Pin pin){
+		markDirty(pin.getNet());
+	}
+
+	/**
+	 * Marks the nets of all pins of an instance as dirty, for example after
+	 * the instance was moved (see markDirty(Net)).
+	 * @param inst The instance that changed.
+	 */
+	public void markDirty(Instance inst){
+		for(Pin pin : inst.getPins()){
+			markDirty(pin.getNet());
+		}
+	}
+
+	/**
+	 * Marks the nets of all instances of a module instance as dirty, for
+	 * example after it was moved with ModuleInstance.place().  The nets
+	 * within the module instance keep the PIPs given to them by place().
+	 * @param moduleInstance The module instance that changed.
+	 */
+	public void markDirty(ModuleInstance moduleInstance){
+		for(Instance inst : moduleInstance.getInstances()){
+			markDirty(inst);
+		}
+		for(Net net : moduleInstance.getNets()){
+			markDirty(net);
+		}
+	}
+
+	/**
+	 * @return The nets that will be rerouted by the next call to
+	 * routeDirtyNets().
+	 */
+	public ArrayList<Net> getDirtyNets(){
+		return new ArrayList<Net>(dirtyNets);
+	}
+
+	/**
+	 * Rips up the dirty nets and routes them again, the routing of all other
+	 * nets is kept.  All dirty nets are ripped up before the first one is
+	 * routed.  Dirty nets that were removed from the design are only ripped
+	 * up.
+	 * @return The nets that were routed.
+	 */
+	public ArrayList<Net> routeDirtyNets(){
+		loadRouting();
+		long start = System.nanoTime();
+		ArrayList<Net> nets = new ArrayList<Net>(dirtyNets);
+		dirtyNets.clear();
+
+		// Rip up all dirty nets first so they do not block each other
+		ArrayList<Net> unrouted = new ArrayList<Net>();
+		for(Net net : nets){
+			ArrayList<PIP> pips = netRouting.get(net);
+			removeNetRouting(net);
+			if(design.getNet(net.getName()) != net) continue;
+			if(net.getPIPs().size() > 0 && (pips == null || !pips.equals(net.getPIPs()))){
+				// The net was given new routing, keep it
+				addNetRouting(net);
+				continue;
+			}
+			net.unroute();
+			unrouted.add(net);
+		}
+		firePhaseFinished("rip up", start);
+
+		start = System.nanoTime();
+		ArrayList<Net> routed = new ArrayList<Net>();
+		for(Net net : unrouted){
+			currNet = net;
+			// We need to ignore some empty/informational nets
+			if(currNet.hasAttributes() && currNet.getModuleTemplateNet() == null) continue;
+			if(currNet.getSource() == null){
+				MessageGenerator.briefError("ERROR: " + currNet.getName() + " does not have a source pins associated with it.");
+				continue;
+			}
+			routeCurrNet(routed.size());
+			netRouting.put(net, new ArrayList<PIP>(net.getPIPs()));
+			routed.add(net);
+		}
+		firePhaseFinished("dirty nets", start);
+		return routed;
+	}
+
+	public static void main(String[] args){
+		if(args.length < 3){
+			MessageGenerator.briefMessageAndExit("USAGE: IncrementalRouter <routed_input.xdl> <output.xdl> <instance name> [instance name ...]" +
+					System.getProperty("line.separator") + "  Reroutes the nets of the given instances.");
+		}
+		IncrementalRouter router = new IncrementalRouter(new Design(args[0]));
+
+		long start = System.nanoTime();
+		router.loadRouting();
+		long loadTime = System.nanoTime() - start;
+
+		for(int i = 2; i < args.length; i++){
+			Instance inst = router.design.getInstance(args[i]);
+			if(inst == null){
+				MessageGenerator.briefErrorAndExit("ERROR: Could not find instance: " + args[i]);
+			}
+			router.markDirty(inst);
+		}
+		start = System.nanoTime();
+		ArrayList<Net> routed = router.routeDirtyNets();
+		long routeTime = System.nanoTime() - start;
+
+		router.design.saveXDLFile(args[1], true);
+
+		System.out.println("           Nets Rerouted : " + routed.size());
+		System.out.println("      Failed Connections : " + router.failedConnections);
+		System.out.printf("       Load Routing Time : %8.3fs%n", loadTime / 1000000000.0);
+		System.out.printf("        Rerouting Time : %8.3fs%n", routeTime / 1000000000.0);
+	}
+}
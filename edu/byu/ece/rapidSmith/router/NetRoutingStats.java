@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import edu.byu.ece.rapidSmith.design.Net;
+
+/**
+ * The measurements of routing one net once, passed to the RouterListeners
+ * of a router (see AbstractRouter.addRouterListener()).
+ */
+public class NetRoutingStats {
+	/** The net routed */
+	private Net net;
+	/** Number of sinks the router tried to connect */
+	private int connections;
+	/** Number of sinks that could not be connected */
+	private int failedConnections;
+	/** Number of nodes expanded by the searches of the net */
+	private int nodesProcessed;
+	/** The largest number of nodes waiting in the search queue at once */
+	private int peakQueueSize;
+	/** Wall clock time spent routing the net in nanoseconds */
+	private long time;
+	/** Number of times the net has been routed by the router, including this one */
+	private int routeCount;
+	/** Number of PIPs of the new routing of the net */
+	private int pipCount;
+	/** Why the first failed connection failed, null if all were routed */
+	private String failureReason;
+
+	/**
+	 * Creates empty measurements for a net.
+	 * @param net The net being routed.
+	 */
+	public NetRoutingStats(Net net){
+		this.net = net;
+	}
+
+	public Net getNet(){
+		return net;
+	}
+
+	public int getConnections(){
+		return connections;
+	}
+
+	public void setConnections(int connections){
+		this.connections = connections;
+	}
+
+	public int getFailedConnections(){
+		return failedConnections;
+	}
+
+	public void setFailedConnections(int failedConnections){
+		this.failedConnections = failedConnections;
+	}
+
+	public int getNodesProcessed(){
+		return nodesProcessed;
+	}
+
+	public void setNodesProcessed(int nodesProcessed){
+		this.nodesProcessed = nodesProcessed;
+	}
+
+	public int getPeakQueueSize(){
+		return peakQueueSize;
+	}
+
+	public void setPeakQueueSize(int peakQueueSize){
+		this.peakQueueSize = peakQueueSize;
+	}
+
+	/**
+	 * @return The wall clock time spent routing the net in nanoseconds.
+	 */
+	public long getTime(){
+		return time;
+	}
+
+	public void setTime(long time){
+		this.time = time;
+	}
+
+	/**
+	 * @return The number of times the net has been routed by the router,
+	 * 1 the first time it is routed.
+	 */
+	public int getRouteCount(){
+		return routeCount;
+	}
+
+	public void setRouteCount(int routeCount){
+		this.routeCount = routeCount;
+	}
+
+	/**
+	 * @return The number of times the net was routed before.
+	 */
+	public int getRerouteCount(){
+		return Math.max(0, routeCount - 1);
+	}
+
+	public int getPIPCount(){
+		return pipCount;
+	}
+
+	public void setPIPCount(int pipCount){
+		this.pipCount = pipCount;
+	}
+
+	/**
+	 * @return A description of why the first failed connection of the net
+	 * failed, null if all connections were routed.
+	 */
+	public String getFailureReason(){
+		return failureReason;
+	}
+
+	public void setFailureReason(String failureReason){
+		this.failureReason = failureReason;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("%s: %d/%d connections, %d nodes, peak queue %d, %.3fms, routed %d times%s",
+				net.getName(), connections - failedConnections, connections, nodesProcessed, peakQueueSize,
+				time / 1000000.0, routeCount, failureReason == null ? "" : ", " + failureReason);
+	}
+}
@@ -0,0 +1,950 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.router.RegionPartition.Region;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * A negotiated congestion router based on the PathFinder algorithm
+ * (McMurchie and Ebeling).  Unlike BasicRouter, nets are allowed to share
+ * routing resources while routing.  Each resource has a present congestion
+ * cost (how many other nets currently use it) and a history cost (how
+ * congested it has been in past iterations).  After each iteration the
+ * history of overused resources is increased, the present congestion
+ * factor grows and the nets using overused resources are ripped up and
+ * rerouted.  This repeats until no resource is used by more than one net
+ * or the maximum number of iterations is reached.
+ *
+ * The cost of a resource is (base + history) * (1 + presentFactor * sharing)
+ * where sharing is the number of other nets using the resource.  The
+ * search of each connection is an A* search from all nodes of the net's
+ * routing tree towards the sink, using the Manhattan distance in tiles as
+ * the estimate of the remaining cost.
+ *
+ * Static (VCC/GND) nets are prepared with the StaticSourceHandler the same
+ * way as in BasicRouter.  Nodes reserved for a net by the
+ * StaticSourceHandler and resources of nets that are already routed are
+ * never used by other nets.
+ *
+ * With more than one thread (see setThreads()), the nets are partitioned
+ * into regions of the device by their bounding boxes (see RegionPartition).
+ * In each iteration the nets of regions that do not overlap are routed at
+ * the same time, each search limited to the tiles of its region.  The nets
+ * crossing region boundaries are then routed serially over the whole device
+ * and any resources shared between regions are resolved by the following
+ * iterations like any other congestion.  The result only depends on the
+ * partition, so it is the same for any number of threads greater than one.
+ */
+public class PathFinderRouter extends AbstractRouter{
+
+	/** Cost of using a routing resource before congestion is considered */
+	private static final float BASE_COST = 1.0f;
+	/** Maximum number of nodes to examine for one connection before giving up */
+	private static final int MAX_NODES_PER_CONNECTION = 1000000;
+	/** Number of tiles around the pins of a net its region must contain */
+	private static final int REGION_MARGIN = 3;
+	/** Regions with this many nets or less are not partitioned further */
+	private static final int MAX_NETS_PER_REGION = 64;
+	/** Regions are not partitioned into parts with less than this many tiles in height or width */
+	private static final int MIN_REGION_SIZE = 8;
+
+	/** Maximum number of rip-up and reroute iterations */
+	private int maxIterations = 50;
+	/** Present congestion factor of the first iteration */
+	private float initialPresentFactor = 0.5f;
+	/** The present congestion factor is multiplied by this after each iteration */
+	private float presentFactorMultiplier = 1.5f;
+	/** Amount of history cost added per overuse of a resource after each iteration */
+	private float historyFactor = 1.0f;
+	/** Weight of the remaining distance estimate in the A* search */
+	private float aStarFactor = 1.0f;
+	/** Number of threads to route with */
+	private int threads = 1;
+	/** Prints the report of each iteration when true */
+	private boolean verbose = false;
+	/** Present congestion factor of the current iteration */
+	private float presentFactor;
+
+	/** Congestion information of every resource used during routing */
+	private HashMap<Node,Congestion> congestion;
+	/** The resources currently used by each net */
+	private HashMap<Net,ArrayList<Node>> netResources;
+	/** The PIPs currently used by each net */
+	private HashMap<Net,ArrayList<PIP>> netPIPMap;
+	/** Statistics of each iteration */
+	private ArrayList<IterationReport> iterationReports;
+
+	/**
+	 * Constructor to initialize router
+	 */
+	public PathFinderRouter(){
+		super();
+		MessageGenerator.printHeader(this.getClass().getCanonicalName());
+		congestion = new HashMap<Node, Congestion>();
+		netResources = new HashMap<Net, ArrayList<Node>>();
+		netPIPMap = new HashMap<Net, ArrayList<PIP>>();
+		iterationReports = new ArrayList<IterationReport>();
+	}
+
+	/**
+	 * Constructor to initialize router for the given design, the device and
+	 * wire enumerator are taken from the design.
+	 * @param design The design to route.
+	 */
+	public PathFinderRouter(Design design){
+		this();
+		this.design = design;
+		this.dev = design.getDevice();
+		this.we = design.getWireEnumerator();
+	}
+
+	/**
+	 * Sets the maximum number of rip-up and reroute iterations (default 50).
+	 * @param maxIterations The maximum number of iterations.
+	 */
+	public void setMaxIterations(int maxIterations){
+		this.maxIterations = maxIterations;
+	}
+
+	public int getMaxIterations(){
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the present congestion factor of the first iteration (default 0.5).
+	 * @param initialPresentFactor The initial present congestion factor.
+	 */
+	public void setInitialPresentFactor(float initialPresentFactor){
+		this.initialPresentFactor = initialPresentFactor;
+	}
+
+	/**
+	 * Sets the factor by which the present congestion factor grows after
+	 * each iteration (default 1.5).
+	 * @param presentFactorMultiplier The present congestion factor multiplier.
+	 */
+	public void setPresentFactorMultiplier(float presentFactorMultiplier){
+		this.presentFactorMultiplier = presentFactorMultiplier;
+	}
+
+	/**
+	 * Sets the history cost added to a resource for each net overusing it
+	 * after each iteration (default 1.0).
+	 * @param historyFactor The history factor.
+	 */
+	public void setHistoryFactor(float historyFactor){
+		this.historyFactor = historyFactor;
+	}
+
+	/**
+	 * Sets the weight of the remaining distance estimate in the search
+	 * (default 1.0).  Larger values route faster but less directly.
+	 * @param aStarFactor The weight of the distance estimate.
+	 */
+	public void setAStarFactor(float aStarFactor){
+		this.aStarFactor = aStarFactor;
+	}
+
+	/**
+	 * Sets the number of threads to route with (default 1).  With more than
+	 * one thread the nets are partitioned into regions which are routed in
+	 * parallel.
+	 * @param threads The number of threads.
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+
+	public int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * Sets if the report of each iteration is printed to standard out as
+	 * soon as the iteration is finished (default false).  The reports are
+	 * always available from getIterationReports().
+	 * @param verbose True to print the report of each iteration.
+	 */
+	public void setVerbose(boolean verbose){
+		this.verbose = verbose;
+	}
+
+	public boolean isVerbose(){
+		return verbose;
+	}
+
+	/**
+	 * @return The statistics of each iteration of the last call to routeDesign().
+	 */
+	public ArrayList<IterationReport> getIterationReports(){
+		return iterationReports;
+	}
+
+	/**
+	 * Adds the routing of a net to the current routing state and the
+	 * congestion of its resources.
+	 */
+	private void addNetRouting(Net net, ArrayList<PIP> pips, ArrayList<Node> resources){
+		for(Node n : resources){
+			Congestion c = congestion.get(n);
+			if(c == null){
+				c = new Congestion();
+				congestion.put(n, c);
+			}
+			c.occupancy++;
+		}
+		netResources.put(net, resources);
+		netPIPMap.put(net, pips);
+	}
+
+	/**
+	 * Removes the routing of a net and releases its resources.
+	 * @param net The net to rip up.
+	 */
+	protected void ripUpNet(Net net){
+		ArrayList<Node> resources = netResources.remove(net);
+		if(resources == null) return;
+		for(Node n : resources){
+			congestion.get(n).occupancy--;
+		}
+		netPIPMap.remove(net);
+	}
+
+	/**
+	 * Checks if a net uses a resource that is used by more than one net.
+	 */
+	private boolean isNetCongested(Net net){
+		ArrayList<Node> resources = netResources.get(net);
+		if(resources == null) return false;
+		for(Node n : resources){
+			if(congestion.get(n).occupancy > 1) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a net should be routed by this router (it has a source and
+	 * is not already routed or informational).
+	 */
+	private boolean isRoutable(Net net){
+		if((net.hasAttributes() && net.getModuleTemplateNet() == null) || net.getPIPs().size() > 0) return false;
+		if(net.getSource() == null){
+			MessageGenerator.briefError("ERROR: " + net.getName() + " does not have a source pins associated with it.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the statistics and the routing of the nets of a finished worker
+	 * to the routing state.
+	 */
+	private void mergeWorker(RoutingWorker worker){
+		if(!worker.direct){
+			for(Net net : worker.routedNets){
+				addNetRouting(net, worker.routedPIPs.get(net), worker.routedResources.get(net));
+			}
+		}
+		for(String error : worker.errors){
+			MessageGenerator.briefError(error);
+		}
+		for(Net net : worker.routedNets){
+			countNetRouting(net);
+		}
+		for(NetRoutingStats stats : worker.netStats){
+			stats.setRouteCount(netRouteCounts.get(stats.getNet()));
+			fireNetRouted(stats);
+		}
+		totalNodesProcessed += worker.nodesProcessed;
+		totalConnections += worker.connections;
+		failedConnections += worker.failedConnections;
+	}
+
+	/**
+	 * Runs the workers of one level of the region partition, on the thread
+	 * pool if there is more than one.
+	 */
+	private void runWorkers(ArrayList<RoutingWorker> workers, ExecutorService executor){
+		if(executor == null || workers.size() < 2){
+			for(RoutingWorker worker : workers){
+				worker.call();
+			}
+			return;
+		}
+		try{
+			for(Future<RoutingWorker> f : executor.invokeAll(workers)){
+				f.get();
+			}
+		}
+		catch(InterruptedException e){
+			MessageGenerator.briefErrorAndExit("Routing was interrupted.");
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			MessageGenerator.briefErrorAndExit("Error while routing: " + e.getCause());
+		}
+	}
+
+	/**
+	 * Routes the selected nets of one iteration using the region partition.
+	 * The selected nets are ripped up first.  Then the regions of each level
+	 * of the partition are routed from the deepest level up, the regions of a
+	 * level in parallel as they do not overlap.  Nets crossing region
+	 * boundaries and nets that could not be routed within their region are
+	 * routed last in a serial pass over the whole device.
+	 * @return The number of nets routed.
+	 */
+	private int routeNetsByRegion(ArrayList<Net> nets, RegionPartition partition, ExecutorService executor){
+		HashSet<Net> selected = new HashSet<Net>(nets);
+		for(Net net : nets){
+			ripUpNet(net);
+		}
+
+		ArrayList<ArrayList<Region>> levels = partition.getLevels();
+		ArrayList<Net> deferredNets = new ArrayList<Net>();
+		int netsRouted = 0;
+		for(int depth = levels.size()-1; depth > 0; depth--){
+			ArrayList<RoutingWorker> workers = new ArrayList<RoutingWorker>();
+			for(Region region : levels.get(depth)){
+				ArrayList<Net> regionNets = new ArrayList<Net>();
+				for(Net net : region.getNets()){
+					if(selected.contains(net)) regionNets.add(net);
+				}
+				if(!regionNets.isEmpty()){
+					workers.add(new RoutingWorker(regionNets, region, false));
+				}
+			}
+			runWorkers(workers, executor);
+			for(RoutingWorker worker : workers){
+				mergeWorker(worker);
+				netsRouted += worker.routedNets.size();
+				deferredNets.addAll(worker.deferredNets);
+			}
+		}
+
+		// Serial pass over the nets crossing regions
+		ArrayList<Net> remainingNets = new ArrayList<Net>();
+		for(Net net : levels.get(0).get(0).getNets()){
+			if(selected.contains(net)) remainingNets.add(net);
+		}
+		remainingNets.addAll(deferredNets);
+		RoutingWorker worker = new RoutingWorker(remainingNets, null, true);
+		worker.call();
+		mergeWorker(worker);
+		return netsRouted + worker.routedNets.size();
+	}
+
+	/**
+	 * This the central method for routing the design in this class.  Nets
+	 * are routed and rerouted until no resources are shared or the maximum
+	 * number of iterations is reached.
+	 * @return The final routed design.
+	 */
+	public Design routeDesign(){
+		netList = new ArrayList<Net>();
+		netList.addAll(design.getNets());
+
+		// Deal with static nets (vcc/gnd)
+		long staticStart = System.nanoTime();
+		StaticSourceHandler ssHandler = new StaticSourceHandler(this);
+		ssHandler.separateStaticSourceNets();
+		firePhaseFinished("static sources", staticStart);
+
+		ArrayList<Net> routableNets = new ArrayList<Net>();
+		for(Net net : netList){
+			if(isRoutable(net)) routableNets.add(net);
+		}
+
+		RegionPartition partition = null;
+		ExecutorService executor = null;
+		if(threads > 1){
+			partition = new RegionPartition(dev, routableNets, REGION_MARGIN, MAX_NETS_PER_REGION, MIN_REGION_SIZE);
+			executor = Executors.newFixedThreadPool(threads);
+		}
+
+		iterationReports.clear();
+		presentFactor = initialPresentFactor;
+		int overused = 0;
+		try{
+			for(int iteration = 1; iteration <= maxIterations; iteration++){
+				long start = System.nanoTime();
+				int startNodes = totalNodesProcessed;
+				int startConnections = totalConnections;
+				failedConnections = 0;
+				int netsRouted;
+
+				if(partition == null){
+					RoutingWorker worker = new RoutingWorker(routableNets, null, true);
+					worker.onlyCongestedNets = iteration > 1;
+					worker.call();
+					mergeWorker(worker);
+					netsRouted = worker.routedNets.size();
+				}
+				else{
+					ArrayList<Net> nets = new ArrayList<Net>();
+					for(Net net : routableNets){
+						if(iteration == 1 || isNetCongested(net)) nets.add(net);
+					}
+					netsRouted = routeNetsByRegion(nets, partition, executor);
+				}
+
+				// Update the history of overused resources
+				overused = 0;
+				for(Congestion c : congestion.values()){
+					if(c.occupancy > 1){
+						overused++;
+						c.history += historyFactor * (c.occupancy - 1);
+					}
+				}
+				presentFactor *= presentFactorMultiplier;
+
+				int wirelength = 0;
+				for(ArrayList<PIP> pips : netPIPMap.values()){
+					wirelength += pips.size();
+				}
+				IterationReport report = new IterationReport(iteration, netsRouted,
+						totalConnections - startConnections, failedConnections, overused,
+						wirelength, totalNodesProcessed - startNodes, System.nanoTime() - start);
+				iterationReports.add(report);
+				if(verbose) System.out.println(report);
+				firePhaseFinished("iteration " + iteration, start);
+
+				if(overused == 0) break;
+			}
+		}
+		finally{
+			if(executor != null) executor.shutdownNow();
+		}
+		if(overused > 0){
+			MessageGenerator.briefError("WARNING: " + overused + " routing resources are still used by more than one net after "
+					+ maxIterations + " iterations.");
+		}
+
+		// Commit the final routing of each net
+		for(Net net : routableNets){
+			currNet = net;
+			ArrayList<PIP> pips = netPIPMap.get(net);
+			if(pips == null) pips = new ArrayList<PIP>();
+			for(PIP pip : pips){
+				setWireAsUsed(pip.getTile(), pip.getStartWire(), net);
+				setWireAsUsed(pip.getTile(), pip.getEndWire(), net);
+				markIntermediateNodesAsUsed(pip, net);
+			}
+			net.setPIPs(pips);
+		}
+		design.setNets(netList);
+		return design;
+	}
+
+	/**
+	 * Routes a list of nets with its own search state so that several
+	 * workers can route at the same time.  A worker either updates the
+	 * routing state of the router directly (serial routing), or keeps the
+	 * routing of its nets and their congestion to itself until it is merged
+	 * by the router.  In the latter case, the search is limited to the tiles
+	 * of a region and nets that can not be routed within the region are
+	 * deferred to the serial pass.  While workers run in parallel, the
+	 * routing state of the router is only read.
+	 */
+	private class RoutingWorker implements Callable<RoutingWorker>{
+		/** The nets to route in order */
+		private ArrayList<Net> nets;
+		/** Searches are limited to this region, null for the whole device */
+		private Region region;
+		/** True if this worker updates the routing state of the router directly */
+		private boolean direct;
+		/** Skip nets that do not use any overused resources (direct workers only) */
+		private boolean onlyCongestedNets;
+		/** Occupancy added by the nets routed by this worker (not direct workers) */
+		private HashMap<Node,Congestion> localCongestion;
+
+		/** The best path cost of each node reached in the current search, -1 once expanded */
+		private HashMap<Node,Float> pathCosts;
+		/** The nodes to be expanded in the current search ordered by estimated total cost */
+		private PriorityQueue<QueueEntry> searchQueue;
+		/** Nodes reserved for the current net which it may use even though they are marked as used */
+		private HashSet<Node> currReservedNodes;
+		/** The nodes of the routing tree of the current net */
+		private ArrayList<Node> currNetNodes;
+		/** The sink of the current connection */
+		private Node currSink;
+		/** True if the current sink is a clock input */
+		private boolean isCurrSinkAClkWire;
+		/** The PIPs of the last connection routed */
+		private ArrayList<PIP> pipList;
+
+		/** The nets routed by this worker in order */
+		private ArrayList<Net> routedNets;
+		/** The PIPs of each net routed (not direct workers) */
+		private HashMap<Net,ArrayList<PIP>> routedPIPs;
+		/** The resources of each net routed (not direct workers) */
+		private HashMap<Net,ArrayList<Node>> routedResources;
+		/** Nets that could not be routed within the region */
+		private ArrayList<Net> deferredNets;
+		/** Error messages to print when the worker is merged (not direct workers) */
+		private ArrayList<String> errors;
+		/** The measurements of the nets routed, only kept if the router has listeners */
+		private ArrayList<NetRoutingStats> netStats;
+		/** The largest size of the search queue since the current net was started */
+		private int peakQueueSize;
+		/** Why the last connection failed */
+		private String connectionFailure;
+		private int nodesProcessed;
+		private int connections;
+		private int failedConnections;
+
+		RoutingWorker(ArrayList<Net> nets, Region region, boolean direct){
+			this.nets = nets;
+			this.region = region;
+			this.direct = direct;
+			localCongestion = direct ? null : new HashMap<Node, Congestion>();
+			pathCosts = new HashMap<Node, Float>();
+			searchQueue = new PriorityQueue<QueueEntry>(16, new Comparator<QueueEntry>() {
+				public int compare(QueueEntry i, QueueEntry j) {return Float.compare(i.priority, j.priority);}});
+			currSink = new Node();
+			routedNets = new ArrayList<Net>();
+			routedPIPs = new HashMap<Net, ArrayList<PIP>>();
+			routedResources = new HashMap<Net, ArrayList<Node>>();
+			deferredNets = new ArrayList<Net>();
+			errors = new ArrayList<String>();
+			netStats = new ArrayList<NetRoutingStats>();
+		}
+
+		public RoutingWorker call(){
+			for(Net net : nets){
+				if(direct){
+					if(onlyCongestedNets && !isNetCongested(net)) continue;
+					ripUpNet(net);
+				}
+				routeNet(net);
+			}
+			return this;
+		}
+
+		/**
+		 * Gets the cost of using a node in the current iteration.
+		 * @param node The node to get the cost of.
+		 * @param isRouteThrough True if the node is reached through a route through.
+		 * @return The cost of the node.
+		 */
+		private float getNodeCost(Node node, boolean isRouteThrough){
+			float base = BASE_COST;
+			// Favor clock wires when routing the clock tree
+			if(isCurrSinkAClkWire && !isRouteThrough && we.getWireDirection(node.wire).equals(WireDirection.CLK)){
+				base = 0;
+			}
+			int occupancy = 0;
+			float history = 0;
+			Congestion c = congestion.get(node);
+			if(c != null){
+				occupancy = c.occupancy;
+				history = c.history;
+			}
+			if(localCongestion != null){
+				c = localCongestion.get(node);
+				if(c != null) occupancy += c.occupancy;
+			}
+			return (base + history) * (1 + presentFactor * occupancy);
+		}
+
+		/**
+		 * Gets the estimated cost from a node to the current sink.
+		 */
+		private float getEstimatedCost(Node node){
+			int x = currSink.tile.getColumn() - node.tile.getColumn();
+			int y = currSink.tile.getRow() - node.tile.getRow();
+			if(x < 0) x = -x;
+			if(y < 0) y = -y;
+			return aStarFactor * BASE_COST * (x + y);
+		}
+
+		/**
+		 * Adds a node to the search queue if the given path to it is cheaper
+		 * than any found so far.
+		 */
+		private void enqueue(Node node, float pathCost){
+			Float previous = pathCosts.get(node);
+			if(previous != null && (previous < 0 || previous <= pathCost)){
+				return;
+			}
+			pathCosts.put(node, pathCost);
+			searchQueue.add(new QueueEntry(node, pathCost, pathCost + getEstimatedCost(node)));
+			if(searchQueue.size() > peakQueueSize) peakQueueSize = searchQueue.size();
+		}
+
+		/**
+		 * Checks if a node may be used by the current net.
+		 */
+		private boolean isNodeAvailable(Node node){
+			if(region != null && !region.contains(node.tile)) return false;
+			return !usedNodes.contains(node) || (currReservedNodes != null && currReservedNodes.contains(node));
+		}
+
+		/**
+		 * Routes a single connection from the current routing tree of the net
+		 * to currSink.  On success, the PIPs of the new path are in pipList and
+		 * the nodes of the path are added to the routing tree.
+		 * @return True if the connection was routed.
+		 */
+		private boolean routeConnection(){
+			pipList = new ArrayList<PIP>();
+			pathCosts.clear();
+			searchQueue.clear();
+			int nodes = 0;
+			boolean success = false;
+
+			// All nodes of the current routing tree are free sources
+			for(Node src : currNetNodes){
+				if(src.getConnections() != null || src.equals(currSink)){
+					enqueue(new Node(src.tile, src.wire, null, 0), 0);
+				}
+			}
+
+			connectionFailure = "no path found";
+			while(!searchQueue.isEmpty()){
+				if(nodes > MAX_NODES_PER_CONNECTION){
+					connectionFailure = "node limit reached";
+					break;
+				}
+				QueueEntry entry = searchQueue.remove();
+				Node currNode = entry.node;
+				if(pathCosts.get(currNode) != entry.pathCost){
+					// A cheaper path to this node was found after it was queued
+					// or it has already been expanded
+					continue;
+				}
+				pathCosts.put(currNode, -1f);
+				nodes++;
+
+				if(currNode.equals(currSink)){
+					// Follow the path back to the tree, recording PIPs and nodes
+					Node currPathNode = currNode;
+					while(currPathNode.parent != null){
+						if(currPathNode.isPIP && currPathNode.parent.tile.equals(currPathNode.tile)){
+							pipList.add(new PIP(currPathNode.tile, currPathNode.parent.wire, currPathNode.wire));
+						}
+						currNetNodes.add(currPathNode);
+						currPathNode = currPathNode.parent;
+					}
+					success = true;
+					break;
+				}
+
+				WireConnection[] wires = currNode.getConnections();
+				if(wires == null) continue;
+				for(WireConnection w : wires){
+					Tile t = w.getTile(currNode.tile);
+					if(t == null) continue;
+					Node tmp = new Node(t, w.getWire(), currNode, currNode.level+1, w.isPIP());
+					if((tmp.getConnections() == null && !tmp.equals(currSink)) || !isNodeAvailable(tmp)){
+						continue;
+					}
+					enqueue(tmp, entry.pathCost + getNodeCost(tmp, dev.isRouteThrough(w)));
+				}
+			}
+			nodesProcessed += nodes;
+			return success;
+		}
+
+		/**
+		 * Routes all of the connections of a net and records its PIPs and
+		 * resources.
+		 */
+		private void routeNet(Net net){
+			Pin currSource = net.getSource();
+			currNetNodes = new ArrayList<Node>();
+			ArrayList<PIP> pips = new ArrayList<PIP>();
+			ArrayList<Node> rNodes = reservedNodes.get(net);
+			currReservedNodes = rNodes == null ? null : new HashSet<Node>(rNodes);
+			int netConnections = 0;
+			int netFailedConnections = 0;
+			ArrayList<String> netErrors = new ArrayList<String>();
+			long start = System.nanoTime();
+			int startNodes = nodesProcessed;
+			String netFailure = null;
+			peakQueueSize = 0;
+
+			// Error checking
+			if(dev.getPrimitiveExternalPin(currSource) == null){
+				MessageGenerator.briefErrorAndExit("ERROR: Could not find valid external source pin name: " +
+						currSource + " " + currSource.getInstance().getType());
+			}
+			currNetNodes.add(new Node(currSource.getInstance().getTile(), dev.getPrimitiveExternalPin(currSource), null, 0));
+			boolean currNetOutputFromBUF = currSource.getInstance().getType().toString().contains("BUF");
+
+			for(Pin currSinkPin : net.getPins()){
+				// Ignore the source pin
+				if(currSinkPin.isOutPin()) continue;
+
+				if(dev.getPrimitiveExternalPin(currSinkPin) == null){
+					netErrors.add("Pin Missing from V5 Patch: " + net.getName() + " " + currSinkPin.getName()
+							+ " " +currSinkPin.getInstance().getTile() + " " + currSinkPin.getInstance().getType());
+					continue;
+				}
+
+				// Populate the current sink node
+				currSink.tile = currSinkPin.getInstance().getTile();
+				currSink.wire = dev.getPrimitiveExternalPin(currSinkPin);
+
+				isCurrSinkAClkWire = (we.getWireDirection(currSink.wire).equals(WireDirection.CLK) ||
+									  currSinkPin.getName().contains("CLK") ||
+									  currSinkPin.getName().equals("C")) &&
+									 (currNetOutputFromBUF ||
+									  currSinkPin.getInstance().getType().toString().contains("BUF")
+									 );
+
+				netConnections++;
+				if(routeConnection()){
+					pips.addAll(pipList);
+				}
+				else{
+					if(region != null){
+						// Try again without the region limits in the serial pass
+						deferredNets.add(net);
+						return;
+					}
+					netFailedConnections++;
+					if(netFailure == null){
+						netFailure = connectionFailure + " for " + currSinkPin.getInstanceName() + " " + currSinkPin.getName();
+					}
+					netErrors.add("\tFAILED TO ROUTE: net: " + net.getName() + " inpin: " + currSinkPin.getName() +
+						" (" + we.getWireName(currSink.wire) + ") on instance: " + currSinkPin.getInstanceName());
+				}
+			}
+
+			// Record the resources used by the net
+			HashSet<Node> resources = new HashSet<Node>();
+			for(PIP pip : pips){
+				resources.add(factory.newNode(pip.getTile(), pip.getStartWire(), null, 0));
+				resources.add(factory.newNode(pip.getTile(), pip.getEndWire(), null, 0));
+				resources.addAll(getIntermediateNodes(pip));
+			}
+			ArrayList<Node> resourceList = new ArrayList<Node>(resources);
+
+			routedNets.add(net);
+			connections += netConnections;
+			failedConnections += netFailedConnections;
+			if(hasRouterListeners()){
+				NetRoutingStats stats = new NetRoutingStats(net);
+				stats.setConnections(netConnections);
+				stats.setFailedConnections(netFailedConnections);
+				stats.setNodesProcessed(nodesProcessed - startNodes);
+				stats.setPeakQueueSize(peakQueueSize);
+				stats.setTime(System.nanoTime() - start);
+				stats.setPIPCount(pips.size());
+				stats.setFailureReason(netFailure);
+				netStats.add(stats);
+			}
+			if(direct){
+				for(String error : netErrors){
+					MessageGenerator.briefError(error);
+				}
+				addNetRouting(net, pips, resourceList);
+			}
+			else{
+				errors.addAll(netErrors);
+				for(Node n : resourceList){
+					Congestion c = localCongestion.get(n);
+					if(c == null){
+						c = new Congestion();
+						localCongestion.put(n, c);
+					}
+					c.occupancy++;
+				}
+				routedPIPs.put(net, pips);
+				routedResources.put(net, resourceList);
+			}
+		}
+	}
+
+	/**
+	 * A node waiting to be expanded in the search with the cost of the path
+	 * it was reached by.
+	 */
+	private static class QueueEntry{
+		Node node;
+		float pathCost;
+		float priority;
+
+		QueueEntry(Node node, float pathCost, float priority){
+			this.node = node;
+			this.pathCost = pathCost;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * Congestion information of a single routing resource.
+	 */
+	private static class Congestion{
+		/** Number of nets currently using the resource */
+		int occupancy;
+		/** Accumulated cost of past overuse of the resource */
+		float history;
+	}
+
+	/**
+	 * Quality of result and runtime of a single rip-up and reroute iteration.
+	 */
+	public static class IterationReport{
+		private int iteration;
+		private int netsRouted;
+		private int connectionsRouted;
+		private int failedConnections;
+		private int overusedResources;
+		private int wirelength;
+		private int nodesProcessed;
+		private long runtime;
+
+		public IterationReport(int iteration, int netsRouted, int connectionsRouted, int failedConnections,
+				int overusedResources, int wirelength, int nodesProcessed, long runtime){
+			this.iteration = iteration;
+			this.netsRouted = netsRouted;
+			this.connectionsRouted = connectionsRouted;
+			this.failedConnections = failedConnections;
+			this.overusedResources = overusedResources;
+			this.wirelength = wirelength;
+			this.nodesProcessed = nodesProcessed;
+			this.runtime = runtime;
+		}
+
+		public int getIteration(){
+			return iteration;
+		}
+
+		/**
+		 * @return The number of nets (re)routed in the iteration.
+		 */
+		public int getNetsRouted(){
+			return netsRouted;
+		}
+
+		public int getConnectionsRouted(){
+			return connectionsRouted;
+		}
+
+		public int getFailedConnections(){
+			return failedConnections;
+		}
+
+		/**
+		 * @return The number of resources used by more than one net at the end of the iteration.
+		 */
+		public int getOverusedResources(){
+			return overusedResources;
+		}
+
+		/**
+		 * @return The total number of PIPs of all nets at the end of the iteration.
+		 */
+		public int getWirelength(){
+			return wirelength;
+		}
+
+		public int getNodesProcessed(){
+			return nodesProcessed;
+		}
+
+		/**
+		 * @return The runtime of the iteration in nanoseconds.
+		 */
+		public long getRuntime(){
+			return runtime;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("Iteration %3d: %6d nets %7d connections %5d failed %6d overused %8d PIPs %10d nodes %8.3fs",
+				iteration, netsRouted, connectionsRouted, failedConnections, overusedResources, wirelength,
+				nodesProcessed, runtime / 1000000000.0);
+		}
+	}
+
+	public static void main(String[] args){
+		long[] runtimes = new long[4];
+		String nl = System.getProperty("line.separator");
+		runtimes[0] = runtimes[1] = System.nanoTime();
+		if (args.length != 2 && args.length != 3){
+			System.out.println("USAGE: PathFinderRouter <input.xdl> <output.xdl> [threads]");
+			System.exit(0);
+		}
+
+		// Initialize router and load design and device
+		PathFinderRouter router = new PathFinderRouter(new Design(args[0]));
+		router.setVerbose(true);
+		if(args.length == 3){
+			router.setThreads(Integer.parseInt(args[2]));
+		}
+
+		runtimes[1] = System.nanoTime() - runtimes[1];
+		runtimes[2] = System.nanoTime();
+
+		// Route the design
+		router.routeDesign();
+
+		runtimes[2] = System.nanoTime() - runtimes[2];
+		runtimes[3] = System.nanoTime();
+
+		// Save routed design to XDL file
+		router.design.saveXDLFile(args[1], true);
+
+		runtimes[3] = System.nanoTime() - runtimes[3];
+		runtimes[0] = System.nanoTime() - runtimes[0];
+
+		// Print out runtime summary
+		ArrayList<IterationReport> reports = router.getIterationReports();
+		IterationReport last = reports.isEmpty() ? null : reports.get(reports.size()-1);
+		System.out.println();
+		System.out.println("----------------- SUMMARY --------------------");
+		System.out.println("         Total Nodes Processed : " + router.totalNodesProcessed);
+		System.out.println("             Total Connections : " + router.totalConnections);
+		System.out.println("                    Iterations : " + reports.size());
+		System.out.println("      Total Failed Connections : " + (last == null ? 0 : last.getFailedConnections()));
+		System.out.println("            Overused Resources : " + (last == null ? 0 : last.getOverusedResources()));
+		System.out.println("                    Total PIPs : " + (last == null ? 0 : last.getWirelength()));
+		System.out.println("----------------------------------------------");
+		System.out.printf("    Loading Design/Device Time : %8.3fs %s", runtimes[1]/1000000000.0, nl);
+		System.out.printf("                  Routing Time : %8.3fs %s", runtimes[2]/1000000000.0, nl);
+		System.out.printf("            Saving Design Time : %8.3fs %s", runtimes[3]/1000000000.0, nl);
+		System.out.println("----------------------------------------------");
+		System.out.printf("                 Total Runtime : %8.3fs %s", runtimes[0]/1000000000.0, nl);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+
+/**
+ * Partitions the nets of a design into rectangular regions of the device
+ * with a k-d tree.  Each region is split in two along its longer side at
+ * the median center of its nets.  A net goes to a sub-region if its
+ * bounding box (grown by a margin) lies entirely within it, otherwise it
+ * stays in the region being split.  Regions at the same depth of the tree
+ * never overlap, so the nets of those regions can be routed independently
+ * as long as each search stays within its region.
+ *
+ * The partition only depends on the nets and the parameters, not on the
+ * number of threads used to route it.
+ */
+public class RegionPartition {
+	/** The regions grouped by depth, index 0 holds the root region */
+	private ArrayList<ArrayList<Region>> levels;
+	/** The bounding box (with margin) of each net: minRow, maxRow, minCol, maxCol */
+	private HashMap<Net,int[]> boxes;
+	/** Number of tiles added around the pins of a net for its bounding box */
+	private int margin;
+	/** A region is not split if it contains this many nets or less */
+	private int maxNetsPerRegion;
+	/** Regions are not split below this many tiles in either dimension */
+	private int minRegionSize;
+
+	/**
+	 * Creates the partition of the given nets.
+	 * @param dev The device the nets are placed on.
+	 * @param nets The nets to partition, in routing order (the order is kept
+	 * within each region).
+	 * @param margin Number of tiles to grow the bounding box of each net by.
+	 * @param maxNetsPerRegion Regions with this many nets or less are not split.
+	 * @param minRegionSize Regions are not split into parts smaller than this
+	 * many tiles.
+	 */
+	public RegionPartition(Device dev, ArrayList<Net> nets, int margin, int maxNetsPerRegion, int minRegionSize){
+		this.margin = margin;
+		this.maxNetsPerRegion = Math.max(1, maxNetsPerRegion);
+		this.minRegionSize = Math.max(1, minRegionSize);
+		this.levels = new ArrayList<ArrayList<Region>>();
+		this.boxes = new HashMap<Net, int[]>();
+		for(Net net : nets){
+			boxes.put(net, getBoundingBox(dev, net, margin));
+		}
+		Region root = new Region(0, dev.getRows()-1, 0, dev.getColumns()-1, 0);
+		split(root, new ArrayList<Net>(nets));
+	}
+
+	/**
+	 * Gets the bounding box of the pins of a net grown by a margin and
+	 * clipped to the device.
+	 * @param dev The device the net is placed on.
+	 * @param net The net.
+	 * @param margin Number of tiles to grow the box by on each side.
+	 * @return The box as {minRow, maxRow, minCol, maxCol}, the whole device
+	 * if the net has no placed pins.
+	 */
+	public static int[] getBoundingBox(Device dev, Net net, int margin){
+		int[] box = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		for(Pin p : net.getPins()){
+			if(p.getInstance() == null) continue;
+			Tile t = p.getTile();
+			if(t == null) continue;
+			box[0] = Math.min(box[0], t.getRow());
+			box[1] = Math.max(box[1], t.getRow());
+			box[2] = Math.min(box[2], t.getColumn());
+			box[3] = Math.max(box[3], t.getColumn());
+		}
+		if(box[0] > box[1]){
+			// No placed pins, the net can go anywhere
+			return new int[]{0, dev.getRows()-1, 0, dev.getColumns()-1};
+		}
+		box[0] = Math.max(0, box[0] - margin);
+		box[1] = Math.min(dev.getRows()-1, box[1] + margin);
+		box[2] = Math.max(0, box[2] - margin);
+		box[3] = Math.min(dev.getColumns()-1, box[3] + margin);
+		return box;
+	}
+
+	private void split(Region region, ArrayList<Net> nets){
+		while(levels.size() <= region.depth){
+			levels.add(new ArrayList<Region>());
+		}
+		levels.get(region.depth).add(region);
+
+		int rows = region.maxRow - region.minRow + 1;
+		int cols = region.maxCol - region.minCol + 1;
+		boolean splitRows = rows >= cols;
+		int size = splitRows ? rows : cols;
+		if(nets.size() <= maxNetsPerRegion || size < 2 * minRegionSize){
+			region.nets = nets;
+			return;
+		}
+
+		// Split at the median center of the nets, keeping both sides large enough
+		int[] centers = new int[nets.size()];
+		for(int i = 0; i < centers.length; i++){
+			int[] box = boxes.get(nets.get(i));
+			centers[i] = splitRows ? (box[0] + box[1]) / 2 : (box[2] + box[3]) / 2;
+		}
+		Arrays.sort(centers);
+		int low = splitRows ? region.minRow : region.minCol;
+		int cut = Math.max(low + minRegionSize, Math.min(low + size - minRegionSize, centers[centers.length/2]));
+
+		Region first, second;
+		if(splitRows){
+			first = new Region(region.minRow, cut - 1, region.minCol, region.maxCol, region.depth + 1);
+			second = new Region(cut, region.maxRow, region.minCol, region.maxCol, region.depth + 1);
+		}
+		else{
+			first = new Region(region.minRow, region.maxRow, region.minCol, cut - 1, region.depth + 1);
+			second = new Region(region.minRow, region.maxRow, cut, region.maxCol, region.depth + 1);
+		}
+		ArrayList<Net> firstNets = new ArrayList<Net>();
+		ArrayList<Net> secondNets = new ArrayList<Net>();
+		region.nets = new ArrayList<Net>();
+		for(Net net : nets){
+			int[] box = boxes.get(net);
+			if(first.contains(box)) firstNets.add(net);
+			else if(second.contains(box)) secondNets.add(net);
+			else region.nets.add(net);
+		}
+		if(firstNets.isEmpty() && secondNets.isEmpty()){
+			// Nothing to gain from splitting
+			return;
+		}
+		split(first, firstNets);
+		split(second, secondNets);
+	}
+
+	/**
+	 * Gets the regions grouped by their depth in the tree.  Regions of the
+	 * same depth do not overlap, each region lies within a region of every
+	 * smaller depth.  The single region at depth 0 covers the whole device.
+	 * @return The regions of each depth.
+	 */
+	public ArrayList<ArrayList<Region>> getLevels(){
+		return levels;
+	}
+
+	/**
+	 * Gets the bounding box of a net used to partition it.
+	 * @param net The net.
+	 * @return The box as {minRow, maxRow, minCol, maxCol} or null if the net
+	 * was not partitioned.
+	 */
+	public int[] getBoundingBox(Net net){
+		return boxes.get(net);
+	}
+
+	/**
+	 * A rectangle of tiles and the nets that lie within it but not within
+	 * any of its sub-regions.
+	 */
+	public static class Region {
+		private int minRow;
+		private int maxRow;
+		private int minCol;
+		private int maxCol;
+		private int depth;
+		private ArrayList<Net> nets;
+
+		Region(int minRow, int maxRow, int minCol, int maxCol, int depth){
+			this.minRow = minRow;
+			this.maxRow = maxRow;
+			this.minCol = minCol;
+			this.maxCol = maxCol;
+			this.depth = depth;
+			this.nets = new ArrayList<Net>();
+		}
+
+		private boolean contains(int[] box){
+			return box[0] >= minRow && box[1] <= maxRow && box[2] >= minCol && box[3] <= maxCol;
+		}
+
+		/**
+		 * Checks if a tile is within this region.
+		 */
+		public boolean contains(Tile t){
+			return t.getRow() >= minRow && t.getRow() <= maxRow && t.getColumn() >= minCol && t.getColumn() <= maxCol;
+		}
+
+		public int getMinRow(){
+			return minRow;
+		}
+
+		public int getMaxRow(){
+			return maxRow;
+		}
+
+		public int getMinColumn(){
+			return minCol;
+		}
+
+		public int getMaxColumn(){
+			return maxCol;
+		}
+
+		public int getDepth(){
+			return depth;
+		}
+
+		/**
+		 * @return The nets of this region in routing order.
+		 */
+		public ArrayList<Net> getNets(){
+			return nets;
+		}
+
+		@Override
+		public String toString(){
+			return "[" + minRow + "-" + maxRow + ", " + minCol + "-" + maxCol + "] " + nets.size() + " nets";
+		}
+	}
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.Arrays;
+
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+
+/**
+ * The data structures of a maze router search that do not allocate
+ * objects once they have grown to the size of the searches being done.
+ *
+ * Routing nodes (a tile and a wire) are given int ids the first time they
+ * are seen, looked up by the unique address of the tile and the wire.  The
+ * ids stay valid for the life of the search object, so the connections of
+ * a node and the ids of the nodes it fans out to only have to be looked up
+ * once.  Per search flags (visited, source) are kept in int arrays stamped
+ * with the number of the current search, so starting a new search does not
+ * have to clear them.
+ *
+ * A router can also keep whether each node is used by another net, so it
+ * only has to look a node up in its own data structures once.  This
+ * information stays valid across searches until clearUsage() is called.
+ *
+ * The paths of a search are kept as records (node id, parent record, level
+ * and delay) in primitive arrays, and the records waiting to be expanded are
+ * kept in a binary heap of record ids ordered by an int cost.  The heap
+ * orders records with equal costs the same way a java.util.PriorityQueue
+ * would, so a router switching to it finds the same routes as before.
+ *
+ * A search object is not thread safe, each thread needs its own.
+ */
+public class RouteSearch {
+	/** Initial number of nodes and records the arrays have room for */
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	/** Hash table of node ids + 1 (0 for empty slots) by node key */
+	private int[] table;
+	/** The key (tile address and wire) of each node */
+	private long[] nodeKeys;
+	/** The tile of each node */
+	private Tile[] nodeTiles;
+	/** The wire of each node */
+	private int[] nodeWires;
+	/** The connections of each node, null if the wire has none */
+	private WireConnection[][] nodeConnections;
+	/** The ids of the nodes each node connects to (-1 for connections leaving the device), built when first needed */
+	private int[][] nodeFanout;
+	/** Number of the last search a node was visited in */
+	private int[] visitedStamps;
+	/** Number of the last search a node was marked as a source in */
+	private int[] sourceStamps;
+	/** Number of the usage information a node was last set as used or unused in */
+	private int[] usageStamps;
+	/** True for nodes that were last set as used, only valid if the usage stamp is current */
+	private boolean[] usedFlags;
+	/** Number of nodes that have an id */
+	private int nodeCount;
+
+	/** The node of each record */
+	private int[] recordNodes;
+	/** The parent record of each record, -1 if none */
+	private int[] recordParents;
+	/** The level (number of nodes from the source) of each record */
+	private int[] recordLevels;
+	/** The delay of the path of each record */
+	private int[] recordDelays;
+	/** Number of records of the current search */
+	private int recordCount;
+
+	/** Binary heap of record ids */
+	private int[] heap;
+	/** The cost of each record in the heap */
+	private int[] heapCosts;
+	/** Number of records in the heap */
+	private int heapSize;
+	/** The largest heapSize since the last call to resetPeakSize() */
+	private int peakSize;
+
+	/** Number of the current search */
+	private int searchNumber;
+	/** Number of the current usage information */
+	private int usageNumber;
+
+	/**
+	 * Creates a new search with no node ids.
+	 */
+	public RouteSearch(){
+		table = new int[INITIAL_CAPACITY * 2];
+		nodeKeys = new long[INITIAL_CAPACITY];
+		nodeTiles = new Tile[INITIAL_CAPACITY];
+		nodeWires = new int[INITIAL_CAPACITY];
+		nodeConnections = new WireConnection[INITIAL_CAPACITY][];
+		nodeFanout = new int[INITIAL_CAPACITY][];
+		visitedStamps = new int[INITIAL_CAPACITY];
+		sourceStamps = new int[INITIAL_CAPACITY];
+		usageStamps = new int[INITIAL_CAPACITY];
+		usedFlags = new boolean[INITIAL_CAPACITY];
+		recordNodes = new int[INITIAL_CAPACITY];
+		recordParents = new int[INITIAL_CAPACITY];
+		recordLevels = new int[INITIAL_CAPACITY];
+		recordDelays = new int[INITIAL_CAPACITY];
+		heap = new int[INITIAL_CAPACITY];
+		heapCosts = new int[INITIAL_CAPACITY];
+		nodeCount = 0;
+		searchNumber = 1;
+		usageNumber = 1;
+	}
+
+	/**
+	 * Starts a new search: all nodes become unvisited, and all records and
+	 * the heap are cleared.  Node ids stay the same.
+	 */
+	public void newSearch(){
+		recordCount = 0;
+		heapSize = 0;
+		if(searchNumber == Integer.MAX_VALUE){
+			Arrays.fill(visitedStamps, 0);
+			Arrays.fill(sourceStamps, 0);
+			searchNumber = 0;
+		}
+		searchNumber++;
+	}
+
+	/*
+	 * Nodes
+	 */
+
+	/**
+	 * Gets the id of a node, giving it one if it does not have one yet.
+	 * @param tile The tile of the node.
+	 * @param wire The wire of the node.
+	 * @return The id of the node.
+	 */
+	public int getNodeId(Tile tile, int wire){
+		long key = getKey(tile, wire);
+		int mask = table.length - 1;
+		int i = hash(key) & mask;
+		int id;
+		while((id = table[i]) != 0){
+			if(nodeKeys[id - 1] == key) return id - 1;
+			i = (i + 1) & mask;
+		}
+		id = nodeCount++;
+		if(id == nodeKeys.length){
+			growNodes();
+			mask = table.length - 1;
+			i = hash(key) & mask;
+			while(table[i] != 0){
+				i = (i + 1) & mask;
+			}
+		}
+		table[i] = id + 1;
+		nodeKeys[id] = key;
+		nodeTiles[id] = tile;
+		nodeWires[id] = wire;
+		nodeConnections[id] = tile.getWireConnections(wire);
+		return id;
+	}
+
+	/**
+	 * Finds the id of a node without giving it one.
+	 * @param tile The tile of the node.
+	 * @param wire The wire of the node.
+	 * @return The id of the node or -1 if it does not have one.
+	 */
+	public int findNodeId(Tile tile, int wire){
+		long key = getKey(tile, wire);
+		int mask = table.length - 1;
+		int i = hash(key) & mask;
+		int id;
+		while((id = table[i]) != 0){
+			if(nodeKeys[id - 1] == key) return id - 1;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static long getKey(Tile tile, int wire){
+		return ((long) tile.getUniqueAddress() << 32) | (wire & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key){
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key >>> 32);
+	}
+
+	private void growNodes(){
+		int capacity = nodeKeys.length * 2;
+		nodeKeys = Arrays.copyOf(nodeKeys, capacity);
+		nodeTiles = Arrays.copyOf(nodeTiles, capacity);
+		nodeWires = Arrays.copyOf(nodeWires, capacity);
+		nodeConnections = Arrays.copyOf(nodeConnections, capacity);
+		nodeFanout = Arrays.copyOf(nodeFanout, capacity);
+		visitedStamps = Arrays.copyOf(visitedStamps, capacity);
+		sourceStamps = Arrays.copyOf(sourceStamps, capacity);
+		usageStamps = Arrays.copyOf(usageStamps, capacity);
+		usedFlags = Arrays.copyOf(usedFlags, capacity);
+		table = new int[capacity * 2];
+		int mask = table.length - 1;
+		for(int id = 0; id < nodeCount - 1; id++){
+			int i = hash(nodeKeys[id]) & mask;
+			while(table[i] != 0){
+				i = (i + 1) & mask;
+			}
+			table[i] = id + 1;
+		}
+	}
+
+	/**
+	 * @return The number of nodes that have an id.
+	 */
+	public int getNodeCount(){
+		return nodeCount;
+	}
+
+	public Tile getTile(int node){
+		return nodeTiles[node];
+	}
+
+	public int getWire(int node){
+		return nodeWires[node];
+	}
+
+	/**
+	 * @return The connections of the wire of the node in its tile, null if
+	 * it has none.
+	 */
+	public WireConnection[] getConnections(int node){
+		return nodeConnections[node];
+	}
+
+	/**
+	 * Gets the ids of the nodes a node connects to, in the order of its
+	 * connections (see getConnections()).  Connections that lead outside of
+	 * the device have the id -1.
+	 * @param node The node.
+	 * @return The ids of the nodes it connects to.
+	 */
+	public int[] getFanout(int node){
+		int[] fanout = nodeFanout[node];
+		if(fanout == null){
+			WireConnection[] wires = nodeConnections[node];
+			if(wires == null){
+				fanout = new int[0];
+			}
+			else{
+				fanout = new int[wires.length];
+				Tile tile = nodeTiles[node];
+				for(int k = 0; k < wires.length; k++){
+					Tile t = wires[k].getTile(tile);
+					fanout[k] = t == null ? -1 : getNodeId(t, wires[k].getWire());
+				}
+			}
+			nodeFanout[node] = fanout;
+		}
+		return fanout;
+	}
+
+	public boolean isVisited(int node){
+		return visitedStamps[node] == searchNumber;
+	}
+
+	public void setVisited(int node){
+		visitedStamps[node] = searchNumber;
+	}
+
+	public boolean isSource(int node){
+		return sourceStamps[node] == searchNumber;
+	}
+
+	/**
+	 * Marks a node as a source of the current search.
+	 */
+	public void setSource(int node){
+		sourceStamps[node] = searchNumber;
+	}
+
+	/**
+	 * @return True if setUsed() was called for the node since the last call
+	 * to clearUsage().
+	 */
+	public boolean isUsageKnown(int node){
+		return usageStamps[node] == usageNumber;
+	}
+
+	/**
+	 * @return True if the node was last set as used, only valid if
+	 * isUsageKnown() is true for the node.
+	 */
+	public boolean isUsed(int node){
+		return usedFlags[node];
+	}
+
+	/**
+	 * Sets whether a node is used.
+	 */
+	public void setUsed(int node, boolean used){
+		usageStamps[node] = usageNumber;
+		usedFlags[node] = used;
+	}
+
+	/**
+	 * Forgets whether nodes are used.
+	 */
+	public void clearUsage(){
+		if(usageNumber == Integer.MAX_VALUE){
+			Arrays.fill(usageStamps, 0);
+			usageNumber = 0;
+		}
+		usageNumber++;
+	}
+
+	/*
+	 * Records
+	 */
+
+	/**
+	 * Adds a record of a node being reached in the current search.
+	 * @param node The node reached.
+	 * @param parent The record the node was reached from, -1 if none.
+	 * @param level The number of nodes between the source and the node.
+	 * @param delay The delay of the path from the source to the node.
+	 * @return The id of the new record.
+	 */
+	public int addRecord(int node, int parent, int level, int delay){
+		int record = recordCount++;
+		if(record == recordNodes.length){
+			int capacity = recordNodes.length * 2;
+			recordNodes = Arrays.copyOf(recordNodes, capacity);
+			recordParents = Arrays.copyOf(recordParents, capacity);
+			recordLevels = Arrays.copyOf(recordLevels, capacity);
+			recordDelays = Arrays.copyOf(recordDelays, capacity);
+		}
+		recordNodes[record] = node;
+		recordParents[record] = parent;
+		recordLevels[record] = level;
+		recordDelays[record] = delay;
+		return record;
+	}
+
+	public int getRecordNode(int record){
+		return recordNodes[record];
+	}
+
+	/**
+	 * @return The parent record of the record, -1 if it has none.
+	 */
+	public int getRecordParent(int record){
+		return recordParents[record];
+	}
+
+	public int getRecordLevel(int record){
+		return recordLevels[record];
+	}
+
+	public int getRecordDelay(int record){
+		return recordDelays[record];
+	}
+
+	/*
+	 * Heap
+	 */
+
+	/**
+	 * Adds a record to the heap.
+	 * @param record The record.
+	 * @param cost The cost the heap is ordered by, lowest first.
+	 */
+	public void push(int record, int cost){
+		int k = heapSize++;
+		if(k == heap.length){
+			heap = Arrays.copyOf(heap, k * 2);
+			heapCosts = Arrays.copyOf(heapCosts, k * 2);
+		}
+		while(k > 0){
+			int parent = (k - 1) >>> 1;
+			if(cost >= heapCosts[parent]) break;
+			heap[k] = heap[parent];
+			heapCosts[k] = heapCosts[parent];
+			k = parent;
+		}
+		heap[k] = record;
+		heapCosts[k] = cost;
+		if(heapSize > peakSize) peakSize = heapSize;
+	}
+
+	/**
+	 * Removes the record with the lowest cost from the heap.
+	 * @return The record with the lowest cost.
+	 */
+	public int poll(){
+		int result = heap[0];
+		int n = --heapSize;
+		if(n > 0){
+			int record = heap[n];
+			int cost = heapCosts[n];
+			int k = 0;
+			int half = n >>> 1;
+			while(k < half){
+				int child = (k << 1) + 1;
+				int right = child + 1;
+				if(right < n && heapCosts[child] > heapCosts[right]){
+					child = right;
+				}
+				if(cost <= heapCosts[child]) break;
+				heap[k] = heap[child];
+				heapCosts[k] = heapCosts[child];
+				k = child;
+			}
+			heap[k] = record;
+			heapCosts[k] = cost;
+		}
+		return result;
+	}
+
+	public boolean isEmpty(){
+		return heapSize == 0;
+	}
+
+	/**
+	 * @return The number of records in the heap.
+	 */
+	public int size(){
+		return heapSize;
+	}
+
+	/**
+	 * @return The largest number of records in the heap at once since the
+	 * last call to resetPeakSize().
+	 */
+	public int getPeakSize(){
+		return peakSize;
+	}
+
+	public void resetPeakSize(){
+		peakSize = 0;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+/**
+ * Receives the measurements of a router while it routes a design (see
+ * AbstractRouter.addRouterListener()).  The methods are called on the
+ * thread that called routeDesign().
+ */
+public interface RouterListener {
+
+	/**
+	 * Called each time a net has been routed.
+	 * @param stats The measurements of routing the net.
+	 */
+	public void netRouted(NetRoutingStats stats);
+
+	/**
+	 * Called when a phase of the router has finished, for example the
+	 * separation of the static nets (see StaticSourceHandler) or one
+	 * iteration of PathFinderRouter.
+	 * @param phase The name of the phase.
+	 * @param time The wall clock time of the phase in nanoseconds.
+	 */
+	public void phaseFinished(String phase, long time);
+}
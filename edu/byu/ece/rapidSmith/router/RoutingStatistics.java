@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * A RouterListener that keeps all measurements of a router so the most
+ * expensive nets can be found after routing, and exports them as CSV or
+ * JSON.  Example:
+ * <pre>
+ * RoutingStatistics stats = new RoutingStatistics();
+ * router.addRouterListener(stats);
+ * router.routeDesign();
+ * stats.writeCSV("nets.csv");
+ * </pre>
+ */
+public class RoutingStatistics implements RouterListener {
+	/** The measurements of each net routed in order, a net appears once each time it is routed */
+	private ArrayList<NetRoutingStats> netStats;
+	/** The total time of each phase in nanoseconds in the order the phases first finished */
+	private LinkedHashMap<String,Long> phaseTimes;
+
+	public RoutingStatistics(){
+		netStats = new ArrayList<NetRoutingStats>();
+		phaseTimes = new LinkedHashMap<String, Long>();
+	}
+
+	@Override
+	public void netRouted(NetRoutingStats stats){
+		netStats.add(stats);
+	}
+
+	@Override
+	public void phaseFinished(String phase, long time){
+		Long previous = phaseTimes.get(phase);
+		phaseTimes.put(phase, previous == null ? time : previous + time);
+	}
+
+	/**
+	 * @return The measurements of each net routed in order.
+	 */
+	public ArrayList<NetRoutingStats> getNetStats(){
+		return netStats;
+	}
+
+	/**
+	 * @return The total time of each phase in nanoseconds.
+	 */
+	public LinkedHashMap<String,Long> getPhaseTimes(){
+		return phaseTimes;
+	}
+
+	/**
+	 * Gets the nets that expanded the most nodes.
+	 * @param count The maximum number of nets to return.
+	 * @return The measurements of the nets, most nodes first.
+	 */
+	public ArrayList<NetRoutingStats> getMostExpensiveNets(int count){
+		return getTop(count, new Comparator<NetRoutingStats>(){
+			public int compare(NetRoutingStats a, NetRoutingStats b){
+				return b.getNodesProcessed() - a.getNodesProcessed();
+			}
+		});
+	}
+
+	/**
+	 * Gets the nets that took the most time to route.
+	 * @param count The maximum number of nets to return.
+	 * @return The measurements of the nets, slowest first.
+	 */
+	public ArrayList<NetRoutingStats> getSlowestNets(int count){
+		return getTop(count, new Comparator<NetRoutingStats>(){
+			public int compare(NetRoutingStats a, NetRoutingStats b){
+				return Long.signum(b.getTime() - a.getTime());
+			}
+		});
+	}
+
+	private ArrayList<NetRoutingStats> getTop(int count, Comparator<NetRoutingStats> comparator){
+		ArrayList<NetRoutingStats> sorted = new ArrayList<NetRoutingStats>(netStats);
+		Collections.sort(sorted, comparator);
+		return new ArrayList<NetRoutingStats>(sorted.subList(0, Math.min(count, sorted.size())));
+	}
+
+	/**
+	 * Forgets all measurements.
+	 */
+	public void clear(){
+		netStats.clear();
+		phaseTimes.clear();
+	}
+
+	/**
+	 * Writes the measurements of the nets to a CSV file with one line per
+	 * net routed.  Phase times are not included.
+	 * @param fileName Name of the file to write.
+	 */
+	public void writeCSV(String fileName){
+		String nl = System.getProperty("line.separator");
+		try{
+			BufferedWriter bw = new BufferedWriter(new FileWriter(fileName));
+			bw.write("net,connections,failed_connections,nodes_processed,peak_queue_size,time_ms,route_count,pips,failure_reason" + nl);
+			for(NetRoutingStats s : netStats){
+				bw.write(csvString(s.getNet().getName()) + "," + s.getConnections() + "," + s.getFailedConnections() + "," +
+						s.getNodesProcessed() + "," + s.getPeakQueueSize() + "," + String.format(Locale.ROOT, "%.3f", s.getTime() / 1000000.0) + "," +
+						s.getRouteCount() + "," + s.getPIPCount() + "," + (s.getFailureReason() == null ? "" : csvString(s.getFailureReason())) + nl);
+			}
+			bw.close();
+		}
+		catch(IOException e){
+			MessageGenerator.briefErrorAndExit("Error writing file: " + fileName + " " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the phase times and the measurements of the nets to a JSON
+	 * file, as an object with a "phases" and a "nets" array.
+	 * @param fileName Name of the file to write.
+	 */
+	public void writeJSON(String fileName){
+		String nl = System.getProperty("line.separator");
+		try{
+			BufferedWriter bw = new BufferedWriter(new FileWriter(fileName));
+			bw.write("{" + nl + "  \"phases\": [");
+			String separator = nl;
+			for(Entry<String,Long> e : phaseTimes.entrySet()){
+				bw.write(separator + "    {\"name\": " + jsonString(e.getKey()) + ", \"time_ms\": " + 
+						String.format(Locale.ROOT, "%.3f", e.getValue() / 1000000.0) + "}");
+				separator = "," + nl;
+			}
+			bw.write(nl + "  ]," + nl + "  \"nets\": [");
+			separator = nl;
+			for(NetRoutingStats s : netStats){
+				bw.write(separator + "    {\"net\": " + jsonString(s.getNet().getName()) + 
+						", \"connections\": " + s.getConnections() + 
+						", \"failed_connections\": " + s.getFailedConnections() +
+						", \"nodes_processed\": " + s.getNodesProcessed() + 
+						", \"peak_queue_size\": " + s.getPeakQueueSize() +
+						", \"time_ms\": " + String.format(Locale.ROOT, "%.3f", s.getTime() / 1000000.0) + 
+						", \"route_count\": " + s.getRouteCount() +
+						", \"pips\": " + s.getPIPCount() +
+						", \"failure_reason\": " + (s.getFailureReason() == null ? "null" : jsonString(s.getFailureReason())) + "}");
+				separator = "," + nl;
+			}
+			bw.write(nl + "  ]" + nl + "}" + nl);
+			bw.close();
+		}
+		catch(IOException e){
+			MessageGenerator.briefErrorAndExit("Error writing file: " + fileName + " " + e.getMessage());
+		}
+	}
+
+	private static String csvString(String s){
+		if(s.indexOf(',') == -1 && s.indexOf('"') == -1 && s.indexOf('\n') == -1 && s.indexOf('\r') == -1) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String jsonString(String s){
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			switch(c){
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if(c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+					else sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.WireType;
+import edu.byu.ece.rapidSmith.timing.Path;
+import edu.byu.ece.rapidSmith.timing.PathDelay;
+import edu.byu.ece.rapidSmith.timing.PathElement;
+import edu.byu.ece.rapidSmith.timing.RoutingPathElement;
+import edu.byu.ece.rapidSmith.timing.TraceReportParser;
+import edu.byu.ece.rapidSmith.timing.WireDelayModel;
+
+/**
+ * A timing driven cost function.  Each connection (identified by its sink
+ * pin) has a criticality between 0 and 1.  The cost of a node is the
+ * distance cost of DistanceCostFunction weighted by 1 - criticality plus
+ * the delay of the path so far and the estimated delay to the sink
+ * weighted by the criticality.  Connections without a criticality are
+ * routed exactly as with DistanceCostFunction.  With the default delay per
+ * tile of the model (see WireDelayModel.getMinDelayPerTile()) the estimate
+ * never exceeds the real remaining delay, so the delay part of the cost is
+ * an admissible A* heuristic.
+ *
+ * The delays of the wires come from a WireDelayModel.  Criticalities can
+ * be set directly or taken from the paths of a trce timing report (see
+ * addCriticalities()), so the connections on the critical paths of a
+ * design can be rerouted for delay without running the Xilinx tools.
+ */
+public class TimingCostFunction extends DistanceCostFunction {
+	/** Default upper limit of criticalities, so critical connections still avoid long detours */
+	public static final float DEFAULT_MAX_CRITICALITY = 0.99f;
+	/** Default cost of one ns of delay */
+	public static final float DEFAULT_DELAY_WEIGHT = 10f;
+
+	/** The delay of each wire type in ps, by ordinal */
+	private int[] typeDelays;
+	/** Estimated delay in ps to cover the distance of one tile */
+	private int delayPerTile;
+	/** The criticality of the connection to each sink pin */
+	private HashMap<Pin,Float> criticalities;
+	/** Criticalities are limited to this value */
+	private float maxCriticality;
+	/** Criticalities are raised to this power */
+	private float criticalityExponent;
+	/** The cost of one ns of delay */
+	private float delayWeight;
+	/** The criticality of the current connection */
+	private float currCriticality;
+
+	/**
+	 * Creates the cost function.  The delays of the model are read when the
+	 * cost function is created.
+	 * @param we The wire enumerator of the device being routed.
+	 * @param model The delays of the wires.
+	 */
+	public TimingCostFunction(WireEnumerator we, WireDelayModel model){
+		super(we);
+		WireType[] types = WireType.values();
+		typeDelays = new int[types.length];
+		for(WireType type : types){
+			typeDelays[type.ordinal()] = Math.round(model.getDelay(type) * 1000);
+		}
+		delayPerTile = Math.round(model.getDelayPerTile() * 1000);
+		criticalities = new HashMap<Pin, Float>();
+		maxCriticality = DEFAULT_MAX_CRITICALITY;
+		criticalityExponent = 1;
+		delayWeight = DEFAULT_DELAY_WEIGHT;
+	}
+
+	/**
+	 * Sets the criticality of a connection.
+	 * @param sinkPin The sink pin of the connection.
+	 * @param criticality The criticality between 0 (not critical) and 1
+	 * (most critical).
+	 */
+	public void setCriticality(Pin sinkPin, float criticality){
+		criticalities.put(sinkPin, criticality);
+	}
+
+	/**
+	 * @return The criticality of the connection to the sink pin, 0 if it
+	 * has none.
+	 */
+	public float getCriticality(Pin sinkPin){
+		Float criticality = criticalities.get(sinkPin);
+		return criticality == null ? 0 : criticality;
+	}
+
+	/**
+	 * Sets the criticality of the connections on the paths of a trce timing
+	 * report.  Each path gets its delay divided by the delay of the worst
+	 * path as criticality, connections on several paths keep the highest
+	 * one.  The report must have been parsed with the design being routed
+	 * (see TraceReportParser.parseTWR(String, Design)) so the pins of the
+	 * paths are known.
+	 * @param parser The parser of the timing report.
+	 * @return The number of connections with a criticality.
+	 */
+	public int addCriticalities(TraceReportParser parser){
+		ArrayList<Path> paths = new ArrayList<Path>();
+		paths.addAll(parser.getPathDelays());
+		paths.addAll(parser.getPathOffsets());
+		float worst = 0;
+		for(Path path : paths){
+			worst = Math.max(worst, getPathDelay(path));
+		}
+		if(worst > 0){
+			for(Path path : paths){
+				float criticality = getPathDelay(path) / worst;
+				for(PathElement e : path.getMaxDataPath()){
+					if(!(e instanceof RoutingPathElement) || e.getPin() == null) continue;
+					if(criticality > getCriticality(e.getPin())){
+						criticalities.put(e.getPin(), criticality);
+					}
+				}
+			}
+		}
+		return criticalities.size();
+	}
+
+	private static float getPathDelay(Path path){
+		return path instanceof PathDelay ? ((PathDelay) path).getDelay() : path.getDataPathDelay();
+	}
+
+	public float getMaxCriticality(){
+		return maxCriticality;
+	}
+
+	public void setMaxCriticality(float maxCriticality){
+		this.maxCriticality = maxCriticality;
+	}
+
+	public float getCriticalityExponent(){
+		return criticalityExponent;
+	}
+
+	/**
+	 * Sets the power criticalities are raised to, higher values focus the
+	 * delay cost on the most critical connections.
+	 */
+	public void setCriticalityExponent(float criticalityExponent){
+		this.criticalityExponent = criticalityExponent;
+	}
+
+	public float getDelayWeight(){
+		return delayWeight;
+	}
+
+	/**
+	 * Sets the cost of one ns of delay relative to the distance cost (2 per
+	 * tile of distance and per node).
+	 */
+	public void setDelayWeight(float delayWeight){
+		this.delayWeight = delayWeight;
+	}
+
+	@Override
+	public void setConnection(Net net, Pin sinkPin, Node sink, boolean isClockSink){
+		super.setConnection(net, sinkPin, sink, isClockSink);
+		float criticality = Math.min(getCriticality(sinkPin), maxCriticality);
+		currCriticality = criticality <= 0 ? 0 : (float) Math.pow(criticality, criticalityExponent);
+	}
+
+	@Override
+	public int getDelay(Tile tile, int wire){
+		return typeDelays[we.getWireType(wire).ordinal()];
+	}
+
+	@Override
+	public int getCost(Tile tile, int wire, int level, int pathDelay, int history, boolean isRouteThrough){
+		int cost = super.getCost(tile, wire, level, pathDelay, history, isRouteThrough);
+		if(currCriticality == 0) return cost;
+		float delay = (pathDelay + getDistance(tile) * delayPerTile) / 1000f;
+		return Math.round((1 - currCriticality) * cost + currCriticality * delayWeight * delay);
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.tests;
+
+import java.util.Arrays;
+
+/**
+ * A single timed operation for the benchmark harness.  Subclasses put the
+ * work to be timed in run() and any per-iteration preparation (which is not
+ * timed) in setUp().  Each benchmark is run a number of warmup iterations
+ * so the JIT has compiled the hot paths before the measured iterations
+ * start.
+ */
+public abstract class Benchmark {
+	/** Name of the benchmark as it appears in the report */
+	private String name;
+	/** Accumulates results of run() so the work cannot be optimized away */
+	private long blackhole;
+
+	public Benchmark(String name){
+		this.name = name;
+	}
+
+	/**
+	 * @return The name of this benchmark.
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Called before each iteration (warmup and measured), not timed.
+	 */
+	public void setUp(){
+
+	}
+
+	/**
+	 * The timed operation of the benchmark.
+	 * @return Some value derived from the work done (a count, an object,
+	 * etc.), it is consumed by the harness so the work is not eliminated.
+	 */
+	public abstract Object run();
+
+	/**
+	 * Called after each iteration (warmup and measured), not timed.
+	 */
+	public void tearDown(){
+
+	}
+
+	/**
+	 * Runs the benchmark and collects the time of each measured iteration.
+	 * @param warmup Number of untimed iterations to run first.
+	 * @param iterations Number of timed iterations.
+	 * @return The timing results of the measured iterations.
+	 */
+	public Result measure(int warmup, int iterations){
+		for(int i = 0; i < warmup; i++){
+			setUp();
+			consume(run());
+			tearDown();
+		}
+		long[] times = new long[iterations];
+		for(int i = 0; i < iterations; i++){
+			setUp();
+			long start = System.nanoTime();
+			Object o = run();
+			times[i] = System.nanoTime() - start;
+			consume(o);
+			tearDown();
+		}
+		return new Result(name, times);
+	}
+
+	private void consume(Object o){
+		blackhole += o == null ? 0 : o.hashCode();
+	}
+
+	/**
+	 * @return The combined value of all results returned by run().
+	 */
+	public long getBlackhole(){
+		return blackhole;
+	}
+
+	/**
+	 * Timing results of the measured iterations of a benchmark.
+	 */
+	public static class Result {
+		private String name;
+		/** Sorted iteration times in nanoseconds */
+		private long[] times;
+
+		public Result(String name, long[] times){
+			this.name = name;
+			this.times = Arrays.copyOf(times, times.length);
+			Arrays.sort(this.times);
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public int getIterations(){
+			return times.length;
+		}
+
+		/**
+		 * @return The mean iteration time in milliseconds.
+		 */
+		public double getMean(){
+			if(times.length == 0) return 0;
+			double sum = 0;
+			for(long t : times){
+				sum += t;
+			}
+			return sum / times.length / 1000000.0;
+		}
+
+		/**
+		 * @return The fastest iteration time in milliseconds.
+		 */
+		public double getMin(){
+			return times.length == 0 ? 0 : times[0] / 1000000.0;
+		}
+
+		/**
+		 * @return The slowest iteration time in milliseconds.
+		 */
+		public double getMax(){
+			return times.length == 0 ? 0 : times[times.length-1] / 1000000.0;
+		}
+
+		/**
+		 * @return The median iteration time in milliseconds.
+		 */
+		public double getMedian(){
+			return times.length == 0 ? 0 : times[times.length/2] / 1000000.0;
+		}
+
+		/**
+		 * @return The sample standard deviation of the iteration times in milliseconds.
+		 */
+		public double getStdDev(){
+			if(times.length < 2) return 0;
+			double mean = getMean();
+			double sum = 0;
+			for(long t : times){
+				double d = t / 1000000.0 - mean;
+				sum += d * d;
+			}
+			return Math.sqrt(sum / (times.length - 1));
+		}
+
+		/**
+		 * @return A header line matching the columns of toString().
+		 */
+		public static String getHeader(){
+			return String.format("%-36s %5s %12s %12s %12s %12s %12s", "Benchmark", "n",
+				"mean (ms)", "stddev", "min", "median", "max");
+		}
+
+		@Override
+		public String toString(){
+			return String.format("%-36s %5d %12.3f %12.3f %12.3f %12.3f %12.3f", name, times.length,
+				getMean(), getStdDev(), getMin(), getMedian(), getMax());
+		}
+	}
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.design.parser.DesignParser;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.DeviceCache;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.RoutingGraph;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireConnectionCursor;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDef;
+import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefList;
+import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefPin;
+import edu.byu.ece.rapidSmith.router.BasicRouter;
+import edu.byu.ece.rapidSmith.router.PathFinderRouter;
+import edu.byu.ece.rapidSmith.util.FamilyType;
+import edu.byu.ece.rapidSmith.util.FileTools;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * Times the main entry points of RapidSmith (device and wire enumerator
+ * loading, tile wire lookups, site queries, XDL parsing and writing and
+ * routing) so the effect of changes on them can be compared between builds.
+ * Each benchmark runs a number of warmup iterations before the measured
+ * ones and reports the mean, standard deviation, min, median and max time.
+ *
+ * When no XDL design is given, a synthetic design of SLICEL instances
+ * chained together with nets is generated for the part and used for the
+ * design benchmarks.
+ */
+public class BenchmarkSuite {
+	private String partName;
+	private String xdlFileName;
+	private Device device;
+	private FamilyType familyType;
+	private ArrayList<Benchmark> benchmarks;
+
+	public BenchmarkSuite(String partName, String xdlFileName){
+		this.partName = partName;
+		this.xdlFileName = xdlFileName;
+		this.device = FileTools.loadDevice(partName);
+		this.familyType = device.getFamilyType();
+		this.benchmarks = new ArrayList<Benchmark>();
+		createBenchmarks();
+	}
+
+	/**
+	 * @return The benchmarks of this suite in the order they are run.
+	 */
+	public ArrayList<Benchmark> getBenchmarks(){
+		return benchmarks;
+	}
+
+	private void createBenchmarks(){
+		benchmarks.add(new Benchmark("FileTools.loadDevice"){
+			public void setUp(){
+				DeviceCache.getInstance().remove(partName);
+			}
+			public Object run(){
+				return FileTools.loadDevice(partName);
+			}
+		});
+
+		benchmarks.add(new Benchmark("WireEnumerator.readCompactEnumFile"){
+			public Object run(){
+				WireEnumerator we = new WireEnumerator();
+				if(!we.readCompactEnumFile(FileTools.getWireEnumeratorFileName(familyType), familyType)){
+					MessageGenerator.briefErrorAndExit("Failed to load the wire enumerator for " + familyType);
+				}
+				return we;
+			}
+		});
+
+		benchmarks.add(new Benchmark("Tile.getWireConnections"){
+			public Object run(){
+				long count = 0;
+				for(Tile[] row : device.getTiles()){
+					for(Tile t : row){
+						for(IntIterator it = t.getWireIterator(); it.hasNext();){
+							WireConnection[] conns = t.getWireConnections(it.next());
+							if(conns != null) count += conns.length;
+						}
+					}
+				}
+				return count;
+			}
+		});
+
+		benchmarks.add(new Benchmark("WireConnectionCursor (packed)"){
+			private WireConnectionCursor cursor = new WireConnectionCursor();
+			private Device packed;
+			public void setUp(){
+				// Pack a private copy, the shared device is used unpacked by the other benchmarks
+				if(packed == null){
+					packed = new Device();
+					String fileName = FileTools.getDeviceFileName(partName);
+					if(!packed.readDeviceFromCompactFile(fileName)){
+						MessageGenerator.briefErrorAndExit("Failed to load the device file " + fileName);
+					}
+					packed.packWireConnections(false);
+				}
+			}
+			public Object run(){
+				long count = 0;
+				for(Tile[] row : packed.getTiles()){
+					for(Tile t : row){
+						for(IntIterator it = t.getWireIterator(); it.hasNext();){
+							for(t.getWireConnections(it.next(), cursor); cursor.next();){
+								count += cursor.getWire();
+							}
+						}
+					}
+				}
+				return count;
+			}
+		});
+
+		benchmarks.add(new Benchmark("RoutingGraph.build"){
+			public Object run(){
+				return RoutingGraph.build(device);
+			}
+		});
+
+		benchmarks.add(new Benchmark("RoutingGraph edge traversal"){
+			private RoutingGraph graph;
+			public void setUp(){
+				if(graph == null) graph = RoutingGraph.build(device);
+			}
+			public Object run(){
+				long count = 0;
+				for(int n = 0; n < graph.getNodeCount(); n++){
+					for(int e = graph.getFirstEdge(n), last = graph.getLastEdge(n); e < last; e++){
+						count += graph.getEdgeTarget(e);
+					}
+				}
+				return count;
+			}
+		});
+
+		final ArrayList<PrimitiveType> siteTypes = new ArrayList<PrimitiveType>(getSiteTypes(device));
+		benchmarks.add(new Benchmark("Device.getAllCompatibleSites"){
+			public Object run(){
+				long count = 0;
+				for(PrimitiveType type : siteTypes){
+					PrimitiveSite[] sites = device.getAllCompatibleSites(type);
+					if(sites != null) count += sites.length;
+				}
+				return count;
+			}
+		});
+
+		benchmarks.add(new Benchmark("DesignParser.parseXDL"){
+			public Object run(){
+				DesignParser parser = new DesignParser(xdlFileName);
+				parser.setDesign(new Design());
+				return parser.parseXDL();
+			}
+		});
+
+		final Design design = new Design(xdlFileName);
+		final File outputFile = createTempFile("save");
+		benchmarks.add(new Benchmark("Design.saveXDLFile"){
+			public Object run(){
+				design.saveXDLFile(outputFile.getAbsolutePath(), true);
+				return outputFile.length();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BasicRouter.routeDesign"){
+			private BasicRouter router;
+			public void setUp(){
+				Design d = new Design(xdlFileName);
+				d.unrouteDesign();
+				router = new BasicRouter(d);
+			}
+			public Object run(){
+				return router.routeDesign();
+			}
+			public void tearDown(){
+				router = null;
+			}
+		});
+
+		benchmarks.add(new Benchmark("PathFinderRouter.routeDesign"){
+			private PathFinderRouter router;
+			public void setUp(){
+				Design d = new Design(xdlFileName);
+				d.unrouteDesign();
+				router = new PathFinderRouter(d);
+			}
+			public Object run(){
+				return router.routeDesign();
+			}
+			public void tearDown(){
+				router = null;
+			}
+		});
+
+		benchmarks.add(new Benchmark("PathFinderRouter.routeDesign (parallel)"){
+			private PathFinderRouter router;
+			public void setUp(){
+				Design d = new Design(xdlFileName);
+				d.unrouteDesign();
+				router = new PathFinderRouter(d);
+				router.setThreads(Runtime.getRuntime().availableProcessors());
+			}
+			public Object run(){
+				return router.routeDesign();
+			}
+			public void tearDown(){
+				router = null;
+			}
+		});
+	}
+
+	/**
+	 * Runs each of the benchmarks in this suite and prints the results.
+	 * @param warmup Number of warmup iterations for each benchmark.
+	 * @param iterations Number of measured iterations for each benchmark.
+	 * @param only If not null, only benchmarks whose name contains this string are run.
+	 * @return The results of the benchmarks that were run.
+	 */
+	public ArrayList<Benchmark.Result> run(int warmup, int iterations, String only){
+		ArrayList<Benchmark.Result> results = new ArrayList<Benchmark.Result>();
+		for(Benchmark b : benchmarks){
+			if(only != null && !b.getName().contains(only)) continue;
+			System.out.println("Running " + b.getName() + "...");
+			results.add(b.measure(warmup, iterations));
+		}
+		return results;
+	}
+
+	/**
+	 * Gets the set of primitive types of all the sites in the device.
+	 * @param device The device to examine.
+	 * @return All primitive types found in the device.
+	 */
+	private static EnumSet<PrimitiveType> getSiteTypes(Device device){
+		EnumSet<PrimitiveType> types = EnumSet.noneOf(PrimitiveType.class);
+		for(PrimitiveSite site : device.getPrimitiveSites().values()){
+			types.add(site.getType());
+		}
+		return types;
+	}
+
+	private static File createTempFile(String suffix){
+		try{
+			File f = File.createTempFile("benchmark_", "_" + suffix + ".xdl");
+			f.deleteOnExit();
+			return f;
+		}
+		catch(IOException e){
+			MessageGenerator.briefErrorAndExit("Could not create a temporary file: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a design of placed SLICEL instances for the part.  The
+	 * instances are placed on the sites closest to the center of the device
+	 * and each output of every instance drives a net to LUT inputs on the
+	 * next two instances.
+	 * @param partName The part to create the design for.
+	 * @param instanceCount The number of instances to create.
+	 * @return The new (unrouted) design.
+	 */
+	public static Design createSyntheticDesign(String partName, int instanceCount){
+		Design design = new Design("benchmark", partName);
+		Device dev = design.getDevice();
+		PrimitiveDefList defs = FileTools.loadPrimitiveDefs(dev.getFamilyType());
+		PrimitiveDef def = defs == null ? null : defs.getPrimitiveDef(PrimitiveType.SLICEL);
+		if(def == null){
+			MessageGenerator.briefErrorAndExit("No SLICEL primitive definition found for " + partName);
+		}
+
+		// Only general LUT inputs and slice outputs are used, dedicated
+		// connections such as the carry chain can't be routed freely
+		ArrayList<String> inputs = new ArrayList<String>();
+		ArrayList<String> outputs = new ArrayList<String>();
+		for(PrimitiveDefPin p : def.getPins()){
+			String name = p.getExternalName();
+			if(p.isOutput() && name.matches("([A-D]|[XY])Q?")){
+				outputs.add(name);
+			}
+			else if(!p.isOutput() && name.matches("[A-D][1-6]|[FG][1-4]")){
+				inputs.add(name);
+			}
+		}
+		int outputsPerInstance = Math.min(2, outputs.size());
+		if(outputsPerInstance == 0 || inputs.size() < outputsPerInstance * 2){
+			MessageGenerator.briefErrorAndExit("Not enough usable SLICEL pins found for " + partName);
+		}
+
+		// Use the sites closest to the center of the device
+		PrimitiveSite[] sites = dev.getAllCompatibleSites(PrimitiveType.SLICEL);
+		if(sites == null || sites.length == 0){
+			MessageGenerator.briefErrorAndExit("No SLICEL sites found in " + partName);
+		}
+		final int centerX = dev.getColumns() / 2;
+		final int centerY = dev.getRows() / 2;
+		sites = Arrays.copyOf(sites, sites.length);
+		Arrays.sort(sites, new Comparator<PrimitiveSite>(){
+			public int compare(PrimitiveSite a, PrimitiveSite b){
+				int cmp = distance(a) - distance(b);
+				return cmp != 0 ? cmp : a.getName().compareTo(b.getName());
+			}
+			private int distance(PrimitiveSite s){
+				return Math.abs(s.getTile().getColumn() - centerX) + Math.abs(s.getTile().getRow() - centerY);
+			}
+		});
+		instanceCount = Math.min(instanceCount, sites.length);
+
+		Instance[] instances = new Instance[instanceCount];
+		int[] nextInput = new int[instanceCount];
+		for(int i = 0; i < instanceCount; i++){
+			instances[i] = new Instance("inst_" + i, PrimitiveType.SLICEL);
+			instances[i].place(sites[i]);
+			design.addInstance(instances[i]);
+		}
+		for(int i = 0; i < instanceCount; i++){
+			for(int j = 0; j < outputsPerInstance; j++){
+				Net net = new Net("net_" + i + "_" + outputs.get(j), NetType.WIRE);
+				net.addPin(new Pin(true, outputs.get(j), instances[i]));
+				for(int k = 1; k <= 2 && k < instanceCount; k++){
+					int sink = (i + k) % instanceCount;
+					net.addPin(new Pin(false, inputs.get(nextInput[sink]++), instances[sink]));
+				}
+				design.addNet(net);
+			}
+		}
+		return design;
+	}
+
+	public static void main(String[] args){
+		String partName = null;
+		String xdlFileName = null;
+		String only = null;
+		int warmup = 3;
+		int iterations = 10;
+		int instanceCount = 200;
+		try{
+			for(int i = 0; i < args.length; i++){
+				if(args[i].equals("-xdl")) xdlFileName = args[++i];
+				else if(args[i].equals("-warmup")) warmup = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-iterations")) iterations = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-only")) only = args[++i];
+				else if(args[i].equals("-instances")) instanceCount = Integer.parseInt(args[++i]);
+				else if(partName == null && !args[i].startsWith("-")) partName = args[i];
+				else throw new IllegalArgumentException(args[i]);
+			}
+		}
+		catch(RuntimeException e){
+			partName = null;
+		}
+		if(partName == null){
+			MessageGenerator.briefMessageAndExit("USAGE: <partName> [-xdl <design.xdl>] [-warmup <n>] " +
+				"[-iterations <n>] [-only <benchmarkName>] [-instances <n>]");
+		}
+
+		if(xdlFileName == null){
+			File f = createTempFile("design");
+			createSyntheticDesign(partName, instanceCount).saveXDLFile(f.getAbsolutePath());
+			xdlFileName = f.getAbsolutePath();
+			System.out.println("Created a synthetic design of " + instanceCount + " instances for " + partName);
+		}
+
+		BenchmarkSuite suite = new BenchmarkSuite(partName, xdlFileName);
+		ArrayList<Benchmark.Result> results = suite.run(warmup, iterations, only);
+
+		System.out.println();
+		System.out.println(Benchmark.Result.getHeader());
+		for(Benchmark.Result r : results){
+			System.out.println(r);
+		}
+	}
+}
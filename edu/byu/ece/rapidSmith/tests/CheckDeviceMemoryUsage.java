@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.tests;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.device.helper.IntKeyIterator;
+import edu.byu.ece.rapidSmith.device.helper.SinkHashMap;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import edu.byu.ece.rapidSmith.util.FileTools;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+public class CheckDeviceMemoryUsage {
+	public static void main(String[] args) {
+		if(args.length != 1){
+			MessageGenerator.briefMessageAndExit("USAGE: <partName>");
+		}
+		// Measure Initial Heap Size
+		Runtime rt = Runtime.getRuntime();
+		System.gc();
+		long initial_usage = rt.totalMemory() - rt.freeMemory();
+
+		// Start Timer
+		long start = System.nanoTime();
+		
+		Device device = FileTools.loadDevice(args[0]);
+		
+		// Stop Timer
+		long stop = System.nanoTime();
+		
+		// Measure Final Heap Size
+		System.gc();
+		long total_usage = rt.totalMemory() - rt.freeMemory() - initial_usage;
+		
+		System.out.printf("Loaded %s device in %5.3f seconds using %d MBs of heap space.%s", 
+			device.getPartName(), (stop-start)/1000000000.0, total_usage/(1024*1024), System.getProperty("line.separator"));
+		
+		// Walk every wire and sink pin of the device as a router would
+		IntKeyIterator it = new IntKeyIterator();
+		long wires = 0;
+		long sinks = 0;
+		start = System.nanoTime();
+		for(Tile[] tiles : device.getTiles()){
+			for(Tile t : tiles){
+				WireHashMap wireMap = t.getWireHashMap();
+				if(wireMap != null){
+					for(IntIterator i = wireMap.keyIterator(it); i.hasNext();){
+						wires += wireMap.get(i.next()).length;
+					}
+				}
+				SinkHashMap sinkMap = t.getSinks();
+				if(sinkMap != null){
+					for(IntIterator i = sinkMap.keyIterator(it); i.hasNext();){
+						if(sinkMap.get(i.next()) != null) sinks++;
+					}
+				}
+			}
+		}
+		stop = System.nanoTime();
+		System.out.printf("Enumerated %d wire connections and %d sink pins in %5.3f seconds.%s", 
+			wires, sinks, (stop-start)/1000000000.0, System.getProperty("line.separator"));
+	}
+}
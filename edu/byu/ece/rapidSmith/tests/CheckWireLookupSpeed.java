@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.tests;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.helper.IntIterator;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import edu.byu.ece.rapidSmith.util.FileTools;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+/**
+ * Compares the lookup speed of the frozen (perfect hash) wire maps of a 
+ * loaded device against the same maps in the regular open addressing 
+ * layout.  Every tile of the device is swept, looking up each of its wires 
+ * once per pass.
+ */
+public class CheckWireLookupSpeed {
+	public static void main(String[] args) {
+		if(args.length < 1 || args.length > 2){
+			MessageGenerator.briefMessageAndExit("USAGE: <partName> [passes]");
+		}
+		int passes = args.length == 2 ? Integer.parseInt(args[1]) : 5;
+		Device device = FileTools.loadDevice(args[0]);
+		
+		// Collect the unique wire maps and a regular copy of each
+		IdentityHashMap<WireHashMap,Integer> ids = new IdentityHashMap<WireHashMap,Integer>();
+		ArrayList<WireHashMap> frozen = new ArrayList<WireHashMap>();
+		ArrayList<WireHashMap> regular = new ArrayList<WireHashMap>();
+		ArrayList<int[]> keys = new ArrayList<int[]>();
+		int frozenCount = 0;
+		Tile[][] tiles = device.getTiles();
+		int[] tileMaps = new int[device.getRows()*device.getColumns()];
+		int index = 0;
+		long start = System.nanoTime();
+		for(Tile[] row : tiles){
+			for(Tile t : row){
+				WireHashMap map = t.getWireHashMap();
+				Integer id = map == null ? null : ids.get(map);
+				if(map != null && id == null){
+					id = frozen.size();
+					ids.put(map, id);
+					regular.add(new WireHashMap(map));
+					if(map.freeze()) frozenCount++;
+					frozen.add(map);
+					int[] k = new int[map.size()];
+					int i = 0;
+					for(IntIterator it = map.keyIterator(); it.hasNext();){
+						k[i++] = it.next();
+					}
+					keys.add(k);
+				}
+				tileMaps[index++] = id == null ? -1 : id;
+			}
+		}
+		System.out.printf("%d unique wire maps, %d frozen (%5.3f seconds to collect and freeze).%s", 
+			frozen.size(), frozenCount, (System.nanoTime()-start)/1000000000.0, System.getProperty("line.separator"));
+		
+		for(int pass = 0; pass < passes; pass++){
+			System.out.printf("Pass %d: regular %6.1f M lookups/s, frozen %6.1f M lookups/s%s", pass, 
+				sweep(regular, keys, tileMaps), sweep(frozen, keys, tileMaps), System.getProperty("line.separator"));
+		}
+	}
+
+	private static double sweep(ArrayList<WireHashMap> maps, ArrayList<int[]> keys, int[] tileMaps){
+		long lookups = 0;
+		long found = 0;
+		long start = System.nanoTime();
+		for(int id : tileMaps){
+			if(id == -1) continue;
+			WireHashMap map = maps.get(id);
+			for(int key : keys.get(id)){
+				WireConnection[] conns = map.get(key);
+				if(conns != null) found += conns.length;
+			}
+			lookups += keys.get(id).length;
+		}
+		long stop = System.nanoTime();
+		if(found == 0) System.out.println("No connections found");
+		return lookups / ((stop-start) / 1000.0);
+	}
+}
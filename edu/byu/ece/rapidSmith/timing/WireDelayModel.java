@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.timing;
+
+import edu.byu.ece.rapidSmith.device.WireType;
+
+/**
+ * A simple delay model of routing wires, with one delay for each WireType
+ * (see WireEnumerator.getWireType()) and a delay per tile used to estimate
+ * the delay of the remaining distance to a sink.  The default delays are
+ * rough estimates for a Virtex 5 in the range of the net delays reported by
+ * trce, they can be replaced with setDelay() and setDelayPerTile().  Each
+ * wire type also has a span, the number of tiles it covers, from which a
+ * lower bound of the delay per tile is derived (see getMinDelayPerTile()).
+ */
+public class WireDelayModel {
+	/** The delay of each wire type in ns, by ordinal */
+	private float[] delays;
+	/** The number of tiles covered by each wire type, by ordinal */
+	private int[] spans;
+	/** Estimated delay in ns to cover the distance of one tile on the fastest wires */
+	private float delayPerTile;
+
+	/**
+	 * Creates a delay model with the default delays.
+	 */
+	public WireDelayModel(){
+		delays = new float[WireType.values().length];
+		spans = new int[WireType.values().length];
+		setDelay(WireType.OMUX, 0.15f);
+		setDelay(WireType.OMUX_OUTPUT, 0.15f);
+		setDelay(WireType.DOUBLE, 0.30f);
+		setDelay(WireType.DOUBLE_TURN, 0.30f);
+		setDelay(WireType.TRIPLE, 0.35f);
+		setDelay(WireType.TRIPLE_TURN, 0.35f);
+		setDelay(WireType.PENT, 0.40f);
+		setDelay(WireType.PENT_TURN, 0.40f);
+		setDelay(WireType.HEX, 0.45f);
+		setDelay(WireType.HEPT, 0.50f);
+		setDelay(WireType.HEPT_TURN, 0.50f);
+		setDelay(WireType.LONG, 0.90f);
+		setDelay(WireType.BOUNCE, 0.10f);
+		setDelay(WireType.INT_SINK, 0.10f);
+		setDelay(WireType.INT_SOURCE, 0.10f);
+		setDelay(WireType.INT_CONN, 0.10f);
+		setDelay(WireType.TO_BUFG, 0.50f);
+		setDelay(WireType.SITE_SINK, 0.05f);
+		setDelay(WireType.SITE_SOURCE, 0.05f);
+		setDelay(WireType.OTHER, 0.20f);
+		setSpan(WireType.DOUBLE, 2);
+		setSpan(WireType.DOUBLE_TURN, 2);
+		setSpan(WireType.TRIPLE, 3);
+		setSpan(WireType.TRIPLE_TURN, 3);
+		setSpan(WireType.PENT, 5);
+		setSpan(WireType.PENT_TURN, 5);
+		setSpan(WireType.HEX, 6);
+		setSpan(WireType.HEPT, 7);
+		setSpan(WireType.HEPT_TURN, 7);
+		setSpan(WireType.LONG, 18);
+		setSpan(WireType.BOUNCE, 1);
+		setSpan(WireType.OTHER, 1);
+		delayPerTile = getMinDelayPerTile();
+	}
+
+	/**
+	 * @return The delay of a wire of the given type in ns.
+	 */
+	public float getDelay(WireType type){
+		return delays[type.ordinal()];
+	}
+
+	/**
+	 * Sets the delay of the wires of a type.
+	 * @param type The wire type.
+	 * @param delay The delay in ns.
+	 */
+	public void setDelay(WireType type, float delay){
+		delays[type.ordinal()] = delay;
+	}
+
+	/**
+	 * @return The number of tiles a wire of the given type covers, 0 for
+	 * wires that do not lead to other tiles.
+	 */
+	public int getSpan(WireType type){
+		return spans[type.ordinal()];
+	}
+
+	/**
+	 * Sets the number of tiles covered by the wires of a type.
+	 * @param type The wire type.
+	 * @param span The number of tiles, 0 if the wires stay within a tile.
+	 */
+	public void setSpan(WireType type, int span){
+		spans[type.ordinal()] = span;
+	}
+
+	/**
+	 * Gets the smallest delay per tile of any wire type that leads to
+	 * other tiles.  No route can cover a distance faster than this, so the
+	 * distance to a sink times this delay is an admissible (never too high)
+	 * estimate of the remaining delay.
+	 * @return The delay in ns.
+	 */
+	public float getMinDelayPerTile(){
+		float min = Float.MAX_VALUE;
+		for(int i = 0; i < spans.length; i++){
+			if(spans[i] > 0){
+				min = Math.min(min, delays[i] / spans[i]);
+			}
+		}
+		return min == Float.MAX_VALUE ? 0 : min;
+	}
+
+	/**
+	 * @return The estimated delay in ns to cover the distance of one tile.
+	 */
+	public float getDelayPerTile(){
+		return delayPerTile;
+	}
+
+	/**
+	 * Sets the estimated delay to cover the distance of one tile.  To keep
+	 * estimates optimistic, this should be the delay of the fastest wire
+	 * divided by the number of tiles it spans.
+	 * @param delayPerTile The delay in ns.
+	 */
+	public void setDelayPerTile(float delayPerTile){
+		this.delayPerTile = delayPerTile;
+	}
+}
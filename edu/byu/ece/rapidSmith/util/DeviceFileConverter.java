@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ * 
+ * This file is part of the BYU RapidSmith Tools.
+ * 
+ * BYU RapidSmith Tools is free software: you may redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * BYU RapidSmith Tools is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * A copy of the GNU General Public License is included with the BYU 
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also 
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ * 
+ */
+package edu.byu.ece.rapidSmith.util;
+
+import java.util.ArrayList;
+
+import edu.byu.ece.rapidSmith.device.Device;
+
+/**
+ * This class converts existing compact device files (*_db.dat) into the 
+ * memory mapped device file format (*_db.map).  The mapped files are placed
+ * next to the compact files and are preferred by FileTools.loadDevice()
+ * when present.
+ * @author Chris Lavin
+ */
+public class DeviceFileConverter{
+
+	/**
+	 * Converts the compact device file of a single part to the memory mapped
+	 * format.
+	 * @param partName Name of the part to convert.
+	 * @return True if the conversion was successful, false otherwise.
+	 */
+	public static boolean convertDevice(String partName){
+		String inputFileName = FileTools.getDeviceFileName(partName);
+		String outputFileName = FileTools.getMappedDeviceFileName(partName);
+		Device device = new Device();
+		if(!device.readDeviceFromCompactFile(inputFileName)){
+			MessageGenerator.briefError("ERROR: Could not read device file: " + inputFileName);
+			return false;
+		}
+		if(!device.writeDeviceToMappedFile(outputFileName, inputFileName)){
+			MessageGenerator.briefError("ERROR: Could not write mapped device file: " + outputFileName);
+			return false;
+		}
+		return true;
+	}
+	
+	public static void main(String[] args){
+		if(args.length == 0){
+			String nl = System.getProperty("line.separator");
+			MessageGenerator.briefMessageAndExit("  USAGE: <Xilinx Family Name(s) | Part Name(s)>" + nl +
+					"    EXAMPLES:" + nl +
+					"      \"virtex4 virtex5\"" + nl +
+					"      \"virtex4 xc5vlx20tff323\"" + nl);
+		}
+		
+		ArrayList<String> partNames = new ArrayList<String>();
+		for(String name : args){
+			name = name.toLowerCase();
+			if(name.startsWith("x")){
+				partNames.add(PartNameTools.removeSpeedGrade(name));
+			}
+			else{
+				FamilyType type = PartNameTools.getFamilyTypeFromFamilyName(name);
+				if(type == null){
+					MessageGenerator.briefErrorAndExit("ERROR: Unrecognized family name: " + name);
+				}
+				partNames.addAll(FileTools.getAvailableParts(type));
+			}
+		}
+		
+		int failures = 0;
+		for(String partName : partNames){
+			long start = System.currentTimeMillis();
+			System.out.println("Converting " + partName + "...");
+			if(!convertDevice(partName)){
+				failures++;
+				continue;
+			}
+			System.out.println("  Finished in " + (System.currentTimeMillis() - start) / 1000.0 + " seconds.");
+		}
+		if(failures > 0){
+			MessageGenerator.briefErrorAndExit(failures + " part(s) failed to convert.");
+		}
+	}
+}
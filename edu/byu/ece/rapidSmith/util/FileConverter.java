@@ -23,6 +23,9 @@ package edu.byu.ece.rapidSmith.util;
 import java.io.File;
 import java.io.IOException;
 
+import edu.byu.ece.rapidSmith.design.BinaryDesignFile;
+import edu.byu.ece.rapidSmith.design.Design;
+
 public class FileConverter {
 	
 	/**
@@ -203,4 +206,68 @@ public class FileConverter {
 		}		
 		return true;
 	}
+	
+	/**
+	 * Converts the file called xdlFileName to a binary design file by the same
+	 * name but with the binary design file extension.
+	 * @param xdlFileName The XDL file to convert.
+	 * @return Name of the output binary design file or null if conversion failed.
+	 */
+	public static String convertXDL2Binary(String xdlFileName){
+		String binaryFileName = FileTools.removeFileExtension(xdlFileName) + BinaryDesignFile.FILE_EXTENSION;
+		boolean success = convertXDL2Binary(xdlFileName, binaryFileName);
+		return success ? binaryFileName : null;
+	}
+	
+	/**
+	 * Converts xdlFileName to a binary design file called binaryFileName.
+	 * @param xdlFileName The input XDL file
+	 * @param binaryFileName The output binary design file
+	 * @return True if operation was successful, false otherwise.
+	 */
+	public static boolean convertXDL2Binary(String xdlFileName, String binaryFileName){
+		Design design = new Design();
+		design.loadXDLFile(xdlFileName);
+		try{
+			BinaryDesignFile.save(design, binaryFileName);
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("Error writing binary design file: " + binaryFileName +
+				System.getProperty("line.separator") + "  " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Converts the binary design file called binaryFileName to XDL with a file
+	 * by the same name but with an .xdl extension.
+	 * @param binaryFileName The binary design file to convert.
+	 * @return Name of the output XDL file or null if conversion failed.
+	 */
+	public static String convertBinary2XDL(String binaryFileName){
+		String xdlFileName = FileTools.removeFileExtension(binaryFileName) + ".xdl";
+		boolean success = convertBinary2XDL(binaryFileName, xdlFileName);
+		return success ? xdlFileName : null;
+	}
+	
+	/**
+	 * Converts binaryFileName to an XDL file called xdlFileName.
+	 * @param binaryFileName The input binary design file
+	 * @param xdlFileName The output XDL file
+	 * @return True if operation was successful, false otherwise.
+	 */
+	public static boolean convertBinary2XDL(String binaryFileName, String xdlFileName){
+		Design design = new Design();
+		try{
+			BinaryDesignFile.load(binaryFileName, design);
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("Error reading binary design file: " + binaryFileName +
+				System.getProperty("line.separator") + "  " + e.getMessage());
+			return false;
+		}
+		design.saveXDLFile(xdlFileName);
+		return true;
+	}
 }
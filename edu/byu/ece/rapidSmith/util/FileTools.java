@@ -47,9 +47,11 @@ import com.caucho.hessian.io.Hessian2Input;
 import com.caucho.hessian.io.Hessian2Output;
 
 import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.DeviceCache;
 import edu.byu.ece.rapidSmith.device.PrimitivePinMap;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.RoutingGraph;
 import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
@@ -74,6 +76,10 @@ public class FileTools {
 	public static final String rapidSmithPathVariableName = "RAPIDSMITH_PATH";
 	/** Suffix of the device part files */
 	public static final String deviceFileSuffix = "_db.dat";
+	/** Suffix of the memory mapped device part files */
+	public static final String mappedDeviceFileSuffix = "_db.map";
+	/** Suffix of the routing graph files */
+	public static final String routingGraphFileSuffix = "_rrg.dat";
 	/** Suffix of the wireEnumerator files */
 	public static final String wireEnumeratorFileName = "wireEnumerator.dat";
 	/** Name of the family primitive definition files */
@@ -118,13 +124,13 @@ public class FileTools {
 	//===================================================================================//
 	/* Custom Read/Write File Functions for Device/WireEnumeration Class                 */
 	//===================================================================================//
-	public static HashMap<String,Integer> readHashMap(Hessian2Input dis, Integer[] allInts){
+	public static HashMap<String,Integer> readHashMap(Hessian2Input dis){
 		int count;
 		HashMap<String,Integer> tileMap = null;
 		String[] keys;
 		try {
-			// TODO - The following read is necessary, but could be removed in a future version
-			dis.readInt();//size = dis.readInt();
+			// Skip the total key length written by writeHashMap()
+			dis.readInt();
 			count = dis.readInt();
 			tileMap = new HashMap<String,Integer>(count);
 			keys = new String[count];
@@ -132,7 +138,7 @@ public class FileTools {
 				keys[i] = dis.readString();
 			}
 			for(int i=0; i < count; i++){
-				tileMap.put(keys[i], allInts[dis.readInt()]);
+				tileMap.put(keys[i], dis.readInt());
 			}
 
 		} catch (IOException e) {
@@ -399,6 +405,7 @@ public class FileTools {
 			WireArrayConnection wc = wireConnections.get(i);
 			newMap.put(wc.wire, wires.get(wc.wireArrayEnum));
 		}
+		newMap.freeze();
 
 		return newMap;
 	}
@@ -870,29 +877,90 @@ public class FileTools {
 				PartNameTools.removeSpeedGrade(partName) + 
 				deviceFileSuffix;
 	}
+
+	/**
+	 * Gets the memory mapped device file path and name for the given partName.
+	 * @param partName Name of the part to get corresponding mapped device file for.
+	 * @return The full path to the mapped device file specified by partName.
+	 */
+	public static String getMappedDeviceFileName(String partName){
+		return getPartFolderPath(partName) +
+				PartNameTools.removeSpeedGrade(partName) + 
+				mappedDeviceFileSuffix;
+	}
+	
+	/**
+	 * Gets the routing graph file path and name for the given partName.
+	 * @param partName Name of the part to get corresponding routing graph file for.
+	 * @return The full path to the routing graph file specified by partName.
+	 */
+	public static String getRoutingGraphFileName(String partName){
+		return getPartFolderPath(partName) +
+				PartNameTools.removeSpeedGrade(partName) + 
+				routingGraphFileSuffix;
+	}
+	
+	/**
+	 * Loads the routing graph of a device from the routing graph file next to its device
+	 * file.  If the file does not exist or was built from a different version of the file
+	 * the device was read from (the compact or the memory mapped device file, see
+	 * Device.getSourceFileName()), the graph is built from the device and saved for the 
+	 * next time.  A graph that can not be saved is still returned.
+	 * @param dev The device to get the routing graph of.
+	 * @return The routing graph of the device.
+	 */
+	public static RoutingGraph loadRoutingGraph(Device dev){
+		String fileName = getRoutingGraphFileName(dev.getPartName());
+		String sourceFileName = dev.getSourceFileName();
+		File deviceFile = new File(sourceFileName == null ? getDeviceFileName(dev.getPartName()) : sourceFileName);
+		long length = deviceFile.length();
+		long modified = deviceFile.lastModified();
+		if(new File(fileName).exists()){
+			try{
+				RoutingGraph graph = RoutingGraph.load(fileName, dev);
+				if(graph.getSourceLength() == length && graph.getSourceModified() == modified){
+					return graph;
+				}
+			}
+			catch(IOException e){
+				MessageGenerator.briefError("WARNING: Could not load routing graph file " + fileName + ": " + e.getMessage());
+			}
+		}
+		RoutingGraph graph = RoutingGraph.build(dev);
+		graph.setSource(length, modified);
+		try{
+			graph.save(fileName);
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("WARNING: Could not save routing graph file " + fileName + ": " + e.getMessage());
+		}
+		return graph;
+	}
 	
 	/**
 	 * Loads the appropriate Device file based on the part name.  Accounts for speed grade in 
-	 * file name.
+	 * file name.  If a memory mapped device file (see DeviceFileConverter) exists for the part
+	 * it is used, otherwise the compact device file is loaded.  Loaded devices are kept in the
+	 * shared DeviceCache so several parts can be held at once.
 	 * @param partName Name of the part or device to load the information for.
 	 * @return The device or null if there was an error.
 	 */
 	public static Device loadDevice(String partName){
-		String canonicalName = PartNameTools.removeSpeedGrade(partName);
-		Device device = Device.getInstance(canonicalName);
-		String path = getDeviceFileName(canonicalName);
-
-		// Don't reload the device if same part is already loaded
-		if(device.getPartName() != null){
-			return device;
-		}
-		
-		if(!device.readDeviceFromCompactFile(path)){
-			return null;
-		}
-		else{ 
-			return device;
-		}
+		return loadDevice(partName, false);
+	}
+	
+	/**
+	 * Loads the appropriate Device file based on the part name.  Accounts for speed grade in 
+	 * file name.  When lazy is true and a memory mapped device file exists for the part, the
+	 * sinks and wires of each tile are only decoded the first time the tile is queried for them
+	 * (see Device.readDeviceFromMappedFile(String, boolean)).  Compact device files are always
+	 * loaded completely.
+	 * @param partName Name of the part or device to load the information for.
+	 * @param lazy True to decode tile sinks and wires on first access when possible.
+	 * @return The device or null if there was an error.
+	 */
+	public static Device loadDevice(String partName, boolean lazy){
+		return DeviceCache.getInstance().getDevice(partName, lazy);
 	}
 	
 	/**
@@ -931,19 +999,7 @@ public class FileTools {
 	 * @return The WireEnumerator or null if there was an error.
 	 */
 	public static WireEnumerator loadWireEnumerator(FamilyType familyType){
-		familyType = PartNameTools.getBaseTypeFromFamilyType(familyType);
-		WireEnumerator we = WireEnumerator.getInstance(familyType);
-		String path = getWireEnumeratorFileName(familyType);
-		if(we.getFamilyName() != null){
-			return we;
-		}
-		
-		if(!we.readCompactEnumFile(path, familyType)){
-			return null;
-		}
-		else{ 
-			return we;
-		}
+		return DeviceCache.getInstance().getWireEnumerator(familyType);
 	}
 	
 	